@@ -0,0 +1,67 @@
+package info.blockchain.wallet.bip44;
+
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.params.MainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derives a range of receive addresses the way the pubkey sync in
+ * {@link info.blockchain.wallet.payload.PayloadManager#save()} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AddressDerivationBenchmark {
+
+    @Param({"20", "200"})
+    public int count;
+
+    private DeterministicKey accountKey;
+    private HDChain warmChain;
+
+    @Setup
+    public void setUp() {
+        accountKey = HDKeyDerivation.createMasterPrivateKey("15e23aa73d25994f1921a1256f93f72c".getBytes());
+        warmChain = new HDChain(MainNetParams.get(), accountKey, true);
+        warmChain.getAddressStrings(0, count);
+    }
+
+    @Benchmark
+    public List<String> hdAddress() {
+        HDChain chain = new HDChain(MainNetParams.get(), accountKey, true);
+        List<String> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(chain.getAddressAt(i).getAddressString());
+        }
+        return list;
+    }
+
+    @Benchmark
+    public List<String> derivationEngine() {
+        HDChain chain = new HDChain(MainNetParams.get(), accountKey, true);
+        return chain.getAddressStrings(0, count);
+    }
+
+    @Benchmark
+    public List<String> derivationEngineCached() {
+        return warmChain.getAddressStrings(0, count);
+    }
+}
@@ -0,0 +1,64 @@
+package info.blockchain.wallet.metadata;
+
+import info.blockchain.wallet.MockedResponseTest;
+import info.blockchain.wallet.api.PersistentUrls;
+import info.blockchain.wallet.bip44.HDWalletFactory;
+import info.blockchain.wallet.bip44.HDWalletFactory.Language;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decrypts a message from a contact with the shared key cached, and with the cache wiped before
+ * every message, which costs the ECDH derivation each time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SharedKeyBenchmark {
+
+    private SharedMetadata recipient;
+    private String senderXpub;
+    private String payload;
+
+    private static SharedMetadata node(String seedHex) throws Exception {
+        return new SharedMetadata.Builder(HDWalletFactory
+            .restoreWallet(PersistentUrls.getInstance().getCurrentNetworkParams(), Language.US,
+                seedHex, "", 1).getMasterKey()).build();
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        //SharedMetadata reads the network parameters from the framework
+        MockedResponseTest.init();
+
+        SharedMetadata sender = node("15e23aa73d25994f1921a1256f93f72c");
+        recipient = node("20e3939d08ddf727f34a130704cd925e");
+        senderXpub = sender.getXpub();
+        payload = sender.encryptFor(recipient.getXpub(), "Hi there, this is a payment request");
+    }
+
+    @Benchmark
+    public String cached() throws Exception {
+        return recipient.decryptFrom(senderXpub, payload);
+    }
+
+    @Benchmark
+    public String uncached() throws Exception {
+        recipient.wipeSharedKeys();
+        return recipient.decryptFrom(senderXpub, payload);
+    }
+}
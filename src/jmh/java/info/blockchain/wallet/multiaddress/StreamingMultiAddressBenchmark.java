@@ -0,0 +1,227 @@
+package info.blockchain.wallet.multiaddress;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import info.blockchain.api.blockexplorer.BlockExplorer;
+import info.blockchain.api.blockexplorer.FilterType;
+import info.blockchain.api.data.MultiAddress;
+import info.blockchain.wallet.BlockchainFramework;
+import info.blockchain.wallet.FrameworkInterface;
+import info.blockchain.wallet.api.Environment;
+
+import org.bitcoinj.params.AbstractBitcoinNetParams;
+import org.bitcoinj.params.MainNetParams;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+/**
+ * Compares peak heap of the buffered and streamed multiaddress paths. A synthetic ~50 MB
+ * response is written to disk once and served by a local HTTP server. The peak live heap is
+ * reported as the liveHeapMb secondary result.
+ *
+ * The buffered path holds the whole {@link MultiAddress} and every summary at once, while the
+ * streamed path only holds the summaries. The fork gets a 1 GB heap so both paths complete and
+ * their liveHeapMb can be compared, rather than the buffered one failing with an OOM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class StreamingMultiAddressBenchmark {
+
+    private static final int SAMPLE_INTERVAL = 10000;
+
+    @Param({"100000"})
+    public int txCount;
+
+    private File fixture;
+    private HttpServer server;
+    private SyntheticMultiAddress data;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = new SyntheticMultiAddress(42, 100);
+
+        fixture = File.createTempFile("multiaddress", ".json");
+        fixture.deleteOnExit();
+        //Match the field order of the server, which sends 'info' before 'txs'
+        new ObjectMapper()
+            .addMixIn(MultiAddress.class, ServerFieldOrder.class)
+            .writeValue(fixture, data.generate(txCount));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/multiaddr", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream request = exchange.getRequestBody();
+                while (request.read() != -1) {
+                    //Drain form body
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, fixture.length());
+                OutputStream body = exchange.getResponseBody();
+                Files.copy(fixture.toPath(), body);
+                body.close();
+            }
+        });
+        server.start();
+
+        final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        final Retrofit retrofit = new Retrofit.Builder()
+            .baseUrl(url)
+            .client(new OkHttpClient.Builder().readTimeout(60, TimeUnit.SECONDS).build())
+            .addConverterFactory(JacksonConverterFactory.create())
+            .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+            .build();
+
+        BlockchainFramework.init(new FrameworkInterface() {
+            @Override
+            public Retrofit getRetrofitApiInstance() {
+                return retrofit;
+            }
+
+            @Override
+            public Retrofit getRetrofitExplorerInstance() {
+                return retrofit;
+            }
+
+            @Override
+            public Environment getEnvironment() {
+                return Environment.PRODUCTION;
+            }
+
+            @Override
+            public AbstractBitcoinNetParams getNetworkParameters() {
+                return MainNetParams.get();
+            }
+
+            @Override
+            public String getApiCode() {
+                return null;
+            }
+
+            @Override
+            public String getDevice() {
+                return "Benchmark";
+            }
+
+            @Override
+            public String getAppVersion() {
+                return null;
+            }
+        });
+    }
+
+    @JsonPropertyOrder({"info", "wallet", "addresses", "txs"})
+    private static abstract class ServerFieldOrder {
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        fixture.delete();
+    }
+
+    /**
+     * Heap in use after a full collection, relative to the start of the invocation. Samples are
+     * taken at fixed points so that only reachable objects are counted; the explicit collections
+     * make the timing of these benchmarks meaningless, only the secondary result matters.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapCounters {
+
+        public long liveHeapMb;
+
+        private long baseline;
+        private long max;
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            baseline = usedAfterGc();
+            max = 0;
+        }
+
+        @TearDown(Level.Invocation)
+        public void record() {
+            liveHeapMb = Math.max(liveHeapMb, max / (1024 * 1024));
+        }
+
+        void sample() {
+            max = Math.max(max, usedAfterGc() - baseline);
+        }
+
+        private static long usedAfterGc() {
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
+    @Benchmark
+    public int buffered(HeapCounters counters) throws Exception {
+        //Same steps as MultiAddressFactory.getAccountTransactions, sampled between them
+        BlockExplorer blockExplorer = new BlockExplorer(BlockchainFramework.getRetrofitExplorerInstance(), null);
+        MultiAddress multiAddress = blockExplorer.getMultiAddress(data.getAllActive(), null,
+            FilterType.RemoveUnspendable.getFilterInt(), txCount, 0).execute().body();
+        counters.sample();
+
+        List<TransactionSummary> summaries = new MultiAddressFactory(blockExplorer).summarize(
+            data.getAllActive(), data.getWatchOnlyAddresses(), multiAddress, null);
+        counters.sample();
+
+        return summaries.size() + multiAddress.getTxs().size();
+    }
+
+    @Benchmark
+    public int streamed(final HeapCounters counters) throws Exception {
+        final long[] total = new long[1];
+        int count = new MultiAddressFactory(null).getAccountTransactions(
+            data.getAllActive(), data.getWatchOnlyAddresses(), null, null, txCount, 0,
+            new TransactionSummaryHandler() {
+                int received;
+
+                @Override
+                public void onTransactionSummary(TransactionSummary summary) {
+                    total[0] += summary.getTotal().longValue();
+                    if (++received % SAMPLE_INTERVAL == 0) {
+                        counters.sample();
+                    }
+                }
+            });
+        counters.sample();
+        return count + (int) total[0];
+    }
+}
@@ -0,0 +1,60 @@
+package info.blockchain.wallet.multiaddress;
+
+import info.blockchain.api.data.MultiAddress;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summarizes synthetic multiaddress responses, the way {@link MultiAddressFactory} does after
+ * fetching a page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SummarizeBenchmark {
+
+    @Param({"10000", "50000"})
+    public int txCount;
+
+    @Param({"10", "500"})
+    public int legacyCount;
+
+    private SyntheticMultiAddress data;
+    private MultiAddress multiAddress;
+
+    @Setup
+    public void setUp() {
+        data = new SyntheticMultiAddress(42, legacyCount);
+        multiAddress = data.generate(txCount);
+    }
+
+    @Benchmark
+    public List<TransactionSummary> summarizeAll() {
+        return new MultiAddressFactory(null).summarize(
+            data.getAllActive(), data.getWatchOnlyAddresses(), multiAddress, null);
+    }
+
+    @Benchmark
+    public List<TransactionSummary> summarizeImported() {
+        return new MultiAddressFactory(null).summarize(
+            data.getAllActive(), data.getWatchOnlyAddresses(), multiAddress,
+            new ArrayList<>(data.getLegacyAddresses()));
+    }
+}
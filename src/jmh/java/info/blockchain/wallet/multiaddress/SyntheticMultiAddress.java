@@ -0,0 +1,177 @@
+package info.blockchain.wallet.multiaddress;
+
+import info.blockchain.api.data.AddressSummary;
+import info.blockchain.api.data.Info;
+import info.blockchain.api.data.Input;
+import info.blockchain.api.data.MultiAddress;
+import info.blockchain.api.data.Output;
+import info.blockchain.api.data.RawBlock;
+import info.blockchain.api.data.Transaction;
+import info.blockchain.api.data.Xpub;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates deterministic multiaddress responses for benchmarks. Addresses are not valid base58,
+ * which summarizing does not care about.
+ */
+public class SyntheticMultiAddress {
+
+    public static final String XPUB = "xpub_synthetic_account_0";
+    public static final long LATEST_BLOCK = 500000;
+
+    private final Random random;
+    private final ArrayList<String> legacyAddresses;
+    private final ArrayList<String> watchOnlyAddresses;
+
+    public SyntheticMultiAddress(long seed, int legacyCount) {
+        this.random = new Random(seed);
+        this.legacyAddresses = new ArrayList<>();
+        this.watchOnlyAddresses = new ArrayList<>();
+        for (int i = 0; i < legacyCount; i++) {
+            String address = "1Legacy" + i;
+            legacyAddresses.add(address);
+            if (i % 10 == 0) {
+                watchOnlyAddresses.add(address);
+            }
+        }
+    }
+
+    public ArrayList<String> getLegacyAddresses() {
+        return legacyAddresses;
+    }
+
+    public ArrayList<String> getWatchOnlyAddresses() {
+        return watchOnlyAddresses;
+    }
+
+    /**
+     * @return The xpub followed by all legacy addresses, as sent to multiaddress
+     */
+    public ArrayList<String> getAllActive() {
+        ArrayList<String> all = new ArrayList<>();
+        all.add(XPUB);
+        all.addAll(legacyAddresses);
+        return all;
+    }
+
+    public MultiAddress generate(int txCount) {
+
+        RawBlock latestBlock = new RawBlock();
+        latestBlock.setHeight(LATEST_BLOCK);
+        Info info = new Info();
+        info.setLatestBlock(latestBlock);
+
+        AddressSummary summary = new AddressSummary();
+        summary.setAddress(XPUB);
+        summary.setAccountIndex(txCount);
+        summary.setChangeIndex(txCount);
+
+        ArrayList<AddressSummary> addresses = new ArrayList<>();
+        addresses.add(summary);
+
+        ArrayList<Transaction> txs = new ArrayList<>(txCount);
+        for (int i = 0; i < txCount; i++) {
+            txs.add(generateTransaction(i, txCount));
+        }
+
+        MultiAddress multiAddress = new MultiAddress();
+        multiAddress.setInfo(info);
+        multiAddress.setAddresses(addresses);
+        multiAddress.setTxs(txs);
+        return multiAddress;
+    }
+
+    private Transaction generateTransaction(int index, int txCount) {
+
+        long fee = 10000;
+        long amount = 10000 + random.nextInt(1000000);
+
+        Transaction tx = new Transaction();
+        tx.setHash(String.format("%064x", index));
+        tx.setTime(1500000000L + (txCount - index) * 600L);
+        tx.setBlockHeight(index == 0 ? 0 : LATEST_BLOCK - index / 4);
+        tx.setFee(BigInteger.valueOf(fee));
+
+        ArrayList<Input> inputs = new ArrayList<>();
+        ArrayList<Output> outputs = new ArrayList<>();
+
+        switch (index % 3) {
+            case 0:
+                //Received from a foreign address to the xpub or a legacy address
+                inputs.add(input(foreignAddress(), amount + fee, null));
+                outputs.add(output(random.nextBoolean() ? receiveAddress(index) : legacyAddress(), amount,
+                    null));
+                tx.setResult(BigInteger.valueOf(amount));
+                break;
+            case 1:
+                //Sent from the xpub with change
+                inputs.add(input(receiveAddress(index), amount * 2 + fee, receiveXpub(index)));
+                outputs.add(output(foreignAddress(), amount, null));
+                outputs.add(output(changeAddress(index), amount, changeXpub(index)));
+                tx.setResult(BigInteger.valueOf(-amount - fee));
+                break;
+            default:
+                //Transfer from legacy addresses to the xpub
+                int inputCount = 1 + random.nextInt(3);
+                for (int i = 0; i < inputCount; i++) {
+                    inputs.add(input(legacyAddress(), amount, null));
+                }
+                outputs.add(output(receiveAddress(index), amount * inputCount - fee, receiveXpub(index)));
+                tx.setResult(BigInteger.valueOf(-fee));
+                break;
+        }
+
+        tx.setInputs(inputs);
+        tx.setOut(outputs);
+        return tx;
+    }
+
+    private String legacyAddress() {
+        return legacyAddresses.isEmpty() ? foreignAddress()
+            : legacyAddresses.get(random.nextInt(legacyAddresses.size()));
+    }
+
+    private String foreignAddress() {
+        return "1Foreign" + random.nextInt(1000000);
+    }
+
+    private static String receiveAddress(int index) {
+        return "1Receive" + index;
+    }
+
+    private static String changeAddress(int index) {
+        return "1Change" + index;
+    }
+
+    private static Xpub receiveXpub(int index) {
+        return xpub("M/0/" + index);
+    }
+
+    private static Xpub changeXpub(int index) {
+        return xpub("M/1/" + index);
+    }
+
+    private static Xpub xpub(String path) {
+        Xpub xpub = new Xpub();
+        xpub.setM(XPUB);
+        xpub.setPath(path);
+        return xpub;
+    }
+
+    private static Input input(String address, long value, Xpub xpub) {
+        Input input = new Input();
+        input.setPrevOut(output(address, value, xpub));
+        return input;
+    }
+
+    private static Output output(String address, long value, Xpub xpub) {
+        Output output = new Output();
+        output.setAddr(address);
+        output.setValue(BigInteger.valueOf(value));
+        output.setXpub(xpub);
+        return output;
+    }
+}
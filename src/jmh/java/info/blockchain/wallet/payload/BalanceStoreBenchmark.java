@@ -0,0 +1,99 @@
+package info.blockchain.wallet.payload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Balance reads and payments per second with 3 reading threads and 1 paying thread, against
+ * a {@link BalanceStore} and against the previous map of {@link BigInteger}s guarded by a lock.
+ * A reader fetches an address balance and the wallet balance, a payment subtracts from both.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class BalanceStoreBenchmark {
+
+    private static final String ALL = PayloadManager.MULTI_ADDRESS_ALL;
+
+    @Param({"100", "1000"})
+    public int addressCount;
+
+    private String[] addresses;
+    private BalanceStore store;
+    private HashMap<String, BigInteger> map;
+
+    @Setup
+    public void setUp() {
+        addresses = new String[addressCount];
+        store = new BalanceStore();
+        map = new HashMap<>();
+
+        BalanceStore.Update update = store.update();
+        for (int i = 0; i < addressCount; i++) {
+            addresses[i] = "address" + i;
+            update.put(addresses[i], Long.MAX_VALUE / addressCount / 2);
+            map.put(addresses[i], BigInteger.valueOf(Long.MAX_VALUE / addressCount / 2));
+        }
+        update.put(ALL, Long.MAX_VALUE / 2).publish();
+        map.put(ALL, BigInteger.valueOf(Long.MAX_VALUE / 2));
+    }
+
+    private String randomAddress() {
+        return addresses[ThreadLocalRandom.current().nextInt(addressCount)];
+    }
+
+    @Benchmark
+    @Group("store")
+    @GroupThreads(3)
+    public long store_read() {
+        BalanceStore.Snapshot snapshot = store.getSnapshot();
+        return snapshot.getBalance(randomAddress()) + snapshot.getBalance(ALL);
+    }
+
+    @Benchmark
+    @Group("store")
+    @GroupThreads(1)
+    public boolean store_pay() {
+        return store.subtract(1L, randomAddress(), ALL);
+    }
+
+    @Benchmark
+    @Group("lockedMap")
+    @GroupThreads(3)
+    public BigInteger lockedMap_read() {
+        String address = randomAddress();
+        synchronized (map) {
+            return map.get(address).add(map.get(ALL));
+        }
+    }
+
+    @Benchmark
+    @Group("lockedMap")
+    @GroupThreads(1)
+    public BigInteger lockedMap_pay() {
+        String address = randomAddress();
+        synchronized (map) {
+            map.put(address, map.get(address).subtract(BigInteger.ONE));
+            return map.put(ALL, map.get(ALL).subtract(BigInteger.ONE));
+        }
+    }
+}
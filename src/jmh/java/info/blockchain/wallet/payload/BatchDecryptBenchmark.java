@@ -0,0 +1,94 @@
+package info.blockchain.wallet.payload;
+
+import info.blockchain.wallet.MockedResponseTest;
+import info.blockchain.wallet.crypto.AESUtil;
+import info.blockchain.wallet.payload.BatchWalletDecryptor.Result;
+import info.blockchain.wallet.payload.data.Wallet;
+import info.blockchain.wallet.payload.data.WalletBase;
+import info.blockchain.wallet.payload.data.WalletWrapper;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wallet payloads decrypted per second, one after the other on a single thread versus spread
+ * over a {@link BatchWalletDecryptor} with a worker per processor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class BatchDecryptBenchmark {
+
+    private static final int BATCH_SIZE = 32;
+    private static final String PASSWORD = "MyTestWallet";
+
+    @Param({"5000", "100000"})
+    public int iterations;
+
+    private List<WalletWrapper> payloads;
+    private List<String> passwords;
+    private BatchWalletDecryptor decryptor;
+
+    @Setup
+    public void setUp() throws Exception {
+        //HD wallets need network parameters
+        MockedResponseTest.init();
+
+        InputStream in = getClass().getClassLoader().getResourceAsStream("wallet_v3_1.txt");
+        WalletBase walletBase = WalletBase.fromJson(IOUtils.toString(in, "utf-8"));
+        in.close();
+        walletBase.decryptPayload(PASSWORD);
+        String json = walletBase.getWalletBody().toJson();
+
+        payloads = new ArrayList<>(BATCH_SIZE);
+        passwords = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            //Fresh IV every time, like separate wallets
+            payloads.add(WalletWrapper.wrap(AESUtil.encrypt(json, PASSWORD, iterations), iterations));
+            passwords.add(PASSWORD);
+        }
+
+        decryptor = new BatchWalletDecryptor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        decryptor.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Wallet> singleThread() throws Exception {
+        List<Wallet> wallets = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            wallets.add(payloads.get(i).decryptPayload(passwords.get(i)));
+        }
+        return wallets;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Result> pooled() throws Exception {
+        return decryptor.decrypt(payloads, passwords);
+    }
+}
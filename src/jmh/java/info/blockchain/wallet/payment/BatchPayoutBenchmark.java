@@ -0,0 +1,107 @@
+package info.blockchain.wallet.payment;
+
+import info.blockchain.api.data.UnspentOutput;
+import info.blockchain.wallet.MockedResponseTest;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payouts built per second by 1 and 4 threads sharing the same inputs. The
+ * synchronized {@link PaymentTx#makeTransaction} can't scale past one thread,
+ * {@link BatchPayoutBuilder} should scale with the processors available.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class BatchPayoutBenchmark {
+
+    private static final BigInteger FEE_PER_KB = BigInteger.valueOf(30000L);
+    private static final String CHANGE_ADDRESS = "1GiEQZt9aX2XfDcj14tCC4xAWEJtq9EXW7";
+    private static final String SCRIPT = "76a91462e907b15cbf27d5425399ebf6f0fb50ebb88f1888ac";
+
+    @Param({"200"})
+    public int receiverCount;
+
+    private List<UnspentOutput> coins;
+    private List<Pair<String, BigInteger>> receivers;
+    private HashMap<String, BigInteger> receiverMap;
+    private BigInteger legacyFee;
+    private BatchPayoutBuilder builder;
+
+    @Setup
+    public void setUp() {
+        //PaymentTx reads the network parameters from the framework
+        MockedResponseTest.init();
+
+        coins = new ArrayList<>();
+        for (int i = 0; i < receiverCount / 4; i++) {
+            UnspentOutput coin = new UnspentOutput();
+            coin.setTxHash(Hex.toHexString(new ECKey().getPrivKeyBytes()));
+            coin.setTxOutputCount(0);
+            coin.setValue(BigInteger.valueOf(1000000L));
+            coin.setScript(SCRIPT);
+            coins.add(coin);
+        }
+
+        receivers = new ArrayList<>();
+        receiverMap = new HashMap<>();
+        for (int i = 0; i < receiverCount; i++) {
+            String address = new ECKey().toAddress(MainNetParams.get()).toBase58();
+            BigInteger amount = BigInteger.valueOf(100000L + i);
+            receivers.add(Pair.of(address, amount));
+            receiverMap.put(address, amount);
+        }
+
+        legacyFee = Fees.estimatedFee(coins.size(), receiverCount + 1, FEE_PER_KB);
+        builder = new BatchPayoutBuilder(MainNetParams.get(), FEE_PER_KB);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Transaction legacy_1thread() throws Exception {
+        return PaymentTx.makeTransaction(coins, receiverMap, legacyFee, CHANGE_ADDRESS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Transaction legacy_4threads() throws Exception {
+        return PaymentTx.makeTransaction(coins, receiverMap, legacyFee, CHANGE_ADDRESS);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<BatchPayoutBuilder.Payout> batchBuilder_1thread() throws Exception {
+        return builder.build(receivers, coins, CHANGE_ADDRESS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<BatchPayoutBuilder.Payout> batchBuilder_4threads() throws Exception {
+        return builder.build(receivers, coins, CHANGE_ADDRESS);
+    }
+}
@@ -0,0 +1,113 @@
+package info.blockchain.wallet.payment;
+
+import info.blockchain.api.data.UnspentOutput;
+import info.blockchain.api.data.UnspentOutputs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selects coins for a set of payments from a hot wallet sized unspent set.
+ *
+ * The selectors run on pre-parsed values, unspentOutputs runs the full
+ * {@link Coins#getMinimumCoinsForPayment} path including script checks. Selection quality on
+ * the same kind of wallet is covered by CoinSelectorTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CoinSelectionBenchmark {
+
+    private static final long FEE_PER_KB = 30000L;
+    private static final int PAYMENTS = 16;
+    private static final String SCRIPT = "76a91462e907b15cbf27d5425399ebf6f0fb50ebb88f1888ac";
+
+    @Param({"1000", "10000", "100000"})
+    public int coinCount;
+
+    private long[] values;
+    private long[] paymentAmounts;
+    private UnspentOutputs unspentOutputs;
+    private int next;
+
+    private final CoinSelector greedy = new GreedyCoinSelector();
+    private final CoinSelector branchAndBound = new BranchAndBoundCoinSelector();
+    private final CoinSelector knapsack = new KnapsackCoinSelector(new Random(1));
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        //Mostly small coins with the odd large one, like a busy receiving wallet
+        values = new long[coinCount];
+        ArrayList<UnspentOutput> outputs = new ArrayList<>(coinCount);
+        for (int i = 0; i < coinCount; i++) {
+            values[i] = random.nextInt(10) == 0
+                ? 10000000L + random.nextInt(100000000)
+                : 10000L + random.nextInt(2000000);
+
+            UnspentOutput output = new UnspentOutput();
+            output.setValue(BigInteger.valueOf(values[i]));
+            output.setScript(SCRIPT);
+            outputs.add(output);
+        }
+        Arrays.sort(values);
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            long tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+
+        unspentOutputs = new UnspentOutputs();
+        unspentOutputs.setUnspentOutputs(outputs);
+
+        paymentAmounts = new long[PAYMENTS];
+        for (int i = 0; i < PAYMENTS; i++) {
+            paymentAmounts[i] = 50000L + (long) (random.nextDouble() * 50000000L);
+        }
+    }
+
+    private long nextPayment() {
+        next = (next + 1) % PAYMENTS;
+        return paymentAmounts[next];
+    }
+
+    @Benchmark
+    public SpendableUnspentOutputs unspentOutputs() {
+        return Coins.getMinimumCoinsForPayment(unspentOutputs, BigInteger.valueOf(nextPayment()),
+            BigInteger.valueOf(FEE_PER_KB));
+    }
+
+    @Benchmark
+    public CoinSelection greedy() {
+        return greedy.select(values, nextPayment(), FEE_PER_KB);
+    }
+
+    @Benchmark
+    public CoinSelection branchAndBound() {
+        return branchAndBound.select(values, nextPayment(), FEE_PER_KB);
+    }
+
+    @Benchmark
+    public CoinSelection knapsack() {
+        return knapsack.select(values, nextPayment(), FEE_PER_KB);
+    }
+}
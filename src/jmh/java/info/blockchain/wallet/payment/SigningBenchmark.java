@@ -0,0 +1,99 @@
+package info.blockchain.wallet.payment;
+
+import info.blockchain.api.data.UnspentOutput;
+import info.blockchain.wallet.MockedResponseTest;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.script.ScriptBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs a consolidation of inputs spread over 20 keys with the wallet based
+ * {@link PaymentTx#signTransaction} and with a {@link TransactionSigner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SigningBenchmark {
+
+    private static final int KEYS = 20;
+
+    @Param({"10", "100", "1000"})
+    public int inputCount;
+
+    private final NetworkParameters params = MainNetParams.get();
+
+    private List<ECKey> keys;
+    private List<UnspentOutput> coins;
+    private TransactionSigner signer;
+    private Transaction transaction;
+
+    @Setup
+    public void setUp() {
+        //PaymentTx reads the network parameters from the framework
+        MockedResponseTest.init();
+
+        keys = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            keys.add(new ECKey());
+        }
+
+        coins = new ArrayList<>();
+        for (int i = 0; i < inputCount; i++) {
+            ECKey key = keys.get(i % KEYS);
+            UnspentOutput coin = new UnspentOutput();
+            coin.setTxHash(Hex.toHexString(new ECKey().getPrivKeyBytes()));
+            coin.setTxOutputCount(0);
+            coin.setValue(BigInteger.valueOf(100000L));
+            coin.setScript(Hex.toHexString(ScriptBuilder.createOutputScript(key.toAddress(params)).getProgram()));
+            coins.add(coin);
+        }
+
+        signer = new TransactionSigner(keys);
+    }
+
+    @Setup(Level.Invocation)
+    public void createTransaction() {
+        transaction = new Transaction(params);
+        for (UnspentOutput coin : coins) {
+            transaction.addInput(PaymentTx.createInput(params, coin));
+        }
+        transaction.addOutput(Coin.valueOf(90000L * inputCount), keys.get(0).toAddress(params));
+    }
+
+    @Benchmark
+    public Transaction wallet() {
+        PaymentTx.signTransaction(transaction, keys);
+        return transaction;
+    }
+
+    @Benchmark
+    public Transaction transactionSigner() {
+        signer.sign(transaction);
+        return transaction;
+    }
+}
@@ -0,0 +1,116 @@
+package info.blockchain.wallet.prices;
+
+import info.blockchain.wallet.MockedResponseTest;
+import info.blockchain.wallet.multiaddress.TransactionSummary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prices 10k transaction summaries spread over the last year in USD. Responses come from the
+ * mock interceptor, so the one request per timestamp baseline pays for request handling and
+ * parsing but no network latency. The bulk lookup fetches a year of hourly prices once into a
+ * new store, the cached lookup answers from a store that already holds them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PriceStoreBenchmark {
+
+    private static final int TRANSACTION_COUNT = 10000;
+    private static final long YEAR = 365 * 24 * 3600L;
+
+    private PriceApi priceApi;
+    private PriceStore cachedStore;
+    private List<TransactionSummary> transactions;
+
+    private String series;
+    private List<String> singleResponses;
+
+    @Setup
+    public void setUp() {
+        MockedResponseTest.init();
+        priceApi = new PriceApi();
+
+        Random random = new Random(7);
+        long now = System.currentTimeMillis() / 1000L;
+        long start = now - YEAR;
+
+        transactions = new ArrayList<>(TRANSACTION_COUNT);
+        singleResponses = new ArrayList<>(TRANSACTION_COUNT);
+        for (int i = 0; i < TRANSACTION_COUNT; i++) {
+            TransactionSummary summary = new TransactionSummary();
+            summary.setTime(start + (long) (random.nextDouble() * YEAR));
+            transactions.add(summary);
+            singleResponses.add("{\"timestamp\":" + summary.getTime() + ",\"price\":"
+                + (1000 + random.nextDouble() * 5000) + "}");
+        }
+
+        StringBuilder json = new StringBuilder("[");
+        for (long time = start - Scale.ONE_HOUR; time <= now; time += Scale.ONE_HOUR) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"timestamp\":").append(time)
+                .append(",\"price\":").append(1000 + random.nextDouble() * 5000).append('}');
+        }
+        series = json.append(']').toString();
+
+        cachedStore = new PriceStore(priceApi);
+        MockedResponseTest.mockInterceptor.setResponseString(series);
+        cachedStore.getHistoricPrices("btc", "usd", times(), Scale.ONE_HOUR).blockingFirst();
+    }
+
+    @Setup(Level.Invocation)
+    public void mockResponses() {
+        MockedResponseTest.mockInterceptor.setResponseStringList(new LinkedList<>(singleResponses));
+    }
+
+    private long[] times() {
+        long[] times = new long[transactions.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = transactions.get(i).getTime();
+        }
+        return times;
+    }
+
+    @Benchmark
+    public double[] requestPerTransaction() {
+        double[] prices = new double[transactions.size()];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = priceApi.getHistoricPrice("btc", "usd", transactions.get(i).getTime())
+                .blockingFirst();
+        }
+        return prices;
+    }
+
+    @Benchmark
+    public double[] bulk() {
+        MockedResponseTest.mockInterceptor.setResponseString(series);
+        return new PriceStore(priceApi).getHistoricPrices("btc", "usd", times(), Scale.ONE_HOUR)
+            .blockingFirst();
+    }
+
+    @Benchmark
+    public double[] bulkCached() {
+        return cachedStore.getHistoricPrices("btc", "usd", times(), Scale.ONE_HOUR).blockingFirst();
+    }
+}
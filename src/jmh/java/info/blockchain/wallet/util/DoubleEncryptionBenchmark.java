@@ -0,0 +1,92 @@
+package info.blockchain.wallet.util;
+
+import info.blockchain.wallet.crypto.DerivedKeyCache;
+import info.blockchain.wallet.payload.data.WalletWrapper;
+
+import org.bitcoinj.core.Base58;
+import org.bitcoinj.core.ECKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decrypts every legacy key of a double encrypted wallet, validating the second password before
+ * each key like {@link info.blockchain.wallet.payload.PayloadManager#getAddressECKey}.
+ *
+ * noCache derives every key from scratch (the old behaviour), firstPass wipes the wallet's
+ * cache once and repeatPass never, e.g. signing a second transaction in the same session.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DoubleEncryptionBenchmark {
+
+    private static final String SHARED_KEY = "524b5e9f-72ea-4690-b28c-8c1cfce65ca0";
+    private static final String SECOND_PASSWORD = "second password";
+    private static final int ITERATIONS = WalletWrapper.DEFAULT_PBKDF2_ITERATIONS_V2;
+
+    @Param({"500"})
+    public int keyCount;
+
+    private final DerivedKeyCache cache = new DerivedKeyCache();
+
+    private String dpasswordhash;
+    private List<String> encryptedKeys;
+
+    @Setup
+    public void setUp() throws Exception {
+        dpasswordhash = DoubleEncryptionFactory.getHash(SHARED_KEY, SECOND_PASSWORD, ITERATIONS);
+
+        encryptedKeys = new ArrayList<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            String privateKey = Base58.encode(new ECKey().getPrivKeyBytes());
+            encryptedKeys.add(DoubleEncryptionFactory.encrypt(privateKey, SHARED_KEY, SECOND_PASSWORD, ITERATIONS));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.wipe();
+    }
+
+    @Benchmark
+    public List<String> noCache() throws Exception {
+        return decryptAll(null);
+    }
+
+    @Benchmark
+    public List<String> firstPass() throws Exception {
+        cache.wipe();
+        return decryptAll(cache);
+    }
+
+    @Benchmark
+    public List<String> repeatPass() throws Exception {
+        return decryptAll(cache);
+    }
+
+    private List<String> decryptAll(DerivedKeyCache cache) throws Exception {
+        List<String> keys = new ArrayList<>(keyCount);
+        for (String encryptedKey : encryptedKeys) {
+            DoubleEncryptionFactory.validateSecondPassword(dpasswordhash, SHARED_KEY, SECOND_PASSWORD, ITERATIONS, cache);
+            keys.add(DoubleEncryptionFactory.decrypt(encryptedKey, SHARED_KEY, SECOND_PASSWORD, ITERATIONS, cache));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,66 @@
+package info.blockchain.wallet.util;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import info.blockchain.wallet.MockedResponseTest;
+import info.blockchain.wallet.payload.data.Wallet;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips a 67KB wallet body (double encrypted, 2 HD wallets and many legacy addresses)
+ * through Jackson with a mapper built per call, as the data classes used to, and with the
+ * shared {@link JsonCodecs}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class JsonCodecsBenchmark {
+
+    private String json;
+
+    @Setup
+    public void setUp() throws Exception {
+        MockedResponseTest.init();
+
+        InputStream in = getClass().getClassLoader().getResourceAsStream("wallet_body_1.txt");
+        json = IOUtils.toString(in, "utf-8");
+        in.close();
+    }
+
+    @Benchmark
+    public String mapperPerCall() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+            .withFieldVisibility(Visibility.ANY)
+            .withGetterVisibility(Visibility.NONE)
+            .withSetterVisibility(Visibility.NONE)
+            .withCreatorVisibility(Visibility.NONE));
+
+        Wallet wallet = mapper.readValue(json, Wallet.class);
+        return new ObjectMapper().writeValueAsString(wallet);
+    }
+
+    @Benchmark
+    public String sharedCodecs() throws Exception {
+        Wallet wallet = JsonCodecs.fieldReader(Wallet.class).readValue(json);
+        return JsonCodecs.writer(Wallet.class).writeValueAsString(wallet);
+    }
+}
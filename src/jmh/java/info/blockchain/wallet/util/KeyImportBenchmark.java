@@ -0,0 +1,198 @@
+package info.blockchain.wallet.util;
+
+import info.blockchain.wallet.MockedResponseTest;
+
+import org.apache.commons.codec.binary.Base64;
+import org.bitcoinj.core.Base58;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.params.MainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongycastle.util.encoders.Hex;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classifies and imports 10k keys spread evenly over WIF (both forms), base58, base64, hex and
+ * mini formats. Balance lookups are answered by the mock interceptor, so the one by one import
+ * pays for a request per hex and mini key without any network latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class KeyImportBenchmark {
+
+    private static final int KEY_COUNT = 10000;
+
+    private static final String BALANCE = "\"%s\": {\"final_balance\": 0}";
+
+    private final NetworkParameters params = MainNetParams.get();
+
+    private PrivateKeyFactory factory;
+    private List<String> keys;
+    //Balance responses, per hex or mini key and per chunk of them
+    private List<String> singleResponses;
+    private List<String> chunkResponses;
+
+    @Setup
+    public void setUp() throws Exception {
+        MockedResponseTest.init();
+        factory = new PrivateKeyFactory();
+
+        SecureRandom random = new SecureRandom();
+        String[] formats = {PrivateKeyFactory.WIF_COMPRESSED, PrivateKeyFactory.WIF_UNCOMPRESSED,
+            PrivateKeyFactory.BASE58, PrivateKeyFactory.BASE64, PrivateKeyFactory.HEX,
+            PrivateKeyFactory.MINI};
+
+        keys = new ArrayList<>(KEY_COUNT);
+        singleResponses = new ArrayList<>();
+        List<String> ambiguous = new ArrayList<>();
+        while (keys.size() < KEY_COUNT) {
+            String format = formats[keys.size() % formats.length];
+            String key = randomKey(format, random);
+            if (!format.equals(factory.getFormat(key))) {
+                continue;
+            }
+            keys.add(key);
+
+            if (format.equals(PrivateKeyFactory.HEX) || format.equals(PrivateKeyFactory.MINI)) {
+                String hex = format.equals(PrivateKeyFactory.HEX) ? key
+                    : Hex.toHexString(MessageDigest.getInstance("SHA-256").digest(key.getBytes("UTF-8")));
+                ECKey compressed = ECKey.fromPrivate(Hex.decode(hex), true);
+                String balances = String.format(BALANCE, compressed.decompress().toAddress(params))
+                    + "," + String.format(BALANCE, compressed.toAddress(params));
+                singleResponses.add("{" + balances + "}");
+                ambiguous.add(balances);
+            }
+        }
+
+        chunkResponses = new ArrayList<>();
+        for (int from = 0; from < ambiguous.size(); from += PrivateKeyFactory.DEFAULT_BALANCE_CHUNK_SIZE) {
+            StringBuilder chunk = new StringBuilder("{");
+            int to = Math.min(ambiguous.size(), from + PrivateKeyFactory.DEFAULT_BALANCE_CHUNK_SIZE);
+            for (int i = from; i < to; i++) {
+                chunk.append(i > from ? "," : "").append(ambiguous.get(i));
+            }
+            chunkResponses.add(chunk.append("}").toString());
+        }
+    }
+
+    private static String randomKey(String format, SecureRandom random) throws Exception {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        ECKey key = ECKey.fromPrivate(bytes);
+
+        switch (format) {
+            case PrivateKeyFactory.WIF_COMPRESSED:
+                return key.getPrivateKeyAsWiF(MainNetParams.get());
+            case PrivateKeyFactory.WIF_UNCOMPRESSED:
+                return key.decompress().getPrivateKeyAsWiF(MainNetParams.get());
+            case PrivateKeyFactory.BASE58:
+                return Base58.encode(bytes);
+            case PrivateKeyFactory.BASE64:
+                return new String(Base64.encodeBase64(bytes));
+            case PrivateKeyFactory.HEX:
+                return Hex.toHexString(bytes);
+            default:
+                //Mini keys are valid when SHA-256(key + "?") starts with a zero byte
+                String alphabet = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+                while (true) {
+                    StringBuilder mini = new StringBuilder("S");
+                    for (int i = 0; i < 29; i++) {
+                        mini.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    }
+                    byte[] check = MessageDigest.getInstance("SHA-256")
+                        .digest((mini + "?").getBytes("UTF-8"));
+                    if (check[0] == 0) {
+                        return mini.toString();
+                    }
+                }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void mockResponses() {
+        //Enough for either import
+        MockedResponseTest.mockInterceptor.setResponseStringList(new LinkedList<>(singleResponses));
+    }
+
+    @Benchmark
+    public int classifyRegex() {
+        int recognised = 0;
+        for (String key : keys) {
+            if (regexFormat(key) != null) {
+                recognised++;
+            }
+        }
+        return recognised;
+    }
+
+    @Benchmark
+    public int classify() {
+        int recognised = 0;
+        for (String key : keys) {
+            if (factory.getFormat(key) != null) {
+                recognised++;
+            }
+        }
+        return recognised;
+    }
+
+    @Benchmark
+    public List<ECKey> importOneByOne() throws Exception {
+        List<ECKey> imported = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            imported.add(factory.getKey(factory.getFormat(key), key));
+        }
+        return imported;
+    }
+
+    @Benchmark
+    public List<ECKey> importBulk() throws Exception {
+        MockedResponseTest.mockInterceptor.setResponseStringList(new LinkedList<>(chunkResponses));
+        return factory.getKeys(keys);
+    }
+
+    /**
+     * The classifier as it was, one String.matches per format check, mainnet only.
+     */
+    private static String regexFormat(String key) {
+        if (key.matches("^5[1-9A-HJ-NP-Za-km-z]{50}$")) {
+            return PrivateKeyFactory.WIF_UNCOMPRESSED;
+        } else if (key.matches("^[LK][1-9A-HJ-NP-Za-km-z]{51}$")) {
+            return PrivateKeyFactory.WIF_COMPRESSED;
+        } else if (key.matches("^[1-9A-HJ-NP-Za-km-z]{44}$") || key.matches("^[1-9A-HJ-NP-Za-km-z]{43}$")) {
+            return PrivateKeyFactory.BASE58;
+        } else if (key.matches("^[A-Fa-f0-9]{64}$")) {
+            return PrivateKeyFactory.HEX;
+        } else if (key.matches("^[A-Za-z0-9/=+]{44}$")) {
+            return PrivateKeyFactory.BASE64;
+        } else if (key.matches("^6P[1-9A-HJ-NP-Za-km-z]{56}$")) {
+            return PrivateKeyFactory.BIP38;
+        } else if (key.matches("^S[1-9A-HJ-NP-Za-km-z]{21}$")
+            || key.matches("^S[1-9A-HJ-NP-Za-km-z]{25}$")
+            || key.matches("^S[1-9A-HJ-NP-Za-km-z]{29}$")
+            || key.matches("^S[1-9A-HJ-NP-Za-km-z]{30}$")) {
+            return PrivateKeyFactory.MINI;
+        }
+        return null;
+    }
+}
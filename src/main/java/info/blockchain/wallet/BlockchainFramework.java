@@ -15,14 +15,25 @@ public final class BlockchainFramework {
 
     public static void init(FrameworkInterface frameworkInterface) {
         blockchainInterface = frameworkInterface;
+        ClientRegistry.reset();
     }
 
+    static FrameworkInterface getFrameworkInterface() {
+        return blockchainInterface;
+    }
+
+    /**
+     * The app's api Retrofit instance, sharing {@link ClientRegistry}'s connection pool.
+     */
     public static Retrofit getRetrofitApiInstance() {
-        return blockchainInterface.getRetrofitApiInstance();
+        return ClientRegistry.getRetrofitApiInstance();
     }
 
+    /**
+     * The app's explorer Retrofit instance, sharing {@link ClientRegistry}'s connection pool.
+     */
     public static Retrofit getRetrofitExplorerInstance() {
-        return blockchainInterface.getRetrofitExplorerInstance();
+        return ClientRegistry.getRetrofitExplorerInstance();
     }
 
     public static Environment getEnvironment() {
@@ -0,0 +1,182 @@
+package info.blockchain.wallet;
+
+import info.blockchain.api.pushtx.PushTx;
+import info.blockchain.wallet.api.CoalescingBlockExplorer;
+import info.blockchain.wallet.api.FeeApi;
+import info.blockchain.wallet.api.FeeProvider;
+import info.blockchain.wallet.api.WalletApi;
+import info.blockchain.wallet.prices.PriceApi;
+import info.blockchain.wallet.prices.PriceStore;
+
+import javax.annotation.Nullable;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+
+/**
+ * Shared, thread safe api clients.
+ *
+ * The Retrofit instances supplied by the {@link FrameworkInterface} are rebuilt once on top of a
+ * single {@link ConnectionPool} and {@link Dispatcher}, keeping the app's interceptors, timeouts
+ * and certificate pinning. Every caller gets the same clients, so connections and TLS sessions
+ * are reused across explorer, api, fee and price calls, and fees and historic prices are cached
+ * for every caller. Clients are dropped whenever the framework is initialized again.
+ */
+public final class ClientRegistry {
+
+    //OkHttp defaults
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+
+    private static final ConnectionPool connectionPool = new ConnectionPool();
+    private static final Dispatcher dispatcher = new Dispatcher();
+
+    private static volatile Clients clients;
+
+    private ClientRegistry() {
+        //No instances
+    }
+
+    /**
+     * Limits concurrent enqueued calls across all shared clients, eg callbacks passed to
+     * {@link Call#enqueue}. Calls made with execute() are not limited, they run on the calling
+     * thread. That includes every call made by this library, and Rx calls, which the
+     * synchronous Rx call adapter executes on the subscribing thread.
+     */
+    public static void setMaxRequests(int maxRequests, int maxRequestsPerHost) {
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    public static ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    public static Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Shared OkHttp client of the explorer instance, eg for websockets.
+     */
+    public static OkHttpClient getOkHttpClient() {
+        return getClients().okHttpClient;
+    }
+
+    public static Retrofit getRetrofitApiInstance() {
+        return getClients().retrofitApi;
+    }
+
+    public static Retrofit getRetrofitExplorerInstance() {
+        return getClients().retrofitExplorer;
+    }
+
+    /**
+     * Shared explorer, coalescing identical balance and multiaddress requests.
+     */
+    public static CoalescingBlockExplorer getBlockExplorer() {
+        return getClients().blockExplorer;
+    }
+
+    public static PushTx getPushTx() {
+        return getClients().pushTx;
+    }
+
+    public static FeeApi getFeeApi() {
+        return getClients().feeApi;
+    }
+
+    /**
+     * Shared fee cache, refreshed in the background.
+     */
+    public static FeeProvider getFeeProvider() {
+        return getClients().feeProvider;
+    }
+
+    public static PriceApi getPriceApi() {
+        return getClients().priceApi;
+    }
+
+    /**
+     * Shared historic price cache.
+     */
+    public static PriceStore getPriceStore() {
+        return getClients().priceStore;
+    }
+
+    public static WalletApi getWalletApi() {
+        return getClients().walletApi;
+    }
+
+    /**
+     * Called from {@link BlockchainFramework#init(FrameworkInterface)}.
+     */
+    static void reset() {
+        clients = null;
+    }
+
+    private static Clients getClients() {
+        Clients current = clients;
+        if (current == null) {
+            synchronized (ClientRegistry.class) {
+                current = clients;
+                if (current == null) {
+                    current = new Clients(BlockchainFramework.getFrameworkInterface());
+                    clients = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static Retrofit share(@Nullable Retrofit retrofit) {
+        if (retrofit == null) {
+            return null;
+        }
+        Call.Factory callFactory = retrofit.callFactory();
+        if (!(callFactory instanceof OkHttpClient)) {
+            //Custom call factory, nothing to share
+            return retrofit;
+        }
+        OkHttpClient client = ((OkHttpClient) callFactory).newBuilder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .build();
+        return retrofit.newBuilder()
+                .client(client)
+                .build();
+    }
+
+    private static class Clients {
+
+        final Retrofit retrofitApi;
+        final Retrofit retrofitExplorer;
+        final OkHttpClient okHttpClient;
+        final CoalescingBlockExplorer blockExplorer;
+        final PushTx pushTx;
+        final FeeApi feeApi;
+        final FeeProvider feeProvider;
+        final PriceApi priceApi;
+        final PriceStore priceStore;
+        final WalletApi walletApi;
+
+        Clients(FrameworkInterface frameworkInterface) {
+            String apiCode = frameworkInterface.getApiCode();
+            retrofitApi = share(frameworkInterface.getRetrofitApiInstance());
+            retrofitExplorer = share(frameworkInterface.getRetrofitExplorerInstance());
+            okHttpClient = retrofitExplorer != null && retrofitExplorer.callFactory() instanceof OkHttpClient
+                    ? (OkHttpClient) retrofitExplorer.callFactory()
+                    : new OkHttpClient.Builder().connectionPool(connectionPool).dispatcher(dispatcher).build();
+            blockExplorer = new CoalescingBlockExplorer(retrofitExplorer, apiCode);
+            pushTx = new PushTx(retrofitExplorer, apiCode);
+            feeApi = new FeeApi();
+            priceApi = new PriceApi();
+            priceStore = new PriceStore(priceApi);
+            walletApi = new WalletApi();
+            feeProvider = new FeeProvider(walletApi, feeApi);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package info.blockchain.wallet.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * A single value loaded from the server, reused for a time to live.
+ *
+ * Past its time to live the value is still served for a stale window while a background refresh
+ * replaces it. Past both, or before the first load, callers wait for the refresh. Concurrent
+ * callers share one refresh. When a refresh fails callers get the last loaded value regardless
+ * of age, else a value built by the fallback, else the failure.
+ */
+class CachedValue<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(CachedValue.class);
+
+    private final String name;
+    private final Callable<T> loader;
+    @Nullable
+    private final Callable<T> fallback;
+    private final Executor executor;
+
+    private volatile long ttlNanos;
+    private volatile long staleNanos;
+
+    //Guarded by this
+    private T value;
+    private long loadedAt;
+    private FutureTask<T> refresh;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param fallback Builds a new value for each caller when nothing was ever loaded
+     */
+    CachedValue(String name, Callable<T> loader, @Nullable Callable<T> fallback, Executor executor,
+                long ttlMillis, long staleMillis) {
+        this.name = name;
+        this.loader = loader;
+        this.fallback = fallback;
+        this.executor = executor;
+        setTimeToLive(ttlMillis, staleMillis);
+    }
+
+    void setTimeToLive(long ttlMillis, long staleMillis) {
+        if (ttlMillis < 0 || staleMillis < 0) {
+            throw new IllegalArgumentException("Time to live can't be negative");
+        }
+        ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        staleNanos = TimeUnit.MILLISECONDS.toNanos(staleMillis);
+    }
+
+    synchronized long getHitCount() {
+        return hits;
+    }
+
+    synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Drops the loaded value, the next call waits for a refresh.
+     */
+    synchronized void clear() {
+        value = null;
+    }
+
+    T get() throws IOException {
+
+        FutureTask<T> task;
+        boolean owner = false;
+
+        synchronized (this) {
+            long age = System.nanoTime() - loadedAt;
+            if (value != null && age < ttlNanos) {
+                hits++;
+                return value;
+            }
+
+            if (refresh == null) {
+                refresh = newRefresh();
+                owner = true;
+                misses++;
+            } else {
+                hits++;
+            }
+            task = refresh;
+
+            if (value != null && age < ttlNanos + staleNanos) {
+                if (owner) {
+                    log.info("Refreshing {} in the background", name);
+                    executor.execute(task);
+                }
+                return value;
+            }
+        }
+
+        if (owner) {
+            task.run();
+        }
+        return await(task);
+    }
+
+    private FutureTask<T> newRefresh() {
+        return new FutureTask<>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                try {
+                    T loaded = loader.call();
+                    if (loaded == null) {
+                        throw new IOException("Empty " + name);
+                    }
+                    synchronized (CachedValue.this) {
+                        value = loaded;
+                        loadedAt = System.nanoTime();
+                    }
+                    return loaded;
+                } catch (Exception e) {
+                    log.warn("Failed to load {}", name, e);
+                    throw e;
+                } finally {
+                    synchronized (CachedValue.this) {
+                        refresh = null;
+                    }
+                }
+            }
+        });
+    }
+
+    private T await(FutureTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + name);
+        } catch (ExecutionException e) {
+            T last;
+            synchronized (this) {
+                last = value;
+            }
+            if (last != null) {
+                log.info("Using last known {}", name);
+                return last;
+            }
+            if (fallback != null) {
+                log.info("Using default {}", name);
+                try {
+                    return fallback.call();
+                } catch (Exception f) {
+                    throw new IOException("Failed to build default " + name, f);
+                }
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to load " + name, e.getCause());
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package info.blockchain.wallet.api;
+
+import info.blockchain.api.blockexplorer.BlockExplorer;
+import info.blockchain.api.blockexplorer.FilterType;
+import info.blockchain.api.data.Balance;
+import info.blockchain.api.data.MultiAddress;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+/**
+ * {@link BlockExplorer} which coalesces identical balance and multiaddress requests.
+ *
+ * Executing a balance or multiaddress call while an identical one (same address set, filter,
+ * limit and offset) is in flight waits for that call and returns its response. A successful
+ * response is reused for {@link #DEFAULT_FRESHNESS_MILLIS} after it completes, which can be
+ * changed with {@link #setFreshnessWindow(long)}. Shared response bodies must not be modified.
+ *
+ * Only synchronous execution is coalesced, enqueued calls go straight to the server.
+ */
+public class CoalescingBlockExplorer extends BlockExplorer {
+
+    private static final Logger log = LoggerFactory.getLogger(CoalescingBlockExplorer.class);
+
+    public static final long DEFAULT_FRESHNESS_MILLIS = 1000L;
+
+    private final RequestCoalescer<HashMap<String, Balance>> balances;
+    private final RequestCoalescer<MultiAddress> multiAddresses;
+
+    public CoalescingBlockExplorer(Retrofit retrofitExplorerRoot, String apiCode) {
+        super(retrofitExplorerRoot, apiCode);
+        balances = new RequestCoalescer<>(DEFAULT_FRESHNESS_MILLIS);
+        multiAddresses = new RequestCoalescer<>(DEFAULT_FRESHNESS_MILLIS);
+    }
+
+    /**
+     * @param freshnessMillis How long a successful response is reused, 0 to only share in-flight calls
+     */
+    public void setFreshnessWindow(long freshnessMillis) {
+        balances.setFreshnessWindow(freshnessMillis);
+        multiAddresses.setFreshnessWindow(freshnessMillis);
+    }
+
+    /**
+     * @return Amount of requests answered by an in-flight or fresh call
+     */
+    public long getHitCount() {
+        return balances.getHitCount() + multiAddresses.getHitCount();
+    }
+
+    /**
+     * @return Amount of requests sent to the server
+     */
+    public long getMissCount() {
+        return balances.getMissCount() + multiAddresses.getMissCount();
+    }
+
+    int size() {
+        return balances.size() + multiAddresses.size();
+    }
+
+    /**
+     * Drops fresh responses. Calls wrapped with {@link #clearOnSuccess(Call)} do this once they
+     * succeed.
+     */
+    public void clear() {
+        log.info("Clearing coalesced responses");
+        balances.clear();
+        multiAddresses.clear();
+    }
+
+    /**
+     * Wraps a call which changes what the explorer reports, such as pushing a transaction, so
+     * fresh responses are dropped as soon as it succeeds.
+     */
+    public <T> Call<T> clearOnSuccess(Call<T> call) {
+        return new ClearingCall<>(call);
+    }
+
+    @Override
+    public Call<HashMap<String, Balance>> getBalance(List<String> addressList, FilterType filter) {
+        String key = key(addressList, filter == null ? null : filter.getFilterInt(), null, null, null);
+        return new CoalescedCall<>(balances, key, super.getBalance(addressList, filter));
+    }
+
+    @Override
+    public Call<MultiAddress> getMultiAddress(List<String> addressList, FilterType filter,
+                                              Integer limit, Integer offset) {
+        String key = key(addressList, filter == null ? null : filter.getFilterInt(), null, limit, offset);
+        return new CoalescedCall<>(multiAddresses, key,
+            super.getMultiAddress(addressList, filter, limit, offset));
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Call<MultiAddress> getMultiAddress(List<String> addressList, String context, int filter,
+                                              int limit, int offset) {
+        String key = key(addressList, filter, context, limit, offset);
+        return new CoalescedCall<>(multiAddresses, key,
+            super.getMultiAddress(addressList, context, filter, limit, offset));
+    }
+
+    private static String key(List<String> addressList, Integer filter, String context,
+                              Integer limit, Integer offset) {
+        //Address order doesn't change the response
+        List<String> sorted = new ArrayList<>(addressList);
+        Collections.sort(sorted);
+        return filter + ";" + context + ";" + limit + ";" + offset + ";" + StringUtils.join(sorted, "|");
+    }
+
+    private static class CoalescedCall<T> implements Call<T> {
+
+        private final RequestCoalescer<T> coalescer;
+        private final String key;
+        private final Call<T> delegate;
+
+        private volatile boolean executed;
+
+        CoalescedCall(RequestCoalescer<T> coalescer, String key, Call<T> delegate) {
+            this.coalescer = coalescer;
+            this.key = key;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            synchronized (this) {
+                if (executed) {
+                    throw new IllegalStateException("Already executed.");
+                }
+                executed = true;
+            }
+            return coalescer.execute(key, delegate);
+        }
+
+        @Override
+        public void enqueue(Callback<T> callback) {
+            executed = true;
+            delegate.enqueue(callback);
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public void cancel() {
+            delegate.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return delegate.isCanceled();
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        @Override
+        public Call<T> clone() {
+            return new CoalescedCall<>(coalescer, key, delegate.clone());
+        }
+
+        @Override
+        public Request request() {
+            return delegate.request();
+        }
+    }
+
+    private class ClearingCall<T> implements Call<T> {
+
+        private final Call<T> delegate;
+
+        ClearingCall(Call<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            Response<T> response = delegate.execute();
+            if (response.isSuccessful()) {
+                clear();
+            }
+            return response;
+        }
+
+        @Override
+        public void enqueue(final Callback<T> callback) {
+            delegate.enqueue(new Callback<T>() {
+                @Override
+                public void onResponse(Call<T> call, Response<T> response) {
+                    if (response.isSuccessful()) {
+                        clear();
+                    }
+                    callback.onResponse(ClearingCall.this, response);
+                }
+
+                @Override
+                public void onFailure(Call<T> call, Throwable t) {
+                    callback.onFailure(ClearingCall.this, t);
+                }
+            });
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return delegate.isExecuted();
+        }
+
+        @Override
+        public void cancel() {
+            delegate.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return delegate.isCanceled();
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        @Override
+        public Call<T> clone() {
+            return new ClearingCall<>(delegate.clone());
+        }
+
+        @Override
+        public Request request() {
+            return delegate.request();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package info.blockchain.wallet.api;
+
+import info.blockchain.wallet.api.data.Fee;
+import info.blockchain.wallet.api.data.FeeList;
+import info.blockchain.wallet.api.data.FeeOptions;
+import info.blockchain.wallet.util.JsonCodecs;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+
+/**
+ * Cached fees for building payments.
+ *
+ * The dynamic fee list and the BTC and ETH fee options are each reused for
+ * {@link #DEFAULT_TTL_MILLIS}, then served for up to {@link #DEFAULT_STALE_MILLIS} more while a
+ * background refresh replaces them. Concurrent callers share one request. When the server can't
+ * be reached the last known fees are used, else a fresh copy of the defaults for BTC, see
+ * {@link #getDefaultFee()}. ETH has no default and surfaces the failure.
+ */
+public class FeeProvider {
+
+    public static final long DEFAULT_TTL_MILLIS = 60 * 1000L;
+    public static final long DEFAULT_STALE_MILLIS = 10 * 60 * 1000L;
+
+    //Satoshi per kb
+    private static final long DEFAULT_FEE_PER_KB = 35000L;
+
+    private static final long DEFAULT_FEE_PER_BYTE = DEFAULT_FEE_PER_KB / 1000L;
+
+    //Defaults are parsed for every use, no caller sees another's changes
+    private static final String DEFAULT_FEE =
+        "{\"fee\":" + DEFAULT_FEE_PER_KB + ",\"surge\":false,\"ok\":true}";
+    //Same shape as the server's list, every estimate at the default
+    private static final String DEFAULT_FEE_LIST = "{\"mempool\":0,\"default\":" + DEFAULT_FEE
+        + ",\"estimate\":[" + DEFAULT_FEE + "," + DEFAULT_FEE + "," + DEFAULT_FEE + ","
+        + DEFAULT_FEE + "," + DEFAULT_FEE + "," + DEFAULT_FEE + "]}";
+    private static final String DEFAULT_FEE_OPTIONS = "{\"regular\":" + DEFAULT_FEE_PER_BYTE
+        + ",\"priority\":" + DEFAULT_FEE_PER_BYTE
+        + ",\"limits\":{\"min\":" + DEFAULT_FEE_PER_BYTE + ",\"max\":" + DEFAULT_FEE_PER_BYTE + "}}";
+
+    //Shared by all providers, refreshes are short and rare
+    private static final Executor refresher = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "fee-provider");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private final CachedValue<FeeList> feeList;
+    private final CachedValue<FeeOptions> feeOptions;
+    private final CachedValue<FeeOptions> ethFeeOptions;
+
+    public FeeProvider(final WalletApi walletApi, final FeeApi feeApi) {
+        this(walletApi, feeApi, refresher);
+    }
+
+    FeeProvider(final WalletApi walletApi, final FeeApi feeApi, Executor executor) {
+        feeList = new CachedValue<>("dynamic fee list", new Callable<FeeList>() {
+            @Override
+            public FeeList call() throws Exception {
+                return walletApi.getDynamicFee().blockingFirst();
+            }
+        }, parse(DEFAULT_FEE_LIST, FeeList.class), executor, DEFAULT_TTL_MILLIS, DEFAULT_STALE_MILLIS);
+
+        feeOptions = new CachedValue<>("fee options", new Callable<FeeOptions>() {
+            @Override
+            public FeeOptions call() throws Exception {
+                return feeApi.getFeeOptions().blockingFirst();
+            }
+        }, parse(DEFAULT_FEE_OPTIONS, FeeOptions.class), executor, DEFAULT_TTL_MILLIS, DEFAULT_STALE_MILLIS);
+
+        ethFeeOptions = new CachedValue<>("eth fee options", new Callable<FeeOptions>() {
+            @Override
+            public FeeOptions call() throws Exception {
+                return feeApi.getEthFeeOptions().blockingFirst();
+            }
+        }, null, executor, DEFAULT_TTL_MILLIS, DEFAULT_STALE_MILLIS);
+    }
+
+    /**
+     * @param ttlMillis   How long fees are reused without a request, 0 to request on every call
+     * @param staleMillis How much longer fees are served while refreshing in the background
+     */
+    public void setTimeToLive(long ttlMillis, long staleMillis) {
+        feeList.setTimeToLive(ttlMillis, staleMillis);
+        feeOptions.setTimeToLive(ttlMillis, staleMillis);
+        ethFeeOptions.setTimeToLive(ttlMillis, staleMillis);
+    }
+
+    /**
+     * @return Amount of calls answered without a request of their own
+     */
+    public long getHitCount() {
+        return feeList.getHitCount() + feeOptions.getHitCount() + ethFeeOptions.getHitCount();
+    }
+
+    /**
+     * @return Amount of requests sent to the server
+     */
+    public long getMissCount() {
+        return feeList.getMissCount() + feeOptions.getMissCount() + ethFeeOptions.getMissCount();
+    }
+
+    /**
+     * Drops cached fees, the next calls wait for the server.
+     */
+    public void clear() {
+        feeList.clear();
+        feeOptions.clear();
+        ethFeeOptions.clear();
+    }
+
+    /**
+     * Dynamic fee list in Satoshis per kb, see {@link WalletApi#getDynamicFee()}.
+     */
+    public Observable<FeeList> getDynamicFee() {
+        return observe(feeList);
+    }
+
+    /**
+     * BTC fee options in Satoshis per byte, see {@link FeeApi#getFeeOptions()}.
+     */
+    public Observable<FeeOptions> getFeeOptions() {
+        return observe(feeOptions);
+    }
+
+    /**
+     * ETH fee options, see {@link FeeApi#getEthFeeOptions()}.
+     */
+    public Observable<FeeOptions> getEthFeeOptions() {
+        return observe(ethFeeOptions);
+    }
+
+    /**
+     * Hardcoded fee, used when no dynamic fee has ever been loaded. A new instance per call.
+     */
+    public static Fee getDefaultFee() {
+        try {
+            return Fee.fromJson(DEFAULT_FEE);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> Callable<T> parse(final String json, final Class<T> type) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws IOException {
+                return JsonCodecs.reader(type).readValue(json);
+            }
+        };
+    }
+
+    private static <T> Observable<T> observe(final CachedValue<T> value) {
+        return Observable.fromCallable(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return value.get();
+            }
+        });
+    }
+}
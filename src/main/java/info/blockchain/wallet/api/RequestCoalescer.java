@@ -0,0 +1,174 @@
+package info.blockchain.wallet.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Single flight execution of identical requests.
+ *
+ * The first caller for a key executes its call, concurrent callers for the same key wait for
+ * that call and share its result. Successful responses are also reused for the freshness
+ * window after they complete. Failures are only shared with callers already waiting.
+ *
+ * Completed flights are swept out once they go stale, at most once per freshness window, so
+ * keys that are never requested again don't pile up.
+ */
+class RequestCoalescer<T> {
+
+    private final ConcurrentHashMap<String, Flight<T>> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile long freshnessNanos;
+    private volatile long lastSweep = System.nanoTime();
+
+    RequestCoalescer(long freshnessMillis) {
+        setFreshnessWindow(freshnessMillis);
+    }
+
+    void setFreshnessWindow(long freshnessMillis) {
+        if (freshnessMillis < 0) {
+            throw new IllegalArgumentException("Freshness window can't be negative");
+        }
+        freshnessNanos = TimeUnit.MILLISECONDS.toNanos(freshnessMillis);
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    void clear() {
+        flights.clear();
+    }
+
+    int size() {
+        return flights.size();
+    }
+
+    Response<T> execute(String key, Call<T> call) throws IOException {
+
+        while (true) {
+            Flight<T> flight = flights.get(key);
+
+            if (flight != null) {
+                if (!flight.isDone() || flight.isFresh(freshnessNanos)) {
+                    hits.incrementAndGet();
+                    return flight.await();
+                }
+                //Stale, replace it
+                flights.remove(key, flight);
+                continue;
+            }
+
+            sweep();
+
+            Flight<T> own = new Flight<>();
+            if (flights.putIfAbsent(key, own) != null) {
+                continue;
+            }
+
+            misses.incrementAndGet();
+            try {
+                own.run(call);
+            } finally {
+                if (!own.isSuccessful() || freshnessNanos == 0) {
+                    flights.remove(key, own);
+                }
+            }
+            return own.await();
+        }
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        if (now - lastSweep < freshnessNanos) {
+            return;
+        }
+        lastSweep = now;
+
+        for (Map.Entry<String, Flight<T>> entry : flights.entrySet()) {
+            Flight<T> flight = entry.getValue();
+            if (flight.isDone() && !flight.isFresh(freshnessNanos)) {
+                flights.remove(entry.getKey(), flight);
+            }
+        }
+    }
+
+    private static class Flight<T> {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Response<T> response;
+        //Error bodies can only be read once, every caller gets its own copy
+        private MediaType errorType;
+        private byte[] errorBody;
+        private IOException failure;
+        private RuntimeException runtimeFailure;
+        private long completedAt;
+
+        void run(Call<T> call) {
+            try {
+                Response<T> executed = call.execute();
+                if (!executed.isSuccessful() && executed.errorBody() != null) {
+                    errorType = executed.errorBody().contentType();
+                    errorBody = executed.errorBody().bytes();
+                }
+                response = executed;
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                runtimeFailure = e;
+            } finally {
+                completedAt = System.nanoTime();
+                done.countDown();
+            }
+        }
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        boolean isSuccessful() {
+            return response != null && response.isSuccessful();
+        }
+
+        boolean isFresh(long freshnessNanos) {
+            return isSuccessful() && System.nanoTime() - completedAt < freshnessNanos;
+        }
+
+        Response<T> await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for coalesced request");
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            if (runtimeFailure != null) {
+                throw runtimeFailure;
+            }
+            if (errorBody != null) {
+                return Response.error(ResponseBody.create(errorType, errorBody), response.raw());
+            }
+            return response;
+        }
+    }
+}
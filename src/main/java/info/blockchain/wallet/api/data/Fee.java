@@ -6,8 +6,8 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import info.blockchain.wallet.util.JsonCodecs;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -37,6 +37,6 @@ public class Fee {
 
     @JsonIgnore
     public static Fee fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, Fee.class);
+        return JsonCodecs.reader(Fee.class).readValue(json);
     }
 }
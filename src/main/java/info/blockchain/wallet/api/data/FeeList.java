@@ -7,8 +7,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
 import java.util.ArrayList;
+import info.blockchain.wallet.util.JsonCodecs;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -36,8 +37,13 @@ public class FeeList {
         return estimate;
     }
 
+    @JsonIgnore
+    public static FeeList fromJson(String json) throws IOException {
+        return JsonCodecs.reader(FeeList.class).readValue(json);
+    }
+
     @JsonIgnore
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(FeeList.class).writeValueAsString(this);
     }
 }
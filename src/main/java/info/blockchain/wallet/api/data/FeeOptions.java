@@ -1,7 +1,10 @@
 package info.blockchain.wallet.api.data;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import info.blockchain.wallet.util.JsonCodecs;
+import java.io.IOException;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class FeeOptions {
@@ -48,4 +51,9 @@ public class FeeOptions {
     public FeeLimits getLimits() {
         return limits;
     }
+
+    @JsonIgnore
+    public static FeeOptions fromJson(String json) throws IOException {
+        return JsonCodecs.reader(FeeOptions.class).readValue(json);
+    }
 }
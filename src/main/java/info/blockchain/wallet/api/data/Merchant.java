@@ -7,8 +7,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import info.blockchain.wallet.util.JsonCodecs;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -146,12 +146,12 @@ public class Merchant {
 
     @JsonIgnore
     public static Merchant fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, Merchant.class);
+        return JsonCodecs.reader(Merchant.class).readValue(json);
     }
 
     @JsonIgnore
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(Merchant.class).writeValueAsString(this);
     }
 
 }
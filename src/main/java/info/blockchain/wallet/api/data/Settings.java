@@ -7,10 +7,10 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import info.blockchain.wallet.util.JsonCodecs;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -218,12 +218,12 @@ public class Settings {
 
     @JsonIgnore
     public static Settings fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, Settings.class);
+        return JsonCodecs.reader(Settings.class).readValue(json);
     }
 
     @JsonIgnore
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(Settings.class).writeValueAsString(this);
     }
 
     private boolean intToBoolean(int value) {
@@ -6,9 +6,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import info.blockchain.wallet.util.JsonCodecs;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -31,10 +31,10 @@ public class Status {
     }
 
     public static Status fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, Status.class);
+        return JsonCodecs.reader(Status.class).readValue(json);
     }
 
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(Status.class).writeValueAsString(this);
     }
 }
@@ -0,0 +1,188 @@
+package info.blockchain.wallet.bip44;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.crypto.HDKeyDerivation.PublicDeriveMode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Derives and caches the public addresses of a single {@link HDChain}.
+ *
+ * Addresses are derived from the chain's public key only - no {@link org.bitcoinj.core.ECKey}
+ * or private key is created. Ranges with enough uncached indexes are split across a shared
+ * worker pool. Derived addresses are kept in a bounded index to address map, with a reverse map
+ * for ownership lookups.
+ *
+ * Thread safe.
+ */
+class AddressDerivationEngine {
+
+    static final int MAX_CACHED_ADDRESSES = 1000;
+
+    //Smaller ranges are derived on the calling thread
+    static final int PARALLEL_THRESHOLD = 8;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static ExecutorService executor;
+
+    private final NetworkParameters params;
+    private final DeterministicKey chainKey;
+
+    private final LinkedHashMap<Integer, String> addresses;
+    private final HashMap<String, Integer> indexes = new HashMap<>();
+
+    AddressDerivationEngine(NetworkParameters params, DeterministicKey chainKey) {
+        this.params = params;
+        this.chainKey = chainKey;
+        //Decode the public key point up front instead of racing on it from the workers
+        chainKey.getPubKeyPoint();
+
+        this.addresses = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                if (size() > MAX_CACHED_ADDRESSES) {
+                    indexes.remove(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "hd-address-derivation");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    String getAddressAt(int index) {
+        synchronized (this) {
+            String address = addresses.get(index);
+            if (address != null) {
+                return address;
+            }
+        }
+        String address = derive(index);
+        cache(index, address);
+        return address;
+    }
+
+    /**
+     * @return Addresses from startIndex (inclusive) to endIndex (exclusive)
+     */
+    List<String> getAddresses(int startIndex, int endIndex) {
+
+        int count = Math.max(0, endIndex - startIndex);
+        String[] result = new String[count];
+
+        List<Integer> missing = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                result[i] = addresses.get(startIndex + i);
+                if (result[i] == null) {
+                    missing.add(startIndex + i);
+                }
+            }
+        }
+
+        if (missing.size() < PARALLEL_THRESHOLD || THREADS == 1) {
+            for (int index : missing) {
+                result[index - startIndex] = derive(index);
+            }
+        } else {
+            deriveParallel(missing, result, startIndex);
+        }
+
+        synchronized (this) {
+            for (int index : missing) {
+                cache(index, result[index - startIndex]);
+            }
+        }
+
+        List<String> list = new ArrayList<>(count);
+        for (String address : result) {
+            list.add(address);
+        }
+        return list;
+    }
+
+    /**
+     * @return Index of a cached address, or -1 if it hasn't been derived (or was evicted)
+     */
+    synchronized int getIndexOf(String address) {
+        Integer index = indexes.get(address);
+        return index != null ? index : -1;
+    }
+
+    synchronized int size() {
+        return addresses.size();
+    }
+
+    private void deriveParallel(final List<Integer> missing, final String[] result, final int startIndex) {
+
+        int chunkSize = (missing.size() + THREADS - 1) / THREADS;
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < missing.size(); from += chunkSize) {
+            final List<Integer> chunk = missing.subList(from, Math.min(from + chunkSize, missing.size()));
+            futures.add(getExecutor().submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int index : chunk) {
+                        result[index - startIndex] = derive(index);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private String derive(int index) {
+        byte[] pubKey = HDKeyDerivation.deriveChildKeyBytesFromPublic(chainKey,
+            new ChildNumber(index, false), PublicDeriveMode.NORMAL).keyBytes;
+        return new Address(params, Utils.sha256hash160(pubKey)).toString();
+    }
+
+    private synchronized void cache(int index, String address) {
+        addresses.put(index, address);
+        indexes.put(address, index);
+    }
+}
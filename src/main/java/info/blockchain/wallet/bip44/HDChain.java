@@ -4,6 +4,8 @@ import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.crypto.HDKeyDerivation;
 
+import java.util.List;
+
 /**
  * HDChain.java : a chain in a BIP44 wallet account
  */
@@ -19,6 +21,8 @@ public class HDChain {
 
     private NetworkParameters params = null;
 
+    private AddressDerivationEngine derivationEngine = null;
+
     public static final int RECEIVE_CHAIN = 0;
     public static final int CHANGE_CHAIN = 1;
 
@@ -37,6 +41,7 @@ public class HDChain {
         cKey = HDKeyDerivation.deriveChildKey(aKey, chain);
 
         strPath = cKey.getPathAsString();
+        derivationEngine = new AddressDerivationEngine(params, cKey);
     }
 
     /**
@@ -57,6 +62,35 @@ public class HDChain {
         return new HDAddress(params, cKey, addrIdx);
     }
 
+    /**
+     * Return public address at provided index into chain. Derived from the public key only and
+     * cached.
+     *
+     * @return String
+     */
+    public String getAddressStringAt(int addrIdx) {
+        return derivationEngine.getAddressAt(addrIdx);
+    }
+
+    /**
+     * Return public addresses from startIndex (inclusive) to endIndex (exclusive). Uncached
+     * addresses in large ranges are derived in parallel.
+     *
+     * @return List of addresses
+     */
+    public List<String> getAddressStrings(int startIndex, int endIndex) {
+        return derivationEngine.getAddresses(startIndex, endIndex);
+    }
+
+    /**
+     * Return index of an address previously derived from this chain.
+     *
+     * @return index, or -1 if not (or no longer) cached
+     */
+    public int getAddressIndex(String address) {
+        return derivationEngine.getIndexOf(address);
+    }
+
     /**
      * Return BIP44 path for this chain (m / purpose' / coin_type' / account' / chain).
      *
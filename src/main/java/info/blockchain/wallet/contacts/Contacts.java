@@ -1,7 +1,8 @@
 package info.blockchain.wallet.contacts;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import info.blockchain.wallet.contacts.data.Contact;
 import info.blockchain.wallet.contacts.data.FacilitatedTransaction;
@@ -16,9 +17,11 @@ import info.blockchain.wallet.exceptions.MetadataException;
 import info.blockchain.wallet.exceptions.SharedMetadataException;
 import info.blockchain.wallet.exceptions.ValidationException;
 import info.blockchain.wallet.metadata.Metadata;
+import info.blockchain.wallet.metadata.MetadataWriteQueue;
 import info.blockchain.wallet.metadata.SharedMetadata;
 import info.blockchain.wallet.metadata.data.Invitation;
 import info.blockchain.wallet.metadata.data.Message;
+import info.blockchain.wallet.util.JsonCodecs;
 
 import org.bitcoinj.crypto.DeterministicKey;
 import org.slf4j.Logger;
@@ -33,13 +36,19 @@ import java.net.URLDecoder;
 import java.security.SignatureException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
 import javax.annotation.Nonnull;
 
+/**
+ * Contact list kept in a metadata node, and the shared metadata messages exchanged with contacts.
+ *
+ * Methods changing the contact list save it in the background, see {@link MetadataWriteQueue}.
+ * A failed background save is retried, and thrown by the next method changing the list, which
+ * then writes straight away. {@link #save()} always writes straight away and throws on failure.
+ */
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class Contacts {
 
@@ -59,10 +68,14 @@ public class Contacts {
 
     private static final Logger log = LoggerFactory.getLogger(Contacts.class);
 
+    private static final ObjectReader contactListReader = JsonCodecs.getMapper()
+        .readerFor(new TypeReference<Map<String, Contact>>() {});
+    private static final ObjectWriter contactListWriter = JsonCodecs.writer(Map.class);
+
     private Metadata metadata;
+    private MetadataWriteQueue writeQueue;
     private SharedMetadata sharedMetadata;
     private HashMap<String, Contact> contactList;
-    private ObjectMapper mapper = new ObjectMapper();
 
     public Contacts() {
         //Empty constructor for dagger injection client side
@@ -73,6 +86,7 @@ public class Contacts {
             MetadataException {
         log.info("Initialising Contacts");
         metadata = new Metadata.Builder(metaDataHDNode, METADATA_TYPE_EXTERNAL).build();
+        writeQueue = new MetadataWriteQueue(metadata);
         sharedMetadata = new SharedMetadata.Builder(sharedMetaDataHDNode).build();
         contactList = new HashMap<>();
     }
@@ -88,10 +102,11 @@ public class Contacts {
      */
     public void fetch() throws MetadataException, IOException, InvalidCipherTextException {
         log.info("Fetching contact list");
+        //Unsaved changes would be overwritten
+        writeQueue.flush();
         String data = metadata.getMetadata();
         if (data != null) {
-            contactList = mapper.readValue(data, new TypeReference<Map<String, Contact>>() {
-            });
+            contactList = contactListReader.readValue(data);
         } else {
             contactList = new HashMap<>();
         }
@@ -100,12 +115,28 @@ public class Contacts {
     }
 
     /**
-     * Saves contact list to metadata service
+     * Saves contact list to metadata service, along with any changes not yet written.
      */
     public void save() throws IOException, MetadataException, InvalidCipherTextException {
         log.info("Saving contact list");
+        enqueueSave();
+        writeQueue.flush();
+    }
+
+    /**
+     * @return Why the latest background save failed, null if it succeeded
+     */
+    public Exception getLastSaveFailure() {
+        return writeQueue.getLastFailure();
+    }
+
+    /**
+     * Queues the contact list to be saved. Changes made in quick succession are written once,
+     * shortly after, or by the next {@link #save()}.
+     */
+    private void enqueueSave() throws IOException, MetadataException, InvalidCipherTextException {
         if (contactList != null) {
-            metadata.putMetadata(mapper.writeValueAsString(contactList));
+            writeQueue.enqueue(contactListWriter.writeValueAsString(contactList));
         }
     }
 
@@ -114,7 +145,8 @@ public class Contacts {
      */
     public void wipe() throws IOException, MetadataException, InvalidCipherTextException {
         log.info("Wiping contact list");
-        metadata.putMetadata(mapper.writeValueAsString(new HashMap<>()));
+        writeQueue.enqueue(contactListWriter.writeValueAsString(new HashMap<>()));
+        writeQueue.flush();
         contactList = new HashMap<>();
     }
 
@@ -122,6 +154,17 @@ public class Contacts {
      * Nulls out all Metadata nodes to allow proper reset when logging in/out.
      */
     public void destroy() {
+        if (writeQueue != null) {
+            try {
+                writeQueue.shutdown();
+            } catch (Exception e) {
+                log.warn("Unsaved contact list changes lost", e);
+            }
+            writeQueue = null;
+        }
+        if (sharedMetadata != null) {
+            sharedMetadata.wipeSharedKeys();
+        }
         metadata = null;
         sharedMetadata = null;
         contactList = null;
@@ -159,7 +202,7 @@ public class Contacts {
             contactList.put(contact.getId(), contact);
         }
 
-        save();
+        enqueueSave();
     }
 
     /**
@@ -171,7 +214,7 @@ public class Contacts {
             InvalidCipherTextException {
         log.info("Adding contact {}", contact.getId());
         contactList.put(contact.getId(), contact);
-        save();
+        enqueueSave();
     }
 
     /**
@@ -187,7 +230,7 @@ public class Contacts {
         if (contact.getMdid() != null) {
             sharedMetadata.deleteTrusted(contact.getMdid());
         }
-        save();
+        enqueueSave();
     }
 
     /**
@@ -203,11 +246,11 @@ public class Contacts {
         log.info("Removing contact {}", contact.getId());
         contactList.remove(contact.getId());
         sharedMetadata.deleteTrusted(contact.getMdid());
-        save();
+        enqueueSave();
     }
 
     /**
-     * Renames a {@link Contact} based on their ID. Saves changes to server.
+     * Renames a {@link Contact} based on their ID.
      *
      * @param contactId The Contact's ID (Note: not MDID)
      * @param name      The new name for the Contact
@@ -219,7 +262,7 @@ public class Contacts {
         Contact contact = getContactList().get(contactId);
         if (contact != null) {
             contact.setName(name);
-            save();
+            enqueueSave();
         } else {
             throw new NullPointerException("Contact not found");
         }
@@ -227,7 +270,6 @@ public class Contacts {
 
     /**
      * Deletes a {@link FacilitatedTransaction} from a {@link Contact} and saves to the server.
-     * You'll want to sync the contacts list after failure if an exception is propagated.
      *
      * @param mdid   A {@link Contact#getMdid()}
      * @param fctxId A {@link FacilitatedTransaction#getId()}
@@ -240,7 +282,7 @@ public class Contacts {
         Contact contact = getContactFromMdid(mdid);
         if (contact != null) {
             contact.deleteFacilitatedTransaction(fctxId);
-            save();
+            enqueueSave();
         } else {
             throw new NullPointerException("Contact not found");
         }
@@ -343,7 +385,7 @@ public class Contacts {
         sharedMetadata.addTrusted(accepted.getMdid());
         addContact(contact);
         contact.setXpub(fetchXpub(accepted.getMdid()));
-        save();
+        enqueueSave();
 
 
         return contact;
@@ -376,7 +418,7 @@ public class Contacts {
 
             accepted = true;
 
-            save();
+            enqueueSave();
         }
         log.info("Checking if invitation has been accepted - {}",accepted);
 
@@ -427,25 +469,21 @@ public class Contacts {
         log.info("Fetching inter-wallet-comms messages");
         List<Message> messages = sharedMetadata.getMessages(onlyNew);
 
-        Iterator<Message> i = messages.iterator();
-        while (i.hasNext()) {
-            Message message = i.next();
-            final Contact contactFromMdid = getContactFromMdid(message.getSender());
-            if (contactFromMdid != null && contactFromMdid.getXpub() != null) {
-                try {
-                    decryptMessageFrom(message, contactFromMdid.getXpub());
-                } catch (IOException | InvalidCipherTextException | MetadataException e) {
-                    e.printStackTrace();
-                }
+        List<MessagePipeline.Result> results = new MessagePipeline(sharedMetadata,
+            getContactsByMdid(), MessagePipeline.DEFAULT_PARALLELISM).process(messages);
+
+        List<Message> decrypted = new ArrayList<>(results.size());
+        for (MessagePipeline.Result result : results) {
+            if (result.isSenderKnown()) {
+                decrypted.add(result.getMessage());
             } else {
                 //Edge case since Android will not allow contact invitation without a published xpub
                 log.warn("Unable to decrypt message - Sender's xpub might not be published");
-                markMessageAsRead(message.getId(), true);
-                i.remove();
+                markMessageAsRead(result.getMessage().getId(), true);
             }
         }
 
-        return messages;
+        return decrypted;
     }
 
     /**
@@ -468,16 +506,6 @@ public class Contacts {
         sharedMetadata.processMessage(messageId, markAsRead);
     }
 
-    private Message decryptMessageFrom(Message message, String xpub) throws
-            IOException,
-            InvalidCipherTextException,
-            MetadataException {
-        log.info("Decrypting inter-wallet-comms message");
-        String decryptedPayload = sharedMetadata.decryptFrom(xpub, message.getPayload());
-        message.setPayload(decryptedPayload);
-        return message;
-    }
-
     private Map<String, String> getQueryParams(String uri) throws UnsupportedEncodingException {
         URI a = URI.create(uri);
 
@@ -493,6 +521,16 @@ public class Contacts {
         return params;
     }
 
+    private Map<String, Contact> getContactsByMdid() {
+        Map<String, Contact> contactsByMdid = new HashMap<>();
+        for (Contact contact : contactList.values()) {
+            if (contact.getMdid() != null && !contactsByMdid.containsKey(contact.getMdid())) {
+                contactsByMdid.put(contact.getMdid(), contact);
+            }
+        }
+        return contactsByMdid;
+    }
+
     private Contact getContactFromMdid(String mdid) {
         for (Contact contact : contactList.values()) {
             if (contact.getMdid() != null && contact.getMdid().equals(mdid)) {
@@ -527,7 +565,7 @@ public class Contacts {
 
         Contact contact = getContactFromMdid(mdid);
         contact.addFacilitatedTransaction(tx);
-        save();
+        enqueueSave();
     }
 
     /**
@@ -553,7 +591,7 @@ public class Contacts {
         facilitatedTransaction.setRole(FacilitatedTransaction.ROLE_PR_INITIATOR);
         facilitatedTransaction.updateCompleted();
         contact.addFacilitatedTransaction(facilitatedTransaction);
-        save();
+        enqueueSave();
     }
 
     /**
@@ -574,7 +612,7 @@ public class Contacts {
         ftx.setState(FacilitatedTransaction.STATE_WAITING_FOR_PAYMENT);
         ftx.updateCompleted();
 
-        save();
+        enqueueSave();
     }
 
     /**
@@ -599,7 +637,7 @@ public class Contacts {
         ftx.setTxHash(txHash);
         ftx.updateCompleted();
 
-        save();
+        enqueueSave();
     }
 
     /**
@@ -623,7 +661,7 @@ public class Contacts {
         ftx.setState(FacilitatedTransaction.STATE_DECLINED);
         ftx.updateCompleted();
 
-        save();
+        enqueueSave();
     }
 
     /**
@@ -647,7 +685,7 @@ public class Contacts {
         ftx.setState(FacilitatedTransaction.STATE_CANCELLED);
         ftx.updateCompleted();
 
-        save();
+        enqueueSave();
     }
 
     /**
@@ -756,7 +794,7 @@ public class Contacts {
         }
 
         if (!messages.isEmpty()) {
-            save();
+            enqueueSave();
         }
 
         return unread;
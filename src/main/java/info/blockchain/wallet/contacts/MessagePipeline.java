@@ -0,0 +1,121 @@
+package info.blockchain.wallet.contacts;
+
+import info.blockchain.wallet.contacts.data.Contact;
+import info.blockchain.wallet.metadata.SharedMetadata;
+import info.blockchain.wallet.metadata.data.Message;
+import info.blockchain.wallet.util.WorkerPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.crypto.InvalidCipherTextException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Decrypts received messages on the {@link WorkerPool}. Each message's sender lookup and ECDH
+ * decryption run as one task, and results come back in the order the messages were received.
+ * Signatures are already validated by {@link SharedMetadata#getMessages(boolean)}.
+ */
+class MessagePipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(MessagePipeline.class);
+
+    static final int DEFAULT_PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private final SharedMetadata sharedMetadata;
+    private final Map<String, Contact> contactsByMdid;
+    private final int parallelism;
+
+    static class Result {
+
+        private final Message message;
+        private final boolean senderKnown;
+
+        Result(Message message, boolean senderKnown) {
+            this.message = message;
+            this.senderKnown = senderKnown;
+        }
+
+        Message getMessage() {
+            return message;
+        }
+
+        /**
+         * @return Whether the sender is a contact with a published xpub. If not, the message
+         * could not be decrypted.
+         */
+        boolean isSenderKnown() {
+            return senderKnown;
+        }
+    }
+
+    /**
+     * @param contactsByMdid Contacts keyed by mdid, not modified while processing
+     */
+    MessagePipeline(SharedMetadata sharedMetadata, Map<String, Contact> contactsByMdid, int parallelism) {
+        this.sharedMetadata = sharedMetadata;
+        this.contactsByMdid = contactsByMdid;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Decrypts the payload of every message from a known sender in place. Messages that fail to
+     * decrypt are logged and kept as they are.
+     *
+     * @return A result per message, in the same order
+     */
+    List<Result> process(List<Message> messages) throws InterruptedIOException {
+
+        int threads = Math.min(parallelism, messages.size());
+        if (threads <= 1) {
+            List<Result> results = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                results.add(process(message));
+            }
+            return results;
+        }
+
+        List<Callable<Result>> tasks = new ArrayList<>(messages.size());
+        for (final Message message : messages) {
+            tasks.add(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return process(message);
+                }
+            });
+        }
+
+        try {
+            return WorkerPool.invokeAll(tasks, threads);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted processing messages");
+        }
+    }
+
+    private Result process(Message message) {
+
+        Contact contact = contactsByMdid.get(message.getSender());
+        if (contact == null || contact.getXpub() == null) {
+            return new Result(message, false);
+        }
+
+        try {
+            message.setPayload(sharedMetadata.decryptFrom(contact.getXpub(), message.getPayload()));
+        } catch (IOException | InvalidCipherTextException e) {
+            log.warn("Unable to decrypt message " + message.getId(), e);
+        }
+        return new Result(message, true);
+    }
+}
@@ -7,9 +7,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import info.blockchain.wallet.metadata.data.Invitation;
+import info.blockchain.wallet.util.JsonCodecs;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -180,11 +180,11 @@ public class Contact {
     }
 
     public Contact fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, Contact.class);
+        return JsonCodecs.reader(Contact.class).readValue(json);
     }
 
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(Contact.class).writeValueAsString(this);
     }
 
     private UrlParameterMultimap toQueryParameters() {
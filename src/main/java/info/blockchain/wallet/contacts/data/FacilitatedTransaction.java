@@ -5,9 +5,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import info.blockchain.wallet.api.PersistentUrls;
+import info.blockchain.wallet.util.JsonCodecs;
 
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.uri.BitcoinURI;
@@ -154,11 +154,11 @@ public class FacilitatedTransaction {
 
     @JsonIgnore
     public FacilitatedTransaction fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, FacilitatedTransaction.class);
+        return JsonCodecs.reader(FacilitatedTransaction.class).readValue(json);
     }
 
     @JsonIgnore
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(FacilitatedTransaction.class).writeValueAsString(this);
     }
 }
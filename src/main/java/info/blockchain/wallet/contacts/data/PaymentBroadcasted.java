@@ -6,9 +6,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import info.blockchain.wallet.util.JsonCodecs;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -42,11 +42,11 @@ public class PaymentBroadcasted {
 
     @JsonIgnore
     public PaymentBroadcasted fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, PaymentBroadcasted.class);
+        return JsonCodecs.reader(PaymentBroadcasted.class).readValue(json);
     }
 
     @JsonIgnore
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(PaymentBroadcasted.class).writeValueAsString(this);
     }
 }
\ No newline at end of file
@@ -5,9 +5,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import info.blockchain.wallet.util.JsonCodecs;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -33,12 +33,12 @@ public class PaymentDeclinedResponse {
 
     @JsonIgnore
     public PaymentDeclinedResponse fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, PaymentDeclinedResponse.class);
+        return JsonCodecs.reader(PaymentDeclinedResponse.class).readValue(json);
     }
 
     @JsonIgnore
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(PaymentDeclinedResponse.class).writeValueAsString(this);
     }
 
 }
@@ -5,9 +5,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import info.blockchain.wallet.util.JsonCodecs;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -63,11 +63,11 @@ public class RequestForPaymentRequest {
 
     @JsonIgnore
     public RequestForPaymentRequest fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, RequestForPaymentRequest.class);
+        return JsonCodecs.reader(RequestForPaymentRequest.class).readValue(json);
     }
 
     @JsonIgnore
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(RequestForPaymentRequest.class).writeValueAsString(this);
     }
 }
@@ -4,6 +4,7 @@ import info.blockchain.wallet.exceptions.DecryptionException;
 import info.blockchain.wallet.exceptions.EncryptionException;
 import java.io.UnsupportedEncodingException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import javax.annotation.Nullable;
 import org.apache.commons.codec.binary.Base64;
 import org.spongycastle.crypto.BlockCipher;
@@ -35,6 +36,56 @@ public class AESUtil {
     private static final int AESBlockSize = 4;
     private static final int KEY_BIT_LEN = 256;
 
+    /**
+     * PBKDF2 and AES engines reused by every call on the same thread.
+     * Cipher init() resets all engine state, so only the allocations are saved.
+     */
+    private static class DecryptionEngines {
+        final PBEParametersGenerator generator = new PKCS5S2ParametersGenerator();
+        final BlockCipher cbc;
+        final BlockCipher ofb;
+
+        DecryptionEngines() {
+            AESEngine engine = new AESEngine();
+            cbc = new CBCBlockCipher(engine);
+            ofb = new OFBBlockCipher(engine, 128);
+        }
+    }
+
+    private static final ThreadLocal<DecryptionEngines> decryptionEngines = new ThreadLocal<DecryptionEngines>() {
+        @Override
+        protected DecryptionEngines initialValue() {
+            return new DecryptionEngines();
+        }
+    };
+
+    private static KeyParameter deriveKey(DecryptionEngines engines, String password, byte[] salt, int iterations,
+                                          @Nullable DerivedKeyCache cache) {
+
+        if (cache != null) {
+            byte[] key = cache.getKey(salt, password, iterations);
+            if (key != null) {
+                KeyParameter keyParam = new KeyParameter(key);
+                Arrays.fill(key, (byte) 0);
+                return keyParam;
+            }
+        }
+
+        KeyParameter keyParam;
+        try {
+            engines.generator.init(PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(password.toCharArray()), salt, iterations);
+            keyParam = (KeyParameter) engines.generator.generateDerivedParameters(KEY_BIT_LEN);
+        } finally {
+            //Don't keep the password around in the thread's generator
+            engines.generator.init(new byte[0], new byte[0], 1);
+        }
+
+        if (cache != null) {
+            cache.putKey(salt, password, iterations, keyParam.getKey());
+        }
+        return keyParam;
+    }
+
     private static byte[] copyOfRange(byte[] source, int from, int to) {
         byte[] range = new byte[to - from];
         System.arraycopy(source, from, range, 0, range.length);
@@ -48,27 +99,41 @@ public class AESUtil {
         return decryptWithSetMode(ciphertext, password, iterations, MODE_CBC, new ISO10126d2Padding());
     }
 
+    /**
+     * Same as {@link #decrypt(String, String, int)}, reusing the PBKDF2 key from cache if this
+     * ciphertext (salt) and password were seen before.
+     */
+    public static String decrypt(String ciphertext, String password, int iterations, @Nullable DerivedKeyCache cache) throws UnsupportedEncodingException, InvalidCipherTextException, DecryptionException {
+
+        return decryptWithSetMode(ciphertext, password, iterations, MODE_CBC, new ISO10126d2Padding(), cache);
+    }
+
     public static String decryptWithSetMode(String ciphertext, String password, int iterations, int mode, @Nullable BlockCipherPadding padding) throws InvalidCipherTextException, UnsupportedEncodingException, DecryptionException {
 
+        return decryptWithSetMode(ciphertext, password, iterations, mode, padding, null);
+    }
+
+    public static String decryptWithSetMode(String ciphertext, String password, int iterations, int mode, @Nullable BlockCipherPadding padding, @Nullable DerivedKeyCache cache) throws InvalidCipherTextException, UnsupportedEncodingException, DecryptionException {
+
         byte[] cipherdata = Base64.decodeBase64(ciphertext.getBytes());
 
         //Separate the IV and cipher data
         byte[] iv = copyOfRange(cipherdata, 0, AESBlockSize * 4);
         byte[] input = copyOfRange(cipherdata, AESBlockSize * 4, cipherdata.length);
 
-        PBEParametersGenerator generator = new PKCS5S2ParametersGenerator();
-        generator.init(PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(password.toString().toCharArray()), iv, iterations);
-        KeyParameter keyParam = (KeyParameter) generator.generateDerivedParameters(256);
+        DecryptionEngines engines = decryptionEngines.get();
+
+        KeyParameter keyParam = deriveKey(engines, password, iv, iterations, cache);
 
         CipherParameters params = new ParametersWithIV(keyParam, iv);
 
         BlockCipher cipherMode;
         if (mode == MODE_CBC) {
-            cipherMode = new CBCBlockCipher(new AESEngine());
+            cipherMode = engines.cbc;
 
         } else {
             //mode == MODE_OFB
-            cipherMode = new OFBBlockCipher(new AESEngine(), 128);
+            cipherMode = engines.ofb;
         }
 
         BufferedBlockCipher cipher;
@@ -106,9 +171,25 @@ public class AESUtil {
         return encryptWithSetMode(cleartext, password, iterations, MODE_CBC, new ISO10126d2Padding());
     }
 
+    /**
+     * Same as {@link #encrypt(String, String, int)}. The IV is random, so the key can't come from
+     * cache, but it is added so decrypting the result again is cheap.
+     */
+    public static String encrypt(String cleartext, String password, int iterations, @Nullable DerivedKeyCache cache)
+        throws EncryptionException, UnsupportedEncodingException {
+
+        return encryptWithSetMode(cleartext, password, iterations, MODE_CBC, new ISO10126d2Padding(), cache);
+    }
+
     public static String encryptWithSetMode(String cleartext, String password, int iterations, int mode, @Nullable BlockCipherPadding padding)
         throws EncryptionException, UnsupportedEncodingException {
 
+        return encryptWithSetMode(cleartext, password, iterations, mode, padding, null);
+    }
+
+    public static String encryptWithSetMode(String cleartext, String password, int iterations, int mode, @Nullable BlockCipherPadding padding, @Nullable DerivedKeyCache cache)
+        throws EncryptionException, UnsupportedEncodingException {
+
         if (password == null) {
             throw  new EncryptionException("Password null");
         }
@@ -120,9 +201,7 @@ public class AESUtil {
 
         byte[] clearbytes = cleartext.getBytes("UTF-8");
 
-        PBEParametersGenerator generator = new PKCS5S2ParametersGenerator();
-        generator.init(PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(password.toCharArray()), iv, iterations);
-        KeyParameter keyParam = (KeyParameter) generator.generateDerivedParameters(256);
+        KeyParameter keyParam = deriveKey(decryptionEngines.get(), password, iv, iterations, cache);
 
         CipherParameters params = new ParametersWithIV(keyParam, iv);
 
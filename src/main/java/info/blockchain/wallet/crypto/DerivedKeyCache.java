@@ -0,0 +1,195 @@
+package info.blockchain.wallet.crypto;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.spongycastle.util.encoders.Hex;
+
+/**
+ * Session cache for expensive password derivations (PBKDF2 keys and iterated password hashes).
+ *
+ * Entries are looked up by an HMAC-SHA256 of (type, salt, password, iterations) under a random
+ * per-process secret, so the password itself isn't kept and identifiers can't be matched
+ * against precomputed hashes or across processes. This is no defence against a heap dump, which
+ * holds the secret, allowing guesses at HMAC speed, as well as the derived values themselves.
+ * Values are copied in and out, expire after a TTL and are zeroed on expiry, eviction and
+ * {@link #wipe()}, which should follow once the password is no longer needed.
+ *
+ * Thread safe.
+ */
+public class DerivedKeyCache {
+
+    public static final long DEFAULT_TTL_MS = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final byte TYPE_KEY = 1;
+    private static final byte TYPE_HASH = 2;
+
+    private static final String HMAC = "HmacSHA256";
+    private static final SecretKeySpec secret;
+
+    static {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        secret = new SecretKeySpec(bytes, HMAC);
+        Arrays.fill(bytes, (byte) 0);
+    }
+
+    private final long ttlMs;
+    private final int maxEntries;
+
+    private final LinkedHashMap<String, CachedValue> entries;
+
+    private long hits;
+    private long misses;
+
+    private static class CachedValue {
+        final byte[] value;
+        final long expiry;
+
+        CachedValue(byte[] value, long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+
+    public DerivedKeyCache() {
+        this(DEFAULT_TTL_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param ttlMs How long an entry is kept after it was added
+     * @param maxEntries Least recently used entries are dropped beyond this
+     */
+    public DerivedKeyCache(long ttlMs, final int maxEntries) {
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, CachedValue>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedValue> eldest) {
+                if (size() > DerivedKeyCache.this.maxEntries) {
+                    Arrays.fill(eldest.getValue().value, (byte) 0);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return A copy of the PBKDF2 key derived from password and salt, or null if not cached
+     */
+    @Nullable
+    public byte[] getKey(byte[] salt, String password, int iterations) {
+        return get(digest(TYPE_KEY, salt, password, iterations));
+    }
+
+    public void putKey(byte[] salt, String password, int iterations, byte[] key) {
+        put(digest(TYPE_KEY, salt, password, iterations), key);
+    }
+
+    /**
+     * @return A copy of the iterated hash of password, or null if not cached
+     */
+    @Nullable
+    public byte[] getHash(String password, int iterations) {
+        return get(digest(TYPE_HASH, new byte[0], password, iterations));
+    }
+
+    public void putHash(String password, int iterations, byte[] hash) {
+        put(digest(TYPE_HASH, new byte[0], password, iterations), hash);
+    }
+
+    public synchronized int size() {
+        removeExpired();
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Zeroes and removes every entry.
+     */
+    public synchronized void wipe() {
+        for (CachedValue cached : entries.values()) {
+            Arrays.fill(cached.value, (byte) 0);
+        }
+        entries.clear();
+    }
+
+    //Overridden in tests
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private synchronized byte[] get(String digest) {
+        CachedValue cached = entries.get(digest);
+        if (cached != null && cached.expiry <= now()) {
+            Arrays.fill(cached.value, (byte) 0);
+            entries.remove(digest);
+            cached = null;
+        }
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.value.clone();
+    }
+
+    private synchronized void put(String digest, byte[] value) {
+        removeExpired();
+        CachedValue previous = entries.put(digest, new CachedValue(value.clone(), now() + ttlMs));
+        if (previous != null) {
+            Arrays.fill(previous.value, (byte) 0);
+        }
+    }
+
+    private void removeExpired() {
+        long now = now();
+        Iterator<CachedValue> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CachedValue cached = iterator.next();
+            if (cached.expiry <= now) {
+                Arrays.fill(cached.value, (byte) 0);
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String digest(byte type, byte[] salt, String password, int iterations) {
+        try {
+            //Mac instances aren't thread safe
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(secret);
+            mac.update(type);
+            mac.update(intToBytes(salt.length));
+            mac.update(salt);
+            mac.update(intToBytes(iterations));
+            mac.update(password.getBytes("UTF-8"));
+            return new String(Hex.encode(mac.doFinal()));
+        } catch (GeneralSecurityException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] intToBytes(int value) {
+        return new byte[]{
+            (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+}
@@ -6,9 +6,10 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import info.blockchain.wallet.exceptions.MetadataException;
 import info.blockchain.wallet.metadata.Metadata;
+import info.blockchain.wallet.metadata.MetadataWriteQueue;
+import info.blockchain.wallet.util.JsonCodecs;
 import info.blockchain.wallet.util.MetadataUtil;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
@@ -37,6 +38,7 @@ public class EthereumWallet {
     private EthereumWalletData walletData;
 
     private Metadata metadata;
+    private MetadataWriteQueue writeQueue;
 
     public EthereumWallet() {
         //default constructor for Jackson
@@ -94,26 +96,38 @@ public class EthereumWallet {
         return new Metadata.Builder(metaDataHDNode, METADATA_TYPE_EXTERNAL).build();
     }
 
+    /**
+     * Saves the wallet, along with any changes not yet written.
+     */
     public void save()
         throws IOException, MetadataException, InvalidCipherTextException {
-        metadata.putMetadata(toJson());
+        enqueueSave();
+        getWriteQueue().flush();
+    }
+
+    /**
+     * Queues the wallet to be saved. Changes made in quick succession, such as editing several
+     * notes, are written once, shortly after, or by the next {@link #save()}. Throws if the
+     * previous background save failed and writing now fails too.
+     */
+    public void enqueueSave() throws IOException, MetadataException, InvalidCipherTextException {
+        getWriteQueue().enqueue(toJson());
+    }
+
+    private synchronized MetadataWriteQueue getWriteQueue() {
+        if (writeQueue == null) {
+            writeQueue = new MetadataWriteQueue(metadata);
+        }
+        return writeQueue;
     }
 
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(EthereumWallet.class).writeValueAsString(this);
     }
 
     public static EthereumWallet fromJson(String json) throws IOException {
 
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
-            .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
-            .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
-            .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
-            .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
-            .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
-
-        return mapper.readValue(json, EthereumWallet.class);
+        return JsonCodecs.fieldReader(EthereumWallet.class).readValue(json);
     }
 
     public boolean hasSeen() {
@@ -19,6 +19,9 @@ import org.spongycastle.util.encoders.Base64;
 import org.spongycastle.util.encoders.Hex;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import retrofit2.Call;
 import retrofit2.Response;
@@ -34,11 +37,14 @@ public class Metadata {
     private String address;
     private ECKey node;
     private byte[] encryptionKey;
-    private byte[] magicHash;
+    private volatile byte[] magicHash;
 
     public static final short FETCH_MAGIC_HASH_ATTEMPT_LIMIT = 1;
     private short attempt;
 
+    //Last payload fetched or written per address
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
     public Metadata() {
         attempt = FETCH_MAGIC_HASH_ATTEMPT_LIMIT;
     }
@@ -89,38 +95,60 @@ public class Metadata {
         return endpoints;
     }
 
-    public void fetchMagic() throws IOException, MetadataException {
+    /**
+     * Fetches the entry to get its magic hash. The fetched entry is kept and returned by the
+     * next {@link #getMetadata()}, so building and then reading only downloads it once.
+     */
+    public synchronized void fetchMagic() throws IOException, MetadataException {
+        Entry entry = fetchEntry(address);
+        entry.unread.set(true);
+        magicHash = entry.magicHash;
+    }
+
+    private Entry fetchEntry(String address) throws IOException, MetadataException {
         Call<MetadataResponse> response = getApiInstance().getMetadata(address);
 
         Response<MetadataResponse> exe = response.execute();
 
+        Entry entry;
         if (exe.isSuccessful()) {
             MetadataResponse body = exe.body();
 
-            byte[] encryptedPayloadBytes = Base64.decode(exe.body().getPayload().getBytes("utf-8"));
+            byte[] encryptedPayloadBytes = Base64.decode(body.getPayload().getBytes("utf-8"));
 
+            byte[] fetchedMagicHash;
             if (body.getPrevMagicHash() != null) {
                 byte[] prevMagicBytes = Hex.decode(body.getPrevMagicHash());
-                magicHash = MetadataUtil.magic(encryptedPayloadBytes, prevMagicBytes);
+                fetchedMagicHash = MetadataUtil.magic(encryptedPayloadBytes, prevMagicBytes);
             } else {
-                magicHash = MetadataUtil.magic(encryptedPayloadBytes, null);
+                fetchedMagicHash = MetadataUtil.magic(encryptedPayloadBytes, null);
+            }
+            entry = new Entry(body.getPayload(), fetchedMagicHash);
+
+            //Same magic hash, same payload - keep what was already decrypted
+            Entry previous = entries.get(address);
+            if (previous != null && Arrays.equals(previous.magicHash, fetchedMagicHash)) {
+                entry.setValue(previous.value, previous.valueEncrypted);
             }
 
         } else {
             if (exe.code() == 404) {
-                magicHash = null;
+                entry = new Entry(null, null);
             } else {
                 throw new MetadataException(exe.code() + " " + exe.message());
             }
         }
+
+        entries.put(address, entry);
+        return entry;
     }
 
     /**
-     * Put new metadata entry
+     * Put new metadata entry. Writes to the node are serialized to keep its magic hash chain.
      *
      * @param payload JSON Stringified object
      */
-    public void putMetadata(String payload) throws IOException, InvalidCipherTextException,
+    public synchronized void putMetadata(String payload) throws IOException, InvalidCipherTextException,
             MetadataException {
 
         //Ensure json syntax is correct
@@ -157,6 +185,7 @@ public class Metadata {
             if (exe.code() == 401 && attempt > 0) {
                 // Unauthorized - Possible cross platform clash
                 // Fetch magic hash and retry
+                entries.remove(address);
                 fetchMagic();
                 attempt--;
                 putMetadata(payload);
@@ -166,6 +195,10 @@ public class Metadata {
         } else {
             attempt = FETCH_MAGIC_HASH_ATTEMPT_LIMIT;
             magicHash = nextMagicHash;
+
+            Entry entry = new Entry(body.getPayload(), nextMagicHash);
+            entry.setValue(payload, isEncrypted);
+            entries.put(address, entry);
         }
     }
 
@@ -180,37 +213,38 @@ public class Metadata {
     }
 
     /**
-     * Get metadata entry
+     * Get metadata entry. Decrypting is skipped if the fetched payload has the magic hash of the
+     * one last seen for the address.
      */
     private String getMetadataEntry(String address, boolean isEncrypted) throws MetadataException,
             IOException,
             InvalidCipherTextException {
 
-        Call<MetadataResponse> response = getApiInstance().getMetadata(address);
-
-        Response<MetadataResponse> exe = response.execute();
+        Entry entry = entries.get(address);
+        if (entry == null || !entry.unread.compareAndSet(true, false)) {
+            entry = fetchEntry(address);
+        }
 
-        if (exe.isSuccessful()) {
+        if (entry.payload == null) {
+            return null;
+        }
 
+        String value = entry.getValue(isEncrypted);
+        if (value == null) {
             if (isEncrypted) {
-                return AESUtil.decryptWithKey(encryptionKey, exe.body().getPayload());
+                value = AESUtil.decryptWithKey(encryptionKey, entry.payload);
             } else {
-                return new String(Base64.decode(exe.body().getPayload()));
-            }
-        } else {
-
-            if (exe.code() == 404) {
-                return null;
-            } else {
-                throw new MetadataException(exe.code() + " " + exe.message());
+                value = new String(Base64.decode(entry.payload));
             }
+            entry.setValue(value, isEncrypted);
         }
+        return value;
     }
 
     /**
      * Delete metadata entry
      */
-    public void deleteMetadata(String payload) throws IOException, InvalidCipherTextException,
+    public synchronized void deleteMetadata(String payload) throws IOException, InvalidCipherTextException,
             MetadataException {
 
         byte[] encryptedPayloadBytes;
@@ -234,6 +268,36 @@ public class Metadata {
             throw new MetadataException(exe.code() + " " + exe.message());
         } else {
             magicHash = null;
+            entries.remove(address);
+        }
+    }
+
+    /**
+     * Payload of an address with its magic hash, and the payload decrypted once read.
+     */
+    private static class Entry {
+
+        //Null if there is no entry
+        private final String payload;
+        private final byte[] magicHash;
+        //Set by fetchMagic() until the next read
+        private final AtomicBoolean unread = new AtomicBoolean();
+
+        private volatile String value;
+        private volatile boolean valueEncrypted;
+
+        Entry(String payload, byte[] magicHash) {
+            this.payload = payload;
+            this.magicHash = magicHash;
+        }
+
+        String getValue(boolean isEncrypted) {
+            return valueEncrypted == isEncrypted ? value : null;
+        }
+
+        void setValue(String value, boolean isEncrypted) {
+            this.valueEncrypted = isEncrypted;
+            this.value = value;
         }
     }
 
@@ -0,0 +1,227 @@
+package info.blockchain.wallet.metadata;
+
+import info.blockchain.wallet.exceptions.MetadataException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.crypto.InvalidCipherTextException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for a single metadata node. Writes enqueued before the next flush replace
+ * each other, so a burst of saves costs one encrypt, sign and PUT of the latest payload.
+ *
+ * <p>Pending writes are flushed by a timer after the first one is enqueued, by {@link #flush()}
+ * and by {@link #shutdown()}. Writes go out one at a time through {@link Metadata#putMetadata},
+ * which keeps the magic hash chain of the node. A failed write keeps the payload pending and is
+ * retried by a timer backing off up to {@link #MAX_RETRY_DELAY_MILLIS}, at most
+ * {@link #MAX_RETRIES} times. Timed flushes don't throw, but while the latest write has failed
+ * {@link #enqueue(String)} writes straight away and throws like {@link #flush()} does, so the
+ * failure reaches whoever changes the payload next.
+ *
+ * <p>{@link #flushAll()} flushes every queue, it runs on wallet teardown and when the JVM exits.
+ */
+public class MetadataWriteQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(MetadataWriteQueue.class);
+
+    public static final long DEFAULT_FLUSH_DELAY_MILLIS = 1000L;
+    public static final long MAX_RETRY_DELAY_MILLIS = 60000L;
+    public static final int MAX_RETRIES = 5;
+
+    //Shared by all queues, flushes are short and rare
+    private static final ScheduledExecutorService scheduler = Executors
+        .newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "metadata-write-queue");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private static final Set<MetadataWriteQueue> queues = Collections.synchronizedSet(
+        Collections.newSetFromMap(new WeakHashMap<MetadataWriteQueue, Boolean>()));
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread("metadata-write-queue-exit") {
+            @Override
+            public void run() {
+                flushAll();
+            }
+        });
+    }
+
+    private final Metadata metadata;
+    private final long flushDelayMillis;
+
+    //Guarded by this
+    private String pending;
+    private ScheduledFuture<?> flushTask;
+    private boolean shutdown;
+    //Of the latest write, null once one succeeds
+    private Exception lastFailure;
+    private int failures;
+
+    //Held while writing, so flushes never overlap
+    private final Object writeLock = new Object();
+
+    public MetadataWriteQueue(Metadata metadata) {
+        this(metadata, DEFAULT_FLUSH_DELAY_MILLIS);
+    }
+
+    public MetadataWriteQueue(Metadata metadata, long flushDelayMillis) {
+        this.metadata = metadata;
+        this.flushDelayMillis = flushDelayMillis;
+        queues.add(this);
+    }
+
+    /**
+     * Flushes the pending write of every queue. Failures are logged, the payloads stay pending.
+     */
+    public static void flushAll() {
+        List<MetadataWriteQueue> open;
+        synchronized (queues) {
+            open = new ArrayList<>(queues);
+        }
+        for (MetadataWriteQueue queue : open) {
+            try {
+                queue.flush();
+            } catch (Exception e) {
+                log.warn("Metadata write failed on flush", e);
+            }
+        }
+    }
+
+    /**
+     * Replaces any pending write with this payload and schedules a flush if none is scheduled.
+     * If the latest write failed, the payload is written straight away instead.
+     *
+     * @param payload JSON Stringified object
+     */
+    public void enqueue(String payload) throws IOException, MetadataException, InvalidCipherTextException {
+        boolean failing;
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("Write queue is shut down");
+            }
+
+            pending = payload;
+            failing = lastFailure != null;
+            if (flushTask == null && !failing) {
+                schedule(flushDelayMillis);
+            }
+        }
+        if (failing) {
+            write();
+        }
+    }
+
+    //Callers hold this
+    private void schedule(long delayMillis) {
+        flushTask = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flushScheduled();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Whether a write is waiting to be flushed
+     */
+    public synchronized boolean hasPendingWrite() {
+        return pending != null;
+    }
+
+    /**
+     * @return Why the latest write failed, null if it succeeded or none was attempted yet
+     */
+    public synchronized Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Writes the pending payload, if any, and returns once it is saved.
+     */
+    public void flush() throws IOException, MetadataException, InvalidCipherTextException {
+        write();
+    }
+
+    /**
+     * Flushes the pending write and refuses further writes.
+     */
+    public void shutdown() throws IOException, MetadataException, InvalidCipherTextException {
+        synchronized (this) {
+            shutdown = true;
+        }
+        flush();
+    }
+
+    /**
+     * Doubles from the flush delay with every consecutive failure.
+     */
+    private long getRetryDelay() {
+        long delay = Math.max(flushDelayMillis, 1L) << Math.min(failures - 1, 16);
+        return Math.min(delay, Math.max(flushDelayMillis, MAX_RETRY_DELAY_MILLIS));
+    }
+
+    private void flushScheduled() {
+        try {
+            write();
+        } catch (Exception e) {
+            log.warn("Metadata write failed", e);
+        }
+    }
+
+    private void write() throws IOException, MetadataException, InvalidCipherTextException {
+        synchronized (writeLock) {
+            String payload;
+            synchronized (this) {
+                payload = pending;
+                pending = null;
+                if (flushTask != null) {
+                    flushTask.cancel(false);
+                    flushTask = null;
+                }
+            }
+            if (payload == null) {
+                return;
+            }
+
+            try {
+                metadata.putMetadata(payload);
+            } catch (IOException | MetadataException | InvalidCipherTextException | RuntimeException e) {
+                synchronized (this) {
+                    //Unless replaced meanwhile, retried by the next flush
+                    if (pending == null) {
+                        pending = payload;
+                    }
+                    lastFailure = e;
+                    failures++;
+                    if (failures > MAX_RETRIES) {
+                        log.error("Metadata write failed {} times, no longer retrying on a timer", failures);
+                    } else if (flushTask == null && !shutdown) {
+                        schedule(getRetryDelay());
+                    }
+                }
+                throw e;
+            }
+            synchronized (this) {
+                lastFailure = null;
+                failures = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package info.blockchain.wallet.metadata;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Per-peer AES keys derived by ECDH from our shared metadata node and a peer xpub, so messages
+ * to and from the same contact skip the point multiplication.
+ *
+ * Values are copied in and out, and zeroed on eviction and {@link #wipe()}. Thread safe.
+ */
+public class SharedKeyCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, byte[]> entries;
+
+    private long hits;
+    private long misses;
+
+    public SharedKeyCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries Least recently used peers are dropped beyond this
+     */
+    public SharedKeyCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                if (size() > SharedKeyCache.this.maxEntries) {
+                    Arrays.fill(eldest.getValue(), (byte) 0);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return A copy of the key shared with the owner of xpub, or null if not cached
+     */
+    @Nullable
+    public synchronized byte[] get(String xpub) {
+        byte[] key = entries.get(xpub);
+        if (key == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return key.clone();
+    }
+
+    public synchronized void put(String xpub, byte[] key) {
+        byte[] previous = entries.put(xpub, key.clone());
+        if (previous != null) {
+            Arrays.fill(previous, (byte) 0);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Zeroes and removes every key.
+     */
+    public synchronized void wipe() {
+        for (byte[] key : entries.values()) {
+            Arrays.fill(key, (byte) 0);
+        }
+        entries.clear();
+    }
+}
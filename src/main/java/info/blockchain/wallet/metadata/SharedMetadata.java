@@ -1,8 +1,6 @@
 package info.blockchain.wallet.metadata;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import info.blockchain.wallet.BlockchainFramework;
 import info.blockchain.wallet.api.PersistentUrls;
@@ -14,6 +12,8 @@ import info.blockchain.wallet.metadata.data.Invitation;
 import info.blockchain.wallet.metadata.data.Message;
 import info.blockchain.wallet.metadata.data.MessageProcessRequest;
 import info.blockchain.wallet.metadata.data.Trusted;
+import info.blockchain.wallet.util.JsonCodecs;
+import info.blockchain.wallet.util.WorkerPool;
 
 import java.util.NoSuchElementException;
 import org.bitcoinj.core.ECKey;
@@ -24,11 +24,15 @@ import org.spongycastle.crypto.InvalidCipherTextException;
 import org.spongycastle.util.encoders.Base64;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.security.SignatureException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nonnull;
 
@@ -39,11 +43,16 @@ import retrofit2.Response;
 
 public class SharedMetadata {
 
+    private static final int PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     private String token;
     private MetadataEndpoints endpoints;
     private String address;
     private DeterministicKey node;
 
+    //AES keys shared with peers, derived from node
+    private final SharedKeyCache sharedKeys = new SharedKeyCache();
+
     public SharedMetadata() {
         // Empty constructor
     }
@@ -58,6 +67,7 @@ public class SharedMetadata {
 
     public void setNode(DeterministicKey node) {
         this.node = node;
+        sharedKeys.wipe();
     }
 
     public DeterministicKey getNode() {
@@ -99,10 +109,7 @@ public class SharedMetadata {
             String tokenParamsJsonB64 = token.split("\\.")[1] + "=";
             String tokenParamsJson = new String(Base64.decode(tokenParamsJsonB64.getBytes("utf-8")));
 
-            JsonFactory factory = new JsonFactory();
-
-            ObjectMapper mapper = new ObjectMapper(factory);
-            JsonNode rootNode = mapper.readTree(tokenParamsJson);
+            JsonNode rootNode = JsonCodecs.getMapper().readTree(tokenParamsJson);
 
             long expDate = rootNode.get("exp").asLong() * 1000;
             long now = System.currentTimeMillis();
@@ -241,7 +248,8 @@ public class SharedMetadata {
     }
 
     /**
-     * Get messages sent to my MDID. Authenticated.
+     * Get messages sent to my MDID. Authenticated. Signatures are validated on the
+     * {@link WorkerPool}.
      */
     public List<Message> getMessages(boolean onlyProcessed) throws
             IOException,
@@ -253,16 +261,55 @@ public class SharedMetadata {
         Response<List<Message>> exe = response.execute();
 
         if (exe.isSuccessful()) {
-            for (Message msg : exe.body()) {
-                validateSignature(msg);
-            }
-
+            validateSignatures(exe.body());
             return exe.body();
         } else {
             throw new SharedMetadataException(exe.code() + " " + exe.message());
         }
     }
 
+    private void validateSignatures(List<Message> messages) throws
+            ValidationException,
+            SignatureException,
+            InterruptedIOException {
+
+        int threads = Math.min(PARALLELISM, messages.size());
+        if (threads <= 1) {
+            for (Message msg : messages) {
+                validateSignature(msg);
+            }
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(messages.size());
+        for (final Message msg : messages) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    validateSignature(msg);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            WorkerPool.invokeAll(tasks, threads);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ValidationException) {
+                throw (ValidationException) cause;
+            } else if (cause instanceof SignatureException) {
+                throw (SignatureException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted validating messages");
+        }
+    }
+
     /**
      * Get message from message id. Authenticated.
      */
@@ -302,7 +349,10 @@ public class SharedMetadata {
         }
     }
 
-    private void validateSignature(Message msg) throws ValidationException, SignatureException {
+    /**
+     * Checks the message is signed by its sender. Safe to call from several threads.
+     */
+    public void validateSignature(Message msg) throws ValidationException, SignatureException {
         ECKey key = ECKey.signedMessageToKey(
                 msg.getPayload(),
                 msg.getSignature());
@@ -382,24 +432,51 @@ public class SharedMetadata {
     public String encryptFor(String xpub, String payload) throws
             UnsupportedEncodingException,
             InvalidCipherTextException {
-        ECKey myKey = getNode();
-        DeterministicKey otherKey = DeterministicKey.deserializeB58(null, xpub, PersistentUrls.getInstance().getCurrentNetworkParams());
-
-        byte[] sharedSecret = otherKey.getPubKeyPoint().multiply(myKey.getPrivKey()).getEncoded();
-        byte[] sharedKey = Sha256Hash.hash(sharedSecret);
-        return new String(AESUtil.encryptWithKey(sharedKey, payload));
+        byte[] sharedKey = getSharedKey(xpub);
+        try {
+            return new String(AESUtil.encryptWithKey(sharedKey, payload));
+        } finally {
+            Arrays.fill(sharedKey, (byte) 0);
+        }
     }
 
     public String decryptFrom(String xpub, String payload) throws
             UnsupportedEncodingException,
             InvalidCipherTextException {
+        byte[] sharedKey = getSharedKey(xpub);
+        try {
+            return AESUtil.decryptWithKey(sharedKey, payload);
+        } finally {
+            Arrays.fill(sharedKey, (byte) 0);
+        }
+    }
 
-        ECKey myKey = getNode();
-        DeterministicKey otherKey = DeterministicKey.deserializeB58(null, xpub, PersistentUrls.getInstance().getCurrentNetworkParams());
+    /**
+     * @return A copy of the AES key shared with the owner of xpub, for the caller to zero
+     */
+    private byte[] getSharedKey(String xpub) {
+        byte[] sharedKey = sharedKeys.get(xpub);
+        if (sharedKey == null) {
+            ECKey myKey = getNode();
+            DeterministicKey otherKey = DeterministicKey.deserializeB58(null, xpub, PersistentUrls.getInstance().getCurrentNetworkParams());
+
+            byte[] sharedSecret = otherKey.getPubKeyPoint().multiply(myKey.getPrivKey()).getEncoded();
+            sharedKey = Sha256Hash.hash(sharedSecret);
+            Arrays.fill(sharedSecret, (byte) 0);
+            sharedKeys.put(xpub, sharedKey);
+        }
+        return sharedKey;
+    }
 
-        byte[] sharedSecret = otherKey.getPubKeyPoint().multiply(myKey.getPrivKey()).getEncoded();
-        byte[] sharedKey = Sha256Hash.hash(sharedSecret);
-        return AESUtil.decryptWithKey(sharedKey, payload);
+    public SharedKeyCache getSharedKeyCache() {
+        return sharedKeys;
+    }
+
+    /**
+     * Zeroes the AES keys shared with peers.
+     */
+    public void wipeSharedKeys() {
+        sharedKeys.wipe();
     }
 
     public static class Builder {
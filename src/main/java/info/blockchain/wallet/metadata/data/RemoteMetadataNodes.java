@@ -4,9 +4,9 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import info.blockchain.wallet.util.JsonCodecs;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -37,12 +37,12 @@ public class RemoteMetadataNodes {
 
     @JsonIgnore
     public static RemoteMetadataNodes fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, RemoteMetadataNodes.class);
+        return JsonCodecs.reader(RemoteMetadataNodes.class).readValue(json);
     }
 
     @JsonIgnore
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(RemoteMetadataNodes.class).writeValueAsString(this);
     }
 
     @JsonIgnore
@@ -0,0 +1,26 @@
+package info.blockchain.wallet.multiaddress;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.http.Field;
+import retrofit2.http.FormUrlEncoded;
+import retrofit2.http.POST;
+import retrofit2.http.Streaming;
+
+public interface MultiAddressEndpoints {
+
+    /**
+     * Same request as {@link info.blockchain.api.blockexplorer.BlockExplorer#getMultiAddress},
+     * but leaves the response body unread so it can be parsed as it arrives.
+     */
+    @Streaming
+    @FormUrlEncoded
+    @POST("multiaddr")
+    Call<ResponseBody> getMultiAddress(
+        @Field("active") String active,
+        @Field("n") Integer limit,
+        @Field("offset") Integer offset,
+        @Field("filter") Integer filter,
+        @Field("onlyShow") String context,
+        @Field("api_code") String apiCode);
+}
@@ -3,29 +3,45 @@ package info.blockchain.wallet.multiaddress;
 import info.blockchain.api.blockexplorer.BlockExplorer;
 import info.blockchain.api.blockexplorer.FilterType;
 import info.blockchain.api.data.AddressSummary;
+import info.blockchain.api.data.Info;
 import info.blockchain.api.data.Input;
 import info.blockchain.api.data.MultiAddress;
+import info.blockchain.api.data.MultiAddressBalance;
 import info.blockchain.api.data.Output;
 import info.blockchain.api.data.Transaction;
-import info.blockchain.api.data.Xpub;
-import info.blockchain.wallet.bip44.HDChain;
+import info.blockchain.wallet.BlockchainFramework;
 import info.blockchain.wallet.exceptions.ApiException;
-import info.blockchain.wallet.multiaddress.TransactionSummary.Direction;
 import info.blockchain.wallet.payload.data.AddressLabel;
+import info.blockchain.wallet.util.JsonCodecs;
+import info.blockchain.wallet.util.WorkerPool;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
+import okhttp3.ResponseBody;
 import retrofit2.Response;
 
 import static info.blockchain.wallet.payload.PayloadManager.MULTI_ADDRESS_ALL;
@@ -34,7 +50,21 @@ public class MultiAddressFactory {
 
     private static Logger log = LoggerFactory.getLogger(MultiAddressFactory.class);
 
+    private static final ObjectMapper mapper = JsonCodecs.getMapper();
+    private static final ObjectReader infoReader = mapper.readerFor(Info.class);
+    private static final ObjectReader transactionReader = mapper.readerFor(Transaction.class);
+    private static final ObjectReader balanceReader = mapper.readerFor(MultiAddressBalance.class);
+    private static final ObjectReader addressesReader = mapper.readerFor(
+        new TypeReference<List<AddressSummary>>() {});
+
+    public static final int DEFAULT_SHARD_SIZE = 100;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+    //The multiaddress endpoint returns at most this many transactions per request
+    static final int MAX_PAGE_SIZE = 100;
+
     private BlockExplorer blockExplorer;
+    private MultiAddressEndpoints multiAddressEndpoints;
 
     private HashMap<String, Integer> nextReceiveAddressMap;
     private HashMap<String, Integer> nextChangeAddressMap;
@@ -42,6 +72,15 @@ public class MultiAddressFactory {
     //Field for testing if address belongs to us - Quicker than derivation
     private HashMap<String, String> addressToXpubMap;
 
+    //From the last response
+    private long latestBlockHeight;
+    private int lastResponseTxCount;
+    private int lastResponseTotalTxCount = -1;
+    private LinkedHashMap<String, Long> lastResponseBlockHeights = new LinkedHashMap<>();
+
+    private int shardSize = DEFAULT_SHARD_SIZE;
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+
     public MultiAddressFactory(BlockExplorer blockExplorer) {
         log.info("Initializing MultiAddressFactory");
         this.blockExplorer = blockExplorer;
@@ -54,28 +93,292 @@ public class MultiAddressFactory {
         return addressToXpubMap.get(address);
     }
 
+    /**
+     * @return Latest block height reported by the last multiaddress response
+     */
+    public long getLatestBlockHeight() {
+        return latestBlockHeight;
+    }
+
+    /**
+     * @return Amount of transactions in the last multiaddress response, before any legacy filtering
+     */
+    public int getLastResponseTxCount() {
+        return lastResponseTxCount;
+    }
+
+    /**
+     * @return The wallet's total transaction count from the last multiaddress response, -1 if it
+     * didn't say. Can count more than paging through the view returns, never less.
+     */
+    public int getLastResponseTotalTxCount() {
+        return lastResponseTotalTxCount;
+    }
+
+    /**
+     * @return Block height of every transaction in the last response by hash, 0 if unconfirmed.
+     * In response order and before any legacy filtering.
+     */
+    LinkedHashMap<String, Long> getLastResponseBlockHeights() {
+        return lastResponseBlockHeights;
+    }
+
+    /**
+     * Wallets with more xpubs and legacy addresses than the shard size fetch their history in
+     * several multiaddress requests of at most shardSize entries each, run in parallel and merged
+     * back into a single response. Only applies when fetching for the whole wallet.
+     *
+     * @param shardSize Maximum xpubs and addresses per request, 0 to always send a single request
+     * @param maxConcurrentRequests Maximum shard requests in flight at once
+     */
+    public void setSharding(int shardSize, int maxConcurrentRequests) {
+        if (shardSize < 0 || maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("Invalid sharding " + shardSize + "/" + maxConcurrentRequests);
+        }
+        this.shardSize = shardSize;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
     private MultiAddress getMultiAddress(List<String> allActive, String onlyShow, int limit, int offset) throws IOException, ApiException{
 
         log.info("Fetching multiaddress for {} accounts/addresses", allActive.size());
 
-        if (onlyShow!=null && onlyShow.equals(MULTI_ADDRESS_ALL)) {
+        String context = MULTI_ADDRESS_ALL.equals(onlyShow) ? null : onlyShow;
+
+        //A single xpub or address is filtered server side and only fits one request
+        if (context == null && shardSize > 0 && allActive.size() > shardSize) {
+            return getShardedMultiAddress(allActive, limit, offset);
+        }
 
-            Response<MultiAddress> call = blockExplorer.getMultiAddress(allActive, null, FilterType.RemoveUnspendable.getFilterInt(), limit, offset).execute();
+        return fetchMultiAddress(allActive, context, limit, offset);
+    }
 
-            if(call.isSuccessful()) {
-                return call.body();
-            } else {
-                throw new ApiException(call.errorBody().string());
-            }
+    private MultiAddress fetchMultiAddress(List<String> active, String context, int limit, int offset) throws IOException, ApiException {
+
+        Response<MultiAddress> call = blockExplorer.getMultiAddress(active, context, FilterType.RemoveUnspendable.getFilterInt(), limit, offset).execute();
 
+        if(call.isSuccessful()) {
+            return call.body();
         } else {
-            Response<MultiAddress> call = blockExplorer.getMultiAddress(allActive, onlyShow, FilterType.RemoveUnspendable.getFilterInt(), limit, offset).execute();
+            throw new ApiException(call.errorBody().string());
+        }
+    }
 
-            if(call.isSuccessful()) {
-                return call.body();
-            } else {
-                throw new ApiException(call.errorBody().string());
+    /**
+     * Fetches the first offset + limit transactions of every shard, a page of at most
+     * {@link #MAX_PAGE_SIZE} at a time, and merges them newest first.
+     * A transaction involving several shards is reported by each of them, with the result and
+     * xpub annotations of that shard's addresses only, so duplicates are combined by hash.
+     */
+    private MultiAddress getShardedMultiAddress(List<String> allActive, int limit, int offset) throws IOException, ApiException {
+
+        int wanted = offset + limit;
+
+        final List<Shard> shards = new ArrayList<>();
+        for (int i = 0; i < allActive.size(); i += shardSize) {
+            shards.add(new Shard(shards.size(), allActive.subList(i, Math.min(i + shardSize, allActive.size())), wanted));
+        }
+        log.info("Fetching multiaddress in {} shards", shards.size());
+
+        fetchFirstPages(shards);
+
+        PriorityQueue<Shard> queue = new PriorityQueue<>(shards.size(), new Comparator<Shard>() {
+            private final TxMostRecentDateComparator comparator = new TxMostRecentDateComparator();
+
+            @Override
+            public int compare(Shard s1, Shard s2) {
+                int ret = comparator.compare(s1.peek(), s2.peek());
+                return ret != 0 ? ret : s1.index - s2.index;
+            }
+        });
+        for (Shard shard : shards) {
+            if (shard.peek() != null) {
+                queue.add(shard);
+            }
+        }
+
+        //k-way merge, insertion order is the merged order
+        LinkedHashMap<String, Transaction> merged = new LinkedHashMap<>();
+        //Responses may be shared by the block explorer, duplicates are merged into copies
+        HashSet<String> copied = new HashSet<>();
+        long oldestTime = Long.MAX_VALUE;
+        while (!queue.isEmpty()) {
+            Shard shard = queue.poll();
+            Transaction tx = shard.peek();
+
+            Transaction duplicate = merged.get(tx.getHash());
+            if (duplicate != null) {
+                if (copied.add(tx.getHash())) {
+                    duplicate = copy(duplicate);
+                    merged.put(tx.getHash(), duplicate);
+                }
+                mergeDuplicate(duplicate, tx);
+            } else if (merged.size() < wanted) {
+                merged.put(tx.getHash(), tx);
+                oldestTime = tx.getTime();
+            } else if (tx.getTime() < oldestTime) {
+                //Anything older can no longer be a duplicate of this page
+                break;
+            }
+
+            //Shards short of transactions after duplicates fetch their next page
+            if (shard.advance(merged.size() < wanted)) {
+                queue.add(shard);
+            }
+        }
+
+        ArrayList<Transaction> txs = new ArrayList<>(merged.values());
+        MultiAddress multiAddress = new MultiAddress();
+        multiAddress.setTxs(offset < txs.size()
+            ? new ArrayList<>(txs.subList(offset, txs.size())) : new ArrayList<Transaction>());
+
+        ArrayList<AddressSummary> addresses = new ArrayList<>();
+        for (Shard shard : shards) {
+            MultiAddress response = shard.firstResponse;
+            if (response == null) continue;
+
+            if (response.getAddresses() != null) {
+                addresses.addAll(response.getAddresses());
+            }
+            Info info = response.getInfo();
+            if (info != null && (multiAddress.getInfo() == null
+                || getLatestBlockHeight(info) > getLatestBlockHeight(multiAddress.getInfo()))) {
+                multiAddress.setInfo(info);
+            }
+        }
+        multiAddress.setAddresses(addresses);
+
+        return multiAddress;
+    }
+
+    private void fetchFirstPages(List<Shard> shards) throws IOException, ApiException {
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (final Shard shard : shards) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    shard.fetch();
+                    return null;
+                }
+            });
+        }
+
+        try {
+            WorkerPool.invokeAll(tasks, maxConcurrentRequests);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ApiException) {
+                throw (ApiException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted fetching multiaddress shards");
+        }
+    }
+
+    private static Transaction copy(Transaction tx) {
+        //Not convertValue, which hands back the same instance for the same type
+        try {
+            return transactionReader.readValue(mapper.valueToTree(tx));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Combines the view another shard has of the same transaction into the first one.
+     */
+    private static void mergeDuplicate(Transaction tx, Transaction other) {
+
+        //Shards hold disjoint addresses, so their results add up to the wallet's
+        BigInteger result = tx.getResult() != null ? tx.getResult() : BigInteger.ZERO;
+        if (other.getResult() != null) {
+            tx.setResult(result.add(other.getResult()));
+        }
+
+        //Each shard only annotates outputs belonging to its own xpubs
+        List<Input> inputs = tx.getInputs();
+        List<Input> otherInputs = other.getInputs();
+        if (inputs != null && otherInputs != null) {
+            for (int i = 0; i < Math.min(inputs.size(), otherInputs.size()); i++) {
+                mergeXpub(inputs.get(i).getPrevOut(), otherInputs.get(i).getPrevOut());
+            }
+        }
+
+        List<Output> outputs = tx.getOut();
+        List<Output> otherOutputs = other.getOut();
+        if (outputs != null && otherOutputs != null) {
+            for (int i = 0; i < Math.min(outputs.size(), otherOutputs.size()); i++) {
+                mergeXpub(outputs.get(i), otherOutputs.get(i));
+            }
+        }
+    }
+
+    private static void mergeXpub(Output output, Output other) {
+        if (output != null && other != null && output.getXpub() == null) {
+            output.setXpub(other.getXpub());
+        }
+    }
+
+    /**
+     * Cursor over the transactions of one shard, fetched a page at a time.
+     */
+    private class Shard {
+
+        private final int index;
+        private final List<String> active;
+        private final int pageSize;
+
+        private MultiAddress firstResponse;
+        private List<Transaction> page = Collections.emptyList();
+        private int position;
+        private int fetched;
+        private int total = -1;
+        private boolean complete;
+
+        Shard(int index, List<String> active, int wanted) {
+            this.index = index;
+            this.active = active;
+            this.pageSize = Math.min(wanted, MAX_PAGE_SIZE);
+        }
+
+        void fetch() throws IOException, ApiException {
+            MultiAddress response = fetchMultiAddress(active, null, pageSize, fetched);
+            if (firstResponse == null) {
+                firstResponse = response;
+            }
+
+            List<Transaction> txs = response != null ? response.getTxs() : null;
+            page = txs != null ? txs : Collections.<Transaction>emptyList();
+            position = 0;
+            fetched += page.size();
+            if (response != null && response.getMultiAddressBalance() != null) {
+                total = response.getMultiAddressBalance().getTxCount();
+            }
+            //A short page only means the server capped it, the end is an empty page or the total
+            complete = page.isEmpty() || (total >= 0 && fetched >= total);
+        }
+
+        Transaction peek() {
+            return position < page.size() ? page.get(position) : null;
+        }
+
+        /**
+         * @param fetchMore Whether to fetch the next page once this one is used up
+         * @return Whether another transaction is available
+         */
+        boolean advance(boolean fetchMore) throws IOException, ApiException {
+            position++;
+            if (position >= page.size() && fetchMore && !complete) {
+                fetch();
             }
+            return peek() != null;
         }
     }
 
@@ -104,6 +407,58 @@ public class MultiAddressFactory {
         return summarize(all, watchOnly, multiAddress, activeLegacy);
     }
 
+    /**
+     * Streaming version of {@link #getAccountTransactions(ArrayList, List, List, String, int, int)}.
+     * Summaries are passed to the handler while the response is being read, so peak memory
+     * scales with a single transaction rather than the page size.
+     *
+     * @param all A list of all xpubs and legacy addresses
+     * @param watchOnly A list of watch-only legacy addresses
+     * @param activeLegacy A list of active legacy addresses. Used to flag transactions as 'watch only'
+     * @param onlyShow Xpub or legacy address. Used to fetch transaction only relating to this address.
+     * @param limit Maximum amount of transactions fetched
+     * @param offset Page offset
+     * @param handler Receives each summary in response order
+     * @return Amount of summaries passed to the handler
+     * @throws IOException
+     * @throws ApiException
+     */
+    public int getAccountTransactions(ArrayList<String> all, List<String> watchOnly, List<String> activeLegacy,
+                                      String onlyShow, int limit, int offset, TransactionSummaryHandler handler)
+        throws IOException, ApiException {
+
+        log.info("Stream transactions. limit {}, offset {}", limit, offset);
+
+        String context = MULTI_ADDRESS_ALL.equals(onlyShow) ? null : onlyShow;
+
+        Response<ResponseBody> call = getMultiAddressEndpoints().getMultiAddress(
+            StringUtils.join(all, "|"),
+            limit,
+            offset,
+            FilterType.RemoveUnspendable.getFilterInt(),
+            context,
+            BlockchainFramework.getApiCode()).execute();
+
+        if(!call.isSuccessful()) {
+            throw new ApiException(call.errorBody().string());
+        }
+
+        ResponseBody body = call.body();
+        try {
+            return summarize(all, watchOnly, body.byteStream(), activeLegacy, handler);
+        } finally {
+            body.close();
+        }
+    }
+
+    private MultiAddressEndpoints getMultiAddressEndpoints() {
+        if (multiAddressEndpoints == null) {
+            multiAddressEndpoints = BlockchainFramework.getRetrofitExplorerInstance()
+                .create(MultiAddressEndpoints.class);
+        }
+        return multiAddressEndpoints;
+    }
+
     public int getNextChangeAddressIndex(String xpub) {
 
         if(!nextChangeAddressMap.containsKey(xpub)) {
@@ -188,242 +543,140 @@ public class MultiAddressFactory {
                                               MultiAddress multiAddress,
                                               List<String> legacy) {
 
-        List<TransactionSummary> summaryList = new ArrayList<>();
+        setNextAddressIndexes(multiAddress.getAddresses());
 
-        //Set next address indexes
-        for(AddressSummary address : multiAddress.getAddresses()) {
-            nextReceiveAddressMap.put(address.getAddress(),address.getAccountIndex());
-            nextChangeAddressMap.put(address.getAddress(),address.getChangeIndex());
+        lastResponseTxCount = multiAddress.getTxs() != null ? multiAddress.getTxs().size() : 0;
+        lastResponseTotalTxCount = multiAddress.getMultiAddressBalance() != null
+            ? multiAddress.getMultiAddressBalance().getTxCount() : -1;
+        lastResponseBlockHeights = new LinkedHashMap<>();
+        if (multiAddress.getTxs() != null) {
+            for (Transaction tx : multiAddress.getTxs()) {
+                lastResponseBlockHeights.put(tx.getHash(), tx.getBlockHeight());
+            }
         }
-
-        List<Transaction> txs = multiAddress.getTxs();
-        if(txs == null) {
-            //Address might not contain transactions
-            return summaryList;
+        if (lastResponseTxCount > 0) {
+            latestBlockHeight = getLatestBlockHeight(multiAddress.getInfo());
         }
 
-        for(Transaction tx : txs) {
-
-            boolean isLegacy = false;
+        TransactionSummarizer summarizer = new TransactionSummarizer(ownAddressesAndXpubs,
+            watchOnlyAddresses, legacy);
+        List<TransactionSummary> summaryList = summarizer.summarize(multiAddress);
 
-            TransactionSummary txSummary = new TransactionSummary();
-            txSummary.inputsMap = new HashMap<>();
-            txSummary.outputsMap = new HashMap<>();
+        for(TransactionSummary txSummary : summaryList) {
+            mapAddressesToXpub(txSummary);
+        }
 
-            //Map which address belongs to which xpub.
-            txSummary.inputsXpubMap = new HashMap<>();
-            txSummary.outputsXpubMap = new HashMap<>();
+        return summaryList;
+    }
 
-            if (tx.getResult().add(tx.getFee()).signum() == 0) {
-                txSummary.setDirection(Direction.TRANSFERRED);
-            } else if (tx.getResult().signum() > 0) {
-                txSummary.setDirection(Direction.RECEIVED);
-            } else {
-                txSummary.setDirection(Direction.SENT);
+    /**
+     * Streams a multiaddress response and summarizes one transaction at a time, so only a single
+     * {@link Transaction} is held in memory instead of the whole response.
+     *
+     * @param ownAddressesAndXpubs A list of all xpubs and legacy addresses
+     * @param watchOnlyAddresses A list of watch-only legacy addresses
+     * @param multiAddressJson Multiaddress response body. Not closed by this method.
+     * @param legacy A list of active legacy addresses. Used to flag transactions as 'watch only'
+     * @param handler Receives each summary in response order
+     * @return Amount of summaries passed to the handler
+     * @throws IOException Response could not be read or is malformed
+     */
+    public int summarize(List<String> ownAddressesAndXpubs,
+                         List<String> watchOnlyAddresses,
+                         InputStream multiAddressJson,
+                         List<String> legacy,
+                         TransactionSummaryHandler handler) throws IOException {
+
+        TransactionSummarizer summarizer = new TransactionSummarizer(ownAddressesAndXpubs,
+            watchOnlyAddresses, legacy);
+
+        JsonParser parser = mapper.getFactory().createParser(multiAddressJson);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Multiaddress response is not a JSON object");
             }
 
-            //Inputs
-            String inputAddr;
-            BigInteger inputValue;
-            for(Input input : tx.getInputs()) {
-
-                Output prevOut = input.getPrevOut();
-                if(prevOut != null) {
-
-                    inputAddr = prevOut.getAddr();
-                    inputValue = prevOut.getValue();
-                    if(inputAddr != null) {
-
-                        //Transaction from HD account
-                        Xpub xpubBody = prevOut.getXpub();
-                        if (xpubBody != null) {
-                            //xpubBody will only show if it belongs to our account
-                            //inputAddr belongs to our own account - add it, it's a transfer/send
-                            ownAddressesAndXpubs.add(inputAddr);
-                            txSummary.inputsXpubMap.put(inputAddr, xpubBody.getM());
+            lastResponseTxCount = 0;
+            lastResponseTotalTxCount = -1;
+            lastResponseBlockHeights = new LinkedHashMap<>();
+            Long latestBlock = null;
+            //Only used if 'txs' arrives before 'info', which the server does not normally do
+            List<Transaction> pendingTxs = new ArrayList<>();
+            int count = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+
+                if ("info".equals(field) && token == JsonToken.START_OBJECT) {
+                    latestBlock = getLatestBlockHeight(infoReader.<Info>readValue(parser));
+                    latestBlockHeight = latestBlock;
+
+                } else if ("wallet".equals(field) && token == JsonToken.START_OBJECT) {
+                    lastResponseTotalTxCount = balanceReader.<MultiAddressBalance>readValue(parser)
+                        .getTxCount();
+
+                } else if ("addresses".equals(field) && token == JsonToken.START_ARRAY) {
+                    setNextAddressIndexes(addressesReader.<List<AddressSummary>>readValue(parser));
+
+                } else if ("txs".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Transaction tx = transactionReader.readValue(parser);
+                        lastResponseTxCount++;
+                        lastResponseBlockHeights.put(tx.getHash(), tx.getBlockHeight());
+                        if (latestBlock == null) {
+                            pendingTxs.add(tx);
+                        } else if (summarize(summarizer, tx, latestBlock, handler)) {
+                            count++;
                         }
-
-                        //Flag as watch only
-                        if (watchOnlyAddresses.contains(inputAddr)) {
-                            txSummary.setWatchOnly(true);
-                        }
-
-                        //Flag as imported legacy address
-                        if (legacy != null && legacy.contains(inputAddr)) {
-                            isLegacy = true;
-                        }
-
-                        //Keep track of inputs
-                        if(txSummary.inputsMap.containsKey(inputAddr)) {
-                            BigInteger prevValue = txSummary.inputsMap.get(inputAddr).add(inputValue);
-                            txSummary.inputsMap.put(inputAddr, prevValue);
-                        } else {
-                            txSummary.inputsMap.put(inputAddr, inputValue);
-                        }
-
-                    } else {
-                        throw new IllegalStateException("inputAddr is null");
                     }
 
                 } else {
-                    //Newly generated coin
+                    parser.skipChildren();
                 }
             }
 
-            HashMap<String, BigInteger> changeMap = new HashMap<>();
-            String outputAddr;
-            BigInteger outputValue;
-            for(Output output :tx.getOut()) {
-
-                outputAddr = output.getAddr();
-                outputValue = output.getValue();
-                if(outputAddr != null) {
-
-                    Xpub xpubBody = output.getXpub();
-                    if (xpubBody != null) {
-
-                        //inputAddr belongs to our own account - add it
-                        ownAddressesAndXpubs.add(outputAddr);
-                        if (xpubBody.getPath().startsWith("M/" + HDChain.RECEIVE_CHAIN + "/")) {
-                            txSummary.outputsMap.put(outputAddr, outputValue);
-                            txSummary.outputsXpubMap.put(outputAddr, xpubBody.getM());
-                        } else {
-                            //Change
-                            changeMap.put(outputAddr, outputValue);
-                        }
-
-                    } else {
-                        //If we own this address and it's not change coming back, it's a transfer
-                        if (ownAddressesAndXpubs.contains(outputAddr) && !txSummary.inputsMap.keySet().contains(outputAddr)) {
-
-                            if(txSummary.getDirection() == Direction.SENT) {
-                                txSummary.setDirection(Direction.TRANSFERRED);
-                            }
-
-                            //Don't add change coming back
-                            if (!txSummary.inputsMap.containsKey(outputAddr)) {
-                                txSummary.outputsMap.put(outputAddr, outputValue);
-                            } else {
-                                changeMap.put(outputAddr, outputValue);
-                            }
-
-                        } else {
-                            //Address does not belong to us
-                            txSummary.outputsMap.put(outputAddr, outputValue);
-                        }
-                    }
-
-                    //Flag as watch only
-                    if (watchOnlyAddresses.contains(outputAddr)) {
-                        txSummary.setWatchOnly(true);
-                    }
-
-                    //Flag as imported legacy address
-                    if (legacy != null && legacy.contains(outputAddr)) {
-                        isLegacy = true;
-                    }
-                } else {
-                    throw new IllegalStateException("outputAddr is null");
+            for (Transaction tx : pendingTxs) {
+                if (summarize(summarizer, tx, latestBlock != null ? latestBlock : 0L, handler)) {
+                    count++;
                 }
             }
 
-            //If we are filtering for legacy and nothing found
-            if (legacy != null && !isLegacy) {
-                continue;
-            }
+            log.info("Streamed {} transaction summaries", count);
+            return count;
 
-            //Remove input addresses not ours
-            filterOwnedAddresses(
-                    ownAddressesAndXpubs,
-                    txSummary.inputsMap,
-                    txSummary.outputsMap,
-                    txSummary.getDirection());
-
-            txSummary.setHash(tx.getHash());
-            txSummary.setTime(tx.getTime());
-            txSummary.setDoubleSpend(tx.isDoubleSpend());
-            txSummary.setFee(tx.getFee());
-
-            if (txSummary.getDirection() == Direction.RECEIVED) {
-                BigInteger total = calculateTotalReceived(txSummary.outputsMap);
-                txSummary.setTotal(total);
-            } else {
-                BigInteger total = calculateTotalSent(
-                        txSummary.inputsMap,
-                        changeMap,
-                        tx.getFee(),
-                        txSummary.getDirection());
-                txSummary.setTotal(total);
-            }
-
-            //Set confirmations
-            long latestBlock = multiAddress.getInfo().getLatestBlock().getHeight();
-            long txBlockHeight = tx.getBlockHeight();
-            if(latestBlock > 0 && txBlockHeight > 0) {
-                txSummary.setConfirmations((int) ((latestBlock - txBlockHeight) + 1));
-            } else {
-                txSummary.setConfirmations(0);
-            }
-
-            addressToXpubMap.putAll(txSummary.getInputsXpubMap());
-            addressToXpubMap.putAll(txSummary.getOutputsXpubMap());
-
-            summaryList.add(txSummary);
+        } finally {
+            parser.close();
         }
-
-        return summaryList;
     }
 
-    private void filterOwnedAddresses(ArrayList<String> ownAddressesAndXpubs,
-        HashMap<String, BigInteger> inputsMap,
-        HashMap<String, BigInteger> outputsMap, Direction direction) {
-
-        Iterator<Entry<String, BigInteger>> iterator = inputsMap.entrySet().iterator();
-        while(iterator.hasNext()) {
-            Entry<String, BigInteger> item = iterator.next();
-            if(!ownAddressesAndXpubs.contains(item.getKey()) && direction.equals(Direction.SENT)) {
-                iterator.remove();
-            }
-        }
-
-        iterator = outputsMap.entrySet().iterator();
-        while(iterator.hasNext()) {
-            Entry<String, BigInteger> item = iterator.next();
-            if(!ownAddressesAndXpubs.contains(item.getKey()) && direction.equals(Direction.RECEIVED)) {
-                iterator.remove();
-            }
+    private boolean summarize(TransactionSummarizer summarizer, Transaction tx, long latestBlock,
+                              TransactionSummaryHandler handler) {
+        TransactionSummary txSummary = summarizer.summarize(tx, latestBlock);
+        if (txSummary == null) {
+            return false;
         }
+        mapAddressesToXpub(txSummary);
+        handler.onTransactionSummary(txSummary);
+        return true;
     }
 
-    private BigInteger calculateTotalReceived(HashMap<String, BigInteger> outputsMap) {
-
-        BigInteger total = BigInteger.ZERO;
+    private void setNextAddressIndexes(List<AddressSummary> addresses) {
+        if (addresses == null) return;
 
-        for(BigInteger output : outputsMap.values()) {
-            total = total.add(output);
+        for(AddressSummary address : addresses) {
+            nextReceiveAddressMap.put(address.getAddress(),address.getAccountIndex());
+            nextChangeAddressMap.put(address.getAddress(),address.getChangeIndex());
         }
-
-        return total;
     }
 
-    private BigInteger calculateTotalSent(HashMap<String, BigInteger> inputsMap, HashMap<String, BigInteger> changeMap,
-        BigInteger fee, Direction direction) {
-
-        BigInteger total = BigInteger.ZERO;
-
-        for(BigInteger input : inputsMap.values()) {
-            total = total.add(input);
-        }
-
-        for(BigInteger change : changeMap.values()) {
-            total = total.subtract(change);
-        }
-
-        if(direction == Direction.TRANSFERRED) {
-            total = total.subtract(fee);
-        }
+    private void mapAddressesToXpub(TransactionSummary txSummary) {
+        addressToXpubMap.putAll(txSummary.getInputsXpubMap());
+        addressToXpubMap.putAll(txSummary.getOutputsXpubMap());
+    }
 
-        return total;
+    private static long getLatestBlockHeight(Info info) {
+        return info.getLatestBlock() != null ? info.getLatestBlock().getHeight() : 0L;
     }
 
 }
\ No newline at end of file
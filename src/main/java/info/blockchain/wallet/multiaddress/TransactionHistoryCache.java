@@ -0,0 +1,401 @@
+package info.blockchain.wallet.multiaddress;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import info.blockchain.wallet.exceptions.ApiException;
+import info.blockchain.wallet.util.JsonCodecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Local transaction history of every view of the wallet (all, per xpub, imported addresses).
+ *
+ * Every view keeps its own summaries by tx hash, since direction and total depend on the view: a
+ * transfer between two accounts is sent in one account's view and received in the other's. It
+ * also remembers its ordered list of hashes, the newest block height it has seen and how far into
+ * the server's history it has paged. Asking for the first page of a view only fetches
+ * transactions newer than the ones already known, starting with a small page, and looks up the
+ * transactions that were unconfirmed when cached. Older pages are served from the cache and only
+ * fetched once. Confirmations are recalculated from the latest block height instead of being
+ * downloaded again.
+ *
+ * The whole cache can be persisted with {@link #toJson()} and restored with {@link #fromJson(String)}.
+ */
+@JsonAutoDetect(fieldVisibility = Visibility.NONE,
+    getterVisibility = Visibility.NONE,
+    setterVisibility = Visibility.NONE,
+    creatorVisibility = Visibility.NONE,
+    isGetterVisibility = Visibility.NONE)
+//Caches written before summaries moved into the views hold them in "txs"
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TransactionHistoryCache {
+
+    private static Logger log = LoggerFactory.getLogger(TransactionHistoryCache.class);
+
+    //First page size when looking for new transactions
+    static final int DELTA_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    @JsonProperty("latest_block")
+    private long latestBlock;
+
+    @JsonProperty("views")
+    private HashMap<String, History> histories = new HashMap<>();
+
+    @JsonAutoDetect(fieldVisibility = Visibility.NONE,
+        getterVisibility = Visibility.NONE,
+        setterVisibility = Visibility.NONE,
+        creatorVisibility = Visibility.NONE,
+        isGetterVisibility = Visibility.NONE)
+    static class History {
+
+        //Newest first
+        @JsonProperty("hashes")
+        ArrayList<String> hashes = new ArrayList<>();
+
+        //Summaries as seen from this view
+        @JsonProperty("txs")
+        HashMap<String, TransactionSummary> transactions = new HashMap<>();
+
+        //Newest block height of a confirmed transaction in this view
+        @JsonProperty("newest_block")
+        long newestBlockHeight;
+
+        //Amount of server transactions already paged through
+        @JsonProperty("server_offset")
+        int serverOffset;
+
+        //Newest block height of any server transaction paged through, filtered out or not
+        @JsonProperty("newest_server_block")
+        long newestServerBlockHeight;
+
+        //Server transactions paged through while unconfirmed, filtered out or not
+        @JsonProperty("server_pending")
+        HashSet<String> serverPending = new HashSet<>();
+
+        //True once a page came back empty or the server's total was reached
+        @JsonProperty("complete")
+        boolean complete;
+
+        //Addresses this view was fetched with - adding an account or address invalidates it
+        @JsonProperty("addresses_hash")
+        int addressesHash;
+    }
+
+    public synchronized long getLatestBlock() {
+        return latestBlock;
+    }
+
+    /**
+     * Returns a page of a view's history, fetching only what is not cached yet. Requesting the
+     * first page (offset 0) also looks for transactions newer than the ones already cached.
+     *
+     * @param multiAddressFactory Used for any network requests
+     * @param all A list of all xpubs and legacy addresses
+     * @param watchOnly A list of watch-only legacy addresses
+     * @param activeLegacy If not null, only transactions involving these addresses are kept
+     * @param onlyShow Xpub, legacy address or {@link info.blockchain.wallet.payload.PayloadManager#MULTI_ADDRESS_ALL}
+     * @param limit Amount of transactions per page
+     * @param offset Page offset
+     */
+    public synchronized List<TransactionSummary> getTransactions(MultiAddressFactory multiAddressFactory,
+                                                                 ArrayList<String> all,
+                                                                 List<String> watchOnly,
+                                                                 @Nullable List<String> activeLegacy,
+                                                                 String onlyShow,
+                                                                 int limit,
+                                                                 int offset)
+        throws IOException, ApiException {
+
+        String key = getKey(onlyShow, activeLegacy);
+        int addressesHash = getAddressesHash(all, watchOnly, activeLegacy);
+        History history = histories.get(key);
+        if (history == null || history.addressesHash != addressesHash) {
+            history = new History();
+            history.addressesHash = addressesHash;
+            histories.put(key, history);
+        }
+
+        if (offset == 0 && !history.hashes.isEmpty()) {
+            refresh(multiAddressFactory, history, all, watchOnly, activeLegacy, onlyShow);
+        }
+
+        while (!history.complete && history.hashes.size() < offset + limit) {
+            fetchOlder(multiAddressFactory, history, all, watchOnly, activeLegacy, onlyShow,
+                Math.max(limit, offset + limit - history.hashes.size()));
+        }
+
+        List<TransactionSummary> page = new ArrayList<>();
+        for (int i = offset; i < Math.min(offset + limit, history.hashes.size()); i++) {
+            page.add(history.transactions.get(history.hashes.get(i)));
+        }
+        return page;
+    }
+
+    /**
+     * Recalculates the confirmations of every cached transaction from a new block height.
+     */
+    public synchronized void updateConfirmations(long latestBlockHeight) {
+        if (latestBlockHeight <= latestBlock) {
+            return;
+        }
+        latestBlock = latestBlockHeight;
+        for (History history : histories.values()) {
+            for (TransactionSummary txSummary : history.transactions.values()) {
+                txSummary.setConfirmations(
+                    TransactionSummarizer.getConfirmations(latestBlock, txSummary.getBlockHeight()));
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        latestBlock = 0;
+        histories.clear();
+    }
+
+    /**
+     * Pages further back into a view's history. The server may return fewer transactions than
+     * asked for, so only an empty page or reaching its total ends the history.
+     */
+    private void fetchOlder(MultiAddressFactory multiAddressFactory, History history,
+                            ArrayList<String> all, List<String> watchOnly, List<String> activeLegacy,
+                            String onlyShow, int limit) throws IOException, ApiException {
+
+        List<TransactionSummary> summaries = multiAddressFactory.getAccountTransactions(
+            all, watchOnly, activeLegacy, onlyShow, limit, history.serverOffset);
+        int responseTxCount = multiAddressFactory.getLastResponseTxCount();
+
+        for (Map.Entry<String, Long> tx : multiAddressFactory.getLastResponseBlockHeights().entrySet()) {
+            trackServerTransaction(history, tx.getKey(), tx.getValue());
+        }
+
+        Set<String> known = new HashSet<>(history.hashes);
+        for (TransactionSummary txSummary : summaries) {
+            history.transactions.put(txSummary.getHash(), txSummary);
+            if (known.add(txSummary.getHash())) {
+                history.hashes.add(txSummary.getHash());
+            }
+            history.newestBlockHeight = Math.max(history.newestBlockHeight, txSummary.getBlockHeight());
+        }
+
+        history.serverOffset += responseTxCount;
+        history.complete = isLastPage(multiAddressFactory, responseTxCount, history.serverOffset);
+
+        updateConfirmations(multiAddressFactory.getLatestBlockHeight());
+    }
+
+    /**
+     * Fetches transactions newer than the ones already in a view. Starts with a small page and
+     * stops at the first confirmed server transaction that was already paged through, whether or
+     * not this view keeps it. Transactions that were unconfirmed when paged through are looked
+     * up again within the range the view already covers, replaced wherever they are found and
+     * dropped if they aren't.
+     */
+    private void refresh(MultiAddressFactory multiAddressFactory, History history,
+                         ArrayList<String> all, List<String> watchOnly, List<String> activeLegacy,
+                         String onlyShow) throws IOException, ApiException {
+
+        Set<String> known = new HashSet<>(history.hashes);
+        Set<String> pending = new HashSet<>();
+        for (String hash : history.hashes) {
+            TransactionSummary cached = history.transactions.get(hash);
+            if (cached == null || cached.getBlockHeight() <= 0) {
+                pending.add(hash);
+            }
+        }
+        //Includes the ones this view filters out, which still count towards the server offset
+        Set<String> serverPending = new HashSet<>(history.serverPending);
+        HashSet<String> stillPending = new HashSet<>();
+
+        List<TransactionSummary> fresh = new ArrayList<>();
+        HashMap<String, TransactionSummary> verified = new HashMap<>();
+
+        int pageSize = DELTA_PAGE_SIZE;
+        int serverOffset = 0;
+        //Server transactions in front of the ones already paged through
+        int added = 0;
+        long newestServerBlockHeight = history.newestServerBlockHeight;
+        boolean overlap = false;
+
+        while (true) {
+            List<TransactionSummary> summaries = multiAddressFactory.getAccountTransactions(
+                all, watchOnly, activeLegacy, onlyShow, pageSize, serverOffset);
+            int responseTxCount = multiAddressFactory.getLastResponseTxCount();
+            serverOffset += responseTxCount;
+
+            Set<String> freshPage = new HashSet<>();
+            for (Map.Entry<String, Long> tx : multiAddressFactory.getLastResponseBlockHeights().entrySet()) {
+                String hash = tx.getKey();
+                long blockHeight = tx.getValue();
+                boolean seen = serverPending.remove(hash);
+
+                if (!overlap && isKnownAndConfirmed(history, known, hash, blockHeight)) {
+                    overlap = true;
+                }
+                if (!overlap) {
+                    freshPage.add(hash);
+                    if (!seen) {
+                        added++;
+                    }
+                }
+                if (blockHeight <= 0) {
+                    stillPending.add(hash);
+                }
+                newestServerBlockHeight = Math.max(newestServerBlockHeight, blockHeight);
+            }
+
+            for (TransactionSummary txSummary : summaries) {
+                if (freshPage.contains(txSummary.getHash())) {
+                    fresh.add(txSummary);
+                    pending.remove(txSummary.getHash());
+                } else if (pending.remove(txSummary.getHash())) {
+                    verified.put(txSummary.getHash(), txSummary);
+                }
+            }
+
+            if (isLastPage(multiAddressFactory, responseTxCount, serverOffset)) {
+                break;
+            }
+            //Unconfirmed ones still missing once the cached range is covered are gone
+            if (overlap && ((pending.isEmpty() && serverPending.isEmpty())
+                || serverOffset >= history.serverOffset + added)) {
+                break;
+            }
+            pageSize = Math.min(pageSize * 5, MAX_PAGE_SIZE);
+        }
+
+        List<String> freshHashes = new ArrayList<>();
+        Set<String> freshSet = new HashSet<>();
+        for (TransactionSummary txSummary : fresh) {
+            history.transactions.put(txSummary.getHash(), txSummary);
+            if (freshSet.add(txSummary.getHash())) {
+                freshHashes.add(txSummary.getHash());
+            }
+            history.newestBlockHeight = Math.max(history.newestBlockHeight, txSummary.getBlockHeight());
+        }
+        for (TransactionSummary txSummary : verified.values()) {
+            history.transactions.put(txSummary.getHash(), txSummary);
+            history.newestBlockHeight = Math.max(history.newestBlockHeight, txSummary.getBlockHeight());
+        }
+
+        //Fresh ones move to the head, pending ones the server no longer has are dropped
+        int previousSize = history.hashes.size();
+        Iterator<String> iterator = history.hashes.iterator();
+        while (iterator.hasNext()) {
+            String hash = iterator.next();
+            if (freshSet.contains(hash) || pending.contains(hash)) {
+                iterator.remove();
+            }
+        }
+        history.hashes.addAll(0, freshHashes);
+        history.transactions.keySet().retainAll(new HashSet<>(history.hashes));
+
+        //Keep paging older transactions from the right place
+        history.serverOffset = Math.max(0, history.serverOffset + added - serverPending.size());
+        history.newestServerBlockHeight = newestServerBlockHeight;
+        history.serverPending = stillPending;
+
+        log.info("Transaction history refreshed: {} new, {} confirmed, {} dropped",
+            history.hashes.size() - previousSize + pending.size(), verified.size(), pending.size());
+
+        updateConfirmations(multiAddressFactory.getLatestBlockHeight());
+    }
+
+    /**
+     * @return Whether the server has no transactions past serverOffset
+     */
+    private static boolean isLastPage(MultiAddressFactory multiAddressFactory, int responseTxCount,
+                                      int serverOffset) {
+        int total = multiAddressFactory.getLastResponseTotalTxCount();
+        return responseTxCount == 0 || (total >= 0 && serverOffset >= total);
+    }
+
+    private static void trackServerTransaction(History history, String hash, long blockHeight) {
+        if (blockHeight <= 0) {
+            history.serverPending.add(hash);
+        } else {
+            history.serverPending.remove(hash);
+        }
+        history.newestServerBlockHeight = Math.max(history.newestServerBlockHeight, blockHeight);
+    }
+
+    /**
+     * A confirmed server transaction no newer than the newest one already paged through, or one
+     * this view has cached as confirmed, means everything older is known too.
+     */
+    private static boolean isKnownAndConfirmed(History history, Set<String> known, String hash,
+                                               long blockHeight) {
+        if (blockHeight <= 0) {
+            return false;
+        }
+        if (blockHeight <= history.newestServerBlockHeight || blockHeight < history.newestBlockHeight) {
+            return true;
+        }
+        TransactionSummary cached = history.transactions.get(hash);
+        return known.contains(hash) && cached != null && cached.getBlockHeight() > 0;
+    }
+
+    private static int getAddressesHash(List<String> all, List<String> watchOnly,
+                                        List<String> activeLegacy) {
+        int hash = new HashSet<>(all).hashCode();
+        hash = 31 * hash + new HashSet<>(watchOnly).hashCode();
+        if (activeLegacy != null) {
+            hash = 31 * hash + new HashSet<>(activeLegacy).hashCode();
+        }
+        return hash;
+    }
+
+    private static String getKey(String onlyShow, List<String> activeLegacy) {
+        //Imported addresses are filtered client side, so they need their own view
+        return activeLegacy != null ? "legacy:" + onlyShow : String.valueOf(onlyShow);
+    }
+
+    public synchronized String toJson() throws IOException {
+        return JsonCodecs.writer(TransactionHistoryCache.class).writeValueAsString(this);
+    }
+
+    public static TransactionHistoryCache fromJson(String json) throws IOException {
+        TransactionHistoryCache cache = JsonCodecs.reader(TransactionHistoryCache.class).readValue(json);
+        Iterator<History> iterator = cache.histories.values().iterator();
+        while (iterator.hasNext()) {
+            //Drop views a partial write or an older format left without their summaries
+            History history = iterator.next();
+            if (!history.transactions.keySet().containsAll(history.hashes)) {
+                iterator.remove();
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return Cached transactions of a view, newest first. Empty if the view was never fetched.
+     */
+    public synchronized List<TransactionSummary> getCachedTransactions(String onlyShow,
+                                                                       @Nullable List<String> activeLegacy) {
+        History history = histories.get(getKey(onlyShow, activeLegacy));
+        if (history == null) {
+            return Collections.emptyList();
+        }
+        List<TransactionSummary> list = new ArrayList<>(history.hashes.size());
+        for (String hash : history.hashes) {
+            list.add(history.transactions.get(hash));
+        }
+        return list;
+    }
+}
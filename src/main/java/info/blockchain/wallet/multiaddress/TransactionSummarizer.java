@@ -0,0 +1,269 @@
+package info.blockchain.wallet.multiaddress;
+
+import info.blockchain.api.data.Input;
+import info.blockchain.api.data.MultiAddress;
+import info.blockchain.api.data.Output;
+import info.blockchain.api.data.Transaction;
+import info.blockchain.api.data.Xpub;
+import info.blockchain.wallet.bip44.HDChain;
+import info.blockchain.wallet.multiaddress.TransactionSummary.Direction;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Turns the transactions of a single multiaddress response into {@link TransactionSummary}s.
+ *
+ * Ownership, watch-only and legacy lookups are hashed once per response instead of scanning
+ * lists for every input and output. Addresses discovered through an xpub while summarizing are
+ * added to the ownership index, so later transactions see them exactly as before.
+ *
+ * Not thread safe - create one per response.
+ */
+public class TransactionSummarizer {
+
+    private static final String RECEIVE_PATH_PREFIX = "M/" + HDChain.RECEIVE_CHAIN + "/";
+
+    private final Set<String> ownAddressesAndXpubs;
+    private final Set<String> watchOnlyAddresses;
+    private final Set<String> legacyAddresses;
+
+    //Reused between transactions - only used to calculate the total
+    private final HashMap<String, BigInteger> changeMap = new HashMap<>();
+
+    /**
+     * @param ownAddressesAndXpubs All xpubs and legacy addresses belonging to the wallet
+     * @param watchOnlyAddresses Watch-only legacy addresses
+     * @param legacyAddresses If not null, only transactions touching one of these addresses are
+     * summarized
+     */
+    public TransactionSummarizer(Collection<String> ownAddressesAndXpubs,
+                                 Collection<String> watchOnlyAddresses,
+                                 @Nullable Collection<String> legacyAddresses) {
+        this.ownAddressesAndXpubs = new HashSet<>(ownAddressesAndXpubs);
+        this.watchOnlyAddresses = watchOnlyAddresses.isEmpty()
+            ? Collections.<String>emptySet() : new HashSet<>(watchOnlyAddresses);
+        this.legacyAddresses = legacyAddresses != null ? new HashSet<>(legacyAddresses) : null;
+    }
+
+    /**
+     * Summarizes every transaction in the response, preserving response order.
+     */
+    public List<TransactionSummary> summarize(MultiAddress multiAddress) {
+
+        List<Transaction> txs = multiAddress.getTxs();
+        if (txs == null) {
+            //Address might not contain transactions
+            return new ArrayList<>();
+        }
+
+        long latestBlock = txs.isEmpty() ? 0 : getLatestBlockHeight(multiAddress);
+
+        List<TransactionSummary> summaryList = new ArrayList<>(txs.size());
+        for (Transaction tx : txs) {
+            TransactionSummary txSummary = summarize(tx, latestBlock);
+            if (txSummary != null) {
+                summaryList.add(txSummary);
+            }
+        }
+        return summaryList;
+    }
+
+    /**
+     * Summarizes a single transaction.
+     *
+     * @param tx The transaction
+     * @param latestBlock Latest block height, used to calculate confirmations
+     * @return The summary, or null if filtering for legacy addresses and none were involved
+     */
+    @Nullable
+    public TransactionSummary summarize(Transaction tx, long latestBlock) {
+
+        boolean isLegacy = false;
+
+        TransactionSummary txSummary = new TransactionSummary();
+        txSummary.inputsMap = new HashMap<>();
+        txSummary.outputsMap = new HashMap<>();
+
+        //Map which address belongs to which xpub.
+        txSummary.inputsXpubMap = new HashMap<>();
+        txSummary.outputsXpubMap = new HashMap<>();
+
+        if (tx.getResult().add(tx.getFee()).signum() == 0) {
+            txSummary.setDirection(Direction.TRANSFERRED);
+        } else if (tx.getResult().signum() > 0) {
+            txSummary.setDirection(Direction.RECEIVED);
+        } else {
+            txSummary.setDirection(Direction.SENT);
+        }
+
+        //Inputs
+        for (Input input : tx.getInputs()) {
+
+            Output prevOut = input.getPrevOut();
+            if (prevOut == null) {
+                //Newly generated coin
+                continue;
+            }
+
+            String inputAddr = prevOut.getAddr();
+            if (inputAddr == null) {
+                throw new IllegalStateException("inputAddr is null");
+            }
+            BigInteger inputValue = prevOut.getValue();
+
+            //Transaction from HD account
+            Xpub xpubBody = prevOut.getXpub();
+            if (xpubBody != null) {
+                //xpubBody will only show if it belongs to our account
+                //inputAddr belongs to our own account - add it, it's a transfer/send
+                ownAddressesAndXpubs.add(inputAddr);
+                txSummary.inputsXpubMap.put(inputAddr, xpubBody.getM());
+            }
+
+            //Flag as watch only
+            if (watchOnlyAddresses.contains(inputAddr)) {
+                txSummary.setWatchOnly(true);
+            }
+
+            //Flag as imported legacy address
+            if (legacyAddresses != null && legacyAddresses.contains(inputAddr)) {
+                isLegacy = true;
+            }
+
+            //Keep track of inputs
+            BigInteger prevValue = txSummary.inputsMap.get(inputAddr);
+            txSummary.inputsMap.put(inputAddr, prevValue != null ? prevValue.add(inputValue) : inputValue);
+        }
+
+        changeMap.clear();
+        for (Output output : tx.getOut()) {
+
+            String outputAddr = output.getAddr();
+            if (outputAddr == null) {
+                throw new IllegalStateException("outputAddr is null");
+            }
+            BigInteger outputValue = output.getValue();
+
+            Xpub xpubBody = output.getXpub();
+            if (xpubBody != null) {
+
+                //outputAddr belongs to our own account - add it
+                ownAddressesAndXpubs.add(outputAddr);
+                if (xpubBody.getPath().startsWith(RECEIVE_PATH_PREFIX)) {
+                    txSummary.outputsMap.put(outputAddr, outputValue);
+                    txSummary.outputsXpubMap.put(outputAddr, xpubBody.getM());
+                } else {
+                    //Change
+                    changeMap.put(outputAddr, outputValue);
+                }
+
+            } else if (ownAddressesAndXpubs.contains(outputAddr)
+                && !txSummary.inputsMap.containsKey(outputAddr)) {
+
+                //If we own this address and it's not change coming back, it's a transfer
+                if (txSummary.getDirection() == Direction.SENT) {
+                    txSummary.setDirection(Direction.TRANSFERRED);
+                }
+                txSummary.outputsMap.put(outputAddr, outputValue);
+
+            } else {
+                //Address does not belong to us
+                txSummary.outputsMap.put(outputAddr, outputValue);
+            }
+
+            //Flag as watch only
+            if (watchOnlyAddresses.contains(outputAddr)) {
+                txSummary.setWatchOnly(true);
+            }
+
+            //Flag as imported legacy address
+            if (legacyAddresses != null && legacyAddresses.contains(outputAddr)) {
+                isLegacy = true;
+            }
+        }
+
+        //If we are filtering for legacy and nothing found
+        if (legacyAddresses != null && !isLegacy) {
+            return null;
+        }
+
+        //Remove addresses not ours
+        filterOwnedAddresses(txSummary.inputsMap, txSummary.outputsMap, txSummary.getDirection());
+
+        txSummary.setHash(tx.getHash());
+        txSummary.setTime(tx.getTime());
+        txSummary.setDoubleSpend(tx.isDoubleSpend());
+        txSummary.setFee(tx.getFee());
+
+        if (txSummary.getDirection() == Direction.RECEIVED) {
+            txSummary.setTotal(sum(txSummary.outputsMap.values()));
+        } else {
+            BigInteger total = sum(txSummary.inputsMap.values())
+                .subtract(sum(changeMap.values()));
+            if (txSummary.getDirection() == Direction.TRANSFERRED) {
+                total = total.subtract(tx.getFee());
+            }
+            txSummary.setTotal(total);
+        }
+
+        //Set confirmations
+        txSummary.setBlockHeight(tx.getBlockHeight());
+        txSummary.setConfirmations(getConfirmations(latestBlock, tx.getBlockHeight()));
+
+        return txSummary;
+    }
+
+    /**
+     * @return Confirmations of a transaction mined at txBlockHeight, or 0 if either height is unknown
+     */
+    public static int getConfirmations(long latestBlock, long txBlockHeight) {
+        if (latestBlock > 0 && txBlockHeight > 0) {
+            return (int) ((latestBlock - txBlockHeight) + 1);
+        } else {
+            return 0;
+        }
+    }
+
+    static long getLatestBlockHeight(MultiAddress multiAddress) {
+        return multiAddress.getInfo().getLatestBlock().getHeight();
+    }
+
+    private void filterOwnedAddresses(HashMap<String, BigInteger> inputsMap,
+                                      HashMap<String, BigInteger> outputsMap,
+                                      Direction direction) {
+
+        if (direction == Direction.SENT) {
+            removeNotOwned(inputsMap);
+        } else if (direction == Direction.RECEIVED) {
+            removeNotOwned(outputsMap);
+        }
+    }
+
+    private void removeNotOwned(HashMap<String, BigInteger> map) {
+        Iterator<Entry<String, BigInteger>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (!ownAddressesAndXpubs.contains(iterator.next().getKey())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static BigInteger sum(Collection<BigInteger> values) {
+        BigInteger total = BigInteger.ZERO;
+        for (BigInteger value : values) {
+            total = total.add(value);
+        }
+        return total;
+    }
+}
@@ -16,6 +16,7 @@ public class TransactionSummary {
 
     private Direction direction;
     private long time;
+    private long blockHeight;//0 if unconfirmed
     private int confirmations;
     private boolean isWatchOnly;
     private boolean isDoubleSpend;
@@ -53,6 +54,14 @@ public class TransactionSummary {
         this.time = time;
     }
 
+    public long getBlockHeight() {
+        return blockHeight;
+    }
+
+    public void setBlockHeight(long blockHeight) {
+        this.blockHeight = blockHeight;
+    }
+
     public int getConfirmations() {
         return confirmations;
     }
@@ -0,0 +1,12 @@
+package info.blockchain.wallet.multiaddress;
+
+/**
+ * Receives transaction summaries one at a time while a multiaddress response is streamed.
+ */
+public interface TransactionSummaryHandler {
+
+    /**
+     * Called once per summarized transaction, in response order.
+     */
+    void onTransactionSummary(TransactionSummary summary);
+}
@@ -0,0 +1,178 @@
+package info.blockchain.wallet.payload;
+
+import info.blockchain.api.blockexplorer.BlockExplorer;
+import info.blockchain.api.blockexplorer.FilterType;
+import info.blockchain.api.data.Balance;
+import info.blockchain.wallet.bip44.HDAccount;
+import info.blockchain.wallet.bip44.HDWallet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import retrofit2.Response;
+
+/**
+ * Finds out how many accounts of a restored BIP44 wallet are in use.
+ *
+ * Accounts are derived on the wallet ahead of the balance probes and kept, so the wallet
+ * doesn't have to be restored again once the size is known. Probes are sent in waves of
+ * several batches in flight at once. Responses are merged by xpub before being walked in
+ * account order, so a failed probe only matters if its accounts are actually needed.
+ *
+ * An account is counted when it has transactions. Discovery stops after {@link #LOOK_AHEAD}
+ * consecutive unused accounts.
+ */
+public class AccountDiscovery {
+
+    private static Logger log = LoggerFactory.getLogger(AccountDiscovery.class);
+
+    public static final int LOOK_AHEAD = 10;
+    public static final int DEFAULT_PARALLEL_PROBES = 3;
+
+    private static final int FIRST_BATCH_SIZE = 5;
+    private static final int MAX_BATCH_SIZE = 20;
+
+    private final BlockExplorer blockExplorer;
+    private final int parallelProbes;
+
+    private int probeCount;
+
+    public AccountDiscovery(BlockExplorer blockExplorer) {
+        this(blockExplorer, DEFAULT_PARALLEL_PROBES);
+    }
+
+    /**
+     * @param parallelProbes Amount of balance requests in flight at once
+     */
+    public AccountDiscovery(BlockExplorer blockExplorer, int parallelProbes) {
+        if (parallelProbes < 1) {
+            throw new IllegalArgumentException("parallelProbes must be at least 1");
+        }
+        this.blockExplorer = blockExplorer;
+        this.parallelProbes = parallelProbes;
+    }
+
+    /**
+     * Probes the accounts following the wallet's existing ones and trims the wallet to the
+     * accounts in use.
+     *
+     * @param bip44Wallet Restored wallet, usually holding only its first account
+     * @return Amount of accounts kept: the existing ones plus every used account found
+     */
+    public int discover(HDWallet bip44Wallet) throws Exception {
+
+        int walletSize = bip44Wallet.getAccounts().size();
+        int gap = 0;
+        int batchSize = FIRST_BATCH_SIZE;
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelProbes, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "account-discovery");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            while (true) {
+
+                //Derive the whole wave before going to the network
+                List<List<String>> batches = new ArrayList<>();
+                for (int i = 0; i < parallelProbes; i++) {
+                    List<String> xpubs = new ArrayList<>(batchSize);
+                    for (int j = 0; j < batchSize; j++) {
+                        HDAccount account = bip44Wallet.addAccount();
+                        xpubs.add(account.getXpub());
+                    }
+                    batches.add(xpubs);
+                    batchSize = Math.min(batchSize * 2, MAX_BATCH_SIZE);
+                }
+
+                List<Future<HashMap<String, Balance>>> futures = new ArrayList<>();
+                for (final List<String> xpubs : batches) {
+                    futures.add(executor.submit(new Callable<HashMap<String, Balance>>() {
+                        @Override
+                        public HashMap<String, Balance> call() throws Exception {
+                            return probe(xpubs);
+                        }
+                    }));
+                }
+                probeCount += futures.size();
+
+                HashMap<String, Balance> balances = new HashMap<>();
+                Exception failure = null;
+                for (Future<HashMap<String, Balance>> future : futures) {
+                    try {
+                        balances.putAll(future.get());
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = e.getCause() instanceof Exception
+                                ? (Exception) e.getCause() : new Exception(e.getCause());
+                        }
+                    }
+                }
+
+                for (List<String> xpubs : batches) {
+                    for (String xpub : xpubs) {
+
+                        Balance balance = balances.get(xpub);
+                        if (balance == null) {
+                            throw failure != null ? failure : new Exception("No balance returned for " + xpub);
+                        }
+
+                        //If account has txs
+                        if (balance.getTxCount() > 0L) {
+                            walletSize++;
+                            gap = 0;
+                        } else {
+                            gap++;
+                        }
+
+                        if (gap >= LOOK_AHEAD) {
+                            trim(bip44Wallet, walletSize);
+                            log.info("Discovered {} accounts with {} probes", walletSize, probeCount);
+                            return walletSize;
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Amount of balance requests made so far
+     */
+    public int getProbeCount() {
+        return probeCount;
+    }
+
+    private HashMap<String, Balance> probe(List<String> xpubs) throws Exception {
+
+        Response<HashMap<String, Balance>> exe = blockExplorer
+            .getBalance(xpubs, FilterType.RemoveUnspendable).execute();
+
+        if (!exe.isSuccessful()) {
+            throw new Exception(exe.code() + " " + exe.errorBody().string());
+        }
+
+        return exe.body();
+    }
+
+    private static void trim(HDWallet bip44Wallet, int walletSize) {
+        List<HDAccount> accounts = bip44Wallet.getAccounts();
+        accounts.subList(walletSize, accounts.size()).clear();
+    }
+}
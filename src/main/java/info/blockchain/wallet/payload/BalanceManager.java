@@ -11,7 +11,9 @@ import retrofit2.Response;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -25,12 +27,29 @@ public class BalanceManager {
 
     private BlockExplorer blockExplorer;
 
-    private HashMap<String, BigInteger> balanceMap;
+    private final BalanceStore balanceStore;
+
+    //Refreshes retried when a websocket or local delta lands while fetching
+    private static final int MAX_REFRESH_ATTEMPTS = 3;
+
+    //Imported addresses of the last refresh
+    private volatile Set<String> legacyAddresses = Collections.emptySet();
 
     public BalanceManager(BlockExplorer blockExplorer) {
         log.info("Initializing BalanceManager");
         this.blockExplorer = blockExplorer;
-        this.balanceMap = new HashMap<>();
+        this.balanceStore = new BalanceStore();
+    }
+
+    /**
+     * @return Every balance from a single point in time
+     */
+    public BalanceStore.Snapshot getSnapshot() {
+        return balanceStore.getSnapshot();
+    }
+
+    public BalanceStore getBalanceStore() {
+        return balanceStore;
     }
 
     public void subtractAmountFromAddressBalance(String address, BigInteger amount)
@@ -38,66 +57,87 @@ public class BalanceManager {
 
         log.info("Updating internal balance of address "+address);
 
-        //Update individual address
-        BigInteger currentBalance = balanceMap.get(address);
-        if(currentBalance == null) {
+        //Update individual address and wallet totals together
+        if(!balanceStore.add(-amount.longValue(), address, legacyAddresses.contains(address))) {
             throw new Exception("No info for this address. updateAllBalances should be called first.");
         }
-        BigInteger newBalance = currentBalance.subtract(amount);
-        balanceMap.put(address, newBalance);
-
-        //Update wallet balance
-        currentBalance = balanceMap.get(MULTI_ADDRESS_ALL);
-        if(currentBalance == null) {
-            throw new Exception("No info for this address. updateAllBalances should be called first.");
-        }
-        newBalance = currentBalance.subtract(amount);
-        balanceMap.put(MULTI_ADDRESS_ALL, newBalance);
     }
 
     public BigInteger getAddressBalance(String address) {
-        return balanceMap.get(address);
+        return getBalance(address);
     }
 
     public BigInteger getWalletBalance() {
-        return balanceMap.get(MULTI_ADDRESS_ALL);
+        return getBalance(MULTI_ADDRESS_ALL);
     }
 
     public BigInteger getImportedAddressesBalance() {
-        return balanceMap.get(PayloadManager.MULTI_ADDRESS_ALL_LEGACY);
+        return getBalance(MULTI_ADDRESS_ALL_LEGACY);
     }
 
+    private BigInteger getBalance(String key) {
+        BalanceStore.Snapshot snapshot = balanceStore.getSnapshot();
+        return snapshot.contains(key) ? BigInteger.valueOf(snapshot.getBalance(key)) : null;
+    }
+
+    /**
+     * Fetches every balance and publishes them together. A refresh fetched while a delta was
+     * applied, eg a websocket transaction or a local subtract, may not include it yet, so it is
+     * dropped and fetched again rather than published over the delta.
+     */
     public void updateAllBalances(List<String> legacyAddressList, List<String> allAccountsAndAddresses) throws ServerConnectionException, IOException {
+
+        HashSet<String> legacyAddresses = new HashSet<>(legacyAddressList);
+        this.legacyAddresses = Collections.unmodifiableSet(legacyAddresses);
+
+        for (int attempt = 1; attempt <= MAX_REFRESH_ATTEMPTS; attempt++) {
+            if (fetchAllBalances(legacyAddresses, allAccountsAndAddresses)) {
+                return;
+            }
+            log.info("Balances changed while fetching, attempt " + attempt);
+        }
+        log.warn("Balances kept changing while fetching, keeping the applied deltas");
+    }
+
+    /**
+     * @return False if a delta was applied while fetching, leaving the balances untouched
+     */
+    private boolean fetchAllBalances(Set<String> legacyAddresses, List<String> allAccountsAndAddresses) throws ServerConnectionException, IOException {
+        long deltas = balanceStore.getSnapshot().getDeltas();
+
         Call<HashMap<String, Balance>> call = blockExplorer.getBalance(allAccountsAndAddresses,
             FilterType.RemoveUnspendable);
 
 
         log.info("Fetching wallet balances");
 
-        BigInteger walletFinalBalance = BigInteger.ZERO;
-        BigInteger importedFinalBalance = BigInteger.ZERO;
+        long walletFinalBalance = 0L;
+        long importedFinalBalance = 0L;
 
         Response<HashMap<String, Balance>> exe = call.execute();
         if(exe.isSuccessful()) {
 
+            BalanceStore.Update update = balanceStore.update();
+
             Set<Entry<String, Balance>> set = exe.body().entrySet();
             for(Entry<String, Balance> item : set) {
                 String address = item.getKey();
-                Balance balance = item.getValue();
+                long balance = item.getValue().getFinalBalance().longValue();
 
-                balanceMap.put(address, balance.getFinalBalance());
+                update.put(address, balance);
 
                 //Consolidate 'All'
-                walletFinalBalance = walletFinalBalance.add(balance.getFinalBalance());
+                walletFinalBalance += balance;
 
                 //Consolidate 'Imported'
-                if(legacyAddressList.contains(address)) {
-                    importedFinalBalance = importedFinalBalance.add(balance.getFinalBalance());
+                if(legacyAddresses.contains(address)) {
+                    importedFinalBalance += balance;
                 }
             }
 
-            balanceMap.put(MULTI_ADDRESS_ALL, walletFinalBalance);
-            balanceMap.put(MULTI_ADDRESS_ALL_LEGACY, importedFinalBalance);
+            return update.put(MULTI_ADDRESS_ALL, walletFinalBalance)
+                .put(MULTI_ADDRESS_ALL_LEGACY, importedFinalBalance)
+                .publishIfNoDeltasSince(deltas);
 
         } else {
             throw new ServerConnectionException(exe.errorBody().string());
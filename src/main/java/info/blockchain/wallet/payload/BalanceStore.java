@@ -0,0 +1,194 @@
+package info.blockchain.wallet.payload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Satoshi balances keyed by address or xpub.
+ *
+ * Balances live in immutable {@link Snapshot}s. Updates build a new snapshot and swap it in
+ * atomically, so a reader holding a snapshot always sees a whole refresh or none of it, and
+ * concurrent updates never overwrite each other. Reading a snapshot takes no lock and
+ * allocates nothing.
+ *
+ * Each snapshot also counts the deltas applied so far, so a refresh fetched before the latest
+ * delta can be dropped with {@link Update#publishIfNoDeltasSince(long)} instead of undoing it.
+ */
+public class BalanceStore {
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+
+    public Snapshot getSnapshot() {
+        return current.get();
+    }
+
+    /**
+     * @return Empty update, applied at once by {@link Update#publish()}
+     */
+    public Update update() {
+        return new Update();
+    }
+
+    /**
+     * Adds the amount to an xpub or address, the wallet total and, for imported addresses, the
+     * imported total, in a single step.
+     *
+     * @param legacy Whether the key is an imported address
+     * @return False, leaving the store untouched, if any of them has no balance yet
+     */
+    public boolean add(long amount, String key, boolean legacy) {
+        return legacy
+            ? subtract(-amount, key, PayloadManager.MULTI_ADDRESS_ALL, PayloadManager.MULTI_ADDRESS_ALL_LEGACY)
+            : subtract(-amount, key, PayloadManager.MULTI_ADDRESS_ALL);
+    }
+
+    /**
+     * Subtracts the amount from every key in a single step, counted as one delta.
+     *
+     * @return False, leaving the store untouched, if any key has no balance yet
+     */
+    public boolean subtract(long amount, String... keys) {
+
+        while (true) {
+            Snapshot snapshot = current.get();
+
+            int[] positions = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                Integer position = snapshot.index.get(keys[i]);
+                if (position == null) {
+                    return false;
+                }
+                positions[i] = position;
+            }
+
+            //A key listed twice is only updated once
+            Arrays.sort(positions);
+            long[] values = snapshot.values.clone();
+            for (int i = 0; i < positions.length; i++) {
+                if (i == 0 || positions[i] != positions[i - 1]) {
+                    values[positions[i]] -= amount;
+                }
+            }
+
+            if (current.compareAndSet(snapshot, new Snapshot(snapshot.index, values, snapshot.deltas + 1))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Balances to publish together. Keys not part of the update keep their previous balance.
+     */
+    public class Update {
+
+        private final ArrayList<String> keys = new ArrayList<>();
+        private long[] values = new long[16];
+
+        private Update() {
+        }
+
+        public Update put(String key, long balance) {
+            if (keys.size() == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[keys.size()] = balance;
+            keys.add(key);
+            return this;
+        }
+
+        public void publish() {
+            publish(-1L);
+        }
+
+        /**
+         * Publishes the update only if no delta was applied after the given snapshot's, eg
+         * while its balances were being fetched.
+         *
+         * @param deltas {@link Snapshot#getDeltas()} of the snapshot taken before fetching
+         * @return False, leaving the store untouched, if a newer delta was applied
+         */
+        public boolean publishIfNoDeltasSince(long deltas) {
+            return publish(deltas);
+        }
+
+        private boolean publish(long deltas) {
+
+            while (true) {
+                Snapshot snapshot = current.get();
+                if (deltas >= 0 && snapshot.deltas != deltas) {
+                    return false;
+                }
+
+                HashMap<String, Integer> index = new HashMap<>(snapshot.index);
+                long[] merged = Arrays.copyOf(snapshot.values, snapshot.values.length + keys.size());
+                int size = snapshot.values.length;
+
+                for (int i = 0; i < keys.size(); i++) {
+                    Integer position = index.get(keys.get(i));
+                    if (position == null) {
+                        position = size++;
+                        index.put(keys.get(i), position);
+                    }
+                    merged[position] = values[i];
+                }
+
+                Snapshot published = new Snapshot(index,
+                    size == merged.length ? merged : Arrays.copyOf(merged, size), snapshot.deltas);
+                if (current.compareAndSet(snapshot, published)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Immutable view of every balance at one point in time.
+     */
+    public static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(new HashMap<String, Integer>(), new long[0], 0L);
+
+        //Shared between snapshots, never modified once published
+        private final HashMap<String, Integer> index;
+        private final long[] values;
+        private final long deltas;
+
+        private Snapshot(HashMap<String, Integer> index, long[] values, long deltas) {
+            this.index = index;
+            this.values = values;
+            this.deltas = deltas;
+        }
+
+        public boolean contains(String key) {
+            return index.containsKey(key);
+        }
+
+        /**
+         * @return Balance in satoshis, 0 for unknown keys
+         */
+        public long getBalance(String key) {
+            Integer position = index.get(key);
+            return position == null ? 0L : values[position];
+        }
+
+        public Set<String> keys() {
+            return Collections.unmodifiableSet(index.keySet());
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        /**
+         * @return Number of deltas applied with {@link BalanceStore#subtract(long, String...)}
+         * up to this snapshot
+         */
+        public long getDeltas() {
+            return deltas;
+        }
+    }
+}
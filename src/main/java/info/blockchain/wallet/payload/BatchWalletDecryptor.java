@@ -0,0 +1,230 @@
+package info.blockchain.wallet.payload;
+
+import info.blockchain.wallet.payload.data.Wallet;
+import info.blockchain.wallet.payload.data.WalletWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * Decrypts many wallet payloads at once on a fixed size worker pool.
+ *
+ * PBKDF2 dominates the cost of {@link WalletWrapper#decryptPayload(String)}, and a single
+ * payload can't be split, so throughput scales with the amount of workers. Each worker reuses
+ * its own PBKDF2 and AES engines (see {@link info.blockchain.wallet.crypto.AESUtil}).
+ *
+ * Meant for bulk jobs such as migrations and audits. Call {@link #close()} when done.
+ */
+public class BatchWalletDecryptor implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(BatchWalletDecryptor.class);
+
+    private final ExecutorService executor;
+    private final int threads;
+
+    private final AtomicLong decrypted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong decryptionNanos = new AtomicLong();
+    private final AtomicLong batchNanos = new AtomicLong();
+
+    public static class Result {
+
+        private final Wallet wallet;
+        private final Exception exception;
+
+        Result(@Nullable Wallet wallet, @Nullable Exception exception) {
+            this.wallet = wallet;
+            this.exception = exception;
+        }
+
+        public boolean isSuccess() {
+            return wallet != null;
+        }
+
+        /**
+         * @return Decrypted wallet, or null if decryption failed
+         */
+        @Nullable
+        public Wallet getWallet() {
+            return wallet;
+        }
+
+        /**
+         * @return Reason decryption failed, or null on success
+         */
+        @Nullable
+        public Exception getException() {
+            return exception;
+        }
+    }
+
+    public static class Metrics {
+
+        private final long decrypted;
+        private final long failed;
+        private final long decryptionNanos;
+        private final long batchNanos;
+
+        Metrics(long decrypted, long failed, long decryptionNanos, long batchNanos) {
+            this.decrypted = decrypted;
+            this.failed = failed;
+            this.decryptionNanos = decryptionNanos;
+            this.batchNanos = batchNanos;
+        }
+
+        public long getDecrypted() {
+            return decrypted;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return Time spent decrypting, summed over all workers
+         */
+        public long getDecryptionNanos() {
+            return decryptionNanos;
+        }
+
+        /**
+         * @return Wall clock time spent in {@link #decrypt(List, List)}
+         */
+        public long getBatchNanos() {
+            return batchNanos;
+        }
+
+        /**
+         * @return Payloads (decrypted or failed) per wall clock second
+         */
+        public double getPayloadsPerSecond() {
+            return batchNanos == 0 ? 0 : (decrypted + failed) * 1e9 / batchNanos;
+        }
+
+        /**
+         * @return Average time a single payload takes on one worker
+         */
+        public double getAverageDecryptionMillis() {
+            long total = decrypted + failed;
+            return total == 0 ? 0 : decryptionNanos / 1e6 / total;
+        }
+    }
+
+    /**
+     * @param threads Amount of workers, usually the amount of available processors
+     */
+    public BatchWalletDecryptor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "wallet-decryptor-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public BatchWalletDecryptor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Decrypts every payload with the password at the same index. A payload failing to decrypt
+     * does not affect the others.
+     *
+     * @return One result per payload, in the same order
+     */
+    public List<Result> decrypt(List<WalletWrapper> payloads, List<String> passwords)
+        throws InterruptedException {
+
+        if (payloads.size() != passwords.size()) {
+            throw new IllegalArgumentException("Expected one password per payload");
+        }
+
+        long start = System.nanoTime();
+
+        List<Future<Result>> futures = new ArrayList<>(payloads.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            final WalletWrapper payload = payloads.get(i);
+            final String password = passwords.get(i);
+            futures.add(executor.submit(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return decrypt(payload, password);
+                }
+            }));
+        }
+
+        List<Result> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            //decrypt() catches everything, so this can only be an Error
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (results.size() < futures.size()) {
+                for (Future<Result> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        batchNanos.addAndGet(elapsed);
+        log.info("Decrypted {} payloads on {} threads in {} ms", payloads.size(), threads, elapsed / 1000000);
+
+        return results;
+    }
+
+    private Result decrypt(WalletWrapper payload, String password) {
+        long start = System.nanoTime();
+        try {
+            Wallet wallet = payload.decryptPayload(password);
+            decrypted.incrementAndGet();
+            return new Result(wallet, null);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            return new Result(null, e);
+        } finally {
+            decryptionNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return Totals over every batch decrypted so far
+     */
+    public Metrics getMetrics() {
+        return new Metrics(decrypted.get(), failed.get(), decryptionNanos.get(), batchNanos.get());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -3,6 +3,7 @@ package info.blockchain.wallet.payload;
 import info.blockchain.api.blockexplorer.BlockExplorer;
 import info.blockchain.api.data.Balance;
 import info.blockchain.wallet.BlockchainFramework;
+import info.blockchain.wallet.ClientRegistry;
 import info.blockchain.wallet.api.WalletApi;
 import info.blockchain.wallet.bip44.HDAccount;
 import info.blockchain.wallet.exceptions.AccountLockedException;
@@ -16,7 +17,9 @@ import info.blockchain.wallet.exceptions.NoSuchAddressException;
 import info.blockchain.wallet.exceptions.ServerConnectionException;
 import info.blockchain.wallet.exceptions.UnsupportedVersionException;
 import info.blockchain.wallet.metadata.MetadataNodeFactory;
+import info.blockchain.wallet.metadata.MetadataWriteQueue;
 import info.blockchain.wallet.multiaddress.MultiAddressFactory;
+import info.blockchain.wallet.multiaddress.TransactionHistoryCache;
 import info.blockchain.wallet.multiaddress.TransactionSummary;
 import info.blockchain.wallet.pairing.Pairing;
 import info.blockchain.wallet.payload.data.Account;
@@ -27,6 +30,9 @@ import info.blockchain.wallet.payload.data.WalletBase;
 import info.blockchain.wallet.payload.data.WalletWrapper;
 import info.blockchain.wallet.util.DoubleEncryptionFactory;
 import info.blockchain.wallet.util.Tools;
+import info.blockchain.wallet.websocket.SubscriptionEngine;
+import info.blockchain.wallet.websocket.SubscriptionEngine.Poller;
+import info.blockchain.wallet.websocket.SubscriptionEngine.Subscription;
 
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.lang3.tuple.Pair;
@@ -78,6 +84,9 @@ public class PayloadManager {
 
     private MultiAddressFactory multiAddressFactory;
     private BalanceManager balanceManager;
+    private TransactionHistoryCache transactionHistoryCache;
+    //Last one created, told about transactions applied locally
+    private Subscription subscription;
 
     private static PayloadManager instance;
 
@@ -94,14 +103,20 @@ public class PayloadManager {
     }
 
     private void init() {
-        walletApi = new WalletApi();
-        blockExplorer = new BlockExplorer(BlockchainFramework.getRetrofitExplorerInstance(), BlockchainFramework.getApiCode());
+        walletApi = ClientRegistry.getWalletApi();
+        blockExplorer = ClientRegistry.getBlockExplorer();
         multiAddressFactory = new MultiAddressFactory(blockExplorer);
         balanceManager = new BalanceManager(blockExplorer);
+        transactionHistoryCache = new TransactionHistoryCache();
     }
 
     public void wipe() {
         log.info("Wiping PayloadManager");
+        //Saves still queued for the wallet's metadata nodes, eg the Ethereum wallet
+        MetadataWriteQueue.flushAll();
+        if (getPayload() != null) {
+            getPayload().wipeDerivedKeys();
+        }
         walletBaseBody = null;
         password = null;
         metadataNodeFactory = null;
@@ -121,6 +136,10 @@ public class PayloadManager {
     }
 
     public void setTempPassword(String password) {
+        if (this.password != null && !this.password.equals(password) && getPayload() != null) {
+            //Password changed, drop anything derived under the old one
+            getPayload().wipeDerivedKeys();
+        }
         this.password = password;
     }
 
@@ -528,30 +547,77 @@ public class PayloadManager {
     public void updateLegacyAddress(LegacyAddress legacyAddress) throws Exception {
         log.info("Updating legacy address");
         // TODO: 02/03/2017  second password
-        boolean found = false;
+        updateLegacyAddresses(Collections.singletonList(legacyAddress));
+    }
+
+    /**
+     * Replaces old {@link LegacyAddress}es with newer ones and then syncs the wallet with the
+     * server once. Reverts all of them if the sync was unsuccessful.
+     *
+     * @param legacyAddresses The updated {@link LegacyAddress}es
+     * @throws Exception Possible if saving the Wallet fails
+     * @throws NullPointerException Thrown if any address to be updated is not found, before any
+     * is replaced
+     */
+    public void updateLegacyAddresses(List<LegacyAddress> legacyAddresses) throws Exception {
+        log.info("Updating " + legacyAddresses.size() + " legacy addresses");
 
         final List<LegacyAddress> legacyAddressList = walletBaseBody.getWalletBody().getLegacyAddressList();
-        for (int i = 0; i < legacyAddressList.size(); i++) {
-            final LegacyAddress address = legacyAddressList.get(i);
-            if (address.getAddress().equals(legacyAddress.getAddress())) {
-                // Replace object with updated version
-                walletBaseBody.getWalletBody().getLegacyAddressList().set(i, legacyAddress);
-                found = true;
-                break;
-            }
-        }
+        final List<LegacyAddress> previousAddresses = new ArrayList<>(legacyAddressList);
 
-        if (!found) {
+        try {
+            walletBaseBody.getWalletBody().replaceLegacyAddresses(legacyAddresses);
+        } catch (NoSuchAddressException e) {
             throw new NullPointerException("Legacy address not found");
         }
 
         if (!save()) {
             // Revert on sync fail
-            walletBaseBody.getWalletBody().setLegacyAddressList(legacyAddressList);
-            throw new Exception("Failed to save added Legacy Address.");
+            legacyAddressList.clear();
+            legacyAddressList.addAll(previousAddresses);
+            throw new Exception("Failed to save updated Legacy Addresses.");
+        }
+
+        updateAllBalances();
+    }
+
+    /**
+     * Sets each key on its matching legacy address, or adds it as a new one, and then syncs the
+     * wallet with the server once, rather than once per key. Keys are double encrypted in
+     * parallel if a second password is given. Reverts all changes if the sync was unsuccessful.
+     *
+     * @param keys ECKeys to import
+     * @param secondPassword Double encryption password if applicable.
+     * @return The updated or added {@link LegacyAddress} per key, in the same order
+     * @throws Exception Possible if saving the Wallet fails
+     */
+    public List<LegacyAddress> importLegacyAddressKeys(List<ECKey> keys, @Nullable String secondPassword)
+        throws Exception {
+        log.info("Importing " + keys.size() + " legacy addresses");
+
+        final List<LegacyAddress> legacyAddressList = walletBaseBody.getWalletBody().getLegacyAddressList();
+        final List<LegacyAddress> previousAddresses = new ArrayList<>(legacyAddressList);
+        final List<String> previousKeys = new ArrayList<>(legacyAddressList.size());
+        for (LegacyAddress legacyAddress : legacyAddressList) {
+            previousKeys.add(legacyAddress.getPrivateKey());
+        }
+
+        List<LegacyAddress> imported = walletBaseBody.getWalletBody()
+            .importLegacyAddressKeys(keys, secondPassword);
+
+        if (!save()) {
+            // Revert on sync fail
+            for (int i = 0; i < previousAddresses.size(); i++) {
+                previousAddresses.get(i).setPrivateKey(previousKeys.get(i));
+            }
+            legacyAddressList.clear();
+            legacyAddressList.addAll(previousAddresses);
+            throw new Exception("Failed to save imported Legacy Addresses.");
         }
 
         updateAllBalances();
+
+        return imported;
     }
 
     /**
@@ -667,7 +733,8 @@ public class PayloadManager {
                 .decrypt(legacyAddress.getPrivateKey(),
                     walletBaseBody.getWalletBody().getSharedKey(),
                     secondPassword,
-                    walletBaseBody.getWalletBody().getOptions().getPbkdf2Iterations());
+                    walletBaseBody.getWalletBody().getOptions().getPbkdf2Iterations(),
+                    walletBaseBody.getWalletBody().getDerivedKeyCache());
         }
 
         return Tools.getECKeyFromKeyAndAddress(decryptedPrivateKey, legacyAddress.getAddress());
@@ -773,6 +840,20 @@ public class PayloadManager {
     //*                                     Multi_address                                        *//
     //********************************************************************************************//
 
+    /**
+     * Local transaction history used by {@link #getAllTransactions(int, int)},
+     * {@link #getAccountTransactions(String, int, int)} and {@link #getImportedAddressesTransactions(int, int)}.
+     * Can be persisted with {@link TransactionHistoryCache#toJson()} and restored with
+     * {@link #setTransactionHistoryCache(TransactionHistoryCache)}.
+     */
+    public TransactionHistoryCache getTransactionHistoryCache() {
+        return transactionHistoryCache;
+    }
+
+    public void setTransactionHistoryCache(@Nonnull TransactionHistoryCache transactionHistoryCache) {
+        this.transactionHistoryCache = transactionHistoryCache;
+    }
+
     /**
      * Gets transaction list for all wallet accounts/addresses
      * @param limit Amount of transactions per page
@@ -802,7 +883,8 @@ public class PayloadManager {
         ArrayList<String> all = new ArrayList<>(activeXpubs);
         all.addAll(activeLegacy);
 
-        return multiAddressFactory.getAccountTransactions(all, watchOnly, activeLegacy, null, limit, offset);
+        return transactionHistoryCache.getTransactions(multiAddressFactory, all, watchOnly, activeLegacy,
+            null, limit, offset);
     }
 
     /**
@@ -824,7 +906,8 @@ public class PayloadManager {
         ArrayList<String> all = new ArrayList<>(activeXpubs);
         all.addAll(activeLegacy);
 
-        return multiAddressFactory.getAccountTransactions(all, watchOnly, null, xpub, limit, offset);
+        return transactionHistoryCache.getTransactions(multiAddressFactory, all, watchOnly, null,
+            xpub, limit, offset);
     }
 
     /**
@@ -1033,14 +1116,60 @@ public class PayloadManager {
         balanceManager.updateAllBalances(legacyAddressList, all);
     }
 
+    /**
+     * Subscription pushing live transactions into this wallet's balances, and new blocks into
+     * its transaction history. Register it with {@link SubscriptionEngine#subscribe(Subscription)}
+     * once the wallet is loaded and its transaction history restored. While the engine is
+     * disconnected it falls back to {@link #updateAllBalances()}.
+     */
+    public Subscription createSubscription() {
+
+        List<String> xpubs = new ArrayList<>();
+        if(getPayload().getHdWallets() != null) {
+            xpubs.addAll(getPayload().getHdWallets().get(0).getActiveXpubs());
+        }
+
+        Subscription subscription = new Subscription(balanceManager.getBalanceStore(), xpubs,
+            getPayload().getLegacyAddressStringList());
+        subscription.setTransactionHistoryCache(transactionHistoryCache);
+        subscription.setPoller(new Poller() {
+            @Override
+            public void poll() throws Exception {
+                updateAllBalances();
+            }
+        });
+        this.subscription = subscription;
+        return subscription;
+    }
+
     /**
      * Updates address balance as well as wallet balance.
      * This is used to immediately update balances after a successful transaction which speeds
      * up the balance the UI reflects without the need to wait for incoming websocket notification.
      * @param amount
      * @throws Exception
+     * @deprecated With a {@link #createSubscription() subscription} the websocket notification
+     * subtracts it again, use {@link #subtractAmountFromAddressBalance(String, String, BigInteger)}
      */
+    @Deprecated
     public void subtractAmountFromAddressBalance(String address, BigInteger amount) throws Exception {
         balanceManager.subtractAmountFromAddressBalance(address, amount);
     }
+
+    /**
+     * Same as {@link #subtractAmountFromAddressBalance(String, BigInteger)}, but only applies the
+     * transaction once: nothing is subtracted if the subscription already applied it from the
+     * websocket, and the websocket notification arriving later is ignored.
+     * @param txHash Hash of the transaction just sent
+     * @throws Exception
+     */
+    public void subtractAmountFromAddressBalance(String address, String txHash, BigInteger amount)
+        throws Exception {
+        Subscription subscription = this.subscription;
+        if (subscription != null && !subscription.markApplied(txHash)) {
+            log.info("Transaction {} already applied to balances", txHash);
+            return;
+        }
+        balanceManager.subtractAmountFromAddressBalance(address, amount);
+    }
 }
\ No newline at end of file
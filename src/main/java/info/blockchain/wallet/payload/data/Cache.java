@@ -6,8 +6,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import info.blockchain.wallet.util.JsonCodecs;
 
 /*
 This class is used for iOS and Web only.
@@ -44,10 +44,10 @@ public class Cache {
     }
 
     public static Cache fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, Cache.class);
+        return JsonCodecs.reader(Cache.class).readValue(json);
     }
 
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(Cache.class).writeValueAsString(this);
     }
 }
@@ -6,24 +6,26 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import info.blockchain.api.blockexplorer.BlockExplorer;
 import info.blockchain.api.blockexplorer.FilterType;
 import info.blockchain.api.data.Balance;
 import info.blockchain.api.data.UnspentOutput;
-import info.blockchain.wallet.BlockchainFramework;
+import info.blockchain.wallet.ClientRegistry;
 import info.blockchain.wallet.api.PersistentUrls;
 import info.blockchain.wallet.bip44.HDAccount;
 import info.blockchain.wallet.bip44.HDAddress;
 import info.blockchain.wallet.bip44.HDWalletFactory;
 import info.blockchain.wallet.bip44.HDWalletFactory.Language;
+import info.blockchain.wallet.crypto.DerivedKeyCache;
 import info.blockchain.wallet.exceptions.DecryptionException;
 import info.blockchain.wallet.exceptions.EncryptionException;
 import info.blockchain.wallet.exceptions.HDWalletException;
+import info.blockchain.wallet.payload.AccountDiscovery;
 import info.blockchain.wallet.payment.SpendableUnspentOutputs;
 import info.blockchain.wallet.util.DoubleEncryptionFactory;
+import info.blockchain.wallet.util.JsonCodecs;
 import info.blockchain.wallet.util.PrivateKeyFactory;
 import org.apache.commons.codec.DecoderException;
 import org.bitcoinj.core.ECKey;
@@ -73,6 +75,17 @@ public class HDWallet {
     public void decryptHDWallet(@Nullable String validatedSecondPassword, String sharedKey, int iterations)
         throws IOException, DecryptionException, InvalidCipherTextException, DecoderException,
         MnemonicLengthException, MnemonicWordException, MnemonicChecksumException, HDWalletException {
+        decryptHDWallet(validatedSecondPassword, sharedKey, iterations, null);
+    }
+
+    /**
+     * @param cache The wallet's cache of second password derivations, see
+     * {@link Wallet#getDerivedKeyCache()}
+     */
+    public void decryptHDWallet(@Nullable String validatedSecondPassword, String sharedKey, int iterations,
+        @Nullable DerivedKeyCache cache)
+        throws IOException, DecryptionException, InvalidCipherTextException, DecoderException,
+        MnemonicLengthException, MnemonicWordException, MnemonicChecksumException, HDWalletException {
 
         if(HD == null) {
             instantiateBip44Wallet();
@@ -84,7 +97,7 @@ public class HDWallet {
 
             String decryptedSeedHex = DoubleEncryptionFactory.decrypt(
                 encryptedSeedHex, sharedKey, validatedSecondPassword,
-                iterations);
+                iterations, cache);
 
             HD = HDWalletFactory
                 .restoreWallet(PersistentUrls.getInstance().getCurrentNetworkParams(),
@@ -222,21 +235,14 @@ public class HDWallet {
         throws IOException, DecryptionException, MnemonicWordException, DecoderException,
         MnemonicChecksumException, MnemonicLengthException, InvalidCipherTextException, HDWalletException {
 
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
-            .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
-            .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
-            .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
-            .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
-
-        HDWallet hdWallet = mapper.readValue(json, HDWallet.class);
+        HDWallet hdWallet = JsonCodecs.fieldReader(HDWallet.class).readValue(json);
         hdWallet.instantiateBip44Wallet();
 
         return hdWallet;
     }
 
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(HDWallet.class).writeValueAsString(this);
     }
 
     /**
@@ -323,26 +329,22 @@ public class HDWallet {
         String defaultAccountName, int walletSize) throws Exception {
 
         //Start with initial wallet size of 1.
-        //After wallet is recovered we'll check how many accounts to restore
+        //Further accounts are derived on the same wallet instead of restoring it again
         info.blockchain.wallet.bip44.HDWallet bip44Wallet = HDWalletFactory
             .restoreWallet(PersistentUrls.getInstance().getCurrentNetworkParams(), Language.US,
                 mnemonic, passphrase, DEFAULT_NEW_WALLET_SIZE);
 
-        BlockExplorer blockExplorer = new BlockExplorer(
-            BlockchainFramework.getRetrofitExplorerInstance(),
-            BlockchainFramework.getApiCode());
-
         HDWallet hdWalletBody = new HDWallet();
         hdWalletBody.setAccounts(new ArrayList<Account>());
 
         if(walletSize <= 0) {
-            walletSize = getDeterminedSize(1, 5, 0, blockExplorer, bip44Wallet);
+            new AccountDiscovery(ClientRegistry.getBlockExplorer()).discover(bip44Wallet);
+        } else {
+            while(bip44Wallet.getAccounts().size() < walletSize) {
+                bip44Wallet.addAccount();
+            }
         }
 
-        bip44Wallet = HDWalletFactory
-            .restoreWallet(PersistentUrls.getInstance().getCurrentNetworkParams(), Language.US,
-                mnemonic, passphrase, walletSize);
-
         //Set accounts
         int accountNumber = 1;
         for(HDAccount account : bip44Wallet.getAccounts()) {
@@ -361,47 +363,11 @@ public class HDWallet {
         hdWalletBody.setPassphrase(bip44Wallet.getPassphrase());
         hdWalletBody.setMnemonicVerified(false);
         hdWalletBody.setDefaultAccountIdx(0);
+        hdWalletBody.HD = bip44Wallet;
 
         return hdWalletBody;
     }
 
-    private static int getDeterminedSize(int walletSize, int trySize, int currentGap, BlockExplorer blockExplorer, info.blockchain.wallet.bip44.HDWallet bip44Wallet) throws Exception {
-
-        LinkedList<String> xpubs = new LinkedList<>();
-
-        for(int i = 0; i < trySize; i++) {
-            HDAccount account = bip44Wallet.addAccount();
-            xpubs.add(account.getXpub());
-        }
-
-        Response<HashMap<String, Balance>> exe = blockExplorer
-            .getBalance(xpubs, FilterType.RemoveUnspendable).execute();
-
-        if(!exe.isSuccessful()) {
-            throw new Exception(exe.code() + " " + exe.errorBody().string());
-        }
-
-        HashMap<String, Balance> map = exe.body();
-
-        final int lookAheadTotal = 10;
-        for (String xpub : xpubs) {
-
-            //If account has txs
-            if(map.get(xpub).getTxCount() > 0L) {
-                walletSize++;
-                currentGap = 0;
-            } else {
-                currentGap++;
-            }
-
-            if(currentGap >= lookAheadTotal) {
-                return walletSize;
-            }
-        }
-
-        return getDeterminedSize(walletSize, trySize*2, currentGap, blockExplorer, bip44Wallet);
-    }
-
     public static boolean hasTransactions(BlockExplorer blockExplorer, String xpub)
         throws Exception {
 
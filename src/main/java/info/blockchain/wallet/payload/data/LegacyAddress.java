@@ -5,12 +5,12 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.subgraph.orchid.encoders.Hex;
 
 import info.blockchain.wallet.BlockchainFramework;
 import info.blockchain.wallet.api.PersistentUrls;
 import info.blockchain.wallet.api.WalletApi;
+import info.blockchain.wallet.util.JsonCodecs;
 import info.blockchain.wallet.util.Util;
 
 import org.bitcoinj.core.Base58;
@@ -137,11 +137,11 @@ public class LegacyAddress {
     }
 
     public static LegacyAddress fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, LegacyAddress.class);
+        return JsonCodecs.reader(LegacyAddress.class).readValue(json);
     }
 
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(LegacyAddress.class).writeValueAsString(this);
     }
 
     public static List<LegacyAddress> filterAddress(int filter, @Nonnull List<LegacyAddress> keys) {
@@ -7,8 +7,8 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import info.blockchain.wallet.api.PersistentUrls;
+import info.blockchain.wallet.crypto.DerivedKeyCache;
 import info.blockchain.wallet.exceptions.ApiException;
 import info.blockchain.wallet.exceptions.DecryptionException;
 import info.blockchain.wallet.exceptions.EncryptionException;
@@ -17,6 +17,7 @@ import info.blockchain.wallet.exceptions.NoSuchAddressException;
 import info.blockchain.wallet.multiaddress.MultiAddressFactory;
 import info.blockchain.wallet.util.DoubleEncryptionFactory;
 import info.blockchain.wallet.util.FormatsUtil;
+import info.blockchain.wallet.util.JsonCodecs;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
@@ -84,6 +85,9 @@ public class Wallet {
     @JsonProperty("address_book")
     private List<AddressBook> addressBook;
 
+    //Second password derivations, for this wallet only
+    private final DerivedKeyCache derivedKeyCache = new DerivedKeyCache();
+
     public Wallet() {
         guid = UUID.randomUUID().toString();
         sharedKey = UUID.randomUUID().toString();
@@ -159,20 +163,38 @@ public class Wallet {
         return addressBook;
     }
 
+    /**
+     * @return Cache of keys and hashes derived from the second password, wiped whenever the
+     * shared key or second password changes
+     */
+    public DerivedKeyCache getDerivedKeyCache() {
+        return derivedKeyCache;
+    }
+
+    /**
+     * Zeroes the keys and hashes derived from the second password, eg on logout.
+     */
+    public void wipeDerivedKeys() {
+        derivedKeyCache.wipe();
+    }
+
     public void setGuid(String guid) {
         this.guid = guid;
     }
 
     public void setSharedKey(String sharedKey) {
         this.sharedKey = sharedKey;
+        derivedKeyCache.wipe();
     }
 
     public void setDoubleEncryption(boolean doubleEncryption) {
         this.doubleEncryption = doubleEncryption;
+        derivedKeyCache.wipe();
     }
 
     public void setDpasswordhash(String dpasswordhash) {
         this.dpasswordhash = dpasswordhash;
+        derivedKeyCache.wipe();
     }
 
     public void setMetadataHDNode(String metadataHDNode) {
@@ -218,14 +240,7 @@ public class Wallet {
     public static Wallet fromJson(String json)
         throws IOException, MnemonicLengthException, MnemonicWordException, MnemonicChecksumException,
         DecoderException, InvalidCipherTextException, DecryptionException, HDWalletException {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
-            .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
-            .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
-            .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
-            .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
-
-        Wallet wallet = mapper.readValue(json, Wallet.class);
+        Wallet wallet = JsonCodecs.fieldReader(Wallet.class).readValue(json);
 
         if(wallet.getHdWallets() != null) {
             //V3 Wallets only
@@ -244,7 +259,7 @@ public class Wallet {
     }
 
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(Wallet.class).writeValueAsString(this);
     }
 
     public void addHDWallet(HDWallet hdWallet) {
@@ -311,7 +326,8 @@ public class Wallet {
                 getDpasswordhash(),
                 getSharedKey(),
                 secondPassword,
-                getOptions().getPbkdf2Iterations());
+                getOptions().getPbkdf2Iterations(),
+                derivedKeyCache);
         } else if(!isDoubleEncryption() && secondPassword != null) {
             throw new DecryptionException("Double encryption password specified on non double encrypted wallet.");
         }
@@ -336,7 +352,8 @@ public class Wallet {
                     hdWalletBody.getSeedHex(),
                     getSharedKey(),
                     secondPassword,
-                    getOptions().getPbkdf2Iterations());
+                    getOptions().getPbkdf2Iterations(),
+                    derivedKeyCache);
                 hdWalletBody.setSeedHex(doubleEncryptedSeedHex);
 
                 //Double encrypt private keys
@@ -346,7 +363,8 @@ public class Wallet {
                         account.getXpriv(),
                         getSharedKey(),
                         secondPassword,
-                        getOptions().getPbkdf2Iterations());
+                        getOptions().getPbkdf2Iterations(),
+                        derivedKeyCache);
 
                     account.setXpriv(encryptedXPriv);
 
@@ -368,7 +386,8 @@ public class Wallet {
             String encryptedKey = DoubleEncryptionFactory.encrypt(unencryptedKey,
                 getSharedKey(),
                 secondPassword,
-                getOptions().getPbkdf2Iterations());
+                getOptions().getPbkdf2Iterations(),
+                derivedKeyCache);
 
             addressBody.setPrivateKey(encryptedKey);
 
@@ -391,7 +410,8 @@ public class Wallet {
             String encryptedKey = DoubleEncryptionFactory.encrypt(unencryptedKey,
                 getSharedKey(),
                 secondPassword,
-                getOptions().getPbkdf2Iterations());
+                getOptions().getPbkdf2Iterations(),
+                derivedKeyCache);
 
             addressBody.setPrivateKey(encryptedKey);
 
@@ -409,7 +429,8 @@ public class Wallet {
         validateSecondPassword(secondPassword);
 
         HDWallet hdWallet = hdWallets.get(hdWalletIndex);
-        hdWallet.decryptHDWallet(secondPassword, sharedKey, getOptions().getPbkdf2Iterations());
+        hdWallet.decryptHDWallet(secondPassword, sharedKey, getOptions().getPbkdf2Iterations(),
+            derivedKeyCache);
     }
 
     private void encryptAccount(Account account, String secondPassword)
@@ -420,7 +441,8 @@ public class Wallet {
                 account.getXpriv(),
                 sharedKey,
                 secondPassword,
-                getOptions().getPbkdf2Iterations());
+                getOptions().getPbkdf2Iterations(),
+                derivedKeyCache);
             account.setXpriv(encryptedPrivateKey);
         }
     }
@@ -471,7 +493,8 @@ public class Wallet {
             String encrypted2 = DoubleEncryptionFactory.encrypt(encryptedKey,
                 getSharedKey(),
                 secondPassword != null ? secondPassword : null,
-                getOptions().getPbkdf2Iterations());
+                getOptions().getPbkdf2Iterations(),
+                derivedKeyCache);
 
             matchingAddressBody.setPrivateKey(encrypted2);
 
@@ -482,6 +505,87 @@ public class Wallet {
         return matchingAddressBody;
     }
 
+    /**
+     * Sets each key on the legacy address it belongs to, or adds a new legacy address for it.
+     * Lookups go through an address index built once for the batch, and with a second password
+     * the private keys are double encrypted in parallel.
+     *
+     * @return The updated or added legacy address per key, in the same order
+     */
+    public List<LegacyAddress> importLegacyAddressKeys(List<ECKey> ecKeys, @Nullable String secondPassword)
+        throws Exception {
+
+        validateSecondPassword(secondPassword);
+
+        List<String> privateKeys = new ArrayList<>(ecKeys.size());
+        for (ECKey key : ecKeys) {
+            privateKeys.add(Base58.encode(key.getPrivKeyBytes()));
+        }
+        if (secondPassword != null) {
+            privateKeys = DoubleEncryptionFactory.encrypt(privateKeys,
+                getSharedKey(),
+                secondPassword,
+                getOptions().getPbkdf2Iterations(),
+                derivedKeyCache);
+        }
+
+        Map<String, Integer> index = getLegacyAddressIndex();
+        List<LegacyAddress> imported = new ArrayList<>(ecKeys.size());
+        for (int i = 0; i < ecKeys.size(); i++) {
+            ECKey key = ecKeys.get(i);
+            String address = key.toAddress(PersistentUrls.getInstance().getCurrentNetworkParams()).toString();
+
+            LegacyAddress addressBody;
+            Integer position = index.get(address);
+            if (position != null) {
+                addressBody = keys.get(position);
+            } else {
+                addressBody = LegacyAddress.fromECKey(key);
+                keys.add(addressBody);
+                index.put(address, keys.size() - 1);
+            }
+            addressBody.setPrivateKey(privateKeys.get(i));
+            imported.add(addressBody);
+        }
+
+        return imported;
+    }
+
+    /**
+     * Replaces the legacy addresses matching the address of each of the given ones.
+     *
+     * @throws NoSuchAddressException If any of them is not in the wallet, before replacing any
+     */
+    public void replaceLegacyAddresses(List<LegacyAddress> legacyAddresses) throws NoSuchAddressException {
+
+        Map<String, Integer> index = getLegacyAddressIndex();
+
+        int[] positions = new int[legacyAddresses.size()];
+        for (int i = 0; i < legacyAddresses.size(); i++) {
+            Integer position = index.get(legacyAddresses.get(i).getAddress());
+            if (position == null) {
+                throw new NoSuchAddressException("Legacy address not found");
+            }
+            positions[i] = position;
+        }
+
+        for (int i = 0; i < legacyAddresses.size(); i++) {
+            keys.set(positions[i], legacyAddresses.get(i));
+        }
+    }
+
+    /**
+     * @return Position of each legacy address in {@link #getLegacyAddressList()}, by address. The
+     * last one wins if an address is listed twice.
+     */
+    private Map<String, Integer> getLegacyAddressIndex() {
+        Map<String, Integer> index = new HashMap<>(keys.size() * 2);
+        for (int i = 0; i < keys.size(); i++) {
+            index.put(keys.get(i).getAddress(), i);
+        }
+        return index;
+    }
+
     public List<String> getLegacyAddressStringList() {
 
         List<String> addrs = new ArrayList<>();
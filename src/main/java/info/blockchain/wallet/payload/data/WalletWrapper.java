@@ -6,12 +6,12 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import info.blockchain.wallet.crypto.AESUtil;
 import info.blockchain.wallet.exceptions.DecryptionException;
 import info.blockchain.wallet.exceptions.HDWalletException;
 import info.blockchain.wallet.exceptions.UnsupportedVersionException;
 import info.blockchain.wallet.util.FormatsUtil;
+import info.blockchain.wallet.util.JsonCodecs;
 import java.io.IOException;
 import org.apache.commons.codec.DecoderException;
 import org.bitcoinj.crypto.MnemonicException.MnemonicChecksumException;
@@ -65,11 +65,11 @@ public class WalletWrapper {
     }
 
     public static WalletWrapper fromJson(String json) throws IOException {
-        return new ObjectMapper().readValue(json, WalletWrapper.class);
+        return JsonCodecs.reader(WalletWrapper.class).readValue(json);
     }
 
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return JsonCodecs.writer(WalletWrapper.class).writeValueAsString(this);
     }
 
     private void validateVersion() throws UnsupportedVersionException {
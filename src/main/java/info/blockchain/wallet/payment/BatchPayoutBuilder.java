@@ -0,0 +1,298 @@
+package info.blockchain.wallet.payment;
+
+import info.blockchain.api.data.UnspentOutput;
+import info.blockchain.wallet.util.Tools;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.tuple.Pair;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.AddressFormatException;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.script.ScriptBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds payouts to many receivers, split over as many transactions as the size and fee
+ * ceilings require.
+ *
+ * Each receiving address is validated once per builder, however often it appears in this or
+ * later payouts. Coins are spent
+ * largest first and every transaction gets its own change output unless the change would be
+ * dust. Inputs and outputs are put in BIP69 order before they are added, so transactions
+ * aren't rebuilt afterwards.
+ *
+ * Unlike {@link PaymentTx#makeTransaction} this takes no lock. Instances hold configuration
+ * and a concurrent address cache, and can be shared between threads.
+ */
+public class BatchPayoutBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchPayoutBuilder.class);
+
+    //Larger transactions are non-standard and won't be relayed
+    public static final int DEFAULT_MAX_TRANSACTION_SIZE = 100000;
+
+    static final int MAX_CACHED_SCRIPTS = 100000;
+
+    private final NetworkParameters networkParams;
+    private final long feePerKb;
+    private final int maxTransactionSize;
+    private final long maxTransactionFee;
+
+    //Output scripts of validated addresses
+    private final ConcurrentHashMap<String, byte[]> scripts = new ConcurrentHashMap<>();
+
+    public BatchPayoutBuilder(@Nonnull NetworkParameters networkParams, @Nonnull BigInteger feePerKb) {
+        this(networkParams, feePerKb, DEFAULT_MAX_TRANSACTION_SIZE, null);
+    }
+
+    /**
+     * @param maxTransactionSize Estimated size ceiling per transaction in bytes
+     * @param maxTransactionFee  Fee ceiling per transaction, or null for none
+     */
+    public BatchPayoutBuilder(@Nonnull NetworkParameters networkParams, @Nonnull BigInteger feePerKb,
+        int maxTransactionSize, @Nullable BigInteger maxTransactionFee) {
+        this.networkParams = networkParams;
+        this.feePerKb = feePerKb.longValue();
+        this.maxTransactionSize = maxTransactionSize;
+        this.maxTransactionFee = maxTransactionFee != null ? maxTransactionFee.longValue() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Receivers are paid in the order given. Amounts below dust are skipped, like
+     * {@link PaymentTx#makeTransaction} does.
+     *
+     * @param receivers     Receiving address and amount pairs, addresses may repeat
+     * @param unspentCoins  Coins to spend from, the list isn't modified
+     * @param changeAddress Change address used by every transaction
+     * @return Unsigned transactions
+     * @throws InsufficientMoneyException If the coins don't cover every receiver
+     * @throws IllegalArgumentException   If a single receiver can't fit under the ceilings
+     */
+    public List<Payout> build(@Nonnull Iterable<Pair<String, BigInteger>> receivers,
+        @Nonnull List<UnspentOutput> unspentCoins,
+        @Nonnull String changeAddress)
+        throws InsufficientMoneyException, AddressFormatException {
+
+        byte[] changeScript = outputScript(changeAddress);
+        int changeSize = FeeEstimator.outputSize(changeScript);
+        List<TransactionOutput> outputs = createOutputs(receivers);
+        List<UnspentOutput> coins = spendableCoins(unspentCoins);
+
+        log.info("Building payout to {} receivers from {} coins", outputs.size(), coins.size());
+
+        List<Payout> payouts = new ArrayList<>();
+        int nextOutput = 0;
+        int nextCoin = 0;
+
+        while (nextOutput < outputs.size()) {
+
+            int firstOutput = nextOutput;
+            int firstCoin = nextCoin;
+            long inputValue = 0L;
+            long outputValue = 0L;
+            int outputBytes = 0;
+
+            while (nextOutput < outputs.size()) {
+
+                TransactionOutput output = outputs.get(nextOutput);
+                long value = output.getValue().getValue();
+                int outputCount = nextOutput - firstOutput + 1;
+                int receiverBytes = outputBytes + FeeEstimator.outputSize(output.getScriptBytes());
+
+                //Coins needed to pay this receiver as well, assuming change
+                int coinCount = nextCoin - firstCoin;
+                long collected = inputValue;
+                while (firstCoin + coinCount < coins.size()
+                    && collected < outputValue + value + fee(coinCount, outputCount + 1, receiverBytes + changeSize)) {
+                    collected += coins.get(firstCoin + coinCount).getValue().longValue();
+                    coinCount++;
+                }
+
+                long fee = fee(coinCount, outputCount + 1, receiverBytes + changeSize);
+                if (size(coinCount, outputCount + 1, receiverBytes + changeSize) > maxTransactionSize
+                    || fee > maxTransactionFee) {
+                    if (outputCount == 1) {
+                        throw new IllegalArgumentException("Receiver " + nextOutput
+                            + " doesn't fit in a transaction under the size and fee ceiling");
+                    }
+                    //Continue in a new transaction
+                    break;
+                }
+
+                long needed = outputValue + value + fee(coinCount, outputCount, receiverBytes);
+                if (collected < needed) {
+                    throw new InsufficientMoneyException(BigInteger.valueOf(needed - collected));
+                }
+
+                inputValue = collected;
+                outputValue += value;
+                outputBytes = receiverBytes;
+                nextCoin = firstCoin + coinCount;
+                nextOutput++;
+            }
+
+            payouts.add(createPayout(coins.subList(firstCoin, nextCoin),
+                outputs.subList(firstOutput, nextOutput), inputValue, outputValue, changeScript));
+        }
+
+        return payouts;
+    }
+
+    private List<TransactionOutput> createOutputs(Iterable<Pair<String, BigInteger>> receivers)
+        throws AddressFormatException {
+
+        List<TransactionOutput> outputs = new ArrayList<>();
+
+        for (Pair<String, BigInteger> receiver : receivers) {
+
+            BigInteger amount = receiver.getRight();
+
+            //Don't allow less than dust value
+            if (amount == null || amount.compareTo(Payment.DUST) < 0) {
+                log.warn("Skipping receiver {} with amount below dust", receiver.getLeft());
+                continue;
+            }
+
+            byte[] script = scripts.get(receiver.getLeft());
+            if (script == null) {
+                script = outputScript(receiver.getLeft());
+                if (scripts.size() < MAX_CACHED_SCRIPTS) {
+                    scripts.put(receiver.getLeft(), script);
+                }
+            }
+
+            outputs.add(new TransactionOutput(networkParams, null, Coin.valueOf(amount.longValue()), script));
+        }
+
+        return outputs;
+    }
+
+    /**
+     * @return Coins worth spending, largest first
+     */
+    private List<UnspentOutput> spendableCoins(List<UnspentOutput> unspentCoins) {
+
+        long inputCost = Fees.inputFee(feePerKb);
+
+        List<UnspentOutput> coins = new ArrayList<>(unspentCoins.size());
+        for (UnspentOutput coin : unspentCoins) {
+            if (coin.getValue().longValue() >= inputCost) {
+                coins.add(coin);
+            }
+        }
+
+        Collections.sort(coins, new Comparator<UnspentOutput>() {
+            @Override
+            public int compare(UnspentOutput o1, UnspentOutput o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        return coins;
+    }
+
+    private Payout createPayout(List<UnspentOutput> coins, List<TransactionOutput> receiverOutputs,
+        long inputValue, long outputValue, byte[] changeScript) {
+
+        List<TransactionInput> inputs = new ArrayList<>(coins.size());
+        for (UnspentOutput coin : coins) {
+            inputs.add(PaymentTx.createInput(networkParams, coin));
+        }
+
+        List<TransactionOutput> outputs = new ArrayList<>(receiverOutputs.size() + 1);
+        outputs.addAll(receiverOutputs);
+
+        int outputBytes = FeeEstimator.outputSize(changeScript);
+        for (TransactionOutput output : receiverOutputs) {
+            outputBytes += FeeEstimator.outputSize(output.getScriptBytes());
+        }
+        long fee = fee(inputs.size(), outputs.size() + 1, outputBytes);
+        long change = inputValue - outputValue - fee;
+
+        //Consume dust if needed
+        if (change > Payment.DUST.longValue()) {
+            outputs.add(new TransactionOutput(networkParams, null, Coin.valueOf(change), changeScript));
+        } else {
+            fee = inputValue - outputValue;
+        }
+
+        //Bip69
+        Collections.sort(inputs, Tools.BIP69_INPUT_ORDER);
+        Collections.sort(outputs, Tools.BIP69_OUTPUT_ORDER);
+
+        Transaction transaction = new Transaction(networkParams);
+        for (TransactionInput input : inputs) {
+            transaction.addInput(input);
+        }
+        for (TransactionOutput output : outputs) {
+            transaction.addOutput(output);
+        }
+
+        return new Payout(transaction, new ArrayList<>(coins), receiverOutputs.size(), BigInteger.valueOf(fee));
+    }
+
+    /**
+     * Inputs are sized as compressed P2PKH spends, outputs by their script.
+     */
+    private static int size(int inputCount, int outputCount, int outputBytes) {
+        return FeeEstimator.size(inputCount, inputCount * FeeEstimator.P2PKH_INPUT_SIZE, outputCount, outputBytes);
+    }
+
+    private long fee(int inputCount, int outputCount, int outputBytes) {
+        return FeeEstimator.feeForSize(feePerKb, size(inputCount, outputCount, outputBytes));
+    }
+
+    private byte[] outputScript(String address) throws AddressFormatException {
+        return ScriptBuilder.createOutputScript(Address.fromBase58(networkParams, address)).getProgram();
+    }
+
+    /**
+     * One transaction of a payout.
+     */
+    public static class Payout {
+
+        private final Transaction transaction;
+        private final List<UnspentOutput> spentCoins;
+        private final int receiverCount;
+        private final BigInteger absoluteFee;
+
+        Payout(Transaction transaction, List<UnspentOutput> spentCoins, int receiverCount, BigInteger absoluteFee) {
+            this.transaction = transaction;
+            this.spentCoins = spentCoins;
+            this.receiverCount = receiverCount;
+            this.absoluteFee = absoluteFee;
+        }
+
+        public Transaction getTransaction() {
+            return transaction;
+        }
+
+        /**
+         * @return Coins spent, needed to find the signing keys
+         */
+        public List<UnspentOutput> getSpentCoins() {
+            return spentCoins;
+        }
+
+        /**
+         * @return Receivers paid by this transaction, excluding change
+         */
+        public int getReceiverCount() {
+            return receiverCount;
+        }
+
+        public BigInteger getAbsoluteFee() {
+            return absoluteFee;
+        }
+    }
+}
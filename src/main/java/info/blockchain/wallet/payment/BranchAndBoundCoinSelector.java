@@ -0,0 +1,121 @@
+package info.blockchain.wallet.payment;
+
+import java.util.Arrays;
+
+/**
+ * Searches for a set of coins that pays without a change output.
+ *
+ * A match leaves at most {@link Payment#DUST} over the payment and its fee, which is consumed
+ * into the fee. The depth first search includes the largest coins first and cuts branches that
+ * overshoot or can no longer reach the target. Of the matches found within
+ * {@link #DEFAULT_MAX_TRIES} steps the one consuming the least is kept.
+ *
+ * Without a match the fallback selector is used, {@link KnapsackCoinSelector} by default.
+ */
+public class BranchAndBoundCoinSelector implements CoinSelector {
+
+    public static final int DEFAULT_MAX_TRIES = 100000;
+
+    private final CoinSelector fallback;
+    private final int maxTries;
+
+    public BranchAndBoundCoinSelector() {
+        this(new KnapsackCoinSelector(), DEFAULT_MAX_TRIES);
+    }
+
+    public BranchAndBoundCoinSelector(CoinSelector fallback, int maxTries) {
+        this.fallback = fallback;
+        this.maxTries = maxTries;
+    }
+
+    @Override
+    public CoinSelection select(long[] values, long paymentAmount, long feePerKb) {
+        return select(values, paymentAmount, new FeeEstimator(feePerKb));
+    }
+
+    @Override
+    public CoinSelection select(long[] values, long paymentAmount, FeeEstimator feeEstimator) {
+
+        int[] match = search(values, paymentAmount, feeEstimator);
+        if (match == null) {
+            return fallback.select(values, paymentAmount, feeEstimator);
+        }
+
+        long fee = feeEstimator.paymentFee(match.length, false);
+        long collectedAmount = 0L;
+        for (int index : match) {
+            collectedAmount += values[index];
+        }
+        return new CoinSelection(match, fee, paymentAmount + fee - collectedAmount);
+    }
+
+    /**
+     * @return Indexes of the best changeless match, or null
+     */
+    int[] search(long[] values, long paymentAmount, FeeEstimator feeEstimator) {
+
+        int count = values.length;
+        long dust = Payment.DUST.longValue();
+
+        //Sum of the values from each index onwards
+        long[] remaining = new long[count + 1];
+        for (int i = count - 1; i >= 0; i--) {
+            remaining[i] = remaining[i + 1] + values[i];
+        }
+
+        int[] selected = new int[count];
+        int depth = 0;
+        long selectedAmount = 0L;
+        int next = 0;
+
+        int[] best = null;
+        long bestExcess = Long.MAX_VALUE;
+
+        for (int tries = 0; tries < maxTries; tries++) {
+
+            boolean backtrack;
+            long excess = selectedAmount - paymentAmount - feeEstimator.paymentFee(depth, false);
+
+            if (depth == 0) {
+                backtrack = next >= count;
+            } else if (excess > dust) {
+                //Overshoot - more coins only add to it
+                backtrack = true;
+            } else if (excess >= 0) {
+                if (excess < bestExcess) {
+                    best = Arrays.copyOf(selected, depth);
+                    bestExcess = excess;
+                }
+                if (excess == 0) {
+                    break;
+                }
+                backtrack = true;
+            } else {
+                //Undershoot - give up on this branch if the remaining coins can't reach the target
+                backtrack = next >= count || selectedAmount + remaining[next]
+                    < paymentAmount + feeEstimator.paymentFee(depth + 1, false);
+            }
+
+            if (backtrack) {
+                if (depth == 0) {
+                    //Search space exhausted
+                    break;
+                }
+                //Exclude the last selected coin and continue with the next one
+                int last = selected[--depth];
+                selectedAmount -= values[last];
+                next = last + 1;
+                //Excluding a coin and including an equal one is a branch already searched
+                while (next < count && values[next] == values[last]) {
+                    next++;
+                }
+            } else {
+                selected[depth++] = next;
+                selectedAmount += values[next];
+                next++;
+            }
+        }
+
+        return best;
+    }
+}
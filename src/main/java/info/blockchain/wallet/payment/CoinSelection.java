@@ -0,0 +1,61 @@
+package info.blockchain.wallet.payment;
+
+/**
+ * Result of a {@link CoinSelector}.
+ */
+public class CoinSelection {
+
+    private final int[] indexes;
+    private final long absoluteFee;
+    private final long consumedAmount;
+
+    /**
+     * @param indexes        Indexes of the selected coins in the values passed to the selector
+     * @param absoluteFee    Fee in satoshi
+     * @param consumedAmount Dust added to the fee instead of being sent back as change, see
+     *                       {@link SpendableUnspentOutputs#getConsumedAmount()}
+     */
+    public CoinSelection(int[] indexes, long absoluteFee, long consumedAmount) {
+        this.indexes = indexes;
+        this.absoluteFee = absoluteFee;
+        this.consumedAmount = consumedAmount;
+    }
+
+    /**
+     * Selects the first coinCount coins.
+     */
+    static CoinSelection firstCoins(int coinCount, long absoluteFee, long consumedAmount) {
+        int[] indexes = new int[coinCount];
+        for (int i = 0; i < coinCount; i++) {
+            indexes[i] = i;
+        }
+        return new CoinSelection(indexes, absoluteFee, consumedAmount);
+    }
+
+    public int[] getIndexes() {
+        return indexes;
+    }
+
+    public int getCoinCount() {
+        return indexes.length;
+    }
+
+    public long getAbsoluteFee() {
+        return absoluteFee;
+    }
+
+    public long getConsumedAmount() {
+        return consumedAmount;
+    }
+
+    /**
+     * @return Sum of the selected values
+     */
+    public long getSelectedAmount(long[] values) {
+        long amount = 0L;
+        for (int index : indexes) {
+            amount += values[index];
+        }
+        return amount;
+    }
+}
@@ -0,0 +1,26 @@
+package info.blockchain.wallet.payment;
+
+/**
+ * Strategy for picking the coins that fund a payment.
+ *
+ * Selectors work on plain coin values so they can run over large unspent sets without
+ * touching {@link info.blockchain.api.data.UnspentOutput} objects. Values are spendable,
+ * worth spending at the given fee and sorted in descending order.
+ */
+public interface CoinSelector {
+
+    /**
+     * @param values        Coin values in satoshi, descending
+     * @param paymentAmount Amount to send in satoshi, excluding fee
+     * @param feePerKb      Fee per kb in satoshi, for compressed P2PKH inputs and outputs
+     * @return Selected coins. If the coins can't cover the payment every coin is selected,
+     * so the shortfall surfaces when building the transaction.
+     */
+    CoinSelection select(long[] values, long paymentAmount, long feePerKb);
+
+    /**
+     * @param feeEstimator Fees of the payment, eg pricing the receiver's script
+     * @see #select(long[], long, long)
+     */
+    CoinSelection select(long[] values, long paymentAmount, FeeEstimator feeEstimator);
+}
@@ -1,9 +1,8 @@
 package info.blockchain.wallet.payment;
 
-import info.blockchain.api.blockexplorer.BlockExplorer;
 import info.blockchain.api.data.UnspentOutput;
 import info.blockchain.api.data.UnspentOutputs;
-import info.blockchain.wallet.BlockchainFramework;
+import info.blockchain.wallet.ClientRegistry;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.bitcoinj.script.Script;
@@ -25,11 +24,14 @@ class Coins {
 
     public static Call<UnspentOutputs> getUnspentCoins(List<String> addresses) throws IOException {
         log.info("Fetching unspent coins");
-        BlockExplorer blockExplorer = new BlockExplorer(BlockchainFramework.getRetrofitExplorerInstance(), BlockchainFramework.getApiCode());
-        return blockExplorer.getUnspentOutputs(addresses);
+        return ClientRegistry.getBlockExplorer().getUnspentOutputs(addresses);
     }
 
     public static Pair<BigInteger, BigInteger> getSweepableCoins(UnspentOutputs coins, BigInteger feePerKb){
+        return getSweepableCoins(coins, new FeeEstimator(feePerKb.longValue()));
+    }
+
+    public static Pair<BigInteger, BigInteger> getSweepableCoins(UnspentOutputs coins, FeeEstimator feeEstimator){
 
         BigInteger sweepBalance = BigInteger.ZERO;
         BigInteger sweepFee;
@@ -40,23 +42,23 @@ class Coins {
 
         ArrayList<UnspentOutput> usableCoins = new ArrayList<UnspentOutput>();
 
-        double inputCost = inputCost(feePerKb);
+        long inputCost = feeEstimator.inputFee();
 
         for (UnspentOutput output : unspentOutputs) {
 
             //Filter usable coins
-            if (output.getValue().doubleValue() >= inputCost) {
+            if (output.getValue().longValue() >= inputCost) {
                 usableCoins.add(output);
                 sweepBalance = sweepBalance.add(output.getValue());
             }
         }
 
         //All inputs, 1 output = no change. (Correct way)
-        //sweepFee = Fees.estimatedFee(usableCoins.size(), 1, feePerKb);
+        //sweepFee = feeEstimator.paymentFee(usableCoins.size(), false);
 
         //Assume 2 outputs to line up with web. Not 100% correct but acceptable to
         //keep values across platforms constant.
-        sweepFee = Fees.estimatedFee(usableCoins.size(), 2, feePerKb);
+        sweepFee = BigInteger.valueOf(feeEstimator.paymentFee(usableCoins.size(), true));
 
         sweepBalance = sweepBalance.subtract(sweepFee);
 
@@ -67,79 +69,75 @@ class Coins {
     }
 
     public static SpendableUnspentOutputs getMinimumCoinsForPayment(UnspentOutputs coins, BigInteger paymentAmount, BigInteger feePerKb) {
+        return getMinimumCoinsForPayment(coins, paymentAmount, feePerKb, new GreedyCoinSelector());
+    }
 
-        log.info("Select the minimum number of outputs necessary for payment");
-        List<UnspentOutput> unspentOutputs = coins.getUnspentOutputs();
-        List<UnspentOutput> spendWorthyList = new ArrayList<>();
+    public static SpendableUnspentOutputs getMinimumCoinsForPayment(UnspentOutputs coins, BigInteger paymentAmount, BigInteger feePerKb,
+        CoinSelector coinSelector) {
+        return getMinimumCoinsForPayment(coins, paymentAmount, new FeeEstimator(feePerKb.longValue()), coinSelector);
+    }
 
-        // Descending order - Select the minimum number of outputs necessary
-        Collections.sort(unspentOutputs, new UnspentOutputAmountComparator());
+    public static SpendableUnspentOutputs getMinimumCoinsForPayment(UnspentOutputs coins, BigInteger paymentAmount, FeeEstimator feeEstimator,
+        CoinSelector coinSelector) {
 
-        BigInteger collectedAmount = BigInteger.ZERO;
-        BigInteger consumedAmount = BigInteger.ZERO;
+        log.info("Select the outputs necessary for payment");
+        List<UnspentOutput> unspentOutputs = coins.getUnspentOutputs();
 
-        double inputCost = inputCost(feePerKb);
+        // Descending order - Selectors expect the largest coins first
+        Collections.sort(unspentOutputs, new UnspentOutputAmountComparator());
 
-        int outputCount = 2;//initially assume change
+        long inputCost = feeEstimator.inputFee();
 
-        for (UnspentOutput output : coins.getUnspentOutputs()) {
+        List<UnspentOutput> spendWorthyList = new ArrayList<>();
+        for (UnspentOutput output : unspentOutputs) {
 
             // Skip coins not worth spending
-            if (output.getValue().doubleValue() < inputCost) {
+            if (output.getValue().longValue() < inputCost) {
                 continue;
             }
 
             //Skip script with no type
-            Script script = new Script(Hex.decode(output.getScript().getBytes()));
-            if (script.getScriptType() == Script.ScriptType.NO_TYPE) {
+            if (!hasScriptType(output.getScript())) {
                 continue;
             }
 
-            //Collect coin
             spendWorthyList.add(output);
-            collectedAmount = collectedAmount.add(output.getValue());
-
-            //Fee
-            int coinCount = spendWorthyList.size();
-            BigInteger paymentAmountNoChange = estimateAmount(coinCount, paymentAmount, feePerKb, 1);
-            BigInteger paymentAmountWithChange = estimateAmount(coinCount, paymentAmount, feePerKb, 2);
+        }
 
-            //No change = 1 output (Exact amount)
-            if (paymentAmountNoChange.compareTo(collectedAmount) == 0) {
-                outputCount = 1;
-                break;
-            }
+        long[] values = new long[spendWorthyList.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = spendWorthyList.get(i).getValue().longValue();
+        }
 
-            //No change = 1 output (Don't allow dust to be sent back as change - consume it rather)
-            if (paymentAmountNoChange.compareTo(collectedAmount) == -1
-                && paymentAmountNoChange.compareTo(collectedAmount.subtract(Payment.DUST)) >= 0) {
-                consumedAmount = consumedAmount.add(paymentAmountNoChange.subtract(collectedAmount));
-                outputCount = 1;
-                break;
-            }
+        CoinSelection selection = coinSelector.select(values, paymentAmount.longValue(), feeEstimator);
 
-            //Expect change = 2 outputs
-            if (collectedAmount.compareTo(paymentAmountWithChange) >= 0) {
-                outputCount = 2;//[multiple inputs, 2 outputs] - assume change
-                break;
-            }
+        List<UnspentOutput> selectedList = new ArrayList<>(selection.getCoinCount());
+        for (int index : selection.getIndexes()) {
+            selectedList.add(spendWorthyList.get(index));
         }
 
         SpendableUnspentOutputs paymentBundle = new SpendableUnspentOutputs();
-        paymentBundle.setSpendableOutputs(spendWorthyList);
-        paymentBundle.setAbsoluteFee(Fees.estimatedFee(spendWorthyList.size(), outputCount, feePerKb));
-        paymentBundle.setConsumedAmount(consumedAmount);
+        paymentBundle.setSpendableOutputs(selectedList);
+        paymentBundle.setAbsoluteFee(BigInteger.valueOf(selection.getAbsoluteFee()));
+        paymentBundle.setConsumedAmount(BigInteger.valueOf(selection.getConsumedAmount()));
         return paymentBundle;
     }
 
-    private static BigInteger estimateAmount(int CoinCount, BigInteger paymentAmount, BigInteger feePerKb, int outputCount){
-        BigInteger fee = Fees.estimatedFee(CoinCount, outputCount, feePerKb);
-        return paymentAmount.add(fee);
-    }
+    /**
+     * Pay to pubkey hash and pay to script hash outputs are recognised from their hex template,
+     * anything else is parsed.
+     */
+    static boolean hasScriptType(String scriptHex) {
+
+        if (scriptHex.length() == 50 && scriptHex.startsWith("76a914") && scriptHex.endsWith("88ac")) {
+            return true;
+        }
+        if (scriptHex.length() == 46 && scriptHex.startsWith("a914") && scriptHex.endsWith("87")) {
+            return true;
+        }
 
-    private static double inputCost(BigInteger feePerKb) {
-        double d = Math.ceil(feePerKb.doubleValue() * 0.148);
-        return Math.ceil(d);
+        Script script = new Script(Hex.decode(scriptHex.getBytes()));
+        return script.getScriptType() != Script.ScriptType.NO_TYPE;
     }
 
     /**
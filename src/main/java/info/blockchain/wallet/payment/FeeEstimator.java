@@ -0,0 +1,157 @@
+package info.blockchain.wallet.payment;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.VarInt;
+
+/**
+ * Transaction size and fee estimates, sized per script type and computed in satoshi longs.
+ *
+ * Inputs are sized for a P2PKH spend with the largest low-S signature (72 bytes with the
+ * sighash byte), so estimates never fall short of the signed transaction. Outputs are sized
+ * from their script. Counts of 253 and more take the longer var ints into account.
+ *
+ * An instance fixes the fee per kb, the size of each input, of the payment output and of the
+ * change output, so coin selection can ask for the fee of any input count without allocating.
+ * Unspent outputs don't tell whether their key is compressed, callers that know pass the input
+ * size, see {@link #forPayment(long, Address, boolean)}.
+ */
+public class FeeEstimator {
+
+    //Previous outpoint, sequence and the script length var int
+    private static final int INPUT_BASE_SIZE = 32 + 4 + 4 + 1;
+    //Signature push: length byte, DER signature of up to 71 bytes and the sighash byte
+    private static final int SIGNATURE_PUSH_SIZE = 1 + 72;
+    //Value and the script length var int
+    private static final int OUTPUT_BASE_SIZE = 8 + 1;
+    //Version and lock time
+    private static final int TRANSACTION_BASE_SIZE = 4 + 4;
+
+    public static final int P2PKH_INPUT_SIZE = INPUT_BASE_SIZE + SIGNATURE_PUSH_SIZE + 1 + 33;
+    public static final int P2PKH_UNCOMPRESSED_INPUT_SIZE = INPUT_BASE_SIZE + SIGNATURE_PUSH_SIZE + 1 + 65;
+    public static final int P2PKH_OUTPUT_SIZE = OUTPUT_BASE_SIZE + 25;
+    public static final int P2SH_OUTPUT_SIZE = OUTPUT_BASE_SIZE + 23;
+
+    private final long feePerKb;
+    private final int inputSize;
+    private final int outputSize;
+    private final int changeSize;
+
+    /**
+     * Sizes inputs as compressed P2PKH spends and outputs as P2PKH.
+     */
+    public FeeEstimator(long feePerKb) {
+        this(feePerKb, P2PKH_INPUT_SIZE, P2PKH_OUTPUT_SIZE);
+    }
+
+    /**
+     * Sizes change as P2PKH.
+     *
+     * @param inputSize  Size of each input in bytes, see {@link #inputSize(boolean)}
+     * @param outputSize Size of each output in bytes, see {@link #outputSize(byte[])}
+     */
+    public FeeEstimator(long feePerKb, int inputSize, int outputSize) {
+        this(feePerKb, inputSize, outputSize, P2PKH_OUTPUT_SIZE);
+    }
+
+    /**
+     * @param changeSize Size of the change output in bytes
+     */
+    public FeeEstimator(long feePerKb, int inputSize, int outputSize, int changeSize) {
+        this.feePerKb = feePerKb;
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.changeSize = changeSize;
+    }
+
+    /**
+     * Estimator for paying receiver from P2PKH coins, with P2PKH change.
+     *
+     * @param compressedKeys False if any input is signed by an uncompressed key
+     */
+    public static FeeEstimator forPayment(long feePerKb, Address receiver, boolean compressedKeys) {
+        return new FeeEstimator(feePerKb, inputSize(compressedKeys), outputSize(receiver),
+            P2PKH_OUTPUT_SIZE);
+    }
+
+    public long getFeePerKb() {
+        return feePerKb;
+    }
+
+    public int size(int inputs, int outputs) {
+        return size(inputs, inputs * inputSize, outputs, outputs * outputSize);
+    }
+
+    public long fee(int inputs, int outputs) {
+        return feeForSize(size(inputs, outputs));
+    }
+
+    /**
+     * @return Size of a transaction with one payment output, plus change if asked for
+     */
+    public int paymentSize(int inputs, boolean change) {
+        return size(inputs, inputs * inputSize,
+            change ? 2 : 1, change ? outputSize + changeSize : outputSize);
+    }
+
+    public long paymentFee(int inputs, boolean change) {
+        return feeForSize(paymentSize(inputs, change));
+    }
+
+    /**
+     * @return Fee for the given size in bytes, rounded up
+     */
+    public long feeForSize(int size) {
+        return feeForSize(feePerKb, size);
+    }
+
+    /**
+     * @return What one more input adds to the fee, leaving out var int growth
+     */
+    public long inputFee() {
+        return feeForSize(inputSize);
+    }
+
+    /**
+     * @return Size of a transaction whose inputs and outputs add up to the given bytes
+     */
+    public static int size(int inputCount, int inputBytes, int outputCount, int outputBytes) {
+        return TRANSACTION_BASE_SIZE
+            + VarInt.sizeOf(inputCount) + inputBytes
+            + VarInt.sizeOf(outputCount) + outputBytes;
+    }
+
+    public static long feeForSize(long feePerKb, int size) {
+        return (feePerKb * size + 999L) / 1000L;
+    }
+
+    /**
+     * @return Size of an input spending a P2PKH output
+     */
+    public static int inputSize(boolean compressedKey) {
+        return compressedKey ? P2PKH_INPUT_SIZE : P2PKH_UNCOMPRESSED_INPUT_SIZE;
+    }
+
+    public static int inputSize(ECKey key) {
+        return inputSize(key.isCompressed());
+    }
+
+    /**
+     * @param scriptProgram Output script bytes
+     */
+    public static int outputSize(byte[] scriptProgram) {
+        return 8 + VarInt.sizeOf(scriptProgram.length) + scriptProgram.length;
+    }
+
+    public static int outputSize(Address address) {
+        return address.isP2SHAddress() ? P2SH_OUTPUT_SIZE : P2PKH_OUTPUT_SIZE;
+    }
+
+    /**
+     * @return Whether the fee rate is above {@link Payment#PUSHTX_MIN} per kb
+     */
+    public static boolean isAdequateFee(int size, long absoluteFee) {
+        long feePerKb = (absoluteFee * 1000L + size - 1) / size;
+        return feePerKb > Payment.PUSHTX_MIN.longValue();
+    }
+}
@@ -2,32 +2,38 @@ package info.blockchain.wallet.payment;
 
 import java.math.BigInteger;
 
+/**
+ * Fees of transactions spending compressed P2PKH inputs to P2PKH outputs. Payments to other
+ * scripts or from uncompressed keys are over or under priced here, the {@link FeeEstimator}
+ * overloads of {@link Payment} and {@link Coins} price them by script.
+ */
 class Fees {
 
-    private static final int ESTIMATED_INPUT_LEN = 148; // compressed key
-    private static final int ESTIMATED_OUTPUT_LEN = 34;
-
     public static BigInteger estimatedFee(int inputs, int outputs, BigInteger feePerKb) {
+        return BigInteger.valueOf(estimatedFee(inputs, outputs, feePerKb.longValue()));
+    }
 
-        int size = estimatedSize(inputs, outputs);
-        return calculateFee(size, feePerKb);
+    /**
+     * Same rounding as {@link #estimatedFee(int, int, BigInteger)} without the allocations,
+     * for coin selection loops.
+     */
+    static long estimatedFee(int inputs, int outputs, long feePerKb) {
+        return FeeEstimator.feeForSize(feePerKb, estimatedSize(inputs, outputs));
     }
 
     public static int estimatedSize(int inputs, int outputs) {
-        return (outputs * ESTIMATED_OUTPUT_LEN) + (inputs * ESTIMATED_INPUT_LEN) + 10;
+        return FeeEstimator.size(inputs, inputs * FeeEstimator.P2PKH_INPUT_SIZE,
+            outputs, outputs * FeeEstimator.P2PKH_OUTPUT_SIZE);
     }
 
-    private static BigInteger calculateFee(int size, BigInteger feePerKb) {
-
-        double txBytes = ((double) size / 1000.0);
-        long absoluteFee = (long) Math.ceil(feePerKb.doubleValue() * txBytes);
-        return BigInteger.valueOf(absoluteFee);
+    /**
+     * @return What one more input adds to the fee
+     */
+    static long inputFee(long feePerKb) {
+        return FeeEstimator.feeForSize(feePerKb, FeeEstimator.P2PKH_INPUT_SIZE);
     }
 
     public static boolean isAdequateFee(int inputs, int outputs, BigInteger absoluteFee) {
-
-        double txBytes = ((double) estimatedSize(inputs, outputs) / 1000.0);
-        long feePerkb = (long) Math.ceil(absoluteFee.doubleValue() / txBytes);
-        return feePerkb > Payment.PUSHTX_MIN.longValue();
+        return FeeEstimator.isAdequateFee(estimatedSize(inputs, outputs), absoluteFee.longValue());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package info.blockchain.wallet.payment;
+
+/**
+ * Takes the largest coins until the payment is covered - the minimum number of inputs.
+ *
+ * A change output is assumed unless the coins match the payment exactly, or would only leave
+ * dust as change, in which case the dust goes to the fee.
+ */
+public class GreedyCoinSelector implements CoinSelector {
+
+    @Override
+    public CoinSelection select(long[] values, long paymentAmount, long feePerKb) {
+        return select(values, paymentAmount, new FeeEstimator(feePerKb));
+    }
+
+    @Override
+    public CoinSelection select(long[] values, long paymentAmount, FeeEstimator feeEstimator) {
+
+        long dust = Payment.DUST.longValue();
+
+        long collectedAmount = 0L;
+        long consumedAmount = 0L;
+        boolean change = true;//initially assume change
+        int coinCount = 0;
+
+        for (long value : values) {
+
+            //Collect coin
+            collectedAmount += value;
+            coinCount++;
+
+            //Fee
+            long paymentAmountNoChange = paymentAmount + feeEstimator.paymentFee(coinCount, false);
+            long paymentAmountWithChange = paymentAmount + feeEstimator.paymentFee(coinCount, true);
+
+            //No change = 1 output (Exact amount)
+            if (paymentAmountNoChange == collectedAmount) {
+                change = false;
+                break;
+            }
+
+            //No change = 1 output (Don't allow dust to be sent back as change - consume it rather)
+            if (paymentAmountNoChange < collectedAmount
+                && paymentAmountNoChange >= collectedAmount - dust) {
+                consumedAmount = paymentAmountNoChange - collectedAmount;
+                change = false;
+                break;
+            }
+
+            //Expect change = 2 outputs
+            if (collectedAmount >= paymentAmountWithChange) {
+                change = true;//[multiple inputs, 2 outputs] - assume change
+                break;
+            }
+        }
+
+        return CoinSelection.firstCoins(coinCount,
+            feeEstimator.paymentFee(coinCount, change), consumedAmount);
+    }
+}
@@ -0,0 +1,173 @@
+package info.blockchain.wallet.payment;
+
+import java.util.Random;
+
+/**
+ * Looks for the set of coins closest above the payment, its fee and a change output of at
+ * least {@link Payment#DUST}.
+ *
+ * Coins are weighed by their value net of the fee they add. The smallest single coin that
+ * covers the target on its own is compared against the best of a number of random subsets of
+ * the smaller coins. The number of random passes is scaled down for large sets.
+ *
+ * Without enough funds every coin is selected like {@link GreedyCoinSelector} does.
+ */
+public class KnapsackCoinSelector implements CoinSelector {
+
+    private static final int MAX_REPETITIONS = 1000;
+
+    //Coins visited over all repetitions
+    private static final long WORK_LIMIT = 2000000L;
+
+    private final Random random;
+
+    public KnapsackCoinSelector() {
+        this(new Random());
+    }
+
+    public KnapsackCoinSelector(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public CoinSelection select(long[] values, long paymentAmount, long feePerKb) {
+        return select(values, paymentAmount, new FeeEstimator(feePerKb));
+    }
+
+    @Override
+    public CoinSelection select(long[] values, long paymentAmount, FeeEstimator feeEstimator) {
+
+        //Upper bound of what each input adds to the fee
+        long inputFee = feeEstimator.inputFee() + 1;
+        long target = paymentAmount + feeEstimator.paymentFee(0, true) + Payment.DUST.longValue();
+
+        int count = values.length;
+        long[] netValues = new long[count];
+
+        //Smaller coins are candidates for a subset, the smallest larger coin could pay alone
+        int[] candidates = new int[count];
+        int candidateCount = 0;
+        long candidateTotal = 0L;
+        int lowestLarger = -1;
+
+        for (int i = 0; i < count; i++) {
+            netValues[i] = values[i] - inputFee;
+            if (netValues[i] == target) {
+                return withChange(new int[]{i}, values, paymentAmount, feeEstimator);
+            } else if (netValues[i] < target) {
+                if (netValues[i] > 0) {
+                    candidates[candidateCount++] = i;
+                    candidateTotal += netValues[i];
+                }
+            } else {
+                //Values are descending so the last larger coin is the smallest
+                lowestLarger = i;
+            }
+        }
+
+        if (candidateTotal == target) {
+            return withChange(copy(candidates, candidateCount), values, paymentAmount, feeEstimator);
+        }
+
+        if (candidateTotal < target) {
+            if (lowestLarger == -1) {
+                return new GreedyCoinSelector().select(values, paymentAmount, feeEstimator);
+            }
+            return withChange(new int[]{lowestLarger}, values, paymentAmount, feeEstimator);
+        }
+
+        boolean[] best = new boolean[candidateCount];
+        long bestTotal = approximateBestSubset(netValues, candidates, candidateCount, candidateTotal, target, best);
+
+        if (lowestLarger != -1 && (bestTotal != target && netValues[lowestLarger] <= bestTotal)) {
+            return withChange(new int[]{lowestLarger}, values, paymentAmount, feeEstimator);
+        }
+
+        int selectedCount = 0;
+        for (boolean included : best) {
+            if (included) {
+                selectedCount++;
+            }
+        }
+        int[] indexes = new int[selectedCount];
+        int n = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            if (best[i]) {
+                indexes[n++] = candidates[i];
+            }
+        }
+        return withChange(indexes, values, paymentAmount, feeEstimator);
+    }
+
+    /**
+     * Randomly includes candidates until the target is reached, keeping the lowest total
+     * above it. Starts from all candidates.
+     *
+     * @return Total of the best subset, flagged in best
+     */
+    private long approximateBestSubset(long[] netValues, int[] candidates, int candidateCount,
+        long candidateTotal, long target, boolean[] best) {
+
+        for (int i = 0; i < candidateCount; i++) {
+            best[i] = true;
+        }
+        long bestTotal = candidateTotal;
+
+        int repetitions = (int) Math.max(1, Math.min(MAX_REPETITIONS, WORK_LIMIT / (2L * candidateCount)));
+        boolean[] included = new boolean[candidateCount];
+
+        for (int rep = 0; rep < repetitions && bestTotal != target; rep++) {
+
+            for (int i = 0; i < candidateCount; i++) {
+                included[i] = false;
+            }
+            long total = 0L;
+            boolean reachedTarget = false;
+
+            for (int pass = 0; pass < 2 && !reachedTarget; pass++) {
+                for (int i = 0; i < candidateCount; i++) {
+                    //First pass picks at random, the second adds whatever was left out
+                    if (pass == 0 ? random.nextBoolean() : !included[i]) {
+                        total += netValues[candidates[i]];
+                        included[i] = true;
+                        if (total >= target) {
+                            reachedTarget = true;
+                            if (total < bestTotal) {
+                                bestTotal = total;
+                                System.arraycopy(included, 0, best, 0, candidateCount);
+                            }
+                            //Try again without this coin
+                            total -= netValues[candidates[i]];
+                            included[i] = false;
+                        }
+                    }
+                }
+            }
+        }
+
+        return bestTotal;
+    }
+
+    private static CoinSelection withChange(int[] indexes, long[] values, long paymentAmount,
+        FeeEstimator feeEstimator) {
+
+        long fee = feeEstimator.paymentFee(indexes.length, true);
+
+        long collectedAmount = 0L;
+        for (int index : indexes) {
+            collectedAmount += values[index];
+        }
+        if (collectedAmount < paymentAmount + fee) {
+            //Net values are conservative, this only guards against rounding
+            return new GreedyCoinSelector().select(values, paymentAmount, feeEstimator);
+        }
+
+        return new CoinSelection(indexes, fee, 0L);
+    }
+
+    private static int[] copy(int[] indexes, int count) {
+        int[] copy = new int[count];
+        System.arraycopy(indexes, 0, copy, 0, count);
+        return copy;
+    }
+}
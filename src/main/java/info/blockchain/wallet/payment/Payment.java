@@ -3,12 +3,15 @@ package info.blockchain.wallet.payment;
 import info.blockchain.api.data.UnspentOutput;
 import info.blockchain.api.data.UnspentOutputs;
 import info.blockchain.wallet.BlockchainFramework;
-import info.blockchain.wallet.api.WalletApi;
+import info.blockchain.wallet.ClientRegistry;
+import info.blockchain.wallet.api.FeeProvider;
+import info.blockchain.wallet.api.PersistentUrls;
 import info.blockchain.wallet.api.data.Fee;
 import info.blockchain.wallet.api.data.FeeList;
 import io.reactivex.Observable;
 import okhttp3.ResponseBody;
 import org.apache.commons.lang3.tuple.Pair;
+import org.bitcoinj.core.Address;
 import org.bitcoinj.core.AddressFormatException;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.ECKey;
@@ -50,27 +53,32 @@ public class Payment {
         return Fees.isAdequateFee(inputs, outputs, absoluteFee);
     }
 
+    /**
+     * Prices inputs, the payment output to receiveAddress and a P2PKH change output by their
+     * script, where {@link #estimatedFee(int, int, BigInteger)} assumes P2PKH throughout.
+     * Unspent outputs don't tell whether their key is compressed, so the caller does.
+     *
+     * @param compressedKeys False if any input is signed by an uncompressed key
+     * @see #getSpendableCoins(UnspentOutputs, BigInteger, FeeEstimator, CoinSelector)
+     */
+    public FeeEstimator getFeeEstimator(@Nonnull BigInteger feePerKb,
+                                        @Nonnull String receiveAddress,
+                                        boolean compressedKeys) throws AddressFormatException {
+        Address receiver = Address.fromBase58(
+            PersistentUrls.getInstance().getCurrentNetworkParams(), receiveAddress);
+        return FeeEstimator.forPayment(feePerKb.longValue(), receiver, compressedKeys);
+    }
+
+    /**
+     * Cached, see {@link FeeProvider}.
+     */
     public Observable<FeeList> getDynamicFee() {
-        log.info("Fetching dynamic fee list");
-        return new WalletApi().getDynamicFee();
+        return ClientRegistry.getFeeProvider().getDynamicFee();
     }
 
     public Fee getDefaultFee() {
-
         log.info("Using hardcoded default fee");
-        Fee fee = null;
-        try {
-            fee = Fee.fromJson(""
-                    + "{\n"
-                    + "     \"fee\": 35000,\n"
-                    + "     \"surge\": false,\n"
-                    + "     \"ok\": true\n"
-                    + "}");
-        } catch (IOException e) {
-            log.error("This should never happen");
-            e.printStackTrace();
-        }
-        return fee;
+        return FeeProvider.getDefaultFee();
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -90,12 +98,42 @@ public class Payment {
         return Coins.getSweepableCoins(unspentCoins, feePerKb);
     }
 
+    /**
+     * @param feeEstimator See {@link #getFeeEstimator(BigInteger, String, boolean)}
+     * @return Pair left = sweepable amount, right = absolute fee needed for sweep
+     */
+    public Pair<BigInteger, BigInteger> getSweepableCoins(@Nonnull UnspentOutputs unspentCoins,
+                                                          @Nonnull FeeEstimator feeEstimator) {
+        return Coins.getSweepableCoins(unspentCoins, feeEstimator);
+    }
+
     public SpendableUnspentOutputs getSpendableCoins(@Nonnull UnspentOutputs unspentCoins,
                                                             @Nonnull BigInteger paymentAmount,
                                                             @Nonnull BigInteger feePerKb)  {
         return Coins.getMinimumCoinsForPayment(unspentCoins, paymentAmount, feePerKb);
     }
 
+    /**
+     * @param coinSelector Strategy used to pick the coins, e.g. {@link BranchAndBoundCoinSelector}
+     *                     to avoid change outputs
+     */
+    public SpendableUnspentOutputs getSpendableCoins(@Nonnull UnspentOutputs unspentCoins,
+                                                            @Nonnull BigInteger paymentAmount,
+                                                            @Nonnull BigInteger feePerKb,
+                                                            @Nonnull CoinSelector coinSelector)  {
+        return Coins.getMinimumCoinsForPayment(unspentCoins, paymentAmount, feePerKb, coinSelector);
+    }
+
+    /**
+     * @param feeEstimator See {@link #getFeeEstimator(BigInteger, String, boolean)}
+     */
+    public SpendableUnspentOutputs getSpendableCoins(@Nonnull UnspentOutputs unspentCoins,
+                                                            @Nonnull BigInteger paymentAmount,
+                                                            @Nonnull FeeEstimator feeEstimator,
+                                                            @Nonnull CoinSelector coinSelector)  {
+        return Coins.getMinimumCoinsForPayment(unspentCoins, paymentAmount, feeEstimator, coinSelector);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Transaction
     ///////////////////////////////////////////////////////////////////////////
@@ -3,6 +3,7 @@ package info.blockchain.wallet.payment;
 import info.blockchain.api.data.UnspentOutput;
 import info.blockchain.api.pushtx.PushTx;
 import info.blockchain.wallet.BlockchainFramework;
+import info.blockchain.wallet.ClientRegistry;
 import info.blockchain.wallet.api.PersistentUrls;
 import info.blockchain.wallet.util.Hash;
 import info.blockchain.wallet.util.Tools;
@@ -11,6 +12,7 @@ import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import javax.annotation.Nonnull;
 import okhttp3.ResponseBody;
@@ -18,6 +20,7 @@ import org.bitcoinj.core.Address;
 import org.bitcoinj.core.AddressFormatException;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.core.ProtocolException;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
@@ -105,27 +108,7 @@ public class PaymentTx {
 
         for (UnspentOutput unspentCoin : unspentCoins) {
 
-            Hash hash = new Hash(Hex.decode(unspentCoin.getTxHash()));
-            hash.reverse();
-            Sha256Hash txHash = Sha256Hash.wrap(hash.getBytes());
-
-            TransactionOutPointConnected outPoint = new TransactionOutPointConnected(networkParams,
-                unspentCoin.getTxOutputCount(),
-                txHash);
-
-            //outPoint needs connected output here
-            TransactionOutput output = new TransactionOutput(networkParams,
-                null,
-                Coin.valueOf(unspentCoin.getValue().longValue()),
-                Hex.decode(unspentCoin.getScript()));
-            outPoint.setConnectedOutput(output);
-
-            TransactionInput input = new TransactionInput(networkParams,
-                null,
-                new byte[0],
-                outPoint);
-
-            transaction.addInput(input);
+            transaction.addInput(createInput(networkParams, unspentCoin));
             inputValueSum = inputValueSum.add(unspentCoin.getValue());
 
             if (inputValueSum.compareTo(valueNeeded) == 0
@@ -145,6 +128,29 @@ public class PaymentTx {
         return inputValueSum;
     }
 
+    static TransactionInput createInput(NetworkParameters networkParams, UnspentOutput unspentCoin) {
+
+        Hash hash = new Hash(Hex.decode(unspentCoin.getTxHash()));
+        hash.reverse();
+        Sha256Hash txHash = Sha256Hash.wrap(hash.getBytes());
+
+        TransactionOutPointConnected outPoint = new TransactionOutPointConnected(networkParams,
+            unspentCoin.getTxOutputCount(),
+            txHash);
+
+        //outPoint needs connected output here
+        TransactionOutput output = new TransactionOutput(networkParams,
+            null,
+            Coin.valueOf(unspentCoin.getValue().longValue()),
+            Hex.decode(unspentCoin.getScript()));
+        outPoint.setConnectedOutput(output);
+
+        return new TransactionInput(networkParams,
+            null,
+            new byte[0],
+            outPoint);
+    }
+
     private static void addChange(Transaction transaction, @Nonnull BigInteger fee,
         @Nonnull String changeAddress,
         BigInteger outputValueSum, BigInteger inputValueSum) throws AddressFormatException {
@@ -182,7 +188,12 @@ public class PaymentTx {
         throws IOException {
 
         log.info("Publishing transaction");
-        PushTx pushTx = new PushTx(BlockchainFramework.getRetrofitExplorerInstance(), apiCode);
-        return pushTx.pushTx(new String(Hex.encode(transaction.bitcoinSerialize())));
+        //Shared client unless publishing under another api code
+        PushTx pushTx = Objects.equals(apiCode, BlockchainFramework.getApiCode())
+            ? ClientRegistry.getPushTx()
+            : new PushTx(BlockchainFramework.getRetrofitExplorerInstance(), apiCode);
+        //Cached balances and history are out of date once the transaction is accepted
+        return ClientRegistry.getBlockExplorer().clearOnSuccess(
+            pushTx.pushTx(new String(Hex.encode(transaction.bitcoinSerialize()))));
     }
 }
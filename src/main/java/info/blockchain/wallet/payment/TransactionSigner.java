@@ -0,0 +1,277 @@
+package info.blockchain.wallet.payment;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.annotation.Nonnull;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.ScriptException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Transaction.SigHash;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.VarInt;
+import org.bitcoinj.crypto.TransactionSignature;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Signs pay to pubkey hash and pay to pubkey inputs in parallel.
+ *
+ * Keys are looked up in an index built once from the signing keys, so a signer can be reused
+ * for any number of transactions. The signature hash of every input is computed from a
+ * serialization of the transaction taken before signing starts, and inputs are signed on a
+ * fork-join pool. Script sigs are only set once every input is signed.
+ *
+ * Unlike {@link PaymentTx#signTransaction} this takes no lock. A signer can be shared between
+ * threads, as long as each transaction is signed by one thread at a time.
+ */
+public class TransactionSigner {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionSigner.class);
+
+    //Inputs signed by a single task
+    static final int INPUTS_PER_TASK = 4;
+
+    private static ForkJoinPool sharedPool;
+
+    private final HashMap<ByteBuffer, ECKey> keysByPubKeyHash = new HashMap<>();
+    private final HashMap<ByteBuffer, ECKey> keysByPubKey = new HashMap<>();
+    private final ForkJoinPool pool;
+
+    public TransactionSigner(@Nonnull List<ECKey> keys) {
+        this(keys, getSharedPool());
+    }
+
+    public TransactionSigner(@Nonnull List<ECKey> keys, @Nonnull ForkJoinPool pool) {
+        for (ECKey key : keys) {
+            if (!key.hasPrivKey()) {
+                continue;
+            }
+            keysByPubKeyHash.put(ByteBuffer.wrap(key.getPubKeyHash()), key);
+            keysByPubKey.put(ByteBuffer.wrap(key.getPubKey()), key);
+        }
+        this.pool = pool;
+    }
+
+    private static synchronized ForkJoinPool getSharedPool() {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool();
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Inputs without a connected output, with an unsupported script or without a matching key
+     * are left unsigned.
+     *
+     * @return Number of inputs signed
+     */
+    public int sign(@Nonnull Transaction transaction) {
+
+        log.info("Signing transaction");
+
+        List<TransactionInput> inputs = transaction.getInputs();
+        SigningJob job = new SigningJob(transaction);
+
+        for (int i = 0; i < inputs.size(); i++) {
+            TransactionOutput connectedOutput = inputs.get(i).getOutpoint().getConnectedOutput();
+            if (connectedOutput == null) {
+                continue;
+            }
+            assignKey(job, i, connectedOutput.getScriptBytes());
+        }
+
+        pool.invoke(new SignTask(job, 0, inputs.size()));
+
+        int signed = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            if (job.signatures[i] == null) {
+                continue;
+            }
+            Script scriptSig = job.payToPubKey[i]
+                ? ScriptBuilder.createInputScript(job.signatures[i])
+                : ScriptBuilder.createInputScript(job.signatures[i], job.keys[i]);
+            inputs.get(i).setScriptSig(scriptSig);
+            signed++;
+        }
+
+        if (signed < inputs.size()) {
+            log.warn("Signed {} of {} inputs", signed, inputs.size());
+        }
+        return signed;
+    }
+
+    private void assignKey(SigningJob job, int index, byte[] script) {
+
+        ECKey key = null;
+
+        //Pay to pubkey hash template
+        if (script.length == 25 && (script[0] & 0xff) == 0x76 && (script[1] & 0xff) == 0xa9
+            && script[2] == 20 && (script[23] & 0xff) == 0x88 && (script[24] & 0xff) == 0xac) {
+            key = keysByPubKeyHash.get(ByteBuffer.wrap(script, 3, 20));
+        } else {
+            try {
+                Script parsed = new Script(script);
+                if (parsed.isSentToRawPubKey()) {
+                    key = keysByPubKey.get(ByteBuffer.wrap(parsed.getPubKey()));
+                    job.payToPubKey[index] = true;
+                } else if (parsed.isSentToAddress()) {
+                    key = keysByPubKeyHash.get(ByteBuffer.wrap(parsed.getPubKeyHash()));
+                }
+            } catch (ScriptException e) {
+                log.warn("Unable to parse connected output script", e);
+            }
+        }
+
+        if (key != null) {
+            job.scripts[index] = script;
+            job.keys[index] = key;
+        }
+    }
+
+    /**
+     * Parts of the serialized transaction shared by every input's signature hash.
+     */
+    private static class SigningJob {
+
+        final byte[][] scripts;
+        final ECKey[] keys;
+        final TransactionSignature[] signatures;
+        final boolean[] payToPubKey;
+
+        //Version and input count
+        final byte[] prefix;
+        //Outpoint per input, followed by its sequence number
+        final byte[][] outPoints;
+        final byte[][] sequences;
+        //Outputs, lock time and sighash type
+        final byte[] suffix;
+
+        SigningJob(Transaction transaction) {
+
+            List<TransactionInput> inputs = transaction.getInputs();
+            int count = inputs.size();
+            scripts = new byte[count][];
+            keys = new ECKey[count];
+            signatures = new TransactionSignature[count];
+            payToPubKey = new boolean[count];
+
+            byte[] inputCount = new VarInt(count).encode();
+            prefix = new byte[4 + inputCount.length];
+            Utils.uint32ToByteArrayLE(transaction.getVersion(), prefix, 0);
+            System.arraycopy(inputCount, 0, prefix, 4, inputCount.length);
+
+            outPoints = new byte[count][];
+            sequences = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                outPoints[i] = inputs.get(i).getOutpoint().bitcoinSerialize();
+                sequences[i] = new byte[4];
+                Utils.uint32ToByteArrayLE(inputs.get(i).getSequenceNumber(), sequences[i], 0);
+            }
+
+            List<TransactionOutput> outputs = transaction.getOutputs();
+            byte[] outputCount = new VarInt(outputs.size()).encode();
+            byte[][] serializedOutputs = new byte[outputs.size()][];
+            int suffixLength = outputCount.length + 8;
+            for (int i = 0; i < outputs.size(); i++) {
+                serializedOutputs[i] = outputs.get(i).bitcoinSerialize();
+                suffixLength += serializedOutputs[i].length;
+            }
+
+            suffix = new byte[suffixLength];
+            int offset = 0;
+            System.arraycopy(outputCount, 0, suffix, offset, outputCount.length);
+            offset += outputCount.length;
+            for (byte[] output : serializedOutputs) {
+                System.arraycopy(output, 0, suffix, offset, output.length);
+                offset += output.length;
+            }
+            Utils.uint32ToByteArrayLE(transaction.getLockTime(), suffix, offset);
+            Utils.uint32ToByteArrayLE(TransactionSignature.calcSigHashValue(SigHash.ALL, false), suffix, offset + 4);
+        }
+
+        /**
+         * Legacy SIGHASH_ALL hash: the connected script in place of this input's script sig,
+         * empty script sigs for the others.
+         */
+        Sha256Hash hashForSignature(int index) {
+
+            byte[] script = scripts[index];
+            byte[] scriptLength = new VarInt(script.length).encode();
+
+            int length = prefix.length + suffix.length + scriptLength.length + script.length;
+            for (int i = 0; i < outPoints.length; i++) {
+                //Outpoint, script length, sequence
+                length += outPoints[i].length + 1 + 4;
+            }
+            length -= 1;
+
+            byte[] data = new byte[length];
+            int offset = 0;
+            System.arraycopy(prefix, 0, data, offset, prefix.length);
+            offset += prefix.length;
+
+            for (int i = 0; i < outPoints.length; i++) {
+                System.arraycopy(outPoints[i], 0, data, offset, outPoints[i].length);
+                offset += outPoints[i].length;
+                if (i == index) {
+                    System.arraycopy(scriptLength, 0, data, offset, scriptLength.length);
+                    offset += scriptLength.length;
+                    System.arraycopy(script, 0, data, offset, script.length);
+                    offset += script.length;
+                } else {
+                    //Empty script
+                    data[offset++] = 0;
+                }
+                System.arraycopy(sequences[i], 0, data, offset, 4);
+                offset += 4;
+            }
+
+            System.arraycopy(suffix, 0, data, offset, suffix.length);
+
+            return Sha256Hash.twiceOf(data);
+        }
+
+        void sign(int index) {
+            if (keys[index] == null) {
+                return;
+            }
+            ECKey.ECDSASignature signature = keys[index].sign(hashForSignature(index));
+            signatures[index] = new TransactionSignature(signature, SigHash.ALL, false);
+        }
+    }
+
+    private static class SignTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SigningJob job;
+        private final int from;
+        private final int to;
+
+        SignTask(SigningJob job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= INPUTS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    job.sign(i);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SignTask(job, from, middle), new SignTask(job, middle, to));
+            }
+        }
+    }
+}
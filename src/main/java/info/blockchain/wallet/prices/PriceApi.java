@@ -9,6 +9,8 @@ import io.reactivex.Observable;
 import io.reactivex.functions.Function;
 
 /**
+ * Uncached, see {@link PriceStore} for historic prices of many timestamps.
+ *
  * @see <a href=https://api.blockchain.info/price/specs>Blockchain Price API specs</a>
  */
 public class PriceApi {
@@ -0,0 +1,165 @@
+package info.blockchain.wallet.prices;
+
+import info.blockchain.wallet.prices.data.PriceDatum;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Prices of one base, quote and scale, held in parallel timestamp and price arrays sorted by
+ * time. Lookups binary search the timestamps and interpolate linearly between neighbours.
+ *
+ * The covered range is the span fetched so far, from the earliest requested start to the time
+ * of the latest fetch. Lookups inside it before the first or after the last point return that
+ * point's price. Not thread safe, {@link PriceStore} guards it.
+ */
+class PriceSeries {
+
+    private long[] timestamps = new long[0];
+    private double[] prices = new double[0];
+    private int size;
+
+    //Seconds since epoch, empty until the first merge
+    private long coveredFrom = Long.MAX_VALUE;
+    private long coveredTo = Long.MIN_VALUE;
+
+    int size() {
+        return size;
+    }
+
+    boolean covers(long from, long to) {
+        return from >= coveredFrom && to <= coveredTo;
+    }
+
+    long getCoveredFrom() {
+        return coveredFrom;
+    }
+
+    long getCoveredTo() {
+        return coveredTo;
+    }
+
+    /**
+     * @return Timestamp of the last point, or Long.MIN_VALUE if empty
+     */
+    long getLastTimestamp() {
+        return size == 0 ? Long.MIN_VALUE : timestamps[size - 1];
+    }
+
+    /**
+     * Merges points fetched from start at fetchedAt, replacing points with the same timestamp.
+     * Points without a price are skipped.
+     */
+    void merge(List<PriceDatum> data, long start, long fetchedAt) {
+
+        long[] newTimestamps = new long[data.size()];
+        double[] newPrices = new double[data.size()];
+        int count = 0;
+        long previous = Long.MIN_VALUE;
+        boolean sorted = true;
+        for (PriceDatum datum : data) {
+            if (datum.getTimestamp() == null || datum.getPrice() == null) {
+                continue;
+            }
+            newTimestamps[count] = datum.getTimestamp();
+            newPrices[count] = datum.getPrice();
+            sorted &= newTimestamps[count] > previous;
+            previous = newTimestamps[count];
+            count++;
+        }
+        if (!sorted) {
+            count = sort(newTimestamps, newPrices, count);
+        }
+
+        long[] mergedTimestamps = new long[size + count];
+        double[] mergedPrices = new double[size + count];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < size || j < count) {
+            if (j == count || (i < size && timestamps[i] < newTimestamps[j])) {
+                mergedTimestamps[k] = timestamps[i];
+                mergedPrices[k++] = prices[i++];
+            } else {
+                if (i < size && timestamps[i] == newTimestamps[j]) {
+                    //Fetched again, keep the newer price
+                    i++;
+                }
+                mergedTimestamps[k] = newTimestamps[j];
+                mergedPrices[k++] = newPrices[j++];
+            }
+        }
+
+        timestamps = mergedTimestamps;
+        prices = mergedPrices;
+        size = k;
+        coveredFrom = Math.min(coveredFrom, start);
+        coveredTo = Math.max(coveredTo, fetchedAt);
+    }
+
+    /**
+     * @param time Seconds since epoch
+     * @return The interpolated price, or NaN if there are no points
+     */
+    double getPrice(long time) {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        if (time <= timestamps[0]) {
+            return prices[0];
+        }
+        if (time >= timestamps[size - 1]) {
+            return prices[size - 1];
+        }
+
+        int index = Arrays.binarySearch(timestamps, 0, size, time);
+        if (index >= 0) {
+            return prices[index];
+        }
+
+        //Between the points before and after the insertion point
+        int after = -index - 1;
+        int before = after - 1;
+        double fraction = (double) (time - timestamps[before])
+            / (timestamps[after] - timestamps[before]);
+        return prices[before] + (prices[after] - prices[before]) * fraction;
+    }
+
+    /**
+     * Sorts the first count points in place, dropping duplicate timestamps.
+     *
+     * @return Amount of points left
+     */
+    private static int sort(long[] timestamps, double[] prices, int count) {
+        //Rare, the server returns series in order
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        final long[] keys = timestamps;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(keys[a], keys[b]);
+            }
+        });
+
+        long[] sortedTimestamps = new long[count];
+        double[] sortedPrices = new double[count];
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            int index = order[i];
+            if (unique > 0 && sortedTimestamps[unique - 1] == timestamps[index]) {
+                //Duplicate timestamp, the later one wins
+                sortedPrices[unique - 1] = prices[index];
+                continue;
+            }
+            sortedTimestamps[unique] = timestamps[index];
+            sortedPrices[unique++] = prices[index];
+        }
+        System.arraycopy(sortedTimestamps, 0, timestamps, 0, unique);
+        System.arraycopy(sortedPrices, 0, prices, 0, unique);
+        return unique;
+    }
+}
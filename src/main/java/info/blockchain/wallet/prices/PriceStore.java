@@ -0,0 +1,181 @@
+package info.blockchain.wallet.prices;
+
+import info.blockchain.wallet.prices.data.PriceDatum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Observable;
+
+/**
+ * Historic prices answered from cached price series, one per base, quote and {@link Scale}.
+ *
+ * A lookup outside the range fetched so far fetches the missing part of the series: from the
+ * last cached point when only newer prices are missing, else from the requested start. The
+ * series endpoint has no end time, so an earlier start fetches up to now again. Lookups between
+ * two points are interpolated linearly. Pricing a list of timestamps takes at most one fetch.
+ */
+public class PriceStore {
+
+    private static final Logger log = LoggerFactory.getLogger(PriceStore.class);
+
+    private final PriceApi priceApi;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong fetches = new AtomicLong();
+
+    public PriceStore(PriceApi priceApi) {
+        this.priceApi = priceApi;
+    }
+
+    /**
+     * @return Amount of series requests sent to the server
+     */
+    public long getFetchCount() {
+        return fetches.get();
+    }
+
+    /**
+     * Drops every cached series.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Price at a given moment in time, interpolated from the series of the given scale.
+     *
+     * @param base  The base cryptocurrency, eg "eth", "btc" or "bcc"
+     * @param quote The fiat currency in which to return the price, eg "usd"
+     * @param time  The time in seconds since epoch
+     * @param scale The scale of the series to interpolate, eg {@link Scale#ONE_HOUR}
+     * @return An {@link Observable} wrapping the price, NaN if the series has no prices
+     */
+    public Observable<Double> getHistoricPrice(final String base,
+                                               final String quote,
+                                               final long time,
+                                               final int scale) {
+        return Observable.fromCallable(new Callable<Double>() {
+            @Override
+            public Double call() throws Exception {
+                return getPrices(base, quote, new long[]{time}, scale)[0];
+            }
+        });
+    }
+
+    /**
+     * Prices at each of the given times, eg of a transaction history, from one series fetch at
+     * most.
+     *
+     * @param times Times in seconds since epoch, in any order
+     * @return An {@link Observable} wrapping the prices in the order of times, NaN if the series
+     * has no prices
+     * @see #getHistoricPrice(String, String, long, int)
+     */
+    public Observable<double[]> getHistoricPrices(final String base,
+                                                  final String quote,
+                                                  final long[] times,
+                                                  final int scale) {
+        return Observable.fromCallable(new Callable<double[]>() {
+            @Override
+            public double[] call() throws Exception {
+                return getPrices(base, quote, times, scale);
+            }
+        });
+    }
+
+    private double[] getPrices(String base, String quote, long[] times, int scale) {
+
+        double[] prices = new double[times.length];
+        if (times.length == 0) {
+            return prices;
+        }
+
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        for (long time : times) {
+            from = Math.min(from, time);
+            to = Math.max(to, time);
+        }
+
+        Entry entry = getEntry(base, quote, scale);
+        fill(entry, base, quote, scale, from, to);
+
+        synchronized (entry.series) {
+            for (int i = 0; i < times.length; i++) {
+                prices[i] = entry.series.getPrice(times[i]);
+            }
+        }
+        return prices;
+    }
+
+    private Entry getEntry(String base, String quote, int scale) {
+        String key = base.toLowerCase() + ";" + quote.toLowerCase() + ";" + scale;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Fetches whatever part of [from, to] the series doesn't cover yet.
+     */
+    private void fill(Entry entry, String base, String quote, int scale, long from, long to) {
+
+        long now = System.currentTimeMillis() / 1000L;
+        //Nothing to fetch past now
+        to = Math.min(to, now);
+        from = Math.min(from, to);
+
+        synchronized (entry.series) {
+            if (entry.series.covers(from, to)) {
+                return;
+            }
+        }
+
+        //One fetch per series at a time, callers waiting here usually find it covered
+        synchronized (entry.fetchLock) {
+            long start;
+            synchronized (entry.series) {
+                PriceSeries series = entry.series;
+                if (series.covers(from, to)) {
+                    return;
+                }
+                if (from < series.getCoveredFrom()) {
+                    start = from;
+                } else if (series.size() > 0) {
+                    start = series.getLastTimestamp();
+                } else {
+                    start = series.getCoveredTo();
+                }
+            }
+
+            log.info("Fetching {} {} price series from {}", base, quote, start);
+            fetches.incrementAndGet();
+            long fetchedAt = System.currentTimeMillis() / 1000L;
+            List<PriceDatum> data = priceApi.getHistoricPriceSeries(base, quote, start, scale)
+                .blockingFirst();
+
+            synchronized (entry.series) {
+                entry.series.merge(data, start, fetchedAt);
+            }
+        }
+    }
+
+    private static class Entry {
+
+        final PriceSeries series = new PriceSeries();
+        final Object fetchLock = new Object();
+    }
+}
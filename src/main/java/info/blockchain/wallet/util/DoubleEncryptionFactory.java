@@ -1,11 +1,18 @@
 package info.blockchain.wallet.util;
 
 import info.blockchain.wallet.crypto.AESUtil;
+import info.blockchain.wallet.crypto.DerivedKeyCache;
 import info.blockchain.wallet.exceptions.DecryptionException;
 import info.blockchain.wallet.exceptions.EncryptionException;
 import info.blockchain.wallet.settings.SettingsManager;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.InvalidCipherTextException;
@@ -13,26 +20,99 @@ import org.spongycastle.util.encoders.Hex;
 
 /**
  * Double encryption uses concatenated sharedKey+second password to encrypt data
+ *
+ * Each method optionally takes the wallet's {@link DerivedKeyCache}, so decrypting the same key
+ * or validating the second password again skips PBKDF2/SHA-256 rounds. Without one every call
+ * derives from scratch.
  */
 public class DoubleEncryptionFactory {
 
     private static final Logger log = LoggerFactory.getLogger(DoubleEncryptionFactory.class);
 
+    private static final int PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     public static String encrypt(String encrypted, String sharedKey, String password2, int iterations)
         throws UnsupportedEncodingException, EncryptionException {
+        return encrypt(encrypted, sharedKey, password2, iterations, null);
+    }
+
+    public static String encrypt(String encrypted, String sharedKey, String password2, int iterations,
+        @Nullable DerivedKeyCache cache) throws UnsupportedEncodingException, EncryptionException {
         log.info("Encrypting");
-        return AESUtil.encrypt(encrypted, sharedKey + password2, iterations);
+        return AESUtil.encrypt(encrypted, sharedKey + password2, iterations, cache);
+    }
+
+    /**
+     * Encrypts a batch of values on up to 4 workers of the {@link WorkerPool}. Every value gets its own IV,
+     * so each pays for a PBKDF2 derivation.
+     *
+     * @return The encrypted values, in the same order
+     */
+    public static List<String> encrypt(List<String> values, final String sharedKey,
+        final String password2, final int iterations, @Nullable final DerivedKeyCache cache)
+        throws UnsupportedEncodingException, EncryptionException, InterruptedIOException {
+
+        List<String> encrypted = new ArrayList<>(values.size());
+
+        int threads = Math.min(PARALLELISM, values.size());
+        if (threads <= 1) {
+            for (String value : values) {
+                encrypted.add(encrypt(value, sharedKey, password2, iterations, cache));
+            }
+            return encrypted;
+        }
+
+        List<Callable<String>> tasks = new ArrayList<>(values.size());
+        for (final String value : values) {
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return encrypt(value, sharedKey, password2, iterations, cache);
+                }
+            });
+        }
+
+        try {
+            return WorkerPool.invokeAll(tasks, threads);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UnsupportedEncodingException) {
+                throw (UnsupportedEncodingException) cause;
+            } else if (cause instanceof EncryptionException) {
+                throw (EncryptionException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted encrypting");
+        }
     }
 
     public static String decrypt(String encrypted2, String sharedKey, String password2, int iterations)
+        throws UnsupportedEncodingException, DecryptionException, InvalidCipherTextException {
+        return decrypt(encrypted2, sharedKey, password2, iterations, null);
+    }
+
+    public static String decrypt(String encrypted2, String sharedKey, String password2, int iterations,
+        @Nullable DerivedKeyCache cache)
         throws UnsupportedEncodingException, DecryptionException, InvalidCipherTextException {
         log.info("Decrypting");
-        return AESUtil.decrypt(encrypted2, sharedKey + password2, iterations);
+        return AESUtil.decrypt(encrypted2, sharedKey + password2, iterations, cache);
     }
 
     public static String getHash(String sharedKey, String password2, int iterations) {
+        return getHash(sharedKey, password2, iterations, null);
+    }
 
-        byte[] data = null;
+    public static String getHash(String sharedKey, String password2, int iterations,
+        @Nullable DerivedKeyCache cache) {
+
+        byte[] data = cache != null ? cache.getHash(sharedKey + password2, iterations) : null;
+        if (data != null) {
+            return new String(Hex.encode(data));
+        }
 
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
@@ -52,6 +132,9 @@ public class DoubleEncryptionFactory {
         }
 
         if (data != null) {
+            if (cache != null) {
+                cache.putHash(sharedKey + password2, iterations, data);
+            }
             return new String(Hex.encode(data));
         } else {
             return null;
@@ -61,8 +144,13 @@ public class DoubleEncryptionFactory {
 
     public static void validateSecondPassword(String dpasswordhash, String sharedKey, String password2, int iterations)
         throws DecryptionException {
+        validateSecondPassword(dpasswordhash, sharedKey, password2, iterations, null);
+    }
+
+    public static void validateSecondPassword(String dpasswordhash, String sharedKey, String password2, int iterations,
+        @Nullable DerivedKeyCache cache) throws DecryptionException {
         log.info("Validating second password");
-        String dhash = getHash(sharedKey, password2, iterations);
+        String dhash = getHash(sharedKey, password2, iterations, cache);
         if(!dpasswordhash.equals(dhash)) {
             throw new DecryptionException("Double encryption password error!!");
         }
@@ -0,0 +1,87 @@
+package info.blockchain.wallet.util;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared Jackson readers and writers for the data classes. Building a mapper and its serializer
+ * cache is far more expensive than using one, so every type gets an immutable, thread safe
+ * {@link ObjectReader} and {@link ObjectWriter} built once from a shared mapper.
+ *
+ * <p>Readers come in two configurations: {@link #reader(Class)} uses Jackson's default property
+ * detection, {@link #fieldReader(Class)} binds fields only, for classes whose getters and setters
+ * do more than access a field (wallet payloads, for example).
+ */
+public class JsonCodecs {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final ObjectMapper fieldMapper = new ObjectMapper();
+
+    static {
+        fieldMapper.setVisibility(fieldMapper.getSerializationConfig().getDefaultVisibilityChecker()
+            .withFieldVisibility(Visibility.ANY)
+            .withGetterVisibility(Visibility.NONE)
+            .withIsGetterVisibility(Visibility.NONE)
+            .withSetterVisibility(Visibility.NONE)
+            .withCreatorVisibility(Visibility.NONE));
+    }
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, ObjectReader> fieldReaders = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private JsonCodecs() {
+    }
+
+    /**
+     * @return The shared mapper, for tree reads and generic types. Not to be reconfigured.
+     */
+    public static ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    public static ObjectReader reader(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = mapper.readerFor(type);
+            ObjectReader existing = readers.putIfAbsent(type, reader);
+            if (existing != null) {
+                reader = existing;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * @return A reader binding fields only, ignoring getters, setters and creators
+     */
+    public static ObjectReader fieldReader(Class<?> type) {
+        ObjectReader reader = fieldReaders.get(type);
+        if (reader == null) {
+            reader = fieldMapper.readerFor(type);
+            ObjectReader existing = fieldReaders.putIfAbsent(type, reader);
+            if (existing != null) {
+                reader = existing;
+            }
+        }
+        return reader;
+    }
+
+    public static ObjectWriter writer(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        if (writer == null) {
+            writer = mapper.writerFor(type);
+            ObjectWriter existing = writers.putIfAbsent(type, writer);
+            if (existing != null) {
+                writer = existing;
+            }
+        }
+        return writer;
+    }
+}
@@ -1,9 +1,8 @@
 package info.blockchain.wallet.util;
 
-import info.blockchain.api.blockexplorer.BlockExplorer;
 import info.blockchain.api.blockexplorer.FilterType;
 import info.blockchain.api.data.Balance;
-import info.blockchain.wallet.BlockchainFramework;
+import info.blockchain.wallet.ClientRegistry;
 import info.blockchain.wallet.api.PersistentUrls;
 import info.blockchain.wallet.exceptions.ApiException;
 import org.apache.commons.codec.binary.Base64;
@@ -11,16 +10,27 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.bitcoinj.core.Base58;
 import org.bitcoinj.core.DumpedPrivateKey;
 import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.params.MainNetParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 import retrofit2.Call;
 import retrofit2.Response;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
 
 @SuppressWarnings("WeakerAccess")
 public class PrivateKeyFactory {
@@ -33,34 +43,68 @@ public class PrivateKeyFactory {
     public final static String WIF_COMPRESSED = "wif_c";
     public final static String WIF_UNCOMPRESSED = "wif_u";
 
+    public static final int DEFAULT_PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+    //Two addresses per key
+    public static final int DEFAULT_BALANCE_CHUNK_SIZE = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(PrivateKeyFactory.class);
+
+    private static final boolean[] BASE58_CHARS = charTable(
+        "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz");
+    private static final boolean[] HEX_CHARS = charTable("0123456789ABCDEFabcdef");
+    private static final boolean[] BASE64_CHARS = charTable(
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789/=+");
+
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int balanceChunkSize = DEFAULT_BALANCE_CHUNK_SIZE;
+
+    /**
+     * @param parallelism Threads decoding keys in {@link #getKeys(List)}
+     * @param balanceChunkSize Hex and mini keys per balance request in {@link #getKeys(List)}
+     */
+    public void setBulkImport(int parallelism, int balanceChunkSize) {
+        this.parallelism = Math.max(1, parallelism);
+        this.balanceChunkSize = Math.max(1, balanceChunkSize);
+    }
+
     public String getFormat(String key) {
 
         boolean isTestnet = !(PersistentUrls.getInstance().getCurrentNetworkParams() instanceof MainNetParams);
 
+        //One pass over the key for the alphabets every format is checked against
+        boolean isBase58 = true;
+        boolean isHex = true;
+        boolean isBase64 = true;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            isBase58 &= c < 128 && BASE58_CHARS[c];
+            isHex &= c < 128 && HEX_CHARS[c];
+            isBase64 &= c < 128 && BASE64_CHARS[c];
+        }
+
+        int length = key.length();
+        char first = length > 0 ? key.charAt(0) : 0;
+
         // 51 characters base58, always starts with a '5'  (or '9', for testnet)
-        if (!isTestnet && key.matches("^5[1-9A-HJ-NP-Za-km-z]{50}$") ||
-                isTestnet && key.matches("^9[1-9A-HJ-NP-Za-km-z]{50}$")) {
+        if (isBase58 && length == 51 && first == (isTestnet ? '9' : '5')) {
             return WIF_UNCOMPRESSED;
         }
         // 52 characters, always starts with 'K' or 'L' (or 'c' for testnet)
-        else if (!isTestnet && key.matches("^[LK][1-9A-HJ-NP-Za-km-z]{51}$") ||
-                isTestnet && key.matches("^[c][1-9A-HJ-NP-Za-km-z]{51}$")) {
+        else if (isBase58 && length == 52
+            && (isTestnet ? first == 'c' : first == 'L' || first == 'K')) {
             return WIF_COMPRESSED;
 
-        } else if (key.matches("^[1-9A-HJ-NP-Za-km-z]{44}$") || key
-                .matches("^[1-9A-HJ-NP-Za-km-z]{43}$")) {
+        } else if (isBase58 && (length == 44 || length == 43)) {
             return BASE58;
         }
-        else if (key.matches("^[A-Fa-f0-9]{64}$")) {
+        else if (isHex && length == 64) {
             return HEX;
-        } else if (key.matches("^[A-Za-z0-9/=+]{44}$")) {
+        } else if (isBase64 && length == 44) {
             return BASE64;
-        } else if (key.matches("^6P[1-9A-HJ-NP-Za-km-z]{56}$")) {
+        } else if (isBase58 && length == 58 && key.startsWith("6P")) {
             return BIP38;
-        } else if (key.matches("^S[1-9A-HJ-NP-Za-km-z]{21}$") ||
-                key.matches("^S[1-9A-HJ-NP-Za-km-z]{25}$") ||
-                key.matches("^S[1-9A-HJ-NP-Za-km-z]{29}$") ||
-                key.matches("^S[1-9A-HJ-NP-Za-km-z]{30}$")) {
+        } else if (isBase58 && first == 'S'
+            && (length == 22 || length == 26 || length == 30 || length == 31)) {
 
             byte[] testBytes;
             String data = key + "?";
@@ -84,6 +128,14 @@ public class PrivateKeyFactory {
         }
     }
 
+    private static boolean[] charTable(String chars) {
+        boolean[] table = new boolean[128];
+        for (int i = 0; i < chars.length(); i++) {
+            table[chars.charAt(i)] = true;
+        }
+        return table;
+    }
+
     public ECKey getKey(String format, String data) throws Exception {
         switch (format) {
             case WIF_UNCOMPRESSED:
@@ -103,6 +155,149 @@ public class PrivateKeyFactory {
         }
     }
 
+    /**
+     * Imports a batch of keys of any supported format. Keys are decoded on the {@link WorkerPool},
+     * and hex and mini keys are resolved to their compressed or uncompressed form with one
+     * balance request per chunk of keys rather than one per key.
+     *
+     * @return A key per entry in the same order, null where the format is unknown, the key is
+     * BIP38 (which needs a password) or it fails to decode
+     */
+    public List<ECKey> getKeys(List<String> keys) throws InterruptedIOException {
+
+        final int count = keys.size();
+        final String[] data = keys.toArray(new String[count]);
+        final ECKey[] decoded = new ECKey[count];
+        //Uncompressed alternatives of hex and mini keys, whose decoded key is the compressed one
+        final ECKey[] uncompressed = new ECKey[count];
+
+        int threads = Math.min(parallelism, count);
+        if (threads <= 1) {
+            decodeRange(data, decoded, uncompressed, 0, count);
+        } else {
+            List<Callable<Void>> slices = new ArrayList<>(threads);
+            int sliceSize = (count + threads - 1) / threads;
+            for (int from = 0; from < count; from += sliceSize) {
+                final int sliceFrom = from;
+                final int sliceTo = Math.min(count, from + sliceSize);
+                slices.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        decodeRange(data, decoded, uncompressed, sliceFrom, sliceTo);
+                        return null;
+                    }
+                });
+            }
+
+            try {
+                WorkerPool.invokeAll(slices, threads);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted importing keys");
+            }
+        }
+
+        List<Integer> ambiguous = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (uncompressed[i] != null) {
+                ambiguous.add(i);
+            }
+        }
+        for (int from = 0; from < ambiguous.size(); from += balanceChunkSize) {
+            resolveCompression(ambiguous.subList(from, Math.min(ambiguous.size(), from + balanceChunkSize)),
+                decoded, uncompressed);
+        }
+
+        return Arrays.asList(decoded);
+    }
+
+    private void decodeRange(String[] data, ECKey[] decoded, ECKey[] uncompressed, int from, int to) {
+        for (int i = from; i < to; i++) {
+            String key = data[i];
+            try {
+                String format = key != null ? getFormat(key) : null;
+                if (format == null || BIP38.equals(format)) {
+                    continue;
+                }
+
+                switch (format) {
+                    case HEX:
+                        decoded[i] = decodeHexPK(key, true);
+                        uncompressed[i] = decoded[i].decompress();
+                        break;
+                    case MINI:
+                        Hash hash = new Hash(MessageDigest.getInstance("SHA-256").digest(key.getBytes("UTF-8")));
+                        decoded[i] = decodeHexPK(hash.toString(), true);
+                        uncompressed[i] = decoded[i].decompress();
+                        break;
+                    default:
+                        decoded[i] = getKey(format, key);
+                }
+            } catch (Exception e) {
+                log.warn("Unable to decode key " + i, e);
+                decoded[i] = null;
+                uncompressed[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Picks the compressed or uncompressed form of each key in the chunk with a single balance
+     * request. Keys stay compressed if the request fails.
+     */
+    private void resolveCompression(List<Integer> chunk, ECKey[] decoded, ECKey[] uncompressed) {
+
+        NetworkParameters params = PersistentUrls.getInstance().getCurrentNetworkParams();
+
+        ArrayList<String> list = new ArrayList<>(chunk.size() * 2);
+        for (int i : chunk) {
+            list.add(uncompressed[i].toAddress(params).toString());
+            list.add(decoded[i].toAddress(params).toString());
+        }
+
+        HashMap<String, Balance> body;
+        try {
+            body = getBalances(list);
+        } catch (Exception e) {
+            log.warn("Balance lookup failed, keeping " + chunk.size() + " keys compressed", e);
+            return;
+        }
+
+        for (int n = 0; n < chunk.size(); n++) {
+            int i = chunk.get(n);
+            if (!chooseCompressed(body.get(list.get(n * 2)), body.get(list.get(n * 2 + 1)))) {
+                decoded[i] = uncompressed[i];
+            }
+        }
+    }
+
+    private HashMap<String, Balance> getBalances(List<String> addresses) throws IOException, ApiException {
+
+        Call<HashMap<String, Balance>> call = ClientRegistry.getBlockExplorer().getBalance(addresses, FilterType.RemoveUnspendable);
+
+        Response<HashMap<String, Balance>> exe = call.execute();
+
+        if (!exe.isSuccessful()) {
+            throw new ApiException("Failed to connect to server.");
+        }
+
+        return exe.body();
+    }
+
+    /**
+     * @return False only if the uncompressed address has funds and the compressed one has none
+     */
+    private boolean chooseCompressed(@Nullable Balance uncompressed, @Nullable Balance compressed) {
+
+        BigInteger uncompressedBalance = uncompressed != null ? uncompressed.getFinalBalance() : null;
+        BigInteger compressedBalance = compressed != null ? compressed.getFinalBalance() : null;
+
+        return !(compressedBalance != null && compressedBalance.compareTo(BigInteger.ZERO) == 0
+            && uncompressedBalance != null && uncompressedBalance.compareTo(BigInteger.ZERO) == 1);
+    }
+
     private ECKey decodeMiniKey(String mini) throws Exception {
         Hash hash = new Hash(MessageDigest.getInstance("SHA-256").digest(mini.getBytes("UTF-8")));
         return determineKey(hash.toString());
@@ -110,8 +305,8 @@ public class PrivateKeyFactory {
 
     private ECKey determineKey(String hash) throws Exception {
 
-        ECKey uncompressedKey = decodeHexPK(hash, false);
         ECKey compressedKey = decodeHexPK(hash, true);
+        ECKey uncompressedKey = compressedKey.decompress();
 
         try {
             String uncompressedAddress = uncompressedKey.toAddress(PersistentUrls.getInstance().getCurrentNetworkParams()).toString();
@@ -121,25 +316,12 @@ public class PrivateKeyFactory {
             list.add(uncompressedAddress);
             list.add(compressedAddress);
 
-            BlockExplorer blockExplorer = new BlockExplorer(BlockchainFramework.getRetrofitExplorerInstance(), BlockchainFramework.getApiCode());
-            Call<HashMap<String, Balance>> call = blockExplorer.getBalance(list, FilterType.RemoveUnspendable);
-
-            Response<HashMap<String, Balance>> exe = call.execute();
+            HashMap<String, Balance> body = getBalances(list);
 
-            if (!exe.isSuccessful()) {
-                throw new ApiException("Failed to connect to server.");
-            }
-
-            HashMap<String, Balance> body = exe.body();
-
-            BigInteger uncompressedBalance = body.get(uncompressedAddress).getFinalBalance();
-            BigInteger compressedBalance = body.get(compressedAddress).getFinalBalance();
-
-            if (compressedBalance != null && compressedBalance.compareTo(BigInteger.ZERO) == 0
-                && uncompressedBalance != null && uncompressedBalance.compareTo(BigInteger.ZERO) == 1) {
-                return uncompressedKey;
-            } else {
+            if (chooseCompressed(body.get(uncompressedAddress), body.get(compressedAddress))) {
                 return compressedKey;
+            } else {
+                return uncompressedKey;
             }
         } catch (Exception e) {
             // TODO: 08/03/2017 Is this safe? Could this not return an uninitialized ECKey?
@@ -8,56 +8,78 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.bitcoinj.core.AddressFormatException;
 import org.bitcoinj.core.Base58;
 import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.TransactionInput;
 import org.bitcoinj.core.TransactionOutput;
-import org.bitcoinj.params.MainNetParams;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 
 public class Tools {
 
+    private static final int MAX_CACHED_ACCOUNTS = 50;
+
+    //Watch-only accounts by network + xpub, so their chains keep derived addresses between calls
+    private static final LinkedHashMap<String, HDAccount> accounts =
+        new LinkedHashMap<String, HDAccount>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HDAccount> eldest) {
+                return size() > MAX_CACHED_ACCOUNTS;
+            }
+        };
+
+    /**
+     * BIP69 input order: previous transaction hash, then output index.
+     */
+    public static final Comparator<TransactionInput> BIP69_INPUT_ORDER = new Comparator<TransactionInput>() {
+        @Override
+        public int compare(TransactionInput o1, TransactionInput o2) {
+            byte[] hash1 = o1.getOutpoint().getHash().getBytes();
+            byte[] hash2 = o2.getOutpoint().getHash().getBytes();
+            int hashCompare = LexicographicalComparator.getComparator().compare(hash1, hash2);
+            if (hashCompare != 0) {
+                return hashCompare;
+            } else {
+                return Long.compare(o1.getOutpoint().getIndex(), o2.getOutpoint().getIndex());
+            }
+        }
+    };
+
+    /**
+     * BIP69 output order: amount, then script.
+     */
+    public static final Comparator<TransactionOutput> BIP69_OUTPUT_ORDER = new Comparator<TransactionOutput>() {
+        @Override
+        public int compare(TransactionOutput o1, TransactionOutput o2) {
+            int amountCompare = Long.compare(o1.getValue().getValue(), o2.getValue().getValue());
+            if (amountCompare != 0) {
+                return amountCompare;
+            } else {
+                byte[] hash1 = o1.getScriptBytes();
+                byte[] hash2 = o2.getScriptBytes();
+                return LexicographicalComparator.getComparator().compare(hash1, hash2);
+            }
+        }
+    };
+
     public static Transaction applyBip69(Transaction transaction) {
         //This will render an already signed transaction invalid, as the signature covers the ordering of the in/outputs.
 
         List<TransactionInput> inputList = new ArrayList<>(transaction.getInputs());
         List<TransactionOutput> outputList = new ArrayList<>(transaction.getOutputs());
 
-        Collections.sort(inputList, new Comparator<TransactionInput>() {
-            @Override
-            public int compare(TransactionInput o1, TransactionInput o2) {
-                byte[] hash1 = o1.getOutpoint().getHash().getBytes();
-                byte[] hash2 = o2.getOutpoint().getHash().getBytes();
-                int hashCompare = LexicographicalComparator.getComparator().compare(hash1, hash2);
-                if (hashCompare != 0) {
-                    return hashCompare;
-                } else {
-                    return (int) (o1.getOutpoint().getIndex() - o2.getOutpoint().getIndex());
-                }
-            }
-        });
-
-        Collections.sort(outputList, new Comparator<TransactionOutput>() {
-            @Override
-            public int compare(TransactionOutput o1, TransactionOutput o2) {
-                long amountDiff = o1.getValue().getValue() - o2.getValue().value;
-                if (amountDiff != 0) {
-                    return (int) amountDiff;
-                } else {
-                    byte[] hash1 = o1.getScriptBytes();
-                    byte[] hash2 = o2.getScriptBytes();
-                    return LexicographicalComparator.getComparator().compare(hash1, hash2);
-                }
-            }
-        });
+        Collections.sort(inputList, BIP69_INPUT_ORDER);
+        Collections.sort(outputList, BIP69_OUTPUT_ORDER);
 
-        Transaction sortedTransaction = new Transaction(MainNetParams.get());
+        Transaction sortedTransaction = new Transaction(transaction.getParams());
         for (TransactionInput input : inputList) {
             sortedTransaction.addInput(input);
         }
@@ -128,16 +150,18 @@ public class Tools {
     }
 
     public static List<String> getAddressList(int chain, String xpub, int startIndex, int endIndex) {
-        HDAccount hdAccount = new HDAccount(PersistentUrls.getInstance().getCurrentNetworkParams(),
-                xpub);
-
-        List<String> list = new ArrayList<>();
+        return getAccount(xpub).getChain(chain).getAddressStrings(startIndex, endIndex);
+    }
 
-        for (int i = startIndex; i < endIndex; i++) {
-            list.add(hdAccount.getChain(chain).getAddressAt(i).getAddressString());
+    private static synchronized HDAccount getAccount(String xpub) {
+        NetworkParameters params = PersistentUrls.getInstance().getCurrentNetworkParams();
+        String key = params.getId() + xpub;
+        HDAccount hdAccount = accounts.get(key);
+        if (hdAccount == null) {
+            hdAccount = new HDAccount(params, xpub);
+            accounts.put(key, hdAccount);
         }
-
-        return list;
+        return hdAccount;
     }
 
     /**
@@ -149,13 +173,7 @@ public class Tools {
      * @return A non-null List of addresses as Strings
      */
     public static List<String> getReceiveAddressList(HDAccount account, int startIndex, int endIndex) {
-        List<String> list = new ArrayList<>();
-
-        for (int i = startIndex; i < endIndex; i++) {
-            list.add(account.getReceive().getAddressAt(i).getAddressString());
-        }
-
-        return list;
+        return account.getReceive().getAddressStrings(startIndex, endIndex);
     }
 
 }
@@ -0,0 +1,122 @@
+package info.blockchain.wallet.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide pool of daemon worker threads for splitting a batch of independent tasks, such
+ * as key imports, encryptions or multiaddress shard requests.
+ *
+ * The pool is bounded and created on first use, idle threads time out. Each batch also caps
+ * its own parallelism, and the calling thread works through the batch too, so a batch always
+ * completes even when every pool thread is busy with other batches.
+ */
+public class WorkerPool {
+
+    public static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static ThreadPoolExecutor executor;
+
+    private WorkerPool() {
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "wallet-worker-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Runs the tasks with at most parallelism of them at once, the calling thread included.
+     * Once a task fails, tasks that haven't started yet are skipped.
+     *
+     * @return Results in the same order as the tasks
+     * @throws ExecutionException Wrapping the failure of the first failed task, in task order
+     */
+    public static <T> List<T> invokeAll(final List<? extends Callable<T>> tasks, int parallelism)
+        throws ExecutionException, InterruptedException {
+
+        final int count = tasks.size();
+        final Object[] results = new Object[count];
+        final Throwable[] failures = new Throwable[count];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicBoolean stopped = new AtomicBoolean();
+
+        int helperCount = Math.min(parallelism, count) - 1;
+        List<AtomicBoolean> claimed = new ArrayList<>();
+        List<Future<?>> helpers = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < helperCount; i++) {
+                final AtomicBoolean started = new AtomicBoolean();
+                claimed.add(started);
+                helpers.add(getExecutor().submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (started.compareAndSet(false, true)) {
+                            work(tasks, results, failures, next, stopped);
+                        }
+                    }
+                }));
+            }
+
+            work(tasks, results, failures, next, stopped);
+
+            //Helpers still queued have nothing left to do, only wait for the ones running
+            for (int i = 0; i < helpers.size(); i++) {
+                if (!claimed.get(i).compareAndSet(false, true)) {
+                    helpers.get(i).get();
+                }
+            }
+        } catch (InterruptedException e) {
+            stopped.set(true);
+            throw e;
+        }
+
+        List<T> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (failures[i] != null) {
+                throw new ExecutionException(failures[i]);
+            }
+            @SuppressWarnings("unchecked")
+            T result = (T) results[i];
+            list.add(result);
+        }
+        return list;
+    }
+
+    private static <T> void work(List<? extends Callable<T>> tasks, Object[] results,
+        Throwable[] failures, AtomicInteger next, AtomicBoolean stopped) {
+
+        int i;
+        while (!stopped.get() && (i = next.getAndIncrement()) < tasks.size()) {
+            try {
+                results[i] = tasks.get(i).call();
+            } catch (Throwable e) {
+                failures[i] = e;
+                stopped.set(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package info.blockchain.wallet.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import info.blockchain.wallet.ClientRegistry;
+import info.blockchain.wallet.api.PersistentUrls;
+import info.blockchain.wallet.multiaddress.TransactionHistoryCache;
+import info.blockchain.wallet.payload.BalanceStore;
+import info.blockchain.wallet.payload.PayloadManager;
+import info.blockchain.wallet.util.JsonCodecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * Pushes live transactions and blocks into wallets' balances and transaction histories.
+ *
+ * A single websocket session is shared by every {@link Subscription}. Once connected, the
+ * engine subscribes to new blocks and to every xpub and address of its subscriptions. Incoming
+ * transactions are applied to the balances of the subscriptions they involve, and new blocks
+ * update the confirmations in their transaction histories.
+ *
+ * A dropped session is reopened with an increasing delay. While disconnected, every
+ * subscription's {@link Poller} runs at the poll interval, and once more after reconnecting to
+ * catch up on anything missed. A transaction touching an xpub or address without a known
+ * balance also triggers a poll.
+ *
+ * Listeners and pollers should return quickly. Listeners run on the websocket's reader thread,
+ * and pollers run on the engine's single scheduler thread.
+ */
+public class SubscriptionEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionEngine.class);
+
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 60000L;
+
+    static final long MIN_RECONNECT_DELAY_MILLIS = 1000L;
+    static final long MAX_RECONNECT_DELAY_MILLIS = 60000L;
+    private static final long PING_INTERVAL_SECONDS = 30L;
+
+    //Transactions already applied, in case one is announced twice
+    private static final int MAX_SEEN_TRANSACTIONS = 10000;
+
+    private static final ObjectMapper mapper = JsonCodecs.getMapper();
+
+    public interface Poller {
+
+        /**
+         * Fetches the subscription's balances from the server, eg
+         * {@link PayloadManager#updateAllBalances()}.
+         */
+        void poll() throws Exception;
+    }
+
+    public interface Listener {
+
+        /**
+         * Called once a transaction is applied to the subscription's balances.
+         */
+        void onTransaction(String hash);
+
+        void onBlock(long height);
+    }
+
+    private final OkHttpClient client;
+    private final Request request;
+    private final long pollIntervalMillis;
+
+    //Xpubs and addresses, with the subscriptions involving them
+    private final ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final LinkedHashMap<String, Boolean> seenTransactions =
+        new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_SEEN_TRANSACTIONS;
+            }
+        };
+
+    //Guarded by this
+    private boolean started;
+    private ScheduledExecutorService scheduler;
+    private volatile WebSocket webSocket;
+    private boolean connected;
+    private boolean lostConnection;
+    private long reconnectDelayMillis = MIN_RECONNECT_DELAY_MILLIS;
+    private ScheduledFuture<?> pollTask;
+    private ScheduledFuture<?> reconnectTask;
+
+    private volatile long latestBlock;
+
+    /**
+     * Connects to {@link PersistentUrls#WEBSOCKET_URL} with the shared client from
+     * {@link ClientRegistry}.
+     */
+    public SubscriptionEngine() {
+        this(ClientRegistry.getOkHttpClient(), PersistentUrls.WEBSOCKET_URL, DEFAULT_POLL_INTERVAL_MILLIS);
+    }
+
+    public SubscriptionEngine(@Nonnull OkHttpClient client, @Nonnull String url, long pollIntervalMillis) {
+        this.client = client.newBuilder()
+            .pingInterval(PING_INTERVAL_SECONDS, TimeUnit.SECONDS)
+            .build();
+        this.request = new Request.Builder().url(url).build();
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * Opens the websocket session. Subscriptions can be added before or after starting.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        log.info("Starting websocket subscriptions");
+        started = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "websocket-subscriptions");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        connect();
+    }
+
+    /**
+     * Closes the session, stops polling and shuts down the scheduler thread. The engine can be
+     * started again.
+     */
+    public synchronized void stop() {
+        log.info("Stopping websocket subscriptions");
+        started = false;
+        connected = false;
+        lostConnection = false;
+        cancelTasks();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (webSocket != null) {
+            webSocket.close(1000, "Stopped");
+            webSocket = null;
+        }
+    }
+
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return Latest block height announced, 0 before the first block
+     */
+    public long getLatestBlock() {
+        return latestBlock;
+    }
+
+    public synchronized void subscribe(@Nonnull Subscription subscription) {
+
+        if (subscriptions.addIfAbsent(subscription)) {
+            List<String> messages = new ArrayList<>();
+            for (String key : subscription.getKeys()) {
+                Topic topic = topics.get(key);
+                if (topic == null) {
+                    topic = new Topic(subscription.xpubs.contains(key));
+                    topics.put(key, topic);
+                    messages.add(topic.message("sub", key));
+                }
+                topic.subscriptions.add(subscription);
+            }
+            if (connected) {
+                send(messages);
+            }
+        }
+    }
+
+    public synchronized void unsubscribe(@Nonnull Subscription subscription) {
+
+        if (subscriptions.remove(subscription)) {
+            List<String> messages = new ArrayList<>();
+            for (String key : subscription.getKeys()) {
+                Topic topic = topics.get(key);
+                if (topic == null) {
+                    continue;
+                }
+                topic.subscriptions.remove(subscription);
+                if (topic.subscriptions.isEmpty()) {
+                    topics.remove(key);
+                    messages.add(topic.message("unsub", key));
+                }
+            }
+            if (connected) {
+                send(messages);
+            }
+        }
+    }
+
+    private void connect() {
+        reconnectTask = null;
+        if (!started) {
+            return;
+        }
+        log.info("Connecting websocket");
+        webSocket = client.newWebSocket(request, new SocketListener());
+    }
+
+    private void send(List<String> messages) {
+        for (String message : messages) {
+            webSocket.send(message);
+        }
+    }
+
+    private void cancelTasks() {
+        if (pollTask != null) {
+            pollTask.cancel(false);
+            pollTask = null;
+        }
+        if (reconnectTask != null) {
+            reconnectTask.cancel(false);
+            reconnectTask = null;
+        }
+    }
+
+    private synchronized void opened(WebSocket socket) {
+        if (socket != webSocket) {
+            return;
+        }
+        log.info("Websocket connected, subscribing to {} xpubs and addresses", topics.size());
+
+        connected = true;
+        reconnectDelayMillis = MIN_RECONNECT_DELAY_MILLIS;
+        if (pollTask != null) {
+            pollTask.cancel(false);
+            pollTask = null;
+        }
+
+        List<String> messages = new ArrayList<>();
+        messages.add("{\"op\":\"blocks_sub\"}");
+        for (Entry<String, Topic> entry : topics.entrySet()) {
+            messages.add(entry.getValue().message("sub", entry.getKey()));
+        }
+        send(messages);
+
+        if (lostConnection) {
+            //Catch up on anything announced while disconnected
+            lostConnection = false;
+            for (Subscription subscription : subscriptions) {
+                schedulePoll(subscription);
+            }
+        }
+    }
+
+    private synchronized void disconnected(WebSocket socket, String reason) {
+        if (socket != webSocket) {
+            return;
+        }
+        webSocket = null;
+        connected = false;
+        if (!started) {
+            return;
+        }
+        log.warn("Websocket disconnected ({}), reconnecting in {} ms", reason, reconnectDelayMillis);
+        lostConnection = true;
+
+        if (pollTask == null) {
+            pollTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    for (Subscription subscription : subscriptions) {
+                        poll(subscription);
+                    }
+                }
+            }, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        reconnectTask = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SubscriptionEngine.this) {
+                    connect();
+                }
+            }
+        }, reconnectDelayMillis, TimeUnit.MILLISECONDS);
+        reconnectDelayMillis = Math.min(reconnectDelayMillis * 2, MAX_RECONNECT_DELAY_MILLIS);
+    }
+
+    private synchronized void schedulePoll(final Subscription subscription) {
+        if (scheduler == null) {
+            //Stopped
+            return;
+        }
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                poll(subscription);
+            }
+        });
+    }
+
+    private void poll(Subscription subscription) {
+        if (subscription.poller == null || !subscriptions.contains(subscription)) {
+            return;
+        }
+        try {
+            subscription.poller.poll();
+        } catch (Exception e) {
+            log.warn("Polling failed", e);
+        }
+    }
+
+    private void onMessage(String text) {
+        JsonNode message;
+        try {
+            message = mapper.readTree(text);
+        } catch (IOException e) {
+            log.warn("Unreadable websocket message", e);
+            return;
+        }
+
+        String op = message.path("op").asText();
+        if ("utx".equals(op)) {
+            onTransaction(message.path("x"));
+        } else if ("block".equals(op)) {
+            onBlock(message.path("x").path("height").asLong());
+        }
+    }
+
+    private void onTransaction(JsonNode transaction) {
+
+        String hash = transaction.path("hash").asText();
+        synchronized (seenTransactions) {
+            if (seenTransactions.put(hash, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+
+        //Balance change per subscription and xpub or address
+        HashMap<Subscription, HashMap<String, Long>> changes = new HashMap<>();
+        for (JsonNode input : transaction.path("inputs")) {
+            addChange(changes, input.path("prev_out"), -1L);
+        }
+        for (JsonNode output : transaction.path("out")) {
+            addChange(changes, output, 1L);
+        }
+
+        for (Entry<Subscription, HashMap<String, Long>> entry : changes.entrySet()) {
+            Subscription subscription = entry.getKey();
+            if (!subscription.markApplied(hash)) {
+                //Applied locally, eg right after sending it
+                continue;
+            }
+            if (!subscription.apply(entry.getValue())) {
+                schedulePoll(subscription);
+            }
+            if (subscription.listener != null) {
+                subscription.listener.onTransaction(hash);
+            }
+        }
+    }
+
+    private void addChange(HashMap<Subscription, HashMap<String, Long>> changes, JsonNode output, long sign) {
+
+        //Addresses derived from a subscribed xpub carry it
+        String key = output.path("xpub").path("m").asText(null);
+        Topic topic = key != null ? topics.get(key) : null;
+        if (topic == null) {
+            key = output.path("addr").asText(null);
+            topic = key != null ? topics.get(key) : null;
+        }
+        if (topic == null) {
+            return;
+        }
+
+        long value = sign * output.path("value").asLong();
+        for (Subscription subscription : topic.subscriptions) {
+            HashMap<String, Long> change = changes.get(subscription);
+            if (change == null) {
+                change = new HashMap<>();
+                changes.put(subscription, change);
+            }
+            Long current = change.get(key);
+            change.put(key, current == null ? value : current + value);
+        }
+    }
+
+    private void onBlock(long height) {
+        if (height <= 0) {
+            return;
+        }
+        latestBlock = Math.max(latestBlock, height);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.transactionHistoryCache != null) {
+                subscription.transactionHistoryCache.updateConfirmations(height);
+            }
+            if (subscription.listener != null) {
+                subscription.listener.onBlock(height);
+            }
+        }
+    }
+
+    private static class Topic {
+
+        final boolean xpub;
+        final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+        Topic(boolean xpub) {
+            this.xpub = xpub;
+        }
+
+        String message(String action, String key) {
+            ObjectNode message = mapper.createObjectNode();
+            message.put("op", (xpub ? "xpub_" : "addr_") + action);
+            message.put(xpub ? "xpub" : "addr", key);
+            return message.toString();
+        }
+    }
+
+    private class SocketListener extends WebSocketListener {
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            opened(webSocket);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            if (webSocket == SubscriptionEngine.this.webSocket) {
+                SubscriptionEngine.this.onMessage(text);
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(1000, null);
+            disconnected(webSocket, code + " " + reason);
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            disconnected(webSocket, code + " " + reason);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            disconnected(webSocket, String.valueOf(t));
+        }
+    }
+
+    /**
+     * A wallet's xpubs and imported addresses, with the balances and history they update.
+     */
+    public static class Subscription {
+
+        private final BalanceStore balanceStore;
+        private final Set<String> xpubs;
+        private final Set<String> legacyAddresses;
+
+        private TransactionHistoryCache transactionHistoryCache;
+        private Poller poller;
+        private Listener listener;
+
+        //Transactions already applied to the balances, from the websocket or locally
+        private final LinkedHashMap<String, Boolean> appliedTransactions =
+            new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_SEEN_TRANSACTIONS;
+                }
+            };
+
+        /**
+         * @param balanceStore Store holding a balance per xpub and address, and the
+         * {@link PayloadManager#MULTI_ADDRESS_ALL} and {@link PayloadManager#MULTI_ADDRESS_ALL_LEGACY}
+         * totals
+         */
+        public Subscription(@Nonnull BalanceStore balanceStore,
+                            @Nonnull Collection<String> xpubs,
+                            @Nonnull Collection<String> legacyAddresses) {
+            this.balanceStore = balanceStore;
+            this.xpubs = Collections.unmodifiableSet(new LinkedHashSet<>(xpubs));
+            this.legacyAddresses = Collections.unmodifiableSet(new LinkedHashSet<>(legacyAddresses));
+        }
+
+        public Set<String> getXpubs() {
+            return xpubs;
+        }
+
+        public Set<String> getLegacyAddresses() {
+            return legacyAddresses;
+        }
+
+        public void setTransactionHistoryCache(@Nullable TransactionHistoryCache transactionHistoryCache) {
+            this.transactionHistoryCache = transactionHistoryCache;
+        }
+
+        public void setPoller(@Nullable Poller poller) {
+            this.poller = poller;
+        }
+
+        public void setListener(@Nullable Listener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Records a transaction as applied to the balances, eg by the local subtract after
+         * sending it, so its websocket announcement doesn't apply it again.
+         *
+         * @return False if it was already applied, the caller should leave the balances alone
+         */
+        public boolean markApplied(@Nonnull String hash) {
+            synchronized (appliedTransactions) {
+                return appliedTransactions.put(hash, Boolean.TRUE) == null;
+            }
+        }
+
+        private Set<String> getKeys() {
+            Set<String> keys = new LinkedHashSet<>(xpubs);
+            keys.addAll(legacyAddresses);
+            return keys;
+        }
+
+        /**
+         * @return False if a balance wasn't known yet and needs polling
+         */
+        private boolean apply(HashMap<String, Long> changes) {
+            boolean complete = true;
+            for (Entry<String, Long> change : changes.entrySet()) {
+                if (change.getValue() == 0L) {
+                    continue;
+                }
+                String key = change.getKey();
+                complete &= balanceStore.add(change.getValue(), key, legacyAddresses.contains(key));
+            }
+            return complete;
+        }
+    }
+}
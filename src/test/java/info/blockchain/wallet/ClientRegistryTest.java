@@ -0,0 +1,67 @@
+package info.blockchain.wallet;
+
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import retrofit2.Retrofit;
+
+public class ClientRegistryTest extends MockedResponseTest {
+
+    @After
+    public void tearDown() {
+        ClientRegistry.setMaxRequests(ClientRegistry.DEFAULT_MAX_REQUESTS,
+            ClientRegistry.DEFAULT_MAX_REQUESTS_PER_HOST);
+    }
+
+    private static OkHttpClient client(Retrofit retrofit) {
+        return (OkHttpClient) retrofit.callFactory();
+    }
+
+    @Test
+    public void getClients_shared() {
+        Assert.assertSame(ClientRegistry.getBlockExplorer(), ClientRegistry.getBlockExplorer());
+        Assert.assertSame(ClientRegistry.getPushTx(), ClientRegistry.getPushTx());
+        Assert.assertSame(ClientRegistry.getFeeApi(), ClientRegistry.getFeeApi());
+        Assert.assertSame(ClientRegistry.getPriceApi(), ClientRegistry.getPriceApi());
+        Assert.assertSame(ClientRegistry.getWalletApi(), ClientRegistry.getWalletApi());
+        Assert.assertSame(BlockchainFramework.getRetrofitExplorerInstance(),
+            BlockchainFramework.getRetrofitExplorerInstance());
+    }
+
+    @Test
+    public void getRetrofit_sharesConnectionPool() {
+        OkHttpClient api = client(BlockchainFramework.getRetrofitApiInstance());
+        OkHttpClient explorer = client(BlockchainFramework.getRetrofitExplorerInstance());
+
+        Assert.assertSame(ClientRegistry.getConnectionPool(), api.connectionPool());
+        Assert.assertSame(ClientRegistry.getConnectionPool(), explorer.connectionPool());
+        Assert.assertSame(ClientRegistry.getDispatcher(), api.dispatcher());
+        Assert.assertSame(ClientRegistry.getDispatcher(), explorer.dispatcher());
+
+        //App's interceptors are kept
+        Assert.assertTrue(api.interceptors().contains(mockInterceptor));
+        Assert.assertTrue(explorer.interceptors().contains(mockInterceptor));
+    }
+
+    @Test
+    public void init_resetsClients() {
+        Object blockExplorer = ClientRegistry.getBlockExplorer();
+        Retrofit retrofit = BlockchainFramework.getRetrofitApiInstance();
+
+        init();
+
+        Assert.assertNotSame(blockExplorer, ClientRegistry.getBlockExplorer());
+        Assert.assertNotSame(retrofit, BlockchainFramework.getRetrofitApiInstance());
+        Assert.assertSame(ClientRegistry.getConnectionPool(),
+            client(BlockchainFramework.getRetrofitApiInstance()).connectionPool());
+    }
+
+    @Test
+    public void setMaxRequests() {
+        ClientRegistry.setMaxRequests(16, 2);
+
+        Assert.assertEquals(16, client(BlockchainFramework.getRetrofitApiInstance()).dispatcher().getMaxRequests());
+        Assert.assertEquals(2, client(BlockchainFramework.getRetrofitExplorerInstance()).dispatcher().getMaxRequestsPerHost());
+    }
+}
@@ -64,7 +64,7 @@ public class MockInterceptor implements Interceptor {
     }
 
     @Override
-    public Response intercept(Chain chain) throws IOException {
+    public synchronized Response intercept(Chain chain) throws IOException {
 
         if(ioException)
             throw new IOException();
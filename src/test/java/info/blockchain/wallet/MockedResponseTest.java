@@ -67,6 +67,10 @@ public abstract class MockedResponseTest {
                 return null;
             }
         });
+
+        //Mocked responses change between identical requests
+        ClientRegistry.getBlockExplorer().setFreshnessWindow(0);
+        ClientRegistry.getFeeProvider().setTimeToLive(0, 0);
     }
 
     @Before
@@ -0,0 +1,208 @@
+package info.blockchain.wallet.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import info.blockchain.api.blockexplorer.FilterType;
+import info.blockchain.api.data.Balance;
+import info.blockchain.api.data.MultiAddress;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+/**
+ * Runs the explorer against a local server counting the requests it receives.
+ */
+public class CoalescingBlockExplorerTest {
+
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    private static final List<String> ADDRESSES = Arrays.asList(
+        "1NZUGwdmQJ7AA6QrEuBz4jeT6z7yjty5dM", "1H2E6b2Ny6UeQ6bM5V2pSxAwZaVYAaaYUH");
+
+    private HttpServer server;
+    private CoalescingBlockExplorer blockExplorer;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long responseDelayMs;
+    private volatile int responseCode = 200;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/balance", new Handler("{\"1NZUGwdmQJ7AA6QrEuBz4jeT6z7yjty5dM\":"
+            + "{\"final_balance\":1000,\"n_tx\":1,\"total_received\":1000}}"));
+        server.createContext("/multiaddr", new Handler("{}"));
+        server.start();
+
+        Retrofit retrofit = new Retrofit.Builder()
+            .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+            .client(new OkHttpClient())
+            .addConverterFactory(JacksonConverterFactory.create())
+            .build();
+        blockExplorer = new CoalescingBlockExplorer(retrofit, "api_code");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private class Handler implements HttpHandler {
+
+        private final byte[] body;
+
+        Handler(String body) {
+            this.body = body.getBytes(UTF_8);
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) {
+            requests.incrementAndGet();
+            try {
+                Thread.sleep(responseDelayMs);
+                byte[] response = responseCode == 200 ? body : "Server error".getBytes(UTF_8);
+                exchange.sendResponseHeaders(responseCode, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            } catch (Exception e) {
+                exchange.close();
+            }
+        }
+    }
+
+    private Response<HashMap<String, Balance>> getBalance(List<String> addresses) throws Exception {
+        return blockExplorer.getBalance(addresses, FilterType.RemoveUnspendable).execute();
+    }
+
+    @Test
+    public void getBalance_concurrentRequestsShareOneCall() throws Exception {
+
+        responseDelayMs = 500;
+        blockExplorer.setFreshnessWindow(0);
+
+        int threads = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Response<HashMap<String, Balance>>>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(new Callable<Response<HashMap<String, Balance>>>() {
+                @Override
+                public Response<HashMap<String, Balance>> call() throws Exception {
+                    start.await();
+                    return getBalance(ADDRESSES);
+                }
+            }));
+        }
+        start.countDown();
+
+        HashMap<String, Balance> body = futures.get(0).get().body();
+        for (Future<Response<HashMap<String, Balance>>> future : futures) {
+            Assert.assertSame(body, future.get().body());
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(1000L, body.get(ADDRESSES.get(0)).getFinalBalance().longValue());
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(1, blockExplorer.getMissCount());
+        Assert.assertEquals(threads - 1, blockExplorer.getHitCount());
+
+        //Nothing kept once the call completes
+        getBalance(ADDRESSES);
+        Assert.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void getBalance_freshnessWindow() throws Exception {
+
+        getBalance(ADDRESSES);
+        //Same address set in another order
+        getBalance(Arrays.asList(ADDRESSES.get(1), ADDRESSES.get(0)));
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(1, blockExplorer.getHitCount());
+
+        getBalance(ADDRESSES.subList(0, 1));
+        Assert.assertEquals(2, requests.get());
+
+        blockExplorer.clear();
+        getBalance(ADDRESSES);
+        Assert.assertEquals(3, requests.get());
+        Assert.assertEquals(3, blockExplorer.getMissCount());
+    }
+
+    @Test
+    public void getBalance_staleResponsesSwept() throws Exception {
+
+        blockExplorer.setFreshnessWindow(50);
+        getBalance(ADDRESSES);
+        getBalance(ADDRESSES.subList(0, 1));
+        Assert.assertEquals(2, blockExplorer.size());
+
+        Thread.sleep(100);
+        getBalance(ADDRESSES.subList(1, 2));
+
+        Assert.assertEquals(1, blockExplorer.size());
+    }
+
+    @Test
+    public void clearOnSuccess() throws Exception {
+
+        getBalance(ADDRESSES);
+        blockExplorer.clearOnSuccess(blockExplorer.getBalance(ADDRESSES.subList(0, 1),
+            FilterType.RemoveUnspendable)).execute();
+        getBalance(ADDRESSES);
+
+        Assert.assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void getBalance_errorsNotKept() throws Exception {
+
+        responseCode = 500;
+
+        Response<HashMap<String, Balance>> first = getBalance(ADDRESSES);
+        Response<HashMap<String, Balance>> second = getBalance(ADDRESSES);
+
+        Assert.assertFalse(first.isSuccessful());
+        Assert.assertEquals("Server error", first.errorBody().string());
+        Assert.assertEquals("Server error", second.errorBody().string());
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(0, blockExplorer.getHitCount());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void getMultiAddress_keyedByPage() throws Exception {
+
+        int filter = FilterType.RemoveUnspendable.getFilterInt();
+
+        Response<MultiAddress> first = blockExplorer.getMultiAddress(ADDRESSES, null, filter, 50, 0).execute();
+        Response<MultiAddress> repeated = blockExplorer.getMultiAddress(ADDRESSES, null, filter, 50, 0).execute();
+        blockExplorer.getMultiAddress(ADDRESSES, null, filter, 50, 50).execute();
+        blockExplorer.getMultiAddress(ADDRESSES, ADDRESSES.get(0), filter, 50, 0).execute();
+
+        Assert.assertSame(first.body(), repeated.body());
+        Assert.assertEquals(3, requests.get());
+        Assert.assertEquals(1, blockExplorer.getHitCount());
+        Assert.assertEquals(3, blockExplorer.getMissCount());
+    }
+}
@@ -0,0 +1,169 @@
+package info.blockchain.wallet.api;
+
+import info.blockchain.wallet.MockedResponseTest;
+import info.blockchain.wallet.api.data.FeeList;
+import info.blockchain.wallet.api.data.FeeOptions;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FeeProviderTest extends MockedResponseTest {
+
+    private static final String FEE_OPTIONS = "{\"priority\":264,\"regular\":197,\"limits\":{\"min\":98,\"max\":396}}";
+    private static final String NEWER_FEE_OPTIONS = "{\"priority\":300,\"regular\":200,\"limits\":{\"min\":98,\"max\":396}}";
+
+    //Background refreshes, run by the test
+    private final List<Runnable> refreshes = new ArrayList<>();
+
+    private FeeProvider subject;
+
+    @Before
+    public void setUp() {
+        subject = new FeeProvider(new WalletApi(), new FeeApi(), new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                refreshes.add(runnable);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mockInterceptor.setIOException(false);
+    }
+
+    private FeeOptions feeOptions() {
+        return subject.getFeeOptions().blockingFirst();
+    }
+
+    @Test
+    public void getFeeOptions_cached() {
+        mockInterceptor.setResponseString(FEE_OPTIONS);
+
+        Assert.assertEquals(264, feeOptions().getPriorityFee());
+        //No response left, served from the cache
+        Assert.assertEquals(264, feeOptions().getPriorityFee());
+
+        Assert.assertEquals(1, subject.getMissCount());
+        Assert.assertEquals(1, subject.getHitCount());
+    }
+
+    @Test
+    public void getFeeOptions_backgroundRefresh() {
+        subject.setTimeToLive(0, 60 * 1000L);
+
+        LinkedList<String> responses = new LinkedList<>();
+        responses.add(FEE_OPTIONS);
+        responses.add(NEWER_FEE_OPTIONS);
+        mockInterceptor.setResponseStringList(responses);
+
+        Assert.assertEquals(264, feeOptions().getPriorityFee());
+
+        //Stale, served while refreshing
+        Assert.assertEquals(264, feeOptions().getPriorityFee());
+        Assert.assertEquals(264, feeOptions().getPriorityFee());
+        Assert.assertEquals(1, refreshes.size());
+
+        refreshes.get(0).run();
+        Assert.assertEquals(300, feeOptions().getPriorityFee());
+    }
+
+    @Test
+    public void getFeeOptions_lastKnownWhenOffline() {
+        subject.setTimeToLive(0, 0);
+
+        mockInterceptor.setResponseString(FEE_OPTIONS);
+        Assert.assertEquals(264, feeOptions().getPriorityFee());
+
+        mockInterceptor.setIOException(true);
+        Assert.assertEquals(264, feeOptions().getPriorityFee());
+    }
+
+    @Test
+    public void getDynamicFee_defaultWhenOffline() {
+        mockInterceptor.setIOException(true);
+
+        FeeList feeList = subject.getDynamicFee().blockingFirst();
+        Assert.assertEquals(35000, feeList.getDefaultFee().getFee(), 0.0);
+        Assert.assertEquals(6, feeList.getEstimate().size());
+        Assert.assertEquals(35000, FeeProvider.getDefaultFee().getFee(), 0.0);
+
+        //Each caller gets its own defaults
+        feeList.getEstimate().clear();
+        Assert.assertEquals(6, subject.getDynamicFee().blockingFirst().getEstimate().size());
+        Assert.assertNotSame(FeeProvider.getDefaultFee(), FeeProvider.getDefaultFee());
+    }
+
+    @Test
+    public void getEthFeeOptions_noDefault() {
+        mockInterceptor.setIOException(true);
+
+        subject.getEthFeeOptions().test().assertError(IOException.class);
+    }
+
+    @Test(timeout = 10000)
+    public void get_sharesRefresh() throws Exception {
+
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CachedValue<String> value = new CachedValue<>("value", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return "loaded";
+            }
+        }, null, null, 1000L, 0L);
+
+        final List<String> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        String result = value.get();
+                        synchronized (results) {
+                            results.add(result);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+            if (i == 0) {
+                loading.await();
+            }
+        }
+
+        //The others join the refresh in flight, each counted as a hit
+        while (value.getHitCount() < 3) {
+            Thread.yield();
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, value.getMissCount());
+        Assert.assertEquals(4, results.size());
+        for (String result : results) {
+            Assert.assertEquals("loaded", result);
+        }
+    }
+}
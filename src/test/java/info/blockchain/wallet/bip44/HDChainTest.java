@@ -1,5 +1,6 @@
 package info.blockchain.wallet.bip44;
 
+import java.util.List;
 import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.crypto.HDKeyDerivation;
 import org.bitcoinj.params.MainNetParams;
@@ -36,6 +37,34 @@ public class HDChainTest {
         Assert.assertEquals("1HxBEXhu5LPibpTAQ1EoNTJavDSbwajJTg", chain.getAddressAt(0).getAddressString());
     }
 
+    @Test
+    public void getAddressStrings() throws Exception {
+        HDChain chain = new HDChain(MainNetParams.get(), key, true);
+
+        //Large enough to be derived in parallel
+        List<String> addresses = chain.getAddressStrings(5, 45);
+
+        Assert.assertEquals(40, addresses.size());
+        for (int i = 0; i < addresses.size(); i++) {
+            Assert.assertEquals(chain.getAddressAt(5 + i).getAddressString(), addresses.get(i));
+            Assert.assertEquals(5 + i, chain.getAddressIndex(addresses.get(i)));
+        }
+        Assert.assertEquals("1HxBEXhu5LPibpTAQ1EoNTJavDSbwajJTg", chain.getAddressStringAt(0));
+        Assert.assertEquals(0, chain.getAddressIndex("1HxBEXhu5LPibpTAQ1EoNTJavDSbwajJTg"));
+        Assert.assertEquals(-1, chain.getAddressIndex(chain.getAddressAt(100).getAddressString()));
+    }
+
+    @Test
+    public void getAddressStrings_watchOnly() throws Exception {
+        HDAccount account = new HDAccount(MainNetParams.get(), key, 0);
+        HDAccount watchOnly = new HDAccount(MainNetParams.get(), account.getXpub());
+
+        Assert.assertEquals(account.getChange().getAddressStrings(0, 20),
+            watchOnly.getChange().getAddressStrings(0, 20));
+        Assert.assertEquals(account.getChange().getAddressAt(7).getAddressString(),
+            watchOnly.getChange().getAddressStringAt(7));
+    }
+
     @Test
     public void getPath() throws Exception {
         HDChain chain = new HDChain(MainNetParams.get(), key, true);
@@ -23,6 +23,7 @@ import info.blockchain.wallet.util.RestClient;
 import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.params.AbstractBitcoinNetParams;
 import org.bitcoinj.params.MainNetParams;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -41,6 +42,7 @@ import retrofit2.Retrofit;
 public class ContactsTest {
 
     MockInterceptor mockInterceptor;
+    private final List<Contacts> created = new ArrayList<>();
 
     private final String magic = "{\"payload\":\"VSSU6yr2Y63SD/q9uzEK5YrXo8n+i/Li6RreS53oFupMuyuNIQB2tJ0Ek1tGMWbB+zzZDR6E4NjXWHoZ6tXfxYdlNvs/SSg4y83Xm2P5UQi3zQ+UlwCC75d46UpoBQh9QHh56j9VvBXKfkkm9m1fHBGeevG8dM3FxOziHXwalaShv01F1w8Q7BHN8m9KLkg3ELajhpbAqX6V6OeHfH2/OqqW9BMVURCWn1a0IF8O32se08kU9y3saOOXx/QBEHKGxP7GwpftnUgT28BkwEjB6Q6A+AYuwnJxoa36GqVSNMw2gv10Gxjic59L2FfJvjg40oXjhhnnGfyQtCWFqj15GX15Kv0Krn/oLLZM0gERe0fpelRVYG2iK2+ytYh76s0L\",\"version\":1,\"type_id\":4,\"signature\":\"IIhKFiFFlQRsNcJsk3Pa45CtwnmBCxRCq7ncxScXK/U6XawV3zza7RvGyAp3M41cdXYOvmFFErQAp0TZytJQ+qo=\",\"prev_magic_hash\":\"e00c9cfe5756507508a07fddd5139491f1a52a0e087593627ae0490297a48842\",\"address\":\"1LF1QvtK6gnxJ3f8tZx9hamWS9jytKZJ6C\",\"created_at\":1482153702000,\"updated_at\":1502285812000}";
     private final String success = "{\"status\":\"success\"}";
@@ -111,7 +113,19 @@ public class ContactsTest {
         DeterministicKey metaDataHDNode = MetadataUtil.deriveMetadataNode(b_wallet.getMasterKey());
 
         mockInterceptor.setResponseString(magic);
-        return new Contacts(metaDataHDNode, sharedMetaDataHDNode);
+        Contacts contacts = new Contacts(metaDataHDNode, sharedMetaDataHDNode);
+        created.add(contacts);
+        return contacts;
+    }
+
+    @After
+    public void tearDown() {
+        //Flush queued saves now rather than during a later test
+        mockInterceptor.setIOException(true);
+        for (Contacts contacts : created) {
+            contacts.destroy();
+        }
+        mockInterceptor.setIOException(false);
     }
 
     @Test
@@ -127,6 +141,8 @@ public class ContactsTest {
     public void fetch_IOException() throws Exception {
 
         Contacts contacts = init();
+        //Served from the entry fetched on init
+        contacts.fetch();
         try {
             mockInterceptor.setIOException(true);
             contacts.fetch();
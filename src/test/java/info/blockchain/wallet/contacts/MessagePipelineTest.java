@@ -0,0 +1,95 @@
+package info.blockchain.wallet.contacts;
+
+import info.blockchain.wallet.MockedResponseTest;
+import info.blockchain.wallet.api.PersistentUrls;
+import info.blockchain.wallet.bip44.HDWalletFactory;
+import info.blockchain.wallet.bip44.HDWalletFactory.Language;
+import info.blockchain.wallet.contacts.data.Contact;
+import info.blockchain.wallet.metadata.SharedMetadata;
+import info.blockchain.wallet.metadata.data.Message;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessagePipelineTest extends MockedResponseTest {
+
+    private SharedMetadata sender;
+    private SharedMetadata stranger;
+    private SharedMetadata recipient;
+    private Map<String, Contact> contactsByMdid;
+
+    private static SharedMetadata node(String seedHex) throws Exception {
+        return new SharedMetadata.Builder(HDWalletFactory
+            .restoreWallet(PersistentUrls.getInstance().getCurrentNetworkParams(), Language.US,
+                seedHex, "", 1).getMasterKey()).build();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        sender = node("15e23aa73d25994f1921a1256f93f72c");
+        stranger = node("4f6a5b1c2d3e4f5a6b7c8d9e0f1a2b3c");
+        recipient = node("20e3939d08ddf727f34a130704cd925e");
+
+        Contact contact = new Contact();
+        contact.setMdid(sender.getAddress());
+        contact.setXpub(sender.getXpub());
+        contactsByMdid = new HashMap<>();
+        contactsByMdid.put(contact.getMdid(), contact);
+    }
+
+    private Message message(SharedMetadata from, String id, String text) throws Exception {
+        String payload = from.encryptFor(recipient.getXpub(), text);
+
+        Message message = new Message();
+        message.setId(id);
+        message.setSender(from.getAddress());
+        message.setRecipient(recipient.getAddress());
+        message.setPayload(payload);
+        message.setSignature(from.getNode().signMessage(payload));
+        return message;
+    }
+
+    @Test
+    public void process_inOrder() throws Exception {
+
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            messages.add(i == 5
+                ? message(stranger, "id" + i, "Stranger")
+                : message(sender, "id" + i, "Message " + i));
+        }
+
+        List<MessagePipeline.Result> results = new MessagePipeline(recipient, contactsByMdid, 4)
+            .process(messages);
+
+        Assert.assertEquals(20, results.size());
+        for (int i = 0; i < 20; i++) {
+            MessagePipeline.Result result = results.get(i);
+            Assert.assertEquals("id" + i, result.getMessage().getId());
+            if (i == 5) {
+                //Not a contact, left encrypted
+                Assert.assertFalse(result.isSenderKnown());
+                Assert.assertNotEquals("Stranger", result.getMessage().getPayload());
+            } else {
+                Assert.assertTrue(result.isSenderKnown());
+                Assert.assertEquals("Message " + i, result.getMessage().getPayload());
+            }
+        }
+    }
+
+    @Test
+    public void process_singleThreaded() throws Exception {
+
+        List<Message> messages = new ArrayList<>();
+        messages.add(message(sender, "id0", "Only"));
+
+        List<MessagePipeline.Result> results = new MessagePipeline(recipient, contactsByMdid, 1)
+            .process(messages);
+
+        Assert.assertEquals("Only", results.get(0).getMessage().getPayload());
+    }
+}
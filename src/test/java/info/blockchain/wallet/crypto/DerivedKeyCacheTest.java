@@ -0,0 +1,103 @@
+package info.blockchain.wallet.crypto;
+
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DerivedKeyCacheTest {
+
+    private final byte[] salt = {1, 2, 3, 4};
+    private final byte[] key = {9, 8, 7, 6};
+
+    private static class ManualClockCache extends DerivedKeyCache {
+
+        long time = 1000;
+
+        ManualClockCache(long ttlMs, int maxEntries) {
+            super(ttlMs, maxEntries);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+
+    @Test
+    public void getKey() {
+        DerivedKeyCache cache = new DerivedKeyCache();
+
+        Assert.assertNull(cache.getKey(salt, "password", 5000));
+        cache.putKey(salt, "password", 5000, key);
+
+        Assert.assertArrayEquals(key, cache.getKey(salt, "password", 5000));
+        Assert.assertNull(cache.getKey(salt, "password", 5001));
+        Assert.assertNull(cache.getKey(salt, "other", 5000));
+        Assert.assertNull(cache.getKey(new byte[]{1, 2, 3, 5}, "password", 5000));
+        Assert.assertNull(cache.getHash("password", 5000));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(5, cache.getMisses());
+    }
+
+    @Test
+    public void getKey_copies() {
+        DerivedKeyCache cache = new DerivedKeyCache();
+        byte[] value = key.clone();
+        cache.putKey(salt, "password", 5000, value);
+
+        Arrays.fill(value, (byte) 0);
+        byte[] cached = cache.getKey(salt, "password", 5000);
+        Arrays.fill(cached, (byte) 0);
+
+        Assert.assertArrayEquals(key, cache.getKey(salt, "password", 5000));
+    }
+
+    @Test
+    public void expiry() {
+        ManualClockCache cache = new ManualClockCache(100, 10);
+        cache.putKey(salt, "password", 5000, key);
+
+        cache.time += 99;
+        Assert.assertNotNull(cache.getKey(salt, "password", 5000));
+        cache.time += 1;
+        Assert.assertNull(cache.getKey(salt, "password", 5000));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void maxEntries() {
+        DerivedKeyCache cache = new DerivedKeyCache(DerivedKeyCache.DEFAULT_TTL_MS, 2);
+        cache.putHash("a", 10, key);
+        cache.putHash("b", 10, key);
+        //Touch "a" so "b" is the least recently used
+        cache.getHash("a", 10);
+        cache.putHash("c", 10, key);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.getHash("a", 10));
+        Assert.assertNull(cache.getHash("b", 10));
+        Assert.assertNotNull(cache.getHash("c", 10));
+    }
+
+    @Test
+    public void wipe() {
+        DerivedKeyCache cache = new DerivedKeyCache();
+        cache.putKey(salt, "password", 5000, key);
+        cache.wipe();
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.getKey(salt, "password", 5000));
+    }
+
+    @Test
+    public void aesUtil_decryptUsesCache() throws Exception {
+        DerivedKeyCache cache = new DerivedKeyCache();
+        String encrypted = AESUtil.encrypt("test data", "password", AESUtil.PIN_PBKDF2_ITERATIONS, cache);
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals("test data", AESUtil.decrypt(encrypted, "password", AESUtil.PIN_PBKDF2_ITERATIONS, cache));
+        Assert.assertEquals(1, cache.getHits());
+        //Still decrypts without the cache
+        Assert.assertEquals("test data", AESUtil.decrypt(encrypted, "password", AESUtil.PIN_PBKDF2_ITERATIONS));
+    }
+}
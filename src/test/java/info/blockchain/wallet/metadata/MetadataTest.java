@@ -9,9 +9,11 @@ import info.blockchain.wallet.bip44.HDWallet;
 import info.blockchain.wallet.bip44.HDWalletFactory;
 import info.blockchain.wallet.bip44.HDWalletFactory.Language;
 import info.blockchain.wallet.contacts.data.PublicContactDetails;
+import info.blockchain.wallet.exceptions.MetadataException;
 import info.blockchain.wallet.util.MetadataUtil;
 import info.blockchain.wallet.util.RestClient;
 
+import java.util.LinkedList;
 import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.params.AbstractBitcoinNetParams;
 import org.bitcoinj.params.MainNetParams;
@@ -148,4 +150,68 @@ public class MetadataTest {
         mockInterceptor.setResponseCode(404);
         Assert.assertNull(metadata.getMetadata());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getMetadata_sharesFetchWithBuild() throws Exception {
+
+        mockInterceptor.setResponseString("{\"payload\":\"UmFnZSByYWdl\",\"version\":1,\"type_id\":2}");
+        mockInterceptor.setResponseCode(200);
+
+        DeterministicKey metaDataHDNode = MetadataUtil.deriveMetadataNode(getWallet().getMasterKey());
+
+        Metadata metadata = new Metadata.Builder(metaDataHDNode, 2)
+                .setEncrypted(isEncrypted)
+                .build();
+
+        try {
+            mockInterceptor.setIOException(true);
+            Assert.assertEquals("Rage rage", metadata.getMetadata());
+        } finally {
+            mockInterceptor.setIOException(false);
+        }
+
+        //Only the first read is shared
+        mockInterceptor.setResponseString("{\"payload\":\"UmFnZSByYWdlIHNvbWUgbW9yZQ==\",\"version\":1,\"type_id\":2}");
+        mockInterceptor.setResponseCode(200);
+        Assert.assertEquals("Rage rage some more", metadata.getMetadata());
+    }
+
+    @Test
+    public void putMetadata_unauthorizedDropsCachedEntry() throws Exception {
+
+        mockInterceptor.setResponseString("{\"payload\":\"UmFnZSByYWdl\",\"version\":1,\"type_id\":2}");
+        mockInterceptor.setResponseCode(200);
+
+        DeterministicKey metaDataHDNode = MetadataUtil.deriveMetadataNode(getWallet().getMasterKey());
+
+        Metadata metadata = new Metadata.Builder(metaDataHDNode, 2)
+                .setEncrypted(isEncrypted)
+                .build();
+
+        //Another device wrote in the meantime
+        LinkedList<String> responses = new LinkedList<>();
+        responses.add("{\"message\":\"Unauthorized\"}");
+        responses.add("{\"payload\":\"UmFnZSByYWdlIHNvbWUgbW9yZQ==\",\"version\":1,\"type_id\":2}");
+        responses.add("{\"message\":\"Unauthorized\"}");
+        mockInterceptor.setResponseStringList(responses);
+        LinkedList<Integer> codes = new LinkedList<>();
+        codes.add(401);
+        codes.add(200);
+        codes.add(401);
+        mockInterceptor.setResponseCodeList(codes);
+
+        try {
+            metadata.putMetadata(new PublicContactDetails("mock").toJson());
+            Assert.fail("Expected MetadataException");
+        } catch (MetadataException e) {
+            //Retried once
+        }
+
+        try {
+            mockInterceptor.setIOException(true);
+            Assert.assertEquals("Rage rage some more", metadata.getMetadata());
+        } finally {
+            mockInterceptor.setIOException(false);
+        }
+    }
+}
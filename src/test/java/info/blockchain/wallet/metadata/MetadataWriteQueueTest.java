@@ -0,0 +1,204 @@
+package info.blockchain.wallet.metadata;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetadataWriteQueueTest {
+
+    /**
+     * Records writes instead of sending them, failing while told to.
+     */
+    private static class RecordingMetadata extends Metadata {
+
+        private final List<String> written = new CopyOnWriteArrayList<>();
+        private final LinkedBlockingQueue<String> attempts = new LinkedBlockingQueue<>();
+        private volatile boolean failing;
+
+        @Override
+        public synchronized void putMetadata(String payload) throws IOException {
+            attempts.add(payload);
+            if (failing) {
+                throw new IOException("Offline");
+            }
+            written.add(payload);
+        }
+    }
+
+    @Test
+    public void flush_writesLatestOnly() throws Exception {
+
+        RecordingMetadata metadata = new RecordingMetadata();
+        MetadataWriteQueue queue = new MetadataWriteQueue(metadata, 60000L);
+
+        queue.enqueue("{\"a\":1}");
+        queue.enqueue("{\"a\":2}");
+        queue.enqueue("{\"a\":3}");
+        Assert.assertTrue(queue.hasPendingWrite());
+        Assert.assertTrue(metadata.written.isEmpty());
+
+        queue.flush();
+        queue.flush();
+
+        Assert.assertFalse(queue.hasPendingWrite());
+        Assert.assertEquals(1, metadata.written.size());
+        Assert.assertEquals("{\"a\":3}", metadata.written.get(0));
+    }
+
+    @Test
+    public void timer_flushes() throws Exception {
+
+        RecordingMetadata metadata = new RecordingMetadata();
+        MetadataWriteQueue queue = new MetadataWriteQueue(metadata, 50L);
+
+        queue.enqueue("{\"a\":1}");
+        queue.enqueue("{\"a\":2}");
+
+        Assert.assertEquals("{\"a\":2}", metadata.attempts.poll(5, TimeUnit.SECONDS));
+        Assert.assertNull(metadata.attempts.poll(200, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(queue.hasPendingWrite());
+    }
+
+    @Test
+    public void failure_keptPendingAndThrown() throws Exception {
+
+        RecordingMetadata metadata = new RecordingMetadata();
+        metadata.failing = true;
+        MetadataWriteQueue queue = new MetadataWriteQueue(metadata, 50L);
+
+        //Timed flush fails quietly
+        queue.enqueue("{\"a\":1}");
+        Assert.assertEquals("{\"a\":1}", metadata.attempts.poll(5, TimeUnit.SECONDS));
+        //Put back once the attempt has failed
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!queue.hasPendingWrite() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Assert.assertTrue(queue.hasPendingWrite());
+
+        try {
+            queue.flush();
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            Assert.assertTrue(queue.hasPendingWrite());
+        }
+
+        metadata.failing = false;
+        queue.flush();
+        Assert.assertEquals(1, metadata.written.size());
+        Assert.assertEquals("{\"a\":1}", metadata.written.get(0));
+    }
+
+    @Test
+    public void failure_retriedWithBackoff() throws Exception {
+
+        RecordingMetadata metadata = new RecordingMetadata();
+        metadata.failing = true;
+        MetadataWriteQueue queue = new MetadataWriteQueue(metadata, 20L);
+
+        queue.enqueue("{\"a\":1}");
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("{\"a\":1}", metadata.attempts.poll(5, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue(queue.getLastFailure() instanceof IOException);
+
+        //Back online, a later retry succeeds
+        metadata.failing = false;
+        long deadline = System.currentTimeMillis() + 5000L;
+        while ((metadata.written.isEmpty() || queue.getLastFailure() != null)
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(1, metadata.written.size());
+        Assert.assertNull(queue.getLastFailure());
+        Assert.assertFalse(queue.hasPendingWrite());
+
+        //Nothing left to retry
+        metadata.attempts.clear();
+        Assert.assertNull(metadata.attempts.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void failure_retriesBounded() throws Exception {
+
+        RecordingMetadata metadata = new RecordingMetadata();
+        metadata.failing = true;
+        MetadataWriteQueue queue = new MetadataWriteQueue(metadata, 1L);
+
+        queue.enqueue("{\"a\":1}");
+        for (int i = 0; i <= MetadataWriteQueue.MAX_RETRIES; i++) {
+            Assert.assertEquals("{\"a\":1}", metadata.attempts.poll(5, TimeUnit.SECONDS));
+        }
+
+        //Given up, still pending
+        Assert.assertNull(metadata.attempts.poll(200, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(queue.hasPendingWrite());
+        Assert.assertTrue(queue.getLastFailure() instanceof IOException);
+    }
+
+    @Test
+    public void failure_thrownByNextEnqueue() throws Exception {
+
+        RecordingMetadata metadata = new RecordingMetadata();
+        metadata.failing = true;
+        MetadataWriteQueue queue = new MetadataWriteQueue(metadata, 60000L);
+
+        queue.enqueue("{\"a\":1}");
+        try {
+            queue.flush();
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            metadata.attempts.clear();
+        }
+
+        //Written straight away instead of queued
+        try {
+            queue.enqueue("{\"a\":2}");
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            Assert.assertEquals("{\"a\":2}", metadata.attempts.poll());
+            Assert.assertTrue(queue.hasPendingWrite());
+        }
+
+        metadata.failing = false;
+        queue.enqueue("{\"a\":3}");
+        Assert.assertEquals(1, metadata.written.size());
+        Assert.assertEquals("{\"a\":3}", metadata.written.get(0));
+        Assert.assertNull(queue.getLastFailure());
+    }
+
+    @Test
+    public void flushAll() throws Exception {
+
+        RecordingMetadata metadata = new RecordingMetadata();
+        MetadataWriteQueue queue = new MetadataWriteQueue(metadata, 60000L);
+
+        queue.enqueue("{\"a\":1}");
+        MetadataWriteQueue.flushAll();
+
+        Assert.assertFalse(queue.hasPendingWrite());
+        Assert.assertEquals(1, metadata.written.size());
+    }
+
+    @Test
+    public void shutdown_flushesAndRejects() throws Exception {
+
+        RecordingMetadata metadata = new RecordingMetadata();
+        MetadataWriteQueue queue = new MetadataWriteQueue(metadata, 60000L);
+
+        queue.enqueue("{\"a\":1}");
+        queue.shutdown();
+
+        Assert.assertEquals(1, metadata.written.size());
+        try {
+            queue.enqueue("{\"a\":2}");
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(1, metadata.written.size());
+        }
+    }
+}
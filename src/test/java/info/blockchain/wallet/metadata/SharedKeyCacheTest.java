@@ -0,0 +1,89 @@
+package info.blockchain.wallet.metadata;
+
+import info.blockchain.wallet.MockedResponseTest;
+import info.blockchain.wallet.api.PersistentUrls;
+import info.blockchain.wallet.bip44.HDWalletFactory;
+import info.blockchain.wallet.bip44.HDWalletFactory.Language;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SharedKeyCacheTest extends MockedResponseTest {
+
+    private static byte[] key(int fill) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) fill);
+        return key;
+    }
+
+    private static SharedMetadata node(String seedHex) throws Exception {
+        return new SharedMetadata.Builder(HDWalletFactory
+            .restoreWallet(PersistentUrls.getInstance().getCurrentNetworkParams(), Language.US,
+                seedHex, "", 1).getMasterKey()).build();
+    }
+
+    @Test
+    public void get_returnsCopy() {
+
+        SharedKeyCache cache = new SharedKeyCache();
+        byte[] key = key(1);
+        cache.put("xpub1", key);
+
+        //Caller zeroing its copies leaves the cached key intact
+        Arrays.fill(key, (byte) 0);
+        byte[] cached = cache.get("xpub1");
+        Assert.assertArrayEquals(key(1), cached);
+        Arrays.fill(cached, (byte) 0);
+        Assert.assertArrayEquals(key(1), cache.get("xpub1"));
+
+        Assert.assertNull(cache.get("xpub2"));
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+
+        SharedKeyCache cache = new SharedKeyCache(2);
+        cache.put("xpub1", key(1));
+        cache.put("xpub2", key(2));
+        cache.get("xpub1");
+        cache.put("xpub3", key(3));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get("xpub1"));
+        Assert.assertNull(cache.get("xpub2"));
+        Assert.assertNotNull(cache.get("xpub3"));
+    }
+
+    @Test
+    public void wipe() {
+
+        SharedKeyCache cache = new SharedKeyCache();
+        cache.put("xpub1", key(1));
+        cache.wipe();
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.get("xpub1"));
+    }
+
+    @Test
+    public void sharedMetadata_derivesOncePerPeer() throws Exception {
+
+        SharedMetadata sender = node("15e23aa73d25994f1921a1256f93f72c");
+        SharedMetadata recipient = node("20e3939d08ddf727f34a130704cd925e");
+
+        String payload = sender.encryptFor(recipient.getXpub(), "Hello");
+        Assert.assertEquals("Hello", recipient.decryptFrom(sender.getXpub(), payload));
+        Assert.assertEquals("Hello", recipient.decryptFrom(sender.getXpub(), payload));
+
+        SharedKeyCache cache = recipient.getSharedKeyCache();
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+
+        //Derived again after a wipe
+        recipient.wipeSharedKeys();
+        Assert.assertEquals("Hello", recipient.decryptFrom(sender.getXpub(), payload));
+        Assert.assertEquals(2, cache.getMisses());
+    }
+}
@@ -4,6 +4,13 @@ import info.blockchain.wallet.MockedResponseTest;
 import info.blockchain.wallet.api.PersistentUrls;
 import info.blockchain.wallet.bip44.HDWalletFactory;
 import info.blockchain.wallet.bip44.HDWalletFactory.Language;
+import info.blockchain.wallet.exceptions.ValidationException;
+import info.blockchain.wallet.metadata.data.Message;
+import info.blockchain.wallet.util.JsonCodecs;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import org.bitcoinj.crypto.DeterministicKey;
 import org.junit.Assert;
 import org.junit.Before;
@@ -33,6 +40,60 @@ public class SharedMetadataTest extends MockedResponseTest {
         Assert.assertTrue(sharedMetadata.getAddress().equals("1B6ptXjmNHimrWNMzKSDhxTmdjhWvZE3vV"));
     }
 
+    private List<Message> signedMessages(SharedMetadata sender, String recipient, int count) throws Exception {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Message message = new Message();
+            message.setId("id" + i);
+            message.setSender(sender.getAddress());
+            message.setRecipient(recipient);
+            message.setPayload("cGF5bG9hZA" + i);
+            message.setSignature(sender.getNode().signMessage(message.getPayload()));
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private void mockMessages(List<Message> messages) throws Exception {
+        LinkedList<String> responses = new LinkedList<>();
+        responses.add("{\"nonce\":\"nonce\"}");
+        responses.add("{\"token\":\"token\"}");
+        responses.add(JsonCodecs.getMapper().writeValueAsString(messages));
+        mockInterceptor.setResponseStringList(responses);
+    }
+
+    @Test
+    public void getMessages_validated() throws Exception {
+        SharedMetadata sender = new SharedMetadata.Builder(key).build();
+        SharedMetadata recipient = new SharedMetadata.Builder(key).build();
+        mockMessages(signedMessages(sender, recipient.getAddress(), 8));
+
+        List<Message> messages = recipient.getMessages(false);
+
+        Assert.assertEquals(8, messages.size());
+        Assert.assertEquals("id7", messages.get(7).getId());
+    }
+
+    @Test
+    public void getMessages_invalidSignature() throws Exception {
+        SharedMetadata sender = new SharedMetadata.Builder(key).build();
+        SharedMetadata stranger = new SharedMetadata.Builder(HDWalletFactory
+            .restoreWallet(PersistentUrls.getInstance().getCurrentNetworkParams(), Language.US,
+                "4f6a5b1c2d3e4f5a6b7c8d9e0f1a2b3c", "", 1).getMasterKey()).build();
+
+        List<Message> messages = signedMessages(sender, sender.getAddress(), 8);
+        //Signed by someone else than the sender it claims
+        messages.get(6).setSignature(stranger.getNode().signMessage(messages.get(6).getPayload()));
+        mockMessages(messages);
+
+        try {
+            sender.getMessages(false);
+            Assert.fail("Expected an invalid signature");
+        } catch (ValidationException | SignatureException e) {
+            //Expected
+        }
+    }
+
     @Test
     public void getTrustedList() throws Exception {
     }
@@ -1,16 +1,21 @@
 package info.blockchain.wallet.multiaddress;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import info.blockchain.api.data.MultiAddress;
 import info.blockchain.wallet.BlockchainFramework;
 import info.blockchain.wallet.MockedResponseTest;
 import info.blockchain.api.blockexplorer.BlockExplorer;
 import info.blockchain.wallet.multiaddress.TransactionSummary.Direction;
 import info.blockchain.wallet.payload.data.AddressLabel;
+import java.io.ByteArrayInputStream;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 import org.junit.Assert;
 import org.junit.Before;
@@ -274,4 +279,81 @@ public class MultiAddressFactoryTest extends MockedResponseTest{
         Assert.assertEquals(1, summary.getOutputsMap().size());
         Assert.assertTrue(summary.getOutputsMap().keySet().contains("17ijgwpGsVQRzMjsdAfdmeP53kpw9yvXur"));//My Bitcoin Wallet
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getMultiAddress_streamed() throws Exception {
+
+        URI uri = getClass().getClassLoader().getResource("multiaddress/multi_address_all.txt").toURI();
+        String response = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+        mockInterceptor.setResponseStringList(new LinkedList<>(Arrays.asList(response, response)));
+
+        List<TransactionSummary> expected = multiAddressFactory.getAccountTransactions(
+            new ArrayList<>(Arrays.asList(dormantAddress, dormantXpub)), new ArrayList<String>(), null, null, 100, 0);
+
+        final List<TransactionSummary> streamed = new ArrayList<>();
+        MultiAddressFactory streamingFactory = new MultiAddressFactory(null);
+        int count = streamingFactory.getAccountTransactions(
+            new ArrayList<>(Arrays.asList(dormantAddress, dormantXpub)), new ArrayList<String>(), null, null, 100, 0,
+            new TransactionSummaryHandler() {
+                @Override
+                public void onTransactionSummary(TransactionSummary summary) {
+                    streamed.add(summary);
+                }
+            });
+
+        Assert.assertEquals(36, count);
+        assertSameSummaries(expected, streamed);
+
+        Assert.assertTrue(streamingFactory.isOwnHDAddress("1CAAzobQ2UrE4QUR3HJrkZs8UFA8wi5wwQ"));
+        Assert.assertFalse(streamingFactory.isOwnHDAddress("1PPNN4psDFyAgdjQcKBJ8GSgE4ES4GHP9c"));
+        Assert.assertEquals(5, streamingFactory.getNextChangeAddressIndex(dormantXpub));
+        Assert.assertEquals(10, streamingFactory.getNextReceiveAddressIndex(dormantXpub, new ArrayList<AddressLabel>()));
+    }
+
+    @Test
+    public void summarize_streamedTxsBeforeInfo() throws Exception {
+
+        URI uri = getClass().getClassLoader().getResource("multiaddress/multi_address_1Dtk.txt").toURI();
+        String response = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode original = (ObjectNode) mapper.readTree(response);
+        ObjectNode reordered = mapper.createObjectNode();
+        reordered.set("txs", original.get("txs"));
+        reordered.set("addresses", original.get("addresses"));
+        reordered.set("info", original.get("info"));
+
+        ArrayList<String> all = new ArrayList<>(Arrays.asList(
+            "xpub6Bx1J3neE11W2XpvKRFQVwWpZFsDfnRkLJ2V4JjPWNRDXbRvZrwnytbSbBng2F1fRejxkMWAi6fYJuAJrGg6TP8Key4jvs9YqpVo5LJ8jSk",
+            "xpub6Bx1J3neE11W3XsMUTWVBKECFJee9TjJDSZJ53LKhr7AaAPJpNtz4KZTCe8nctTdu6kLYB4uZncjsy7EBi18mKb4HLg3WLfhPFW2KFGjScE",
+            "1DtkXqBjvXWsboMpc72U1kfRrK8JTntBLQ"));
+
+        List<TransactionSummary> expected = new MultiAddressFactory(null).summarize(
+            all, new ArrayList<String>(), MultiAddress.fromJson(response), null);
+
+        final List<TransactionSummary> streamed = new ArrayList<>();
+        new MultiAddressFactory(null).summarize(all, new ArrayList<String>(),
+            new ByteArrayInputStream(mapper.writeValueAsBytes(reordered)), null,
+            new TransactionSummaryHandler() {
+                @Override
+                public void onTransactionSummary(TransactionSummary summary) {
+                    streamed.add(summary);
+                }
+            });
+
+        assertSameSummaries(expected, streamed);
+    }
+
+    private void assertSameSummaries(List<TransactionSummary> expected, List<TransactionSummary> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getHash(), actual.get(i).getHash());
+            Assert.assertEquals(expected.get(i).getDirection(), actual.get(i).getDirection());
+            Assert.assertEquals(expected.get(i).getTotal(), actual.get(i).getTotal());
+            Assert.assertEquals(expected.get(i).getFee(), actual.get(i).getFee());
+            Assert.assertEquals(expected.get(i).getConfirmations(), actual.get(i).getConfirmations());
+            Assert.assertEquals(expected.get(i).getInputsMap(), actual.get(i).getInputsMap());
+            Assert.assertEquals(expected.get(i).getOutputsMap(), actual.get(i).getOutputsMap());
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package info.blockchain.wallet.multiaddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import info.blockchain.api.blockexplorer.BlockExplorer;
+import info.blockchain.wallet.api.CoalescingBlockExplorer;
+import info.blockchain.wallet.exceptions.ApiException;
+import info.blockchain.wallet.payload.PayloadManager;
+import info.blockchain.wallet.payload.data.AddressLabel;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+/**
+ * Runs sharded fetches against a local multiaddress server, which reports each transaction's
+ * result and xpub annotations relative to the requested addresses like the real one does.
+ */
+public class MultiAddressShardingTest {
+
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    private static final String XPUB = "xpub6CFgfYG9chNp7rzZ7ByXyAJruku5JSVhtGmGqR9tmeLRwu3jtioyBZpXC6GAnpMQPBQg5rviqTwMN4EwgMCZNVT3N22sSnM1yEfBQzjHXJt";
+    private static final int LEGACY_COUNT = 30;
+    private static final int TX_COUNT = 250;
+
+    private HttpServer server;
+    private Retrofit retrofit;
+    private BlockExplorer blockExplorer;
+
+    private final ArrayList<String> all = new ArrayList<>();
+    //Derived address -> path, all belonging to XPUB
+    private final Map<String, String> derived = new HashMap<>();
+    private final List<JSONObject> txs = new ArrayList<>();
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile String failingAddress;
+
+    @Before
+    public void setUp() throws Exception {
+        all.add(XPUB);
+        for (int i = 0; i < LEGACY_COUNT; i++) {
+            all.add("1Legacy" + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            derived.put("1Receive" + i, "M/0/" + i);
+            derived.put("1Change" + i, "M/1/" + i);
+        }
+        generate(new Random(7));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/multiaddr", new Handler());
+        server.start();
+
+        retrofit = new Retrofit.Builder()
+            .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+            .client(new OkHttpClient())
+            .addConverterFactory(JacksonConverterFactory.create())
+            .build();
+        blockExplorer = new BlockExplorer(retrofit, "api_code");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Transactions between legacy addresses, the xpub and foreign addresses, one minute apart.
+     */
+    private void generate(Random random) {
+        List<String> owned = new ArrayList<>(all.subList(1, all.size()));
+        owned.addAll(derived.keySet());
+
+        for (int i = 0; i < TX_COUNT; i++) {
+            String from = random.nextInt(4) == 0 ? "1Foreign" + i : owned.get(random.nextInt(owned.size()));
+            String to = random.nextInt(3) == 0 ? "1Foreign" + i : owned.get(random.nextInt(owned.size()));
+            String change = derived.containsKey(from) ? "1Change" + random.nextInt(10) : from;
+            long value = 100000L + random.nextInt(100000);
+            long sent = 1000L + random.nextInt(50000);
+            long fee = 1000L;
+
+            JSONObject tx = new JSONObject()
+                .put("hash", String.format("%064x", i))
+                .put("time", 1500000000L - i * 60L)
+                .put("block_height", 480000L - i)
+                .put("fee", fee)
+                .put("inputs", new JSONArray().put(new JSONObject().put("prev_out", output(from, value))))
+                .put("out", new JSONArray()
+                    .put(output(to, sent))
+                    .put(output(change, value - sent - fee)));
+            txs.add(tx);
+        }
+    }
+
+    private static JSONObject output(String address, long value) {
+        return new JSONObject().put("addr", address).put("value", value);
+    }
+
+    private boolean isActive(Set<String> active, String address) {
+        return active.contains(address) || (active.contains(XPUB) && derived.containsKey(address));
+    }
+
+    private JSONObject annotate(Set<String> active, JSONObject output) {
+        JSONObject copy = new JSONObject(output.toString());
+        String address = output.getString("addr");
+        if (active.contains(XPUB) && derived.containsKey(address)) {
+            copy.put("xpub", new JSONObject().put("m", XPUB).put("path", derived.get(address)));
+        }
+        return copy;
+    }
+
+    private String respond(Set<String> active, int limit, int offset) {
+        //Like the real endpoint, which caps n at 100
+        limit = Math.min(limit, MultiAddressFactory.MAX_PAGE_SIZE);
+
+        JSONArray page = new JSONArray();
+        int matched = 0;
+        for (JSONObject tx : txs) {
+            long result = 0L;
+            boolean involved = false;
+            JSONArray inputs = new JSONArray();
+            JSONArray outputs = new JSONArray();
+
+            for (Object input : tx.getJSONArray("inputs")) {
+                JSONObject prevOut = ((JSONObject) input).getJSONObject("prev_out");
+                if (isActive(active, prevOut.getString("addr"))) {
+                    involved = true;
+                    result -= prevOut.getLong("value");
+                }
+                inputs.put(new JSONObject().put("prev_out", annotate(active, prevOut)));
+            }
+            for (Object out : tx.getJSONArray("out")) {
+                JSONObject output = (JSONObject) out;
+                if (isActive(active, output.getString("addr"))) {
+                    involved = true;
+                    result += output.getLong("value");
+                }
+                outputs.put(annotate(active, output));
+            }
+
+            if (!involved || matched++ < offset || page.length() >= limit) {
+                continue;
+            }
+            page.put(new JSONObject(tx.toString())
+                .put("result", result)
+                .put("inputs", inputs)
+                .put("out", outputs));
+        }
+
+        JSONArray addresses = new JSONArray();
+        if (active.contains(XPUB)) {
+            addresses.put(new JSONObject().put("address", XPUB).put("account_index", 10).put("change_index", 10));
+        }
+        return new JSONObject()
+            .put("addresses", addresses)
+            .put("txs", page)
+            .put("wallet", new JSONObject().put("n_tx", matched))
+            .put("info", new JSONObject().put("latest_block", new JSONObject().put("height", 480010L)))
+            .toString();
+    }
+
+    private class Handler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) {
+            requests.incrementAndGet();
+            int current = inFlight.incrementAndGet();
+            while (true) {
+                int max = maxInFlight.get();
+                if (current <= max || maxInFlight.compareAndSet(max, current)) break;
+            }
+            try {
+                Map<String, String> form = readForm(exchange.getRequestBody());
+                Set<String> active = new HashSet<>(Arrays.asList(form.get("active").split("\\|")));
+                //Gives concurrent requests a chance to overlap
+                Thread.sleep(20);
+
+                int code = 200;
+                String body;
+                if (failingAddress != null && active.contains(failingAddress)) {
+                    code = 500;
+                    body = "Shard failed";
+                } else {
+                    body = respond(active, Integer.parseInt(form.get("n")), Integer.parseInt(form.get("offset")));
+                }
+
+                byte[] bytes = body.getBytes(UTF_8);
+                exchange.sendResponseHeaders(code, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private static Map<String, String> readForm(InputStream in) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+
+        Map<String, String> form = new HashMap<>();
+        for (String pair : new String(bytes.toByteArray(), UTF_8).split("&")) {
+            int split = pair.indexOf('=');
+            form.put(URLDecoder.decode(pair.substring(0, split), "utf-8"),
+                URLDecoder.decode(pair.substring(split + 1), "utf-8"));
+        }
+        return form;
+    }
+
+    private List<TransactionSummary> fetch(MultiAddressFactory factory, String onlyShow, int limit, int offset)
+        throws Exception {
+        return factory.getAccountTransactions(all, new ArrayList<String>(), null, onlyShow, limit, offset);
+    }
+
+    private static String describe(TransactionSummary summary) {
+        return summary.getHash() + " " + summary.getDirection() + " " + summary.getTotal()
+            + " " + summary.getFee() + " " + summary.getInputsMap() + " " + summary.getOutputsMap()
+            + " " + summary.getInputsXpubMap() + " " + summary.getOutputsXpubMap();
+    }
+
+    private static List<String> describe(List<TransactionSummary> summaries) {
+        List<String> described = new ArrayList<>();
+        for (TransactionSummary summary : summaries) {
+            described.add(describe(summary));
+        }
+        return described;
+    }
+
+    @Test
+    public void sharded_matchesSingleRequest() throws Exception {
+
+        MultiAddressFactory single = new MultiAddressFactory(blockExplorer);
+        single.setSharding(0, 1);
+        MultiAddressFactory sharded = new MultiAddressFactory(blockExplorer);
+        sharded.setSharding(7, 3);
+
+        List<TransactionSummary> expected = fetch(single, null, 100, 0);
+        Assert.assertTrue(expected.size() > 50);
+        Assert.assertEquals(describe(expected), describe(fetch(sharded, null, 100, 0)));
+
+        //Pages
+        for (int offset = 0; offset < expected.size(); offset += 15) {
+            Assert.assertEquals("Offset " + offset,
+                describe(fetch(single, null, 15, offset)),
+                describe(fetch(sharded, PayloadManager.MULTI_ADDRESS_ALL, 15, offset)));
+        }
+
+        Assert.assertEquals(single.getLatestBlockHeight(), sharded.getLatestBlockHeight());
+        Assert.assertEquals(single.getLastResponseTxCount(), sharded.getLastResponseTxCount());
+        Assert.assertEquals(10, sharded.getNextReceiveAddressIndex(XPUB, new ArrayList<AddressLabel>()));
+    }
+
+    @Test
+    public void sharded_pagesPastServerLimit() throws Exception {
+
+        MultiAddressFactory single = new MultiAddressFactory(blockExplorer);
+        single.setSharding(0, 1);
+        MultiAddressFactory sharded = new MultiAddressFactory(blockExplorer);
+        sharded.setSharding(7, 3);
+
+        //The single request has to page through the server limit itself
+        List<TransactionSummary> expected = new ArrayList<>();
+        for (int offset = 0; offset < 200; offset += 100) {
+            expected.addAll(fetch(single, null, 100, offset));
+        }
+        Assert.assertEquals(200, expected.size());
+
+        Assert.assertEquals(describe(expected), describe(fetch(sharded, null, 200, 0)));
+        Assert.assertEquals(describe(expected.subList(120, 200)), describe(fetch(sharded, null, 80, 120)));
+    }
+
+    @Test
+    public void sharded_sharedResponsesUnchanged() throws Exception {
+
+        CoalescingBlockExplorer coalescing = new CoalescingBlockExplorer(retrofit, "api_code");
+        coalescing.setFreshnessWindow(60 * 1000L);
+        MultiAddressFactory sharded = new MultiAddressFactory(coalescing);
+        sharded.setSharding(7, 3);
+
+        MultiAddressFactory single = new MultiAddressFactory(blockExplorer);
+        single.setSharding(0, 1);
+        List<String> expected = describe(fetch(single, null, 100, 0));
+        List<String> first = describe(fetch(sharded, null, 100, 0));
+        Assert.assertEquals(expected, first);
+        int requestCount = requests.get();
+
+        //Answered from the same responses, duplicates must not be merged into them twice
+        Assert.assertEquals(first, describe(fetch(sharded, null, 100, 0)));
+        Assert.assertEquals(requestCount, requests.get());
+    }
+
+    @Test
+    public void sharded_concurrencyCapped() throws Exception {
+
+        MultiAddressFactory factory = new MultiAddressFactory(blockExplorer);
+        factory.setSharding(3, 2);
+
+        fetch(factory, null, 10, 0);
+
+        //11 shards, at most 2 in flight
+        Assert.assertTrue("Requests: " + requests.get(), requests.get() >= 11);
+        Assert.assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void onlyShow_singleRequest() throws Exception {
+
+        MultiAddressFactory factory = new MultiAddressFactory(blockExplorer);
+        factory.setSharding(3, 2);
+
+        fetch(factory, "1Legacy4", 10, 0);
+
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void smallWallet_singleRequest() throws Exception {
+
+        MultiAddressFactory factory = new MultiAddressFactory(blockExplorer);
+
+        fetch(factory, null, 10, 0);
+
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test(expected = ApiException.class)
+    public void shardFailure_fails() throws Exception {
+
+        failingAddress = "1Legacy20";
+        MultiAddressFactory factory = new MultiAddressFactory(blockExplorer);
+        factory.setSharding(5, 2);
+
+        fetch(factory, null, 10, 0);
+    }
+}
@@ -0,0 +1,266 @@
+package info.blockchain.wallet.multiaddress;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import info.blockchain.api.blockexplorer.BlockExplorer;
+import info.blockchain.wallet.BlockchainFramework;
+import info.blockchain.wallet.MockedResponseTest;
+import info.blockchain.wallet.multiaddress.TransactionSummary.Direction;
+import info.blockchain.wallet.payload.PayloadManager;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransactionHistoryCacheTest extends MockedResponseTest {
+
+    private final String dormantXpub = "xpub6CFgfYG9chNp7rzZ7ByXyAJruku5JSVhtGmGqR9tmeLRwu3jtioyBZpXC6GAnpMQPBQg5rviqTwMN4EwgMCZNVT3N22sSnM1yEfBQzjHXJt";
+    private final String newHash = "00000000000000000000000000000000000000000000000000000000000000aa";
+
+    private MultiAddressFactory multiAddressFactory;
+    private TransactionHistoryCache cache;
+    private String response;
+
+    @Before
+    public void setUp() throws Exception {
+        multiAddressFactory = new MultiAddressFactory(
+            new BlockExplorer(BlockchainFramework.getRetrofitExplorerInstance(), BlockchainFramework.getApiCode()));
+        cache = new TransactionHistoryCache();
+
+        URI uri = getClass().getClassLoader().getResource("multiaddress/multi_address_xpub6CFg.txt").toURI();
+        response = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+    }
+
+    private List<TransactionSummary> getTransactions(int limit, int offset) throws Exception {
+        return cache.getTransactions(multiAddressFactory, new ArrayList<>(Arrays.asList(dormantXpub)),
+            new ArrayList<String>(), null, dormantXpub, limit, offset);
+    }
+
+    private LinkedList<String> mockResponses(String... responses) {
+        LinkedList<String> list = new LinkedList<>(Arrays.asList(responses));
+        mockInterceptor.setResponseStringList(list);
+        return list;
+    }
+
+    /**
+     * Copies the newest transaction into a new block on top of the fixture's history.
+     */
+    private String withNewTransaction(String response, int blocksLater) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = (ObjectNode) mapper.readTree(response);
+        ObjectNode latestBlock = (ObjectNode) root.get("info").get("latest_block");
+        long height = latestBlock.get("height").asLong() + blocksLater;
+        latestBlock.put("height", height);
+
+        ArrayNode txs = (ArrayNode) root.get("txs");
+        ObjectNode tx = txs.get(0).deepCopy();
+        tx.put("hash", newHash);
+        tx.put("block_height", height);
+        txs.insert(0, tx);
+        return mapper.writeValueAsString(root);
+    }
+
+    /**
+     * Applies edit to the fixture's transactions.
+     */
+    private String edit(String response, TxEdit edit) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = (ObjectNode) mapper.readTree(response);
+        edit.apply((ArrayNode) root.get("txs"));
+        return mapper.writeValueAsString(root);
+    }
+
+    private interface TxEdit {
+        void apply(ArrayNode txs);
+    }
+
+    @Test
+    public void getTransactions_firstPage() throws Exception {
+
+        LinkedList<String> responses = mockResponses(response);
+
+        List<TransactionSummary> summary = getTransactions(50, 0);
+
+        Assert.assertEquals(34, summary.size());
+        Assert.assertEquals("34c22edb3466708b974a7549d5b3cb51e05d4444f74d2a1b41484f8711dffd04", summary.get(0).getHash());
+        Assert.assertTrue(responses.isEmpty());
+    }
+
+    @Test
+    public void getTransactions_olderPageFromCache() throws Exception {
+
+        LinkedList<String> responses = mockResponses(response);
+
+        List<TransactionSummary> all = getTransactions(50, 0);
+        List<TransactionSummary> page = getTransactions(10, 10);
+
+        Assert.assertTrue(responses.isEmpty());
+        Assert.assertEquals(10, page.size());
+        Assert.assertEquals(all.get(10).getHash(), page.get(0).getHash());
+    }
+
+    @Test
+    public void getTransactions_refreshNewTransaction() throws Exception {
+
+        LinkedList<String> responses = mockResponses(response, withNewTransaction(response, 5));
+
+        List<TransactionSummary> before = getTransactions(50, 0);
+        int confirmations = before.get(0).getConfirmations();
+        List<TransactionSummary> after = getTransactions(50, 0);
+
+        Assert.assertTrue(responses.isEmpty());
+        Assert.assertEquals(35, after.size());
+        Assert.assertEquals(newHash, after.get(0).getHash());
+        Assert.assertEquals(1, after.get(0).getConfirmations());
+        Assert.assertEquals(before.get(0).getHash(), after.get(1).getHash());
+        //Recalculated locally from the new block height
+        Assert.assertEquals(confirmations + 5, after.get(1).getConfirmations());
+    }
+
+    @Test
+    public void toJson_fromJson() throws Exception {
+
+        mockResponses(response);
+        List<TransactionSummary> summary = getTransactions(50, 0);
+
+        TransactionHistoryCache restored = TransactionHistoryCache.fromJson(cache.toJson());
+        List<TransactionSummary> cached = restored.getCachedTransactions(dormantXpub, null);
+
+        Assert.assertEquals(cache.getLatestBlock(), restored.getLatestBlock());
+        Assert.assertEquals(summary.size(), cached.size());
+        for (int i = 0; i < summary.size(); i++) {
+            Assert.assertEquals(summary.get(i).getHash(), cached.get(i).getHash());
+            Assert.assertEquals(summary.get(i).getTotal(), cached.get(i).getTotal());
+            Assert.assertEquals(summary.get(i).getDirection(), cached.get(i).getDirection());
+            Assert.assertEquals(summary.get(i).getConfirmations(), cached.get(i).getConfirmations());
+            Assert.assertEquals(summary.get(i).getInputsMap(), cached.get(i).getInputsMap());
+        }
+    }
+
+    @Test
+    public void getTransactions_summariesPerView() throws Exception {
+
+        //The whole wallet sees the newest transaction as a transfer between its own accounts
+        String allResponse = edit(response, new TxEdit() {
+            @Override
+            public void apply(ArrayNode txs) {
+                ObjectNode tx = (ObjectNode) txs.get(0);
+                tx.put("result", -tx.get("fee").asLong());
+            }
+        });
+        mockResponses(response, allResponse);
+
+        TransactionSummary account = getTransactions(50, 0).get(0);
+        TransactionSummary wallet = cache.getTransactions(multiAddressFactory,
+            new ArrayList<>(Arrays.asList(dormantXpub)), new ArrayList<String>(), null,
+            PayloadManager.MULTI_ADDRESS_ALL, 50, 0).get(0);
+
+        Assert.assertEquals(account.getHash(), wallet.getHash());
+        Assert.assertEquals(Direction.TRANSFERRED, wallet.getDirection());
+        Assert.assertNotEquals(Direction.TRANSFERRED, account.getDirection());
+        Assert.assertEquals(account.getDirection(),
+            cache.getCachedTransactions(dormantXpub, null).get(0).getDirection());
+    }
+
+    @Test
+    public void getTransactions_refreshVerifiesUnconfirmed() throws Exception {
+
+        //Cached while the fourth transaction was unconfirmed and the fifth not yet dropped
+        final String droppedHash = "00000000000000000000000000000000000000000000000000000000000000bb";
+        String pending = edit(response, new TxEdit() {
+            @Override
+            public void apply(ArrayNode txs) {
+                ((ObjectNode) txs.get(3)).remove("block_height");
+                ObjectNode dropped = (ObjectNode) txs.get(4).deepCopy();
+                dropped.put("hash", droppedHash);
+                dropped.remove("block_height");
+                txs.insert(5, dropped);
+            }
+        });
+        LinkedList<String> responses = mockResponses(pending, response);
+
+        List<TransactionSummary> before = getTransactions(50, 0);
+        Assert.assertEquals(35, before.size());
+        Assert.assertEquals(0L, before.get(3).getBlockHeight());
+
+        List<TransactionSummary> after = getTransactions(50, 0);
+
+        Assert.assertTrue(responses.isEmpty());
+        Assert.assertEquals(34, after.size());
+        Assert.assertEquals(before.get(3).getHash(), after.get(3).getHash());
+        Assert.assertTrue(after.get(3).getBlockHeight() > 0);
+        for (TransactionSummary txSummary : after) {
+            Assert.assertNotEquals(droppedHash, txSummary.getHash());
+        }
+    }
+
+    @Test
+    public void getTransactions_serverCapsPageSize() throws Exception {
+
+        //Server returns 20 of the 50 asked for, then the remaining 14
+        String first = edit(response, new TxEdit() {
+            @Override
+            public void apply(ArrayNode txs) {
+                while (txs.size() > 20) {
+                    txs.remove(20);
+                }
+            }
+        });
+        String second = edit(response, new TxEdit() {
+            @Override
+            public void apply(ArrayNode txs) {
+                for (int i = 0; i < 20; i++) {
+                    txs.remove(0);
+                }
+            }
+        });
+        LinkedList<String> responses = mockResponses(first, second);
+
+        List<TransactionSummary> summary = getTransactions(50, 0);
+
+        Assert.assertTrue(responses.isEmpty());
+        Assert.assertEquals(34, summary.size());
+        Assert.assertEquals("34c22edb3466708b974a7549d5b3cb51e05d4444f74d2a1b41484f8711dffd04", summary.get(0).getHash());
+    }
+
+    @Test
+    public void getTransactions_legacyViewStopsAtKnownServerTransaction() throws Exception {
+
+        //Only five older transactions touch the imported address, the newest 20 are HD only
+        String legacyAddress = "1PPNN4psDFyAgdjQcKBJ8GSgE4ES4GHP9c";
+        ArrayList<String> all = new ArrayList<>(Arrays.asList(dormantXpub, legacyAddress));
+        List<String> activeLegacy = Arrays.asList(legacyAddress);
+
+        String firstPage = edit(withNewTransaction(response, 5), new TxEdit() {
+            @Override
+            public void apply(ArrayNode txs) {
+                while (txs.size() > TransactionHistoryCache.DELTA_PAGE_SIZE) {
+                    txs.remove(TransactionHistoryCache.DELTA_PAGE_SIZE);
+                }
+            }
+        });
+        LinkedList<String> responses = mockResponses(response, firstPage, response);
+
+        List<TransactionSummary> before = cache.getTransactions(multiAddressFactory, all,
+            new ArrayList<String>(), activeLegacy, PayloadManager.MULTI_ADDRESS_ALL, 50, 0);
+        Assert.assertEquals(5, before.size());
+
+        List<TransactionSummary> after = cache.getTransactions(multiAddressFactory, all,
+            new ArrayList<String>(), activeLegacy, PayloadManager.MULTI_ADDRESS_ALL, 50, 0);
+
+        //The first page overlaps, nothing past it is fetched
+        Assert.assertEquals(1, responses.size());
+        Assert.assertEquals(5, after.size());
+        for (int i = 0; i < before.size(); i++) {
+            Assert.assertEquals(before.get(i).getHash(), after.get(i).getHash());
+        }
+    }
+}
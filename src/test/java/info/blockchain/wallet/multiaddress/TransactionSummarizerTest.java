@@ -0,0 +1,76 @@
+package info.blockchain.wallet.multiaddress;
+
+import info.blockchain.api.data.MultiAddress;
+import info.blockchain.wallet.multiaddress.TransactionSummary.Direction;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransactionSummarizerTest {
+
+    private final String dormantAddress = "1jH7K4RJrQBXijtLj1JpzqPRhR7MdFtaW";
+    private final String dormantXpub = "xpub6CFgfYG9chNp7rzZ7ByXyAJruku5JSVhtGmGqR9tmeLRwu3jtioyBZpXC6GAnpMQPBQg5rviqTwMN4EwgMCZNVT3N22sSnM1yEfBQzjHXJt";
+
+    private MultiAddress loadMultiAddress(String resource) throws Exception {
+        URI uri = getClass().getClassLoader().getResource(resource).toURI();
+        String response = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+        return MultiAddress.fromJson(response);
+    }
+
+    @Test
+    public void summarize_all() throws Exception {
+
+        MultiAddress multiAddress = loadMultiAddress("multiaddress/multi_address_all.txt");
+
+        TransactionSummarizer summarizer = new TransactionSummarizer(
+            Arrays.asList(dormantAddress, dormantXpub), new ArrayList<String>(), null);
+        List<TransactionSummary> summary = summarizer.summarize(multiAddress);
+
+        Assert.assertEquals(36, summary.size());
+        Assert.assertEquals("34c22edb3466708b974a7549d5b3cb51e05d4444f74d2a1b41484f8711dffd04", summary.get(0).getHash());
+        Assert.assertEquals(Direction.SENT, summary.get(0).getDirection());
+        Assert.assertEquals(20000, summary.get(0).getTotal().longValue());
+        Assert.assertEquals(452284 - 393431 + 1, summary.get(0).getConfirmations());
+        Assert.assertFalse(summary.get(0).isWatchOnly());
+    }
+
+    @Test
+    public void summarize_legacyFilter() throws Exception {
+
+        MultiAddress multiAddress = loadMultiAddress("multiaddress/multi_address_all.txt");
+
+        TransactionSummarizer summarizer = new TransactionSummarizer(
+            Arrays.asList(dormantAddress, dormantXpub), new ArrayList<String>(),
+            Arrays.asList(dormantAddress));
+        List<TransactionSummary> summary = summarizer.summarize(multiAddress);
+
+        Assert.assertEquals(2, summary.size());
+        Assert.assertEquals("04734caac4e2ae7feba9b74fb8d2c145db9ea9651487371c4d741428f8f5a24b", summary.get(0).getHash());
+        Assert.assertEquals(Direction.SENT, summary.get(0).getDirection());
+        Assert.assertEquals(20000, summary.get(0).getTotal().longValue());
+    }
+
+    @Test
+    public void summarize_watchOnly() throws Exception {
+
+        MultiAddress multiAddress = loadMultiAddress("multiaddress/multi_address_all.txt");
+
+        TransactionSummarizer summarizer = new TransactionSummarizer(
+            Arrays.asList(dormantAddress, dormantXpub), Arrays.asList(dormantAddress), null);
+        List<TransactionSummary> summary = summarizer.summarize(multiAddress);
+
+        int watchOnlyCount = 0;
+        for (TransactionSummary txSummary : summary) {
+            if (txSummary.isWatchOnly()) {
+                watchOnlyCount++;
+            }
+        }
+        Assert.assertEquals(2, watchOnlyCount);
+    }
+}
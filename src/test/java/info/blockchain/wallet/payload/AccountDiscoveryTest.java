@@ -0,0 +1,216 @@
+package info.blockchain.wallet.payload;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import info.blockchain.api.blockexplorer.BlockExplorer;
+import info.blockchain.wallet.bip44.HDAccount;
+import info.blockchain.wallet.bip44.HDWallet;
+import info.blockchain.wallet.bip44.HDWalletFactory;
+import info.blockchain.wallet.bip44.HDWalletFactory.Language;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
+import org.bitcoinj.params.MainNetParams;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+/**
+ * Runs discovery against a local block explorer answering /balance per requested xpub.
+ */
+public class AccountDiscoveryTest {
+
+    private static final String MNEMONIC = "all all all all all all all all all all all all";
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+
+    private HttpServer server;
+    private BlockExplorer blockExplorer;
+
+    //Xpubs reported as having transactions
+    private final Set<String> usedXpubs = new HashSet<>();
+    //Requests containing one of these xpubs fail with a 500
+    private final Set<String> failingXpubs = new HashSet<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long responseDelayMs;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/balance", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) {
+                try {
+                    handleBalance(exchange);
+                } catch (Exception e) {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+
+        Retrofit retrofit = new Retrofit.Builder()
+            .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+            .client(new OkHttpClient())
+            .addConverterFactory(JacksonConverterFactory.create())
+            .build();
+        blockExplorer = new BlockExplorer(retrofit, "api_code");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void handleBalance(HttpExchange exchange) throws Exception {
+
+        int current = inFlight.incrementAndGet();
+        synchronized (maxInFlight) {
+            maxInFlight.set(Math.max(maxInFlight.get(), current));
+        }
+
+        try {
+            String active = null;
+            for (String field : readBody(exchange.getRequestBody()).split("&")) {
+                String[] pair = field.split("=", 2);
+                if (pair[0].equals("active")) {
+                    active = URLDecoder.decode(pair[1], "utf-8");
+                }
+            }
+
+            Thread.sleep(responseDelayMs);
+
+            JSONObject body = new JSONObject();
+            int code = 200;
+            for (String xpub : active.split("\\|")) {
+                if (failingXpubs.contains(xpub)) {
+                    code = 500;
+                }
+                JSONObject balance = new JSONObject();
+                balance.put("final_balance", 0);
+                balance.put("n_tx", usedXpubs.contains(xpub) ? 1 : 0);
+                balance.put("total_received", 0);
+                body.put(xpub, balance);
+            }
+
+            byte[] response = code == 200 ? body.toString().getBytes(UTF_8) : "Server error".getBytes(UTF_8);
+            exchange.sendResponseHeaders(code, response.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(response);
+            out.close();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static String readBody(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), UTF_8);
+    }
+
+    private static HDWallet restore(int accounts) throws Exception {
+        return HDWalletFactory.restoreWallet(MainNetParams.get(), Language.US, MNEMONIC, "", accounts);
+    }
+
+    @Test
+    public void discover_noUsedAccounts() throws Exception {
+
+        HDWallet wallet = restore(1);
+        AccountDiscovery discovery = new AccountDiscovery(blockExplorer);
+
+        Assert.assertEquals(1, discovery.discover(wallet));
+        Assert.assertEquals(1, wallet.getAccounts().size());
+        //First wave covers the look ahead
+        Assert.assertEquals(3, discovery.getProbeCount());
+    }
+
+    @Test
+    public void discover_manyAccounts() throws Exception {
+
+        HDWallet expected = restore(41);
+        for (int i = 1; i < 41; i++) {
+            usedXpubs.add(expected.getAccount(i).getXpub());
+        }
+
+        HDWallet wallet = restore(1);
+        AccountDiscovery discovery = new AccountDiscovery(blockExplorer);
+
+        Assert.assertEquals(41, discovery.discover(wallet));
+        Assert.assertEquals(41, wallet.getAccounts().size());
+        //Kept accounts are the ones a full restore derives
+        for (int i = 0; i < 41; i++) {
+            HDAccount account = wallet.getAccount(i);
+            Assert.assertEquals(expected.getAccount(i).getXpub(), account.getXpub());
+            Assert.assertEquals(expected.getAccount(i).getXPriv(), account.getXPriv());
+        }
+        //Waves of 5 + 10 + 20 and 3 * 20 accounts
+        Assert.assertEquals(6, discovery.getProbeCount());
+    }
+
+    @Test
+    public void discover_singleProbe() throws Exception {
+
+        HDWallet expected = restore(4);
+        for (int i = 1; i < 4; i++) {
+            usedXpubs.add(expected.getAccount(i).getXpub());
+        }
+
+        AccountDiscovery discovery = new AccountDiscovery(blockExplorer, 1);
+
+        Assert.assertEquals(4, discovery.discover(restore(1)));
+        //Batches of 5 and 10 reach the look ahead
+        Assert.assertEquals(2, discovery.getProbeCount());
+    }
+
+    @Test
+    public void discover_probesInParallel() throws Exception {
+
+        responseDelayMs = 200;
+
+        new AccountDiscovery(blockExplorer).discover(restore(1));
+
+        Assert.assertTrue(maxInFlight.get() > 1);
+    }
+
+    @Test
+    public void discover_unneededProbeFails() throws Exception {
+
+        //Account 20 is in the third batch, past the look ahead
+        failingXpubs.add(restore(21).getAccount(20).getXpub());
+
+        Assert.assertEquals(1, new AccountDiscovery(blockExplorer).discover(restore(1)));
+    }
+
+    @Test
+    public void discover_neededProbeFails() throws Exception {
+
+        failingXpubs.add(restore(2).getAccount(1).getXpub());
+
+        try {
+            new AccountDiscovery(blockExplorer).discover(restore(1));
+            Assert.fail("Discovery should fail");
+        } catch (Exception e) {
+            Assert.assertEquals("500 Server error", e.getMessage());
+        }
+    }
+}
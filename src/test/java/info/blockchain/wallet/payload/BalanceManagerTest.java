@@ -0,0 +1,120 @@
+package info.blockchain.wallet.payload;
+
+import info.blockchain.api.blockexplorer.BlockExplorer;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+public class BalanceManagerTest {
+
+    private static final String XPUB = "xpub6CFgfYG9chNp7rzZ7ByXyAJruku5JSVhtGmGqR9tmeLRwu3jtioyBZpXC6GAnpMQPBQg5rviqTwMN4EwgMCZNVT3N22sSnM1yEfBQzjHXJt";
+    private static final String LEGACY = "1NZUGwdmQJ7AA6QrEuBz4jeT6z7yjty5dM";
+
+    private BalanceManager balanceManager;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    //Runs while the server handles a request, eg to apply a delta mid refresh
+    private volatile Runnable duringRequest;
+
+    @Before
+    public void setUp() {
+        OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(new Interceptor() {
+                @Override
+                public Response intercept(Chain chain) throws IOException {
+                    requests.incrementAndGet();
+                    Runnable runnable = duringRequest;
+                    if (runnable != null) {
+                        runnable.run();
+                    }
+                    String body = "{\"" + XPUB + "\":{\"final_balance\":1000,\"n_tx\":1,\"total_received\":1000},"
+                        + "\"" + LEGACY + "\":{\"final_balance\":500,\"n_tx\":1,\"total_received\":500}}";
+                    return new Response.Builder()
+                        .code(200)
+                        .message("OK")
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .body(ResponseBody.create(MediaType.parse("application/json"), body))
+                        .build();
+                }
+            })
+            .build();
+
+        Retrofit retrofit = new Retrofit.Builder()
+            .baseUrl("http://127.0.0.1/")
+            .client(client)
+            .addConverterFactory(JacksonConverterFactory.create())
+            .build();
+        balanceManager = new BalanceManager(new BlockExplorer(retrofit, "api_code"));
+    }
+
+    private void refresh() throws Exception {
+        balanceManager.updateAllBalances(Arrays.asList(LEGACY), Arrays.asList(XPUB, LEGACY));
+    }
+
+    @Test
+    public void subtract_updatesImportedTotal() throws Exception {
+        refresh();
+
+        balanceManager.subtractAmountFromAddressBalance(LEGACY, BigInteger.valueOf(200L));
+        balanceManager.subtractAmountFromAddressBalance(XPUB, BigInteger.valueOf(100L));
+
+        Assert.assertEquals(300L, balanceManager.getAddressBalance(LEGACY).longValue());
+        Assert.assertEquals(900L, balanceManager.getAddressBalance(XPUB).longValue());
+        Assert.assertEquals(1200L, balanceManager.getWalletBalance().longValue());
+        Assert.assertEquals(300L, balanceManager.getImportedAddressesBalance().longValue());
+    }
+
+    @Test
+    public void refresh_refetchedAfterDelta() throws Exception {
+        refresh();
+        requests.set(0);
+
+        //A websocket delta lands while the first refetch is in flight
+        duringRequest = new Runnable() {
+            @Override
+            public void run() {
+                if (requests.get() == 1) {
+                    Assert.assertTrue(balanceManager.getBalanceStore().add(-200L, LEGACY, true));
+                }
+            }
+        };
+        refresh();
+
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(500L, balanceManager.getAddressBalance(LEGACY).longValue());
+        Assert.assertEquals(1500L, balanceManager.getWalletBalance().longValue());
+    }
+
+    @Test
+    public void refresh_keepsDeltaWhileBalancesKeepChanging() throws Exception {
+        refresh();
+        requests.set(0);
+
+        duringRequest = new Runnable() {
+            @Override
+            public void run() {
+                balanceManager.getBalanceStore().add(-10L, LEGACY, true);
+            }
+        };
+        refresh();
+
+        //Every attempt raced a delta, none overwrote them
+        Assert.assertEquals(3, requests.get());
+        Assert.assertEquals(470L, balanceManager.getAddressBalance(LEGACY).longValue());
+        Assert.assertEquals(1470L, balanceManager.getWalletBalance().longValue());
+        Assert.assertEquals(470L, balanceManager.getImportedAddressesBalance().longValue());
+    }
+}
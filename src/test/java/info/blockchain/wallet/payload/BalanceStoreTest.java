@@ -0,0 +1,204 @@
+package info.blockchain.wallet.payload;
+
+import info.blockchain.wallet.payload.BalanceStore.Snapshot;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BalanceStoreTest {
+
+    private static final String ALL = PayloadManager.MULTI_ADDRESS_ALL;
+    private static final int ADDRESSES = 50;
+
+    private static String address(int i) {
+        return "address" + i;
+    }
+
+    /**
+     * Publishes every address with the given balance, and the matching wallet total.
+     */
+    private static void refresh(BalanceStore store, long balance) {
+        BalanceStore.Update update = store.update();
+        for (int i = 0; i < ADDRESSES; i++) {
+            update.put(address(i), balance);
+        }
+        update.put(ALL, balance * ADDRESSES).publish();
+    }
+
+    private static long sum(Snapshot snapshot) {
+        long sum = 0L;
+        for (int i = 0; i < ADDRESSES; i++) {
+            sum += snapshot.getBalance(address(i));
+        }
+        return sum;
+    }
+
+    @Test
+    public void publish() {
+
+        BalanceStore store = new BalanceStore();
+        Snapshot empty = store.getSnapshot();
+
+        store.update().put("a", 10L).put("b", 20L).publish();
+        Snapshot first = store.getSnapshot();
+
+        //Previous balances are kept, duplicates take the last value
+        store.update().put("b", 5L).put("c", 7L).put("c", 8L).publish();
+        Snapshot second = store.getSnapshot();
+
+        Assert.assertEquals(0, empty.size());
+        Assert.assertFalse(empty.contains("a"));
+        Assert.assertEquals(0L, empty.getBalance("a"));
+
+        Assert.assertEquals(20L, first.getBalance("b"));
+        Assert.assertFalse(first.contains("c"));
+
+        Assert.assertEquals(3, second.size());
+        Assert.assertEquals(10L, second.getBalance("a"));
+        Assert.assertEquals(5L, second.getBalance("b"));
+        Assert.assertEquals(8L, second.getBalance("c"));
+    }
+
+    @Test
+    public void subtract() {
+
+        BalanceStore store = new BalanceStore();
+        store.update().put("a", 100L).put(ALL, 300L).publish();
+        Snapshot before = store.getSnapshot();
+
+        Assert.assertTrue(store.subtract(30L, "a", ALL));
+        Assert.assertTrue(store.subtract(1L, "a", "a"));
+        Assert.assertFalse(store.subtract(10L, "a", "unknown"));
+
+        Assert.assertEquals(69L, store.getSnapshot().getBalance("a"));
+        Assert.assertEquals(270L, store.getSnapshot().getBalance(ALL));
+        //Snapshots never change
+        Assert.assertEquals(100L, before.getBalance("a"));
+    }
+
+    @Test
+    public void publishIfNoDeltasSince() {
+
+        BalanceStore store = new BalanceStore();
+        store.update().put("a", 100L).put(ALL, 100L).publish();
+        long deltas = store.getSnapshot().getDeltas();
+
+        Assert.assertTrue(store.update().put("a", 90L).publishIfNoDeltasSince(deltas));
+        Assert.assertTrue(store.add(-5L, "a", false));
+        Assert.assertEquals(deltas + 1, store.getSnapshot().getDeltas());
+
+        //Fetched before the delta
+        Assert.assertFalse(store.update().put("a", 90L).put(ALL, 90L).publishIfNoDeltasSince(deltas));
+        Assert.assertEquals(85L, store.getSnapshot().getBalance("a"));
+        Assert.assertEquals(95L, store.getSnapshot().getBalance(ALL));
+    }
+
+    @Test
+    public void concurrentSubtract_noLostUpdates() throws Exception {
+
+        final BalanceStore store = new BalanceStore();
+        refresh(store, 1000000L);
+
+        final int threads = 4;
+        final int subtractions = 5000;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Random random = new Random(seed);
+                    start.await();
+                    for (int i = 0; i < subtractions; i++) {
+                        Assert.assertTrue(store.subtract(1L, address(random.nextInt(ADDRESSES)), ALL));
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Snapshot snapshot = store.getSnapshot();
+        long expected = 1000000L * ADDRESSES - threads * subtractions;
+        Assert.assertEquals(expected, snapshot.getBalance(ALL));
+        Assert.assertEquals(expected, sum(snapshot));
+    }
+
+    @Test
+    public void concurrentRefresh_readersSeeWholeSnapshots() throws Exception {
+
+        final BalanceStore store = new BalanceStore();
+        refresh(store, 1000000L);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        List<Future<Long>> readers = new ArrayList<>();
+        List<Future<Long>> writers = new ArrayList<>();
+
+        for (int t = 0; t < 3; t++) {
+            readers.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    start.await();
+                    long reads = 0L;
+                    while (running.get()) {
+                        Snapshot snapshot = store.getSnapshot();
+                        //Wallet total always matches the addresses it was published or updated with
+                        Assert.assertEquals(snapshot.getBalance(ALL), sum(snapshot));
+                        reads++;
+                    }
+                    return reads;
+                }
+            }));
+        }
+
+        //Refreshes racing with payments
+        writers.add(executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                start.await();
+                for (long i = 0; i < 2000; i++) {
+                    refresh(store, 1000000L + i);
+                }
+                return 2000L;
+            }
+        }));
+        writers.add(executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                Random random = new Random(42);
+                start.await();
+                for (int i = 0; i < 20000; i++) {
+                    store.subtract(random.nextInt(100), address(random.nextInt(ADDRESSES)), ALL);
+                }
+                return 20000L;
+            }
+        }));
+
+        start.countDown();
+        for (Future<Long> writer : writers) {
+            writer.get();
+        }
+        running.set(false);
+        for (Future<Long> reader : readers) {
+            Assert.assertTrue(reader.get() > 0L);
+        }
+        executor.shutdown();
+    }
+}
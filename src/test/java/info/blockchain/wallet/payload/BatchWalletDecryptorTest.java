@@ -0,0 +1,79 @@
+package info.blockchain.wallet.payload;
+
+import info.blockchain.wallet.exceptions.DecryptionException;
+import info.blockchain.wallet.payload.BatchWalletDecryptor.Metrics;
+import info.blockchain.wallet.payload.BatchWalletDecryptor.Result;
+import info.blockchain.wallet.payload.data.WalletWrapper;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchWalletDecryptorTest {
+
+    private BatchWalletDecryptor decryptor;
+
+    @Before
+    public void setUp() {
+        decryptor = new BatchWalletDecryptor(3);
+    }
+
+    @After
+    public void tearDown() {
+        decryptor.close();
+    }
+
+    private WalletWrapper loadWrapper(String resource) throws Exception {
+        URI uri = getClass().getClassLoader().getResource(resource).toURI();
+        String walletBase = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+        return WalletWrapper.fromJson(new JSONObject(walletBase).getString("payload"));
+    }
+
+    @Test
+    public void decrypt() throws Exception {
+
+        WalletWrapper v3_1 = loadWrapper("wallet_v3_1.txt");
+        WalletWrapper v3_2 = loadWrapper("wallet_v3_2.txt");
+
+        List<WalletWrapper> payloads = new ArrayList<>();
+        List<String> passwords = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            payloads.add(v3_1);
+            passwords.add("MyTestWallet");
+            payloads.add(v3_2);
+            passwords.add("SomeTestPassword");
+        }
+        //Wrong password
+        payloads.add(v3_1);
+        passwords.add("SomeTestPassword");
+
+        List<Result> results = decryptor.decrypt(payloads, passwords);
+
+        Assert.assertEquals(9, results.size());
+        for (int i = 0; i < 8; i += 2) {
+            Assert.assertEquals("a09910d9-1906-4ea1-a956-2508c3fe0661", results.get(i).getWallet().getGuid());
+            Assert.assertEquals("e5eba801-c8bc-4a64-99ba-094e12a80766", results.get(i + 1).getWallet().getGuid());
+        }
+        Assert.assertFalse(results.get(8).isSuccess());
+        Assert.assertTrue(results.get(8).getException() instanceof DecryptionException);
+
+        Metrics metrics = decryptor.getMetrics();
+        Assert.assertEquals(8, metrics.getDecrypted());
+        Assert.assertEquals(1, metrics.getFailed());
+        Assert.assertTrue(metrics.getPayloadsPerSecond() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decrypt_passwordCountMismatch() throws Exception {
+        List<WalletWrapper> payloads = new ArrayList<>();
+        payloads.add(loadWrapper("wallet_v3_1.txt"));
+        decryptor.decrypt(payloads, new ArrayList<String>());
+    }
+}
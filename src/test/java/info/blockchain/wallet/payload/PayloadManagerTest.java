@@ -421,6 +421,95 @@ public class PayloadManagerTest extends MockedResponseTest {
         Assert.assertNull(legacyAddressBody.getPrivateKey());
     }
 
+    @Test
+    public void importLegacyAddressKeys() throws Exception {
+
+        LinkedList<String> responseList = new LinkedList<>();
+        responseList.add("MyWallet save successful.");
+        responseList.add("{}");//multiaddress responses - not testing this so can be empty.
+        responseList.add("{}");
+        responseList.add("{}");
+        mockInterceptor.setResponseStringList(responseList);
+        PayloadManager.getInstance().create("My HDWallet", "name@email.com", "MyTestWallet");
+
+        responseList = new LinkedList<>();
+        responseList.add("cb600366ef7a94b991aa04557fc1d9c272ba00df6b1d9791d71c66efa0ae7fe9");
+        responseList.add("MyWallet save successful");
+        responseList.add("{}");
+        responseList.add("{}");
+        responseList.add("{}");
+        responseList.add("{}");
+        mockInterceptor.setResponseStringList(responseList);
+        PayloadManager.getInstance().addLegacyAddress("Some Label", null);
+
+        LegacyAddress existing = PayloadManager.getInstance().getPayload()
+            .getLegacyAddressList().get(0);
+        ECKey existingKey = DeterministicKey.fromPrivate(Base58.decode(existing.getPrivateKey()));
+        existing.setPrivateKey(null);
+
+        List<ECKey> keys = new ArrayList<>();
+        keys.add(new ECKey());
+        keys.add(existingKey);
+        keys.add(new ECKey());
+
+        //One save for the whole batch
+        responseList = new LinkedList<>();
+        responseList.add("MyWallet save successful");
+        responseList.add("{}");
+        responseList.add("{}");
+        responseList.add("{}");
+        responseList.add("{}");
+        mockInterceptor.setResponseStringList(responseList);
+        List<LegacyAddress> imported = PayloadManager.getInstance().importLegacyAddressKeys(keys, null);
+
+        Assert.assertEquals(3, imported.size());
+        Assert.assertSame(existing, imported.get(1));
+        Assert.assertNotNull(existing.getPrivateKey());
+        Assert.assertEquals(3, PayloadManager.getInstance().getPayload().getLegacyAddressList().size());
+    }
+
+    @Test
+    public void importLegacyAddressKeys_saveFail() throws Exception {
+
+        LinkedList<String> responseList = new LinkedList<>();
+        responseList.add("MyWallet save successful.");
+        responseList.add("{}");//multiaddress responses - not testing this so can be empty.
+        responseList.add("{}");
+        responseList.add("{}");
+        mockInterceptor.setResponseStringList(responseList);
+        PayloadManager.getInstance().create("My HDWallet", "name@email.com", "MyTestWallet");
+
+        responseList = new LinkedList<>();
+        responseList.add("cb600366ef7a94b991aa04557fc1d9c272ba00df6b1d9791d71c66efa0ae7fe9");
+        responseList.add("MyWallet save successful");
+        responseList.add("{}");
+        responseList.add("{}");
+        responseList.add("{}");
+        responseList.add("{}");
+        mockInterceptor.setResponseStringList(responseList);
+        PayloadManager.getInstance().addLegacyAddress("Some Label", null);
+
+        LegacyAddress existing = PayloadManager.getInstance().getPayload()
+            .getLegacyAddressList().get(0);
+        ECKey existingKey = DeterministicKey.fromPrivate(Base58.decode(existing.getPrivateKey()));
+        existing.setPrivateKey(null);
+
+        List<ECKey> keys = new ArrayList<>();
+        keys.add(existingKey);
+        keys.add(new ECKey());
+
+        mockInterceptor.setResponseCode(500);
+        mockInterceptor.setResponseString("Oops something went wrong");
+        try {
+            PayloadManager.getInstance().importLegacyAddressKeys(keys, null);
+            Assert.fail("Expected save to fail");
+        } catch (Exception e) {
+            //Ensure everything reverted on save fail
+            Assert.assertNull(existing.getPrivateKey());
+            Assert.assertEquals(1, PayloadManager.getInstance().getPayload().getLegacyAddressList().size());
+        }
+    }
+
     @Test
     public void getNextAddress() throws Exception {
 
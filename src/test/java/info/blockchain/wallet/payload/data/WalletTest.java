@@ -13,6 +13,7 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
 import org.bitcoinj.core.Base58;
@@ -152,6 +153,28 @@ public class WalletTest extends MockedResponseTest{
         wallet.validateSecondPassword("bogus");
     }
 
+    @Test
+    public void validateSecondPassword_cachedPerWallet() throws Exception {
+
+        URI uri = getClass().getClassLoader().getResource("wallet_body_1.txt").toURI();
+        String body = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+
+        Wallet wallet = Wallet.fromJson(body);
+        Wallet other = Wallet.fromJson(body);
+
+        wallet.validateSecondPassword("hello");
+        Assert.assertEquals(1, wallet.getDerivedKeyCache().size());
+        Assert.assertEquals(0, other.getDerivedKeyCache().size());
+
+        //Second password changed
+        wallet.setDpasswordhash(wallet.getDpasswordhash());
+        Assert.assertEquals(0, wallet.getDerivedKeyCache().size());
+
+        wallet.validateSecondPassword("hello");
+        wallet.wipeDerivedKeys();
+        Assert.assertEquals(0, wallet.getDerivedKeyCache().size());
+    }
+
     @Test
     public void addAccount() throws Exception {
 
@@ -355,6 +378,72 @@ public class WalletTest extends MockedResponseTest{
         wallet.setKeyForLegacyAddress(ecKey,"bogus");
     }
 
+    @Test
+    public void importLegacyAddressKeys_doubleEncrypted()
+        throws Exception {
+
+        URI uri = getClass().getClassLoader().getResource("wallet_body_1.txt").toURI();
+        String body = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+
+        Wallet wallet = Wallet.fromJson(body);
+
+        mockInterceptor.setResponseString("cb600366ef7a94b991aa04557fc1d9c272ba00df6b1d9791d71c66efa0ae7fe9");
+        wallet.addLegacyAddress("Some Label", "hello");
+        int count = wallet.getLegacyAddressList().size();
+
+        LegacyAddress address = wallet.getLegacyAddressList().get(count - 1);
+        final String decryptedOriginalPrivateKey = AESUtil
+            .decrypt(address.getPrivateKey(), wallet.getSharedKey()+"hello",
+                wallet.getOptions().getPbkdf2Iterations());
+        address.setPrivateKey(null);
+
+        ECKey existingKey = DeterministicKey.fromPrivate(Base58.decode(decryptedOriginalPrivateKey));
+        ECKey newKey = new ECKey();
+
+        List<LegacyAddress> imported = wallet
+            .importLegacyAddressKeys(Arrays.asList(newKey, existingKey, newKey), "hello");
+
+        //Existing address updated, new one added once
+        Assert.assertEquals(count + 1, wallet.getLegacyAddressList().size());
+        Assert.assertSame(address, imported.get(1));
+        Assert.assertSame(imported.get(0), imported.get(2));
+        Assert.assertEquals(decryptedOriginalPrivateKey, AESUtil
+            .decrypt(address.getPrivateKey(), wallet.getSharedKey()+"hello",
+                wallet.getOptions().getPbkdf2Iterations()));
+        Assert.assertEquals(Base58.encode(newKey.getPrivKeyBytes()), AESUtil
+            .decrypt(imported.get(0).getPrivateKey(), wallet.getSharedKey()+"hello",
+                wallet.getOptions().getPbkdf2Iterations()));
+    }
+
+    @Test
+    public void replaceLegacyAddresses_NoSuchAddressException()
+        throws Exception {
+
+        URI uri = getClass().getClassLoader().getResource("wallet_body_6.txt").toURI();
+        String body = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+
+        Wallet wallet = Wallet.fromJson(body);
+
+        mockInterceptor.setResponseString("cb600366ef7a94b991aa04557fc1d9c272ba00df6b1d9791d71c66efa0ae7fe9");
+        wallet.addLegacyAddress("Some Label", null);
+        LegacyAddress original = wallet.getLegacyAddressList().get(0);
+
+        LegacyAddress updated = LegacyAddress.fromECKey(
+            DeterministicKey.fromPrivate(Base58.decode(original.getPrivateKey())));
+        updated.setLabel("Updated");
+
+        try {
+            wallet.replaceLegacyAddresses(Arrays.asList(updated, LegacyAddress.fromECKey(new ECKey())));
+            Assert.fail("Expected NoSuchAddressException");
+        } catch (NoSuchAddressException e) {
+            //Nothing replaced
+            Assert.assertSame(original, wallet.getLegacyAddressList().get(0));
+        }
+
+        wallet.replaceLegacyAddresses(Arrays.asList(updated));
+        Assert.assertSame(updated, wallet.getLegacyAddressList().get(0));
+    }
+
     @Test
     public void decryptHDWallet() throws Exception {
         URI uri = getClass().getClassLoader().getResource("wallet_body_1.txt").toURI();
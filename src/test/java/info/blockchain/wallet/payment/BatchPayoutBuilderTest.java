@@ -0,0 +1,162 @@
+package info.blockchain.wallet.payment;
+
+import info.blockchain.api.data.UnspentOutput;
+import info.blockchain.wallet.payment.BatchPayoutBuilder.Payout;
+import info.blockchain.wallet.util.Tools;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.lang3.tuple.Pair;
+import org.bitcoinj.core.AddressFormatException;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+public class BatchPayoutBuilderTest {
+
+    private static final BigInteger FEE_PER_KB = BigInteger.valueOf(30000L);
+    private static final String CHANGE_ADDRESS = "1GiEQZt9aX2XfDcj14tCC4xAWEJtq9EXW7";
+    private static final String SCRIPT = "76a91462e907b15cbf27d5425399ebf6f0fb50ebb88f1888ac";
+
+    private static String newAddress() {
+        return new ECKey().toAddress(MainNetParams.get()).toBase58();
+    }
+
+    private static List<UnspentOutput> coins(int count, long value) {
+        List<UnspentOutput> coins = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UnspentOutput coin = new UnspentOutput();
+            coin.setTxHash(Hex.toHexString(new ECKey().getPrivKeyBytes()));
+            coin.setTxOutputCount(i % 3);
+            coin.setValue(BigInteger.valueOf(value + i));
+            coin.setScript(SCRIPT);
+            coins.add(coin);
+        }
+        return coins;
+    }
+
+    private static List<Pair<String, BigInteger>> receivers(int count, long amount) {
+        List<Pair<String, BigInteger>> receivers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            receivers.add(Pair.of(newAddress(), BigInteger.valueOf(amount + i)));
+        }
+        return receivers;
+    }
+
+    private static long inputValue(Transaction transaction) {
+        long value = 0L;
+        for (TransactionInput input : transaction.getInputs()) {
+            value += input.getOutpoint().getConnectedOutput().getValue().getValue();
+        }
+        return value;
+    }
+
+    @Test
+    public void build_singleTransaction() throws Exception {
+
+        List<Pair<String, BigInteger>> receivers = receivers(3, 100000L);
+        //Repeated address gets its own output
+        receivers.add(Pair.of(receivers.get(0).getLeft(), BigInteger.valueOf(50000L)));
+
+        List<Payout> payouts = new BatchPayoutBuilder(MainNetParams.get(), FEE_PER_KB)
+            .build(receivers, coins(3, 200000L), CHANGE_ADDRESS);
+
+        Assert.assertEquals(1, payouts.size());
+        Payout payout = payouts.get(0);
+        Transaction transaction = payout.getTransaction();
+
+        Assert.assertEquals(4, payout.getReceiverCount());
+        Assert.assertEquals(2, transaction.getInputs().size());
+        //Receivers and change
+        Assert.assertEquals(5, transaction.getOutputs().size());
+        Assert.assertEquals(Fees.estimatedFee(2, 5, FEE_PER_KB), payout.getAbsoluteFee());
+        Assert.assertEquals(inputValue(transaction),
+            transaction.getOutputSum().getValue() + payout.getAbsoluteFee().longValue());
+
+        //Already in BIP69 order
+        Assert.assertEquals(Tools.applyBip69(transaction).getHash(), transaction.getHash());
+    }
+
+    @Test
+    public void build_splitsUnderSizeCeiling() throws Exception {
+
+        int maxSize = 1000;
+        List<UnspentOutput> coins = coins(50, 100000L);
+        List<Pair<String, BigInteger>> receivers = receivers(40, 20000L);
+
+        List<Payout> payouts = new BatchPayoutBuilder(MainNetParams.get(), FEE_PER_KB, maxSize, null)
+            .build(receivers, coins, CHANGE_ADDRESS);
+
+        Assert.assertTrue(payouts.size() > 1);
+
+        int receiverCount = 0;
+        Set<UnspentOutput> spent = new HashSet<>();
+        for (Payout payout : payouts) {
+            Transaction transaction = payout.getTransaction();
+            receiverCount += payout.getReceiverCount();
+
+            Assert.assertTrue(Fees.estimatedSize(transaction.getInputs().size(),
+                transaction.getOutputs().size()) <= maxSize);
+            Assert.assertEquals(inputValue(transaction),
+                transaction.getOutputSum().getValue() + payout.getAbsoluteFee().longValue());
+
+            for (UnspentOutput coin : payout.getSpentCoins()) {
+                Assert.assertTrue(spent.add(coin));
+            }
+        }
+        Assert.assertEquals(40, receiverCount);
+    }
+
+    @Test
+    public void build_splitsUnderFeeCeiling() throws Exception {
+
+        BigInteger maxFee = Fees.estimatedFee(1, 4, FEE_PER_KB);
+
+        List<Payout> payouts = new BatchPayoutBuilder(MainNetParams.get(), FEE_PER_KB,
+            BatchPayoutBuilder.DEFAULT_MAX_TRANSACTION_SIZE, maxFee)
+            .build(receivers(9, 10000L), coins(5, 1000000L), CHANGE_ADDRESS);
+
+        Assert.assertEquals(3, payouts.size());
+        for (Payout payout : payouts) {
+            Assert.assertEquals(3, payout.getReceiverCount());
+            Assert.assertTrue(payout.getAbsoluteFee().compareTo(maxFee) <= 0);
+        }
+    }
+
+    @Test
+    public void build_skipsDust() throws Exception {
+
+        List<Pair<String, BigInteger>> receivers = receivers(2, 100000L);
+        receivers.add(Pair.of(newAddress(), BigInteger.ONE));
+
+        List<Payout> payouts = new BatchPayoutBuilder(MainNetParams.get(), FEE_PER_KB)
+            .build(receivers, coins(1, 1000000L), CHANGE_ADDRESS);
+
+        Assert.assertEquals(2, payouts.get(0).getReceiverCount());
+        for (TransactionOutput output : payouts.get(0).getTransaction().getOutputs()) {
+            Assert.assertTrue(output.getValue().getValue() > 1L);
+        }
+    }
+
+    @Test(expected = InsufficientMoneyException.class)
+    public void build_insufficientMoney() throws Exception {
+        new BatchPayoutBuilder(MainNetParams.get(), FEE_PER_KB)
+            .build(receivers(10, 100000L), coins(2, 100000L), CHANGE_ADDRESS);
+    }
+
+    @Test(expected = AddressFormatException.class)
+    public void build_invalidAddress() throws Exception {
+        List<Pair<String, BigInteger>> receivers = receivers(2, 100000L);
+        receivers.add(Pair.of("1GiEQZt9aX2XfDcj14tCC4xAWEJtq9EXW8", BigInteger.valueOf(100000L)));
+
+        new BatchPayoutBuilder(MainNetParams.get(), FEE_PER_KB)
+            .build(receivers, coins(2, 1000000L), CHANGE_ADDRESS);
+    }
+}
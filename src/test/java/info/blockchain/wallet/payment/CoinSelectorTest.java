@@ -0,0 +1,226 @@
+package info.blockchain.wallet.payment;
+
+import info.blockchain.api.data.UnspentOutputs;
+import info.blockchain.wallet.test_data.UnspentTestData;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CoinSelectorTest {
+
+    private static final long FEE_PER_KB = 30000L;
+    private static final long DUST = Payment.DUST.longValue();
+
+    //Same coins as UnspentTestData
+    private final long[] values = {80200, 70000, 60000, 50000, 40000, 30000, 20000, 10000};
+
+    @Test
+    public void greedy_expectChange() {
+
+        CoinSelection selection = new GreedyCoinSelector().select(values, 100000L, FEE_PER_KB);
+
+        Assert.assertArrayEquals(new int[]{0, 1}, selection.getIndexes());
+        Assert.assertEquals(Fees.estimatedFee(2, 2, FEE_PER_KB), selection.getAbsoluteFee());
+        Assert.assertEquals(0L, selection.getConsumedAmount());
+    }
+
+    @Test
+    public void branchAndBound_avoidsChange() {
+
+        //Greedy spends 80200 and 70000 with change, two of the smaller coins match exactly
+        long paymentAmount = 90000L - Fees.estimatedFee(2, 1, FEE_PER_KB);
+
+        CoinSelection selection = new BranchAndBoundCoinSelector().select(values, paymentAmount, FEE_PER_KB);
+
+        Assert.assertEquals(2, selection.getCoinCount());
+        Assert.assertEquals(Fees.estimatedFee(2, 1, FEE_PER_KB), selection.getAbsoluteFee());
+        Assert.assertEquals(0L, selection.getConsumedAmount());
+        Assert.assertEquals(90000L, selection.getSelectedAmount(values));
+    }
+
+    @Test
+    public void branchAndBound_consumesDust() {
+
+        //Closest match leaves less than dust, which goes to the fee
+        long paymentAmount = 90000L - Fees.estimatedFee(2, 1, FEE_PER_KB) + 100L;
+        long[] coins = {80200, 45300, 45000, 44950, 30000};
+
+        CoinSelection selection = new BranchAndBoundCoinSelector().select(coins, paymentAmount, FEE_PER_KB);
+
+        Assert.assertEquals(2, selection.getCoinCount());
+        Assert.assertEquals(Fees.estimatedFee(2, 1, FEE_PER_KB), selection.getAbsoluteFee());
+        Assert.assertEquals(paymentAmount + selection.getAbsoluteFee() - selection.getSelectedAmount(coins),
+            selection.getConsumedAmount());
+        Assert.assertTrue(selection.getConsumedAmount() <= 0 && selection.getConsumedAmount() >= -DUST);
+    }
+
+    @Test
+    public void branchAndBound_fallback() {
+
+        long[] coins = {1000000L};
+
+        CoinSelection selection = new BranchAndBoundCoinSelector().select(coins, 10000L, FEE_PER_KB);
+
+        Assert.assertArrayEquals(new int[]{0}, selection.getIndexes());
+        Assert.assertEquals(Fees.estimatedFee(1, 2, FEE_PER_KB), selection.getAbsoluteFee());
+    }
+
+    @Test
+    public void knapsack_subsetBeatsLargerCoin() {
+
+        long[] coins = {1000000, 500000, 60000, 50000, 40000};
+
+        CoinSelection selection = new KnapsackCoinSelector(new Random(1)).select(coins, 100000L, 10000L);
+
+        Assert.assertArrayEquals(new int[]{2, 3}, selection.getIndexes());
+        Assert.assertEquals(Fees.estimatedFee(2, 2, 10000L), selection.getAbsoluteFee());
+    }
+
+    @Test
+    public void knapsack_lowestLargerCoin() {
+
+        long[] coins = {1000000, 500000, 20000, 10000};
+
+        CoinSelection selection = new KnapsackCoinSelector(new Random(1)).select(coins, 100000L, 10000L);
+
+        Assert.assertArrayEquals(new int[]{1}, selection.getIndexes());
+    }
+
+    @Test
+    public void insufficientFunds_selectsEverything() {
+
+        long paymentAmount = 1000000L;
+        CoinSelector[] selectors = {new GreedyCoinSelector(), new BranchAndBoundCoinSelector(),
+            new KnapsackCoinSelector(new Random(1))};
+
+        for (CoinSelector selector : selectors) {
+            CoinSelection selection = selector.select(values, paymentAmount, FEE_PER_KB);
+            Assert.assertEquals(values.length, selection.getCoinCount());
+            Assert.assertEquals(Fees.estimatedFee(values.length, 2, FEE_PER_KB), selection.getAbsoluteFee());
+        }
+    }
+
+    @Test
+    public void randomSets_coverPaymentAndFee() {
+
+        Random random = new Random(42);
+        CoinSelector[] selectors = {new GreedyCoinSelector(), new BranchAndBoundCoinSelector(),
+            new KnapsackCoinSelector(new Random(1))};
+
+        for (int run = 0; run < 200; run++) {
+
+            long[] coins = new long[1 + random.nextInt(50)];
+            long total = 0L;
+            for (int i = 0; i < coins.length; i++) {
+                coins[i] = 10000L + random.nextInt(1000000);
+                total += coins[i];
+            }
+            Arrays.sort(coins);
+            reverse(coins);
+
+            long paymentAmount = 1 + (long) (random.nextDouble() * total / 2);
+            if (total < paymentAmount + Fees.estimatedFee(coins.length, 2, FEE_PER_KB)) {
+                continue;
+            }
+
+            for (CoinSelector selector : selectors) {
+                CoinSelection selection = selector.select(coins, paymentAmount, FEE_PER_KB);
+                long selected = selection.getSelectedAmount(coins);
+
+                Assert.assertTrue(selected >= paymentAmount + selection.getAbsoluteFee());
+                Assert.assertEquals(selection.getCoinCount(), distinct(selection.getIndexes()));
+
+                boolean changeless = selection.getAbsoluteFee()
+                    == Fees.estimatedFee(selection.getCoinCount(), 1, FEE_PER_KB);
+                if (changeless) {
+                    Assert.assertTrue(selected - paymentAmount - selection.getAbsoluteFee() <= DUST);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void hotWallet_selectionQuality() {
+
+        //Same wallet and payments as CoinSelectionBenchmark
+        Random random = new Random(42);
+        long[] coins = new long[1000];
+        for (int i = 0; i < coins.length; i++) {
+            coins[i] = random.nextInt(10) == 0
+                ? 10000000L + random.nextInt(100000000)
+                : 10000L + random.nextInt(2000000);
+        }
+        Arrays.sort(coins);
+        reverse(coins);
+
+        long[] payments = new long[16];
+        for (int i = 0; i < payments.length; i++) {
+            payments[i] = 50000L + (long) (random.nextDouble() * 50000000L);
+        }
+
+        CoinSelector[] selectors = {new GreedyCoinSelector(), new BranchAndBoundCoinSelector(),
+            new KnapsackCoinSelector(new Random(1))};
+        int[] inputs = new int[selectors.length];
+        int[] changeless = new int[selectors.length];
+        for (long paymentAmount : payments) {
+            for (int s = 0; s < selectors.length; s++) {
+                CoinSelection selection = selectors[s].select(coins, paymentAmount, FEE_PER_KB);
+                Assert.assertTrue(selection.getSelectedAmount(coins)
+                    >= paymentAmount + selection.getAbsoluteFee());
+                inputs[s] += selection.getCoinCount();
+                if (selection.getAbsoluteFee()
+                    == Fees.estimatedFee(selection.getCoinCount(), 1, FEE_PER_KB)) {
+                    changeless[s]++;
+                }
+            }
+        }
+
+        //Greedy spends the fewest inputs, branch and bound avoids change for every payment
+        Assert.assertEquals(payments.length, inputs[0]);
+        Assert.assertTrue(inputs[1] >= inputs[0] && inputs[2] >= inputs[0]);
+        Assert.assertEquals(payments.length, changeless[1]);
+    }
+
+    @Test
+    public void getSpendableCoins_withSelector() throws Exception {
+
+        UnspentOutputs unspentOutputs = new UnspentOutputs().fromJson(UnspentTestData.apiResponseString);
+        long paymentAmount = 90000L - Fees.estimatedFee(2, 1, FEE_PER_KB);
+
+        SpendableUnspentOutputs paymentBundle = new Payment().getSpendableCoins(unspentOutputs,
+            BigInteger.valueOf(paymentAmount), BigInteger.valueOf(FEE_PER_KB), new BranchAndBoundCoinSelector());
+
+        Assert.assertEquals(2, paymentBundle.getSpendableOutputs().size());
+        Assert.assertEquals(Fees.estimatedFee(2, 1, FEE_PER_KB), paymentBundle.getAbsoluteFee().longValue());
+        Assert.assertEquals(0L, paymentBundle.getConsumedAmount().longValue());
+    }
+
+    @Test
+    public void hasScriptType() {
+        Assert.assertTrue(Coins.hasScriptType("76a91462e907b15cbf27d5425399ebf6f0fb50ebb88f1888ac"));
+        Assert.assertTrue(Coins.hasScriptType("a91462e907b15cbf27d5425399ebf6f0fb50ebb88f1887"));
+        Assert.assertFalse(Coins.hasScriptType("6a0b68656c6c6f20776f726c64"));
+    }
+
+    private static void reverse(long[] array) {
+        for (int i = 0, j = array.length - 1; i < j; i++, j--) {
+            long tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+
+    private static int distinct(int[] indexes) {
+        int[] copy = indexes.clone();
+        Arrays.sort(copy);
+        int count = 0;
+        for (int i = 0; i < copy.length; i++) {
+            if (i == 0 || copy[i] != copy[i - 1]) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
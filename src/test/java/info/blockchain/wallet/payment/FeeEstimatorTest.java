@@ -0,0 +1,153 @@
+package info.blockchain.wallet.payment;
+
+import info.blockchain.api.data.UnspentOutput;
+import info.blockchain.wallet.MockedResponseTest;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.script.ScriptBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+public class FeeEstimatorTest extends MockedResponseTest {
+
+    private final NetworkParameters params = MainNetParams.get();
+    private final Random random = new Random(42);
+
+    private final List<ECKey> keys = new ArrayList<>();
+
+    {
+        for (int i = 0; i < 6; i++) {
+            ECKey key = new ECKey();
+            keys.add(i % 2 == 0 ? key : ECKey.fromPrivate(key.getPrivKey(), false));
+        }
+    }
+
+    private UnspentOutput coin(ECKey key) {
+        UnspentOutput coin = new UnspentOutput();
+        coin.setTxHash(Hex.toHexString(new ECKey().getPrivKeyBytes()));
+        coin.setTxOutputCount(random.nextInt(10));
+        coin.setValue(BigInteger.valueOf(100000L));
+        coin.setScript(Hex.toHexString(ScriptBuilder.createOutputScript(key.toAddress(params)).getProgram()));
+        return coin;
+    }
+
+    private Address receiver() {
+        byte[] hash = new byte[20];
+        random.nextBytes(hash);
+        return random.nextBoolean()
+            ? Address.fromP2SHHash(params, hash)
+            : new Address(params, hash);
+    }
+
+    /**
+     * Signs a transaction over random keys and receivers and checks the estimate against the
+     * serialized size.
+     */
+    private void assertEstimate(int inputCount, int outputCount) throws Exception {
+
+        Transaction transaction = new Transaction(params);
+        List<ECKey> signingKeys = new ArrayList<>();
+        int inputBytes = 0;
+        for (int i = 0; i < inputCount; i++) {
+            ECKey key = keys.get(random.nextInt(keys.size()));
+            transaction.addInput(PaymentTx.createInput(params, coin(key)));
+            signingKeys.add(key);
+            inputBytes += FeeEstimator.inputSize(key);
+        }
+
+        int outputBytes = 0;
+        for (int i = 0; i < outputCount; i++) {
+            Address address = receiver();
+            transaction.addOutput(Coin.valueOf(1000L), address);
+            outputBytes += FeeEstimator.outputSize(address);
+            Assert.assertEquals(FeeEstimator.outputSize(address),
+                FeeEstimator.outputSize(transaction.getOutput(i).getScriptBytes()));
+        }
+
+        new TransactionSigner(signingKeys).sign(transaction);
+        int actual = transaction.bitcoinSerialize().length;
+        int estimate = FeeEstimator.size(inputCount, inputBytes, outputCount, outputBytes);
+
+        //Never short, and at most a byte or two per signature over
+        Assert.assertTrue(estimate + " < " + actual, estimate >= actual);
+        Assert.assertTrue(estimate + " >> " + actual, estimate - actual <= 2 * inputCount);
+    }
+
+    @Test
+    public void size_matchesSignedTransactions() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            assertEstimate(1 + random.nextInt(12), 1 + random.nextInt(12));
+        }
+    }
+
+    @Test
+    public void size_longVarInts() throws Exception {
+        assertEstimate(3, 300);
+        assertEstimate(260, 2);
+    }
+
+    @Test
+    public void size_compressedP2pkh() {
+        //Unchanged from the flat 148/34/10 estimate below 253 inputs and outputs
+        Assert.assertEquals(148 * 3 + 34 * 2 + 10, new FeeEstimator(10000L).size(3, 2));
+        Assert.assertEquals(FeeEstimator.size(3, 3 * 180, 2, 2 * 32),
+            new FeeEstimator(10000L, FeeEstimator.P2PKH_UNCOMPRESSED_INPUT_SIZE,
+                FeeEstimator.P2SH_OUTPUT_SIZE).size(3, 2));
+    }
+
+    @Test
+    public void feeForSize_roundsUp() {
+        for (int i = 0; i < 10000; i++) {
+            long feePerKb = random.nextInt(1000000);
+            int size = 1 + random.nextInt(100000);
+
+            BigInteger[] division = BigInteger.valueOf(feePerKb).multiply(BigInteger.valueOf(size))
+                .divideAndRemainder(BigInteger.valueOf(1000L));
+            long expected = division[0].longValue() + (division[1].signum() > 0 ? 1 : 0);
+
+            Assert.assertEquals(expected, FeeEstimator.feeForSize(feePerKb, size));
+        }
+    }
+
+    @Test
+    public void paymentFee_receiverScript() {
+        long feePerKb = 10000L;
+        FeeEstimator p2pkh = new FeeEstimator(feePerKb);
+        Assert.assertEquals(Fees.estimatedSize(3, 1), p2pkh.paymentSize(3, false));
+        Assert.assertEquals(Fees.estimatedSize(3, 2), p2pkh.paymentSize(3, true));
+
+        Address p2sh = Address.fromP2SHHash(params, new byte[20]);
+        FeeEstimator toP2sh = FeeEstimator.forPayment(feePerKb, p2sh, true);
+        //Only the payment output is P2SH, change stays P2PKH
+        Assert.assertEquals(p2pkh.paymentSize(3, false) - 2, toP2sh.paymentSize(3, false));
+        Assert.assertEquals(p2pkh.paymentSize(3, true) - 2, toP2sh.paymentSize(3, true));
+
+        FeeEstimator uncompressed = FeeEstimator.forPayment(feePerKb, keys.get(0).toAddress(params), false);
+        Assert.assertEquals(p2pkh.paymentSize(3, true) + 3 * 32, uncompressed.paymentSize(3, true));
+
+        //Selection charges the P2SH payment what its size needs
+        long[] values = new long[]{100000L, 50000L};
+        CoinSelection selection = new GreedyCoinSelector().select(values, 120000L, toP2sh);
+        Assert.assertEquals(toP2sh.paymentFee(2, true), selection.getAbsoluteFee());
+        Assert.assertTrue(selection.getAbsoluteFee()
+            < new GreedyCoinSelector().select(values, 120000L, feePerKb).getAbsoluteFee());
+    }
+
+    @Test
+    public void isAdequateFee() {
+        //1000 satoshi per kb is the minimum relayed
+        Assert.assertFalse(FeeEstimator.isAdequateFee(1000, 1000L));
+        Assert.assertTrue(FeeEstimator.isAdequateFee(1000, 1001L));
+        Assert.assertTrue(FeeEstimator.isAdequateFee(226, 227L));
+        Assert.assertFalse(FeeEstimator.isAdequateFee(226, 226L));
+    }
+}
@@ -40,7 +40,8 @@ public class PaymentTest extends MockedResponseTest {
         cases.add(new int[]{1, 2, 30000, 6780});
         cases.add(new int[]{2, 1, 30000, 10200});
         cases.add(new int[]{3, 3, 30000, 16680});
-        cases.add(new int[]{5, 10, 30000, 32701});
+        //1090 bytes at 30 satoshi per byte, exactly
+        cases.add(new int[]{5, 10, 30000, 32700});
 
         for (int testCase = 0; testCase < cases.size(); testCase++) {
 
@@ -0,0 +1,105 @@
+package info.blockchain.wallet.payment;
+
+import info.blockchain.api.data.UnspentOutput;
+import info.blockchain.wallet.MockedResponseTest;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+public class TransactionSignerTest extends MockedResponseTest {
+
+    private final NetworkParameters params = MainNetParams.get();
+    private final ECKey receiver = new ECKey();
+
+    private UnspentOutput coin(byte[] script, int index) {
+        UnspentOutput coin = new UnspentOutput();
+        coin.setTxHash(Hex.toHexString(new ECKey().getPrivKeyBytes()));
+        coin.setTxOutputCount(index);
+        coin.setValue(BigInteger.valueOf(100000L + index));
+        coin.setScript(Hex.toHexString(script));
+        return coin;
+    }
+
+    private Transaction transaction(List<UnspentOutput> coins) {
+        Transaction transaction = new Transaction(params);
+        for (UnspentOutput coin : coins) {
+            transaction.addInput(PaymentTx.createInput(params, coin));
+        }
+        transaction.addOutput(Coin.valueOf(50000L), receiver.toAddress(params));
+        return transaction;
+    }
+
+    private byte[] payToAddress(ECKey key) {
+        return ScriptBuilder.createOutputScript(key.toAddress(params)).getProgram();
+    }
+
+    private static void assertCorrectlySpends(Transaction transaction, int index) {
+        TransactionInput input = transaction.getInput(index);
+        input.getScriptSig().correctlySpends(transaction, index,
+            input.getOutpoint().getConnectedOutput().getScriptPubKey(), Script.ALL_VERIFY_FLAGS);
+    }
+
+    @Test
+    public void sign_matchesWalletSigning() throws Exception {
+
+        List<ECKey> keys = Arrays.asList(new ECKey(), new ECKey(), ECKey.fromPrivate(new ECKey().getPrivKey(), false));
+        List<UnspentOutput> coins = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            coins.add(coin(payToAddress(keys.get(i % keys.size())), i));
+        }
+
+        Transaction parallel = transaction(coins);
+        Transaction legacy = transaction(coins);
+
+        Assert.assertEquals(10, new TransactionSigner(keys).sign(parallel));
+        PaymentTx.signTransaction(legacy, keys);
+
+        //Deterministic signatures over the same hashes
+        Assert.assertArrayEquals(legacy.bitcoinSerialize(), parallel.bitcoinSerialize());
+        for (int i = 0; i < 10; i++) {
+            assertCorrectlySpends(parallel, i);
+        }
+    }
+
+    @Test
+    public void sign_payToPubKey() throws Exception {
+
+        ECKey key = new ECKey();
+        Transaction transaction = transaction(Arrays.asList(
+            coin(ScriptBuilder.createOutputScript(key).getProgram(), 0),
+            coin(payToAddress(key), 1)));
+
+        Assert.assertEquals(2, new TransactionSigner(Arrays.asList(key)).sign(transaction));
+        assertCorrectlySpends(transaction, 0);
+        assertCorrectlySpends(transaction, 1);
+    }
+
+    @Test
+    public void sign_missingKey() throws Exception {
+
+        ECKey key = new ECKey();
+        Transaction transaction = transaction(Arrays.asList(
+            coin(payToAddress(key), 0),
+            coin(payToAddress(new ECKey()), 1),
+            coin(payToAddress(ECKey.fromPublicOnly(key.getPubKey())), 2)));
+
+        //Watch only keys are ignored
+        Assert.assertEquals(2, new TransactionSigner(Arrays.asList(ECKey.fromPublicOnly(new ECKey().getPubKey()), key))
+            .sign(transaction));
+        Assert.assertEquals(0, transaction.getInput(1).getScriptBytes().length);
+        assertCorrectlySpends(transaction, 0);
+        assertCorrectlySpends(transaction, 2);
+    }
+}
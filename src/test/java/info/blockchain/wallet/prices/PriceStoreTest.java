@@ -0,0 +1,131 @@
+package info.blockchain.wallet.prices;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import info.blockchain.wallet.MockedResponseTest;
+import info.blockchain.wallet.prices.data.PriceDatum;
+import info.blockchain.wallet.util.JsonCodecs;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PriceStoreTest extends MockedResponseTest {
+
+    private static final long HOUR = Scale.ONE_HOUR;
+
+    private PriceStore subject;
+    private long now;
+
+    @Before
+    public void setUp() {
+        subject = new PriceStore(new PriceApi());
+        now = System.currentTimeMillis() / 1000L;
+    }
+
+    /**
+     * Hourly points from start, priced 100 plus the hours since epoch mod 1000.
+     */
+    private static String series(long start, int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            long time = start + i * HOUR;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"timestamp\":").append(time)
+                .append(",\"price\":").append(price(time)).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static double price(long time) {
+        return 100 + (time / HOUR) % 1000;
+    }
+
+    private static List<PriceDatum> data(String json) throws Exception {
+        return JsonCodecs.getMapper().readValue(json, new TypeReference<List<PriceDatum>>() {});
+    }
+
+    @Test
+    public void getHistoricPrices_singleFetch() throws Exception {
+        long start = (now / HOUR - 10) * HOUR;
+        mockInterceptor.setResponseString(series(start, 10));
+
+        long[] times = new long[]{start + 5 * HOUR, start, start + 2 * HOUR + HOUR / 2, now};
+        double[] prices = subject.getHistoricPrices("btc", "usd", times, Scale.ONE_HOUR)
+            .blockingFirst();
+
+        Assert.assertEquals(price(start + 5 * HOUR), prices[0], 0.0);
+        Assert.assertEquals(price(start), prices[1], 0.0);
+        //Halfway between two points
+        Assert.assertEquals((price(start + 2 * HOUR) + price(start + 3 * HOUR)) / 2, prices[2], 1e-9);
+        //After the last point
+        Assert.assertEquals(price(start + 9 * HOUR), prices[3], 0.0);
+        Assert.assertEquals(1, subject.getFetchCount());
+
+        //Covered, no response left to fetch
+        Assert.assertEquals(price(start + 7 * HOUR),
+            subject.getHistoricPrice("BTC", "USD", start + 7 * HOUR, Scale.ONE_HOUR).blockingFirst(), 0.0);
+        Assert.assertEquals(1, subject.getFetchCount());
+    }
+
+    @Test
+    public void getHistoricPrice_fetchesEarlierRange() throws Exception {
+        long start = (now / HOUR - 10) * HOUR;
+        mockInterceptor.setResponseString(series(start, 10));
+        subject.getHistoricPrice("btc", "usd", start, Scale.ONE_HOUR).blockingFirst();
+
+        long earlier = start - 20 * HOUR;
+        mockInterceptor.setResponseString(series(earlier, 30));
+        Assert.assertEquals(price(earlier + HOUR),
+            subject.getHistoricPrice("btc", "usd", earlier + HOUR, Scale.ONE_HOUR).blockingFirst(), 0.0);
+        Assert.assertEquals(2, subject.getFetchCount());
+
+        //Other scales and currencies have their own series
+        mockInterceptor.setResponseString(series(start, 10));
+        subject.getHistoricPrice("btc", "eur", start, Scale.ONE_HOUR).blockingFirst();
+        Assert.assertEquals(3, subject.getFetchCount());
+    }
+
+    @Test
+    public void getHistoricPrices_empty() throws Exception {
+        Assert.assertEquals(0, subject.getHistoricPrices("btc", "usd", new long[0], Scale.ONE_DAY)
+            .blockingFirst().length);
+        Assert.assertEquals(0, subject.getFetchCount());
+    }
+
+    @Test
+    public void merge_tail() throws Exception {
+        PriceSeries series = new PriceSeries();
+        series.merge(data(series(0, 5)), 0, 4 * HOUR + 10);
+        Assert.assertTrue(series.covers(0, 4 * HOUR));
+        Assert.assertFalse(series.covers(0, 6 * HOUR));
+
+        //Fetched again from the last point, replacing it
+        series.merge(data("[{\"timestamp\":" + 4 * HOUR + ",\"price\":1},"
+            + "{\"timestamp\":" + 5 * HOUR + ",\"price\":2},"
+            + "{\"timestamp\":" + 6 * HOUR + "}]"), 4 * HOUR, 6 * HOUR);
+
+        //Point without a price skipped
+        Assert.assertEquals(6, series.size());
+        Assert.assertTrue(series.covers(0, 6 * HOUR));
+        Assert.assertEquals(1, series.getPrice(4 * HOUR), 0.0);
+        Assert.assertEquals(1.5, series.getPrice(4 * HOUR + HOUR / 2), 0.0);
+        Assert.assertEquals(2, series.getPrice(6 * HOUR), 0.0);
+        Assert.assertEquals(price(HOUR), series.getPrice(HOUR), 0.0);
+    }
+
+    @Test
+    public void merge_unordered() throws Exception {
+        PriceSeries series = new PriceSeries();
+        Assert.assertTrue(Double.isNaN(series.getPrice(0)));
+
+        series.merge(data("[{\"timestamp\":20,\"price\":3},{\"timestamp\":0,\"price\":1},"
+            + "{\"timestamp\":10,\"price\":5},{\"timestamp\":10,\"price\":2}]"), 0, 20);
+
+        Assert.assertEquals(3, series.size());
+        Assert.assertEquals(2, series.getPrice(10), 0.0);
+        Assert.assertEquals(1.5, series.getPrice(5), 0.0);
+        Assert.assertEquals(2.5, series.getPrice(15), 0.0);
+    }
+}
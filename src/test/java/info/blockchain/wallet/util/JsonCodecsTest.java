@@ -0,0 +1,28 @@
+package info.blockchain.wallet.util;
+
+import info.blockchain.wallet.payload.data.Options;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonCodecsTest {
+
+    @Test
+    public void codecs_builtOncePerType() {
+        Assert.assertSame(JsonCodecs.reader(Options.class), JsonCodecs.reader(Options.class));
+        Assert.assertSame(JsonCodecs.fieldReader(Options.class), JsonCodecs.fieldReader(Options.class));
+        Assert.assertSame(JsonCodecs.writer(Options.class), JsonCodecs.writer(Options.class));
+        Assert.assertNotSame(JsonCodecs.reader(Options.class), JsonCodecs.fieldReader(Options.class));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Options options = Options.fromJson("{\"pbkdf2_iterations\":5000,\"fee_per_kb\":10000,"
+            + "\"html5_notifications\":false,\"logout_time\":600000}");
+
+        Options copy = Options.fromJson(options.toJson());
+
+        Assert.assertEquals(5000, copy.getPbkdf2Iterations());
+        Assert.assertEquals(10000, copy.getFeePerKb());
+        Assert.assertEquals(600000, copy.getLogoutTime());
+    }
+}
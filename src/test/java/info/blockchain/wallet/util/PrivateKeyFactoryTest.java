@@ -10,6 +10,10 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
 public class PrivateKeyFactoryTest extends MockedResponseTest {
 
     private PrivateKeyFactory privateKeyFactory;
@@ -220,4 +224,50 @@ public class PrivateKeyFactoryTest extends MockedResponseTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getKeys_mixedFormats() throws Exception {
+
+        //Arrange
+        String balances = "{\"" + hexUncompressedAddress + "\": {\"final_balance\": 1000},"
+            + "\"" + hexCompressedAddress + "\": {\"final_balance\": 0},"
+            + "\"" + miniUncompressedAddress + "\": {\"final_balance\": 0},"
+            + "\"" + miniCompressedAddress + "\": {\"final_balance\": 0}}";
+        mockInterceptor.setResponseString(balances);
+
+        String wif = "KyCHxZe68e5PNfqh8Ls8DrihMuweHKxvjtm3PGTrj43MyWuvN2aE";
+        String bip38 = "6PfY1oK1kJX7jYDPMGBkcECCYwzH2qTCHfMdz67cBJrL7oZvpH8H8jfH2j";
+        privateKeyFactory.setBulkImport(2, 10);
+
+        //Act
+        List<ECKey> keys = privateKeyFactory
+            .getKeys(Arrays.asList(hexKey, "not a key", wif, miniKey, bip38));
+
+        //Assert
+        Assert.assertEquals(5, keys.size());
+        Assert.assertEquals(hexUncompressedAddress, keys.get(0).toAddress(MainNetParams.get()).toString());
+        Assert.assertNull(keys.get(1));
+        Assert.assertEquals(privateKeyFactory.getKey(PrivateKeyFactory.WIF_COMPRESSED, wif), keys.get(2));
+        Assert.assertEquals(miniCompressedAddress, keys.get(3).toAddress(MainNetParams.get()).toString());
+        Assert.assertNull(keys.get(4));
+    }
+
+    @Test
+    public void getKeys_balanceLookupChunked() throws Exception {
+
+        //Arrange
+        LinkedList<String> responses = new LinkedList<>();
+        responses.add(String.format(balanceApiResponse, miniUncompressedAddress, 1000, miniCompressedAddress, 0));
+        responses.add(String.format(balanceApiResponse, hexUncompressedAddress, 1000, hexCompressedAddress, 0));
+        mockInterceptor.setResponseStringList(responses);
+        privateKeyFactory.setBulkImport(1, 1);
+
+        //Act
+        List<ECKey> keys = privateKeyFactory.getKeys(Arrays.asList(miniKey, hexKey));
+
+        //Assert
+        Assert.assertFalse(keys.get(0).isCompressed());
+        Assert.assertFalse(keys.get(1).isCompressed());
+        Assert.assertTrue(responses.isEmpty());
+    }
+
+}
@@ -0,0 +1,121 @@
+package info.blockchain.wallet.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WorkerPoolTest {
+
+    private static List<Callable<Integer>> squares(int count, final AtomicInteger running,
+        final AtomicInteger maxRunning) {
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int current = running.incrementAndGet();
+                    while (true) {
+                        int max = maxRunning.get();
+                        if (current <= max || maxRunning.compareAndSet(max, current)) break;
+                    }
+                    Thread.sleep(5);
+                    running.decrementAndGet();
+                    return value * value;
+                }
+            });
+        }
+        return tasks;
+    }
+
+    @Test
+    public void invokeAll_resultsInOrder() throws Exception {
+
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> results = WorkerPool.invokeAll(squares(20, new AtomicInteger(), maxRunning), 3);
+
+        Assert.assertEquals(20, results.size());
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(i * i, results.get(i).intValue());
+        }
+        Assert.assertTrue("Running: " + maxRunning.get(), maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void invokeAll_firstFailureThrown() throws Exception {
+
+        final AtomicInteger calls = new AtomicInteger();
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final int index = i;
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    calls.incrementAndGet();
+                    if (index == 2) {
+                        throw new IllegalArgumentException("Task " + index);
+                    }
+                    Thread.sleep(5);
+                    return "ok";
+                }
+            });
+        }
+
+        try {
+            WorkerPool.invokeAll(tasks, 2);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals("Task 2", e.getCause().getMessage());
+        }
+        //Remaining tasks are skipped
+        Assert.assertTrue("Calls: " + calls.get(), calls.get() < 50);
+    }
+
+    @Test
+    public void invokeAll_completesWhenPoolBusy() throws Exception {
+
+        //Occupy every pool thread, and the thread calling invokeAll for them
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(WorkerPool.THREADS + 1);
+        final List<Callable<Void>> blockers = new ArrayList<>();
+        for (int i = 0; i < WorkerPool.THREADS + 1; i++) {
+            blockers.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    blocked.countDown();
+                    release.await();
+                    return null;
+                }
+            });
+        }
+        Thread occupier = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    WorkerPool.invokeAll(blockers, WorkerPool.THREADS + 1);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        occupier.start();
+        blocked.await();
+
+        try {
+            //Runs on the calling thread alone
+            List<Integer> results = WorkerPool.invokeAll(
+                squares(5, new AtomicInteger(), new AtomicInteger()), 4);
+            Assert.assertEquals(Arrays.asList(0, 1, 4, 9, 16), results);
+        } finally {
+            release.countDown();
+            occupier.join();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package info.blockchain.wallet.websocket;
+
+import info.blockchain.wallet.multiaddress.TransactionHistoryCache;
+import info.blockchain.wallet.payload.BalanceStore;
+import info.blockchain.wallet.payload.PayloadManager;
+import info.blockchain.wallet.websocket.SubscriptionEngine.Listener;
+import info.blockchain.wallet.websocket.SubscriptionEngine.Poller;
+import info.blockchain.wallet.websocket.SubscriptionEngine.Subscription;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SubscriptionEngineTest {
+
+    private static final String ALL = PayloadManager.MULTI_ADDRESS_ALL;
+    private static final String ALL_LEGACY = PayloadManager.MULTI_ADDRESS_ALL_LEGACY;
+
+    private static final String XPUB = "xpub6CFgfYG9chNp7rzZ7ByXyAJruku5JSVhtGmGqR9tmeLRwu3jtioyBZpXC6GAnpMQPBQg5rviqTwMN4EwgMCZNVT3N22sSnM1yEfBQzjHXJt";
+    private static final String LEGACY = "1NZUGwdmQJ7AA6QrEuBz4jeT6z7yjty5dM";
+    private static final String DERIVED = "1H2E6b2Ny6UeQ6bM5V2pSxAwZaVYAaaYUH";
+    private static final String FOREIGN = "1GiEQZt9aX2XfDcj14tCC4xAWEJtq9EXW7";
+
+    private WebSocketStub stub;
+    private SubscriptionEngine engine;
+    private BalanceStore balanceStore;
+    private TransactionHistoryCache cache;
+    private Subscription subscription;
+
+    private final AtomicInteger polls = new AtomicInteger();
+    private final LinkedBlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new WebSocketStub();
+        engine = new SubscriptionEngine(new OkHttpClient(), stub.getUrl(), 100L);
+
+        balanceStore = new BalanceStore();
+        balanceStore.update()
+            .put(XPUB, 1000L)
+            .put(LEGACY, 500L)
+            .put(ALL, 1500L)
+            .put(ALL_LEGACY, 500L)
+            .publish();
+        cache = new TransactionHistoryCache();
+
+        subscription = new Subscription(balanceStore, Arrays.asList(XPUB), Arrays.asList(LEGACY));
+        subscription.setTransactionHistoryCache(cache);
+        subscription.setPoller(new Poller() {
+            @Override
+            public void poll() {
+                polls.incrementAndGet();
+            }
+        });
+        subscription.setListener(new Listener() {
+            @Override
+            public void onTransaction(String hash) {
+                events.add("tx:" + hash);
+            }
+
+            @Override
+            public void onBlock(long height) {
+                events.add("block:" + height);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        engine.stop();
+        stub.close();
+    }
+
+    private Set<String> receive(int count) throws Exception {
+        Set<String> messages = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            String message = stub.receive();
+            Assert.assertNotNull("Expected " + count + " messages, got " + messages, message);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static Set<String> subscriptionMessages() {
+        return new HashSet<>(Arrays.asList(
+            "{\"op\":\"blocks_sub\"}",
+            "{\"op\":\"xpub_sub\",\"xpub\":\"" + XPUB + "\"}",
+            "{\"op\":\"addr_sub\",\"addr\":\"" + LEGACY + "\"}"));
+    }
+
+    private static JSONObject output(String address, String xpub, long value) {
+        JSONObject output = new JSONObject();
+        output.put("addr", address);
+        output.put("value", value);
+        if (xpub != null) {
+            output.put("xpub", new JSONObject().put("m", xpub).put("path", "M/0/1"));
+        }
+        return output;
+    }
+
+    private static String transaction(String hash, JSONObject[] spent, JSONObject[] outputs) {
+        JSONArray inputs = new JSONArray();
+        for (JSONObject prevOut : spent) {
+            inputs.put(new JSONObject().put("prev_out", prevOut));
+        }
+        JSONObject tx = new JSONObject()
+            .put("hash", hash)
+            .put("inputs", inputs)
+            .put("out", new JSONArray(Arrays.asList(outputs)));
+        return new JSONObject().put("op", "utx").put("x", tx).toString();
+    }
+
+    private void connect() throws Exception {
+        engine.subscribe(subscription);
+        engine.start();
+        Assert.assertEquals(subscriptionMessages(), receive(3));
+    }
+
+    @Test
+    public void subscribe_afterConnecting() throws Exception {
+        connect();
+
+        Subscription other = new Subscription(new BalanceStore(), Arrays.asList(XPUB),
+            Arrays.asList(FOREIGN));
+        engine.subscribe(other);
+        //Only the new address
+        Assert.assertEquals("{\"op\":\"addr_sub\",\"addr\":\"" + FOREIGN + "\"}", stub.receive());
+
+        engine.unsubscribe(other);
+        Assert.assertEquals("{\"op\":\"addr_unsub\",\"addr\":\"" + FOREIGN + "\"}", stub.receive());
+        Assert.assertTrue(engine.isConnected());
+    }
+
+    @Test
+    public void transaction_appliedToBalances() throws Exception {
+        connect();
+
+        //Legacy address pays 200 to an address of the xpub, 40 to someone else
+        String tx = transaction("aa",
+            new JSONObject[]{output(LEGACY, null, 200L)},
+            new JSONObject[]{output(DERIVED, XPUB, 150L), output(FOREIGN, null, 40L)});
+        stub.send(tx);
+        Assert.assertEquals("tx:aa", events.poll(5, TimeUnit.SECONDS));
+
+        BalanceStore.Snapshot snapshot = balanceStore.getSnapshot();
+        Assert.assertEquals(1150L, snapshot.getBalance(XPUB));
+        Assert.assertEquals(300L, snapshot.getBalance(LEGACY));
+        Assert.assertEquals(1450L, snapshot.getBalance(ALL));
+        Assert.assertEquals(300L, snapshot.getBalance(ALL_LEGACY));
+
+        //Announced again, then a transaction not involving the wallet, then a receive
+        stub.send(tx);
+        stub.send(transaction("bb", new JSONObject[]{output(FOREIGN, null, 10L)},
+            new JSONObject[]{output(FOREIGN, null, 5L)}));
+        stub.send(transaction("cc", new JSONObject[]{output(FOREIGN, null, 100L)},
+            new JSONObject[]{output(LEGACY, null, 60L)}));
+        Assert.assertEquals("tx:cc", events.poll(5, TimeUnit.SECONDS));
+
+        snapshot = balanceStore.getSnapshot();
+        Assert.assertEquals(1150L, snapshot.getBalance(XPUB));
+        Assert.assertEquals(360L, snapshot.getBalance(LEGACY));
+        Assert.assertEquals(1510L, snapshot.getBalance(ALL));
+        Assert.assertEquals(0, polls.get());
+    }
+
+    @Test
+    public void transaction_appliedLocallyOnce() throws Exception {
+        connect();
+
+        //Sent 200 plus 10 fee from the legacy address, subtracted right away
+        Assert.assertTrue(subscription.markApplied("aa"));
+        balanceStore.subtract(210L, LEGACY, ALL, ALL_LEGACY);
+
+        stub.send(transaction("aa",
+            new JSONObject[]{output(LEGACY, null, 210L)},
+            new JSONObject[]{output(FOREIGN, null, 200L)}));
+        stub.send(transaction("cc", new JSONObject[]{output(FOREIGN, null, 100L)},
+            new JSONObject[]{output(LEGACY, null, 60L)}));
+        Assert.assertEquals("tx:cc", events.poll(5, TimeUnit.SECONDS));
+
+        BalanceStore.Snapshot snapshot = balanceStore.getSnapshot();
+        Assert.assertEquals(350L, snapshot.getBalance(LEGACY));
+        Assert.assertEquals(1350L, snapshot.getBalance(ALL));
+        Assert.assertEquals(350L, snapshot.getBalance(ALL_LEGACY));
+
+        //Announced before the local subtract, which then leaves the balances alone
+        stub.send(transaction("dd",
+            new JSONObject[]{output(LEGACY, null, 110L)},
+            new JSONObject[]{output(FOREIGN, null, 100L)}));
+        Assert.assertEquals("tx:dd", events.poll(5, TimeUnit.SECONDS));
+        Assert.assertFalse(subscription.markApplied("dd"));
+        Assert.assertEquals(240L, balanceStore.getSnapshot().getBalance(LEGACY));
+    }
+
+    @Test
+    public void transaction_unknownBalancePolls() throws Exception {
+        balanceStore = new BalanceStore();
+        subscription = new Subscription(balanceStore, Arrays.asList(XPUB), Arrays.asList(LEGACY));
+        subscription.setPoller(new Poller() {
+            @Override
+            public void poll() {
+                polls.incrementAndGet();
+                events.add("poll");
+            }
+        });
+        connect();
+
+        stub.send(transaction("aa", new JSONObject[]{output(FOREIGN, null, 100L)},
+            new JSONObject[]{output(DERIVED, XPUB, 60L)}));
+
+        Assert.assertEquals("poll", events.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, balanceStore.getSnapshot().size());
+    }
+
+    @Test
+    public void block_updatesConfirmations() throws Exception {
+        connect();
+
+        stub.send("{\"op\":\"block\",\"x\":{\"height\":500000,\"hash\":\"00\"}}");
+
+        Assert.assertEquals("block:500000", events.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals(500000L, cache.getLatestBlock());
+        Assert.assertEquals(500000L, engine.getLatestBlock());
+    }
+
+    @Test
+    public void dropped_reconnectsAndResubscribes() throws Exception {
+        connect();
+
+        stub.drop();
+
+        //Subscribed again on a new connection, then polled to catch up
+        Assert.assertEquals(subscriptionMessages(), receive(3));
+        Assert.assertEquals(2, stub.getConnectionCount());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (polls.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(polls.get() > 0);
+        Assert.assertTrue(engine.isConnected());
+    }
+
+    @Test
+    public void unreachable_fallsBackToPolling() throws Exception {
+        stub.close();
+
+        engine.subscribe(subscription);
+        engine.start();
+
+        //Poll interval of 100 ms, first reconnect only after a second
+        Thread.sleep(800);
+        Assert.assertFalse(engine.isConnected());
+        Assert.assertTrue("Polls: " + polls.get(), polls.get() >= 3);
+
+        engine.stop();
+        int stopped = polls.get();
+        Thread.sleep(300);
+        Assert.assertEquals(stopped, polls.get());
+    }
+
+    @Test
+    public void stop_shutsDownScheduler() throws Exception {
+        stub.close();
+
+        final LinkedBlockingQueue<Thread> pollers = new LinkedBlockingQueue<>();
+        subscription.setPoller(new Poller() {
+            @Override
+            public void poll() {
+                pollers.add(Thread.currentThread());
+            }
+        });
+        engine.subscribe(subscription);
+        engine.start();
+
+        Thread scheduler = pollers.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(scheduler);
+
+        engine.stop();
+        scheduler.join(5000);
+        Assert.assertFalse(scheduler.isAlive());
+
+        //Started again on a new scheduler
+        pollers.clear();
+        engine.start();
+        Thread restarted = pollers.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(restarted);
+        Assert.assertNotSame(scheduler, restarted);
+    }
+}
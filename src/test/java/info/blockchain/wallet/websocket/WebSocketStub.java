@@ -0,0 +1,179 @@
+package info.blockchain.wallet.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Minimal websocket server: accepts one connection at a time, queues the text frames it
+ * receives and sends text frames to the current connection.
+ */
+class WebSocketStub {
+
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private final ServerSocket serverSocket;
+    private final LinkedBlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private volatile Socket socket;
+
+    WebSocketStub() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "websocket-stub");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    String getUrl() {
+        return "ws://127.0.0.1:" + serverSocket.getLocalPort() + "/inv";
+    }
+
+    int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * @return Next text frame received, null after a 5 second timeout
+     */
+    String receive() throws InterruptedException {
+        return received.poll(5, TimeUnit.SECONDS);
+    }
+
+    synchronized void send(String text) throws IOException {
+        byte[] payload = text.getBytes(UTF_8);
+        OutputStream out = socket.getOutputStream();
+        out.write(0x81);
+        if (payload.length < 126) {
+            out.write(payload.length);
+        } else {
+            out.write(126);
+            out.write(payload.length >> 8);
+            out.write(payload.length & 0xff);
+        }
+        out.write(payload);
+        out.flush();
+    }
+
+    /**
+     * Closes the current connection without a close frame.
+     */
+    void drop() throws IOException {
+        socket.close();
+    }
+
+    void close() throws IOException {
+        serverSocket.close();
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket accepted = serverSocket.accept();
+                handshake(accepted);
+                socket = accepted;
+                connections.incrementAndGet();
+                read(accepted);
+            } catch (Exception e) {
+                //Connection dropped or server closed
+            }
+        }
+    }
+
+    private static void handshake(Socket socket) throws Exception {
+        InputStream in = socket.getInputStream();
+        String key = null;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (line.toLowerCase().startsWith("sec-websocket-key:")) {
+                key = line.substring(line.indexOf(':') + 1).trim();
+            }
+        }
+
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest((key + GUID).getBytes(UTF_8));
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Accept: " + new String(Base64.encodeBase64(digest), UTF_8) + "\r\n\r\n";
+        socket.getOutputStream().write(response.getBytes(UTF_8));
+        socket.getOutputStream().flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new IOException("Connection closed");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), UTF_8);
+    }
+
+    private void read(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        while (true) {
+            int opcode = in.readUnsignedByte() & 0x0f;
+            int second = in.readUnsignedByte();
+            long length = second & 0x7f;
+            if (length == 126) {
+                length = in.readUnsignedShort();
+            } else if (length == 127) {
+                length = in.readLong();
+            }
+
+            //Client frames are always masked
+            byte[] mask = new byte[4];
+            in.readFully(mask);
+            byte[] payload = new byte[(int) length];
+            in.readFully(payload);
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i % 4];
+            }
+
+            if (opcode == 0x1) {
+                received.add(new String(payload, UTF_8));
+            } else if (opcode == 0x9) {
+                synchronized (this) {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(0x8a);
+                    out.write(payload.length);
+                    out.write(payload);
+                    out.flush();
+                }
+            } else if (opcode == 0x8) {
+                synchronized (this) {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(0x88);
+                    out.write(0);
+                    out.flush();
+                }
+                socket.close();
+                return;
+            }
+        }
+    }
+}